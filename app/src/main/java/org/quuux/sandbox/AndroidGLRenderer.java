@@ -9,15 +9,24 @@ import android.os.Build;
 import org.quuux.opengl.lib.BufferType;
 import org.quuux.opengl.lib.ShaderProgram;
 import org.quuux.opengl.renderer.Renderer;
+import org.quuux.opengl.renderer.commands.BeginTransformFeedback;
+import org.quuux.opengl.renderer.commands.BindBufferBase;
 import org.quuux.opengl.renderer.commands.BufferData;
+import org.quuux.opengl.renderer.commands.BufferSubData;
 import org.quuux.opengl.renderer.commands.Clear;
 import org.quuux.opengl.renderer.commands.ClearColor;
 import org.quuux.opengl.renderer.commands.CompileShader;
 import org.quuux.opengl.renderer.commands.CreateProgram;
+import org.quuux.opengl.renderer.commands.DeleteBuffer;
+import org.quuux.opengl.renderer.commands.DeleteProgram;
+import org.quuux.opengl.renderer.commands.DeleteTexture;
 import org.quuux.opengl.renderer.commands.DrawArrays;
+import org.quuux.opengl.renderer.commands.DrawArraysInstanced;
 import org.quuux.opengl.renderer.commands.DrawElements;
+import org.quuux.opengl.renderer.commands.DrawElementsInstanced;
 import org.quuux.opengl.renderer.commands.DrawMode;
 import org.quuux.opengl.renderer.commands.EnableVertexAttribArray;
+import org.quuux.opengl.renderer.commands.EndTransformFeedback;
 import org.quuux.opengl.renderer.commands.GenerateArray;
 import org.quuux.opengl.renderer.commands.GenerateBuffer;
 import org.quuux.opengl.renderer.commands.GenerateFramebuffer;
@@ -25,9 +34,13 @@ import org.quuux.opengl.renderer.commands.GenerateMipMap;
 import org.quuux.opengl.renderer.commands.GenerateTexture;
 import org.quuux.opengl.renderer.commands.LinkProgram;
 import org.quuux.opengl.renderer.commands.LoadTexture;
-import org.quuux.opengl.renderer.commands.SetUniform;
+import org.quuux.opengl.renderer.commands.SetUniformFloat;
+import org.quuux.opengl.renderer.commands.SetUniformInt;
 import org.quuux.opengl.renderer.commands.SetUniformMatrix;
 import org.quuux.opengl.renderer.commands.TextureParameter;
+import org.quuux.opengl.renderer.commands.TransformFeedbackVaryings;
+import org.quuux.opengl.renderer.commands.UniformBlockBinding;
+import org.quuux.opengl.renderer.commands.VertexAttribDivisor;
 import org.quuux.opengl.renderer.commands.VertexAttribPointer;
 import org.quuux.opengl.renderer.states.ActivateTexture;
 import org.quuux.opengl.renderer.states.BindArray;
@@ -37,6 +50,7 @@ import org.quuux.opengl.renderer.states.BindTexture;
 import org.quuux.opengl.renderer.states.BlendFunc;
 import org.quuux.opengl.renderer.states.DepthFunc;
 import org.quuux.opengl.renderer.states.Enable;
+import org.quuux.opengl.renderer.states.TextureTarget;
 import org.quuux.opengl.renderer.states.UseProgram;
 import org.quuux.opengl.util.GLUtil;
 
@@ -48,12 +62,18 @@ class AndroidGLRenderer implements Renderer {
 
     private static final boolean DEBUG = false;
 
+    private ErrorCheck errorCheck = BuildConfig.DEBUG ? ErrorCheck.COMMAND : ErrorCheck.FRAME;
+
     private int getTarget(final BufferType target) {
         final int rv;
         if (target == BufferType.ArrayBuffer)
             rv = GLES30.GL_ARRAY_BUFFER;
         else if (target == BufferType.ElementArrayBuffer)
             rv = GLES30.GL_ELEMENT_ARRAY_BUFFER;
+        else if (target == BufferType.UniformBuffer)
+            rv = GLES30.GL_UNIFORM_BUFFER;
+        else if (target == BufferType.TransformFeedbackBuffer)
+            rv = GLES30.GL_TRANSFORM_FEEDBACK_BUFFER;
         else
             throw new UnsupportedException("Unknown target: " + target);
         return rv;
@@ -137,17 +157,47 @@ class AndroidGLRenderer implements Renderer {
         return rv;
     }
 
-    private int getUniformLocation(ShaderProgram shader, String name) {
-        Integer location = shader.getUniformLocation(name);
-        checkError();
-        if (location == null) {
-            location = GLES30.glGetUniformLocation(shader.program, name);
-            checkError();
-            shader.setUniformLocation(name, location);
-            checkError();
+    private int getTextureTarget(TextureTarget target) {
+        final int rv;
+        if (target == TextureTarget.TEXTURE_2D)
+            rv = GLES30.GL_TEXTURE_2D;
+        else if (target == TextureTarget.TEXTURE_3D)
+            rv = GLES30.GL_TEXTURE_3D;
+        else if (target == TextureTarget.CUBE_MAP)
+            rv = GLES30.GL_TEXTURE_CUBE_MAP;
+        else
+            throw new UnsupportedException("Unknown target: " + target.toString());
+        return rv;
+    }
+
+    private void resolveUniforms(ShaderProgram shader) {
+        int[] count = new int[1];
+        GLES30.glGetProgramiv(shader.program, GLES30.GL_ACTIVE_UNIFORMS, count, 0);
+        checkCallError();
+
+        int[] size = new int[1];
+        int[] type = new int[1];
+
+        for (int i=0; i<count[0]; i++) {
+            String name = GLES30.glGetActiveUniform(shader.program, i, size, 0, type, 0);
+            checkCallError();
+            registerUniform(shader, name, size[0]);
         }
+    }
 
-        return location;
+    private void registerUniform(ShaderProgram shader, String name, int size) {
+        // arrays of basic types are reported once as "name[0]"
+        if (name.endsWith("[0]")) {
+            String base = name.substring(0, name.length() - 3);
+            for (int i=0; i<size; i++) {
+                String element = base + "[" + i + "]";
+                shader.setUniformLocation(element, GLES30.glGetUniformLocation(shader.program, element));
+            }
+            shader.setUniformLocation(base, GLES30.glGetUniformLocation(shader.program, name));
+        } else {
+            shader.setUniformLocation(name, GLES30.glGetUniformLocation(shader.program, name));
+        }
+        checkCallError();
     }
 
     private int getType(VertexAttribPointer.Type type) {
@@ -194,6 +244,8 @@ class AndroidGLRenderer implements Renderer {
             rv = GLES30.GL_DEPTH_TEST;
         else if (capability == Enable.Capability.BLEND)
             rv = GLES30.GL_BLEND;
+        else if (capability == Enable.Capability.RASTERIZER_DISCARD)
+            rv = GLES30.GL_RASTERIZER_DISCARD;
         else
             throw new UnsupportedException("Unknown capability: " + capability);
         return rv;
@@ -202,48 +254,54 @@ class AndroidGLRenderer implements Renderer {
     @Override
     public void run(final BufferData command) {
         GLES30.glBufferData(getTarget(command.getTarget()), command.getSize(), command.getData(), getUsage(command.getUsage()));
-        checkError();
+        checkCallError();
+    }
+
+    @Override
+    public void run(final BufferSubData command) {
+        GLES30.glBufferSubData(getTarget(command.getTarget()), command.getOffset(), command.getSize(), command.getData());
+        checkCallError();
     }
 
     @Override
     public void run(final Clear command) {
         GLES30.glClear(getMask(command.getModes()));
-        checkError();
+        checkCallError();
     }
 
     @Override
     public void run(final CompileShader command) {
         int shader = GLES30.glCreateShader(getShaderType(command.getShaderType()));
-        checkError();
+        checkCallError();
 
         GLES30.glShaderSource(shader, command.getShaderSource("300 es"));
-        checkError();
+        checkCallError();
 
         GLES30.glCompileShader(shader);
-        checkError();
+        checkCallError();
 
         IntBuffer success = GLUtil.intBuffer(1);
         GLES30.glGetShaderiv(shader, GLES30.GL_COMPILE_STATUS, success);
-        checkError();
+        checkCallError();
         if (success.get() == 0) {
             String info = GLES30.glGetShaderInfoLog(shader);
-            checkError();
+            checkCallError();
             throw new RendererException("Error compiling shader: " + info);
         }
         GLES30.glAttachShader(command.getProgram().program, shader);
-        checkError();
+        checkCallError();
     }
 
     @Override
     public void run(final CreateProgram command) {
         command.getProgram().program = GLES30.glCreateProgram();
-        checkError();
+        checkCallError();
     }
 
     @Override
     public void run(final DrawArrays command) {
         GLES30.glDrawArrays(getMode(command.getMode()), command.getFirst(), command.getCount());
-        checkError();
+        checkCallError();
     }
 
     @Override
@@ -256,7 +314,7 @@ class AndroidGLRenderer implements Renderer {
     public void run(final GenerateArray command) {
         IntBuffer tmp = GLUtil.intBuffer(1);
         GLES30.glGenVertexArrays(1, tmp);
-        checkError();
+        checkCallError();
         command.getVao().vao = tmp.get();
     }
 
@@ -264,7 +322,7 @@ class AndroidGLRenderer implements Renderer {
     public void run(final GenerateBuffer command) {
         IntBuffer tmp = GLUtil.intBuffer(1);
         GLES30.glGenBuffers(1, tmp);
-        checkError();
+        checkCallError();
         command.getVbo().vbo = tmp.get();
     }
 
@@ -273,18 +331,33 @@ class AndroidGLRenderer implements Renderer {
 
     }
 
+    @Override
+    public void setErrorCheck(final ErrorCheck errorCheck) {
+        this.errorCheck = errorCheck;
+    }
+
+    @Override
+    public ErrorCheck getErrorCheck() {
+        return errorCheck;
+    }
+
+    // checks after each individual GL call, only when debugging the backend itself
+    private void checkCallError() {
+        if (DEBUG)
+            checkError();
+    }
+
+    @Override
     public void checkError() {
-        if (DEBUG) {
-            int error;
-            StringBuilder sb = new StringBuilder();
-            while ((error = GLES30.glGetError()) != GLES30.GL_NO_ERROR) {
-                sb.append(error);
-            }
+        int error;
+        StringBuilder sb = new StringBuilder();
+        while ((error = GLES30.glGetError()) != GLES30.GL_NO_ERROR) {
+            sb.append(error);
+        }
 
-            String msg = sb.toString();
-            if (msg.length() > 0) {
-                throw new RuntimeException("glError: " + msg);
-            }
+        String msg = sb.toString();
+        if (msg.length() > 0) {
+            throw new RendererException("glError: " + msg);
         }
     }
 
@@ -299,82 +372,124 @@ class AndroidGLRenderer implements Renderer {
     public void run(final GenerateTexture command) {
         IntBuffer buffer = GLUtil.intBuffer(1);
         GLES30.glGenTextures(1, buffer);
-        checkError();
+        checkCallError();
         command.getTexture().texture = buffer.get();
     }
 
     @Override
     public void run(final LinkProgram command) {
         GLES30.glLinkProgram(command.getProgram().program);
-        checkError();
+        checkCallError();
         IntBuffer success = GLUtil.intBuffer(1);
         GLES30.glGetProgramiv(command.getProgram().program, GLES30.GL_LINK_STATUS, success);
-        checkError();
+        checkCallError();
         if (success.get() == 0) {
             String info = GLES30.glGetProgramInfoLog(command.getProgram().program);
-            checkError();
+            checkCallError();
             throw new RendererException("Error linking shader: " + info);
         }
+
+        resolveUniforms(command.getProgram());
     }
 
     @Override
     public void run(final LoadTexture command) {
         Bitmap bitmap = getBitmap(command.getBuffer(), command.getWidth(), command.getHeight());
         GLUtils.texImage2D(GLES30.GL_TEXTURE_2D, 0, bitmap, 0);
-        checkError();
+        checkCallError();
         bitmap.recycle();
     }
 
     @Override
     public void run(final SetUniformMatrix command) {
-        GLES30.glUniformMatrix4fv(getUniformLocation(command.getShader(), command.getAttribute()), command.getCount(), command.isTranspose(), command.getBuffer());
-        checkError();
+        GLES30.glUniformMatrix4fv(command.getLocation(), command.getCount(), command.isTranspose(), command.getBuffer());
+        checkCallError();
     }
 
     @Override
-    public void run(final SetUniform command) {
-        if (command.getType() == SetUniform.Type.INT) {
-            GLES30.glUniform1i(getUniformLocation(command.getProgram(), command.getAttribute()), 0);
-            checkError();
+    public void run(final SetUniformFloat command) {
+        int location = command.getLocation();
+
+        switch (command.getSize()) {
+            case 1:
+                GLES30.glUniform1f(location, command.getX());
+                break;
+
+            case 2:
+                GLES30.glUniform2f(location, command.getX(), command.getY());
+                break;
+
+            case 3:
+                GLES30.glUniform3f(location, command.getX(), command.getY(), command.getZ());
+                break;
+
+            case 4:
+                GLES30.glUniform4f(location, command.getX(), command.getY(), command.getZ(), command.getW());
+                break;
         }
+        checkCallError();
+    }
+
+    @Override
+    public void run(final SetUniformInt command) {
+        int location = command.getLocation();
+
+        switch (command.getSize()) {
+            case 1:
+                GLES30.glUniform1i(location, command.getX());
+                break;
+
+            case 2:
+                GLES30.glUniform2i(location, command.getX(), command.getY());
+                break;
+
+            case 3:
+                GLES30.glUniform3i(location, command.getX(), command.getY(), command.getZ());
+                break;
+
+            case 4:
+                GLES30.glUniform4i(location, command.getX(), command.getY(), command.getZ(), command.getW());
+                break;
+        }
+        checkCallError();
     }
 
     @Override
     public void run(final VertexAttribPointer command) {
         GLES30.glVertexAttribPointer(command.getIndex(), command.getSize(), getType(command.getType()), command.isNormalized(), command.getStride(), command.getPointer());
-        checkError();
+        checkCallError();
     }
 
     @Override
     public void run(final EnableVertexAttribArray command) {
         GLES30.glEnableVertexAttribArray(command.getIndex());
-        checkError();
+        checkCallError();
     }
 
     @Override
     public void run(final ClearColor command) {
         GLES30.glClearColor(command.getR(), command.getG(), command.getB(), command.getA());
-        checkError();
+        checkCallError();
     }
 
     @Override
     public void run(final BlendFunc command) {
         GLES30.glBlendFunc(getFactor(command.getSfactor()), getFactor(command.getDfactor()));
-        checkError();
+        checkCallError();
     }
 
     @Override
     public void run(final DepthFunc command) {
         GLES30.glDepthFunc(getDepthFunc(command.getDepthFunc()));
-        checkError();
+        checkCallError();
     }
 
     @Override
     public void run(final TextureParameter command) {
         GLES30.glTexParameteri(GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_MIN_FILTER, getFilter(command.getMin()));
-        checkError();
+        checkCallError();
         GLES30.glTexParameteri(GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_MAG_FILTER, getFilter(command.getMag()));
-        checkError();
+        checkCallError();
     }
 
     @Override
@@ -382,10 +497,88 @@ class AndroidGLRenderer implements Renderer {
 
     }
 
+    @Override
+    public void run(final BindBufferBase command) {
+        GLES30.glBindBufferBase(getTarget(command.getTarget()), command.getIndex(), command.getBuffer().vbo);
+        checkCallError();
+    }
+
+    @Override
+    public void run(final UniformBlockBinding command) {
+        int program = command.getProgram().program;
+        int index = GLES30.glGetUniformBlockIndex(program, command.getBlock());
+        checkCallError();
+        if (index != GLES30.GL_INVALID_INDEX) {
+            GLES30.glUniformBlockBinding(program, index, command.getBinding());
+            checkCallError();
+        }
+    }
+
+    @Override
+    public void run(final DrawArraysInstanced command) {
+        GLES30.glDrawArraysInstanced(getMode(command.getMode()), command.getFirst(), command.getCount(), command.getInstanceCount());
+        checkCallError();
+    }
+
+    @Override
+    public void run(final DrawElementsInstanced command) {
+        GLES30.glDrawElementsInstanced(getMode(command.getMode()), command.getCount(), GLES30.GL_UNSIGNED_INT, 0, command.getInstanceCount());
+        checkCallError();
+    }
+
+    @Override
+    public void run(final VertexAttribDivisor command) {
+        GLES30.glVertexAttribDivisor(command.getIndex(), command.getDivisor());
+        checkCallError();
+    }
+
+    @Override
+    public void run(final TransformFeedbackVaryings command) {
+        GLES30.glTransformFeedbackVaryings(command.getProgram().program, command.getVaryings(), GLES30.GL_INTERLEAVED_ATTRIBS);
+        checkCallError();
+    }
+
+    @Override
+    public void run(final BeginTransformFeedback command) {
+        GLES30.glBeginTransformFeedback(getMode(command.getMode()));
+        checkCallError();
+    }
+
+    @Override
+    public void run(final EndTransformFeedback command) {
+        GLES30.glEndTransformFeedback();
+        checkCallError();
+    }
+
+    @Override
+    public void run(final DeleteTexture command) {
+        IntBuffer buffer = GLUtil.intBuffer(1);
+        buffer.put(0, command.getTexture().texture);
+        GLES30.glDeleteTextures(1, buffer);
+        checkCallError();
+        command.getTexture().texture = -1;
+    }
+
+    @Override
+    public void run(final DeleteProgram command) {
+        GLES30.glDeleteProgram(command.getProgram().program);
+        checkCallError();
+        command.getProgram().program = -1;
+    }
+
+    @Override
+    public void run(final DeleteBuffer command) {
+        IntBuffer buffer = GLUtil.intBuffer(1);
+        buffer.put(0, command.getVbo().vbo);
+        GLES30.glDeleteBuffers(1, buffer);
+        checkCallError();
+        command.getVbo().vbo = -1;
+    }
+
     @Override
     public void set(final ActivateTexture command) {
         GLES30.glActiveTexture(getTextureUnit(command.getTextureUnit()));
-        checkError();
+        checkCallError();
     }
 
     @Override
@@ -396,25 +589,25 @@ class AndroidGLRenderer implements Renderer {
     @Override
     public void set(final BindBuffer command) {
         GLES30.glBindBuffer(getTarget(command.getTarget()), command.getVBO().vbo);
-        checkError();
+        checkCallError();
     }
 
     @Override
     public void clear(final BindBuffer command) {
         GLES30.glBindBuffer(getTarget(command.getTarget()), 0);
-        checkError();
+        checkCallError();
     }
 
     @Override
     public void set(final BindFramebuffer command) {
         GLES30.glBindFramebuffer(GLES30.GL_FRAMEBUFFER, command.getFramebuffer().fbo);
-        checkError();
+        checkCallError();
     }
 
     @Override
     public void clear(final BindFramebuffer command) {
         GLES30.glBindFramebuffer(GLES30.GL_FRAMEBUFFER, 0);
-        checkError();
+        checkCallError();
     }
 
     @Override
@@ -423,7 +616,7 @@ class AndroidGLRenderer implements Renderer {
         if (cap == Enable.Capability.MULTISAMPLE || cap == Enable.Capability.POINT_SIZE)
             return;
         GLES30.glEnable(getCapability(cap));
-        checkError();
+        checkCallError();
     }
 
     @Override
@@ -432,44 +625,44 @@ class AndroidGLRenderer implements Renderer {
         if (cap == Enable.Capability.MULTISAMPLE || cap == Enable.Capability.POINT_SIZE)
             return;
         GLES30.glDisable(getCapability(cap));
-        checkError();
+        checkCallError();
     }
 
     @Override
     public void set(final UseProgram command) {
         GLES30.glUseProgram(command.getProgram().program);
-        checkError();
+        checkCallError();
     }
 
     @Override
     public void clear(final UseProgram command) {
         GLES30.glUseProgram(0);
-        checkError();
+        checkCallError();
     }
 
     @Override
     public void set(final BindTexture command) {
-        GLES30.glBindTexture(GLES30.GL_TEXTURE_2D, command.getTexture().texture);
-        checkError();
+        GLES30.glBindTexture(getTextureTarget(command.getTarget()), command.getTexture().texture);
+        checkCallError();
     }
 
     @Override
     public void clear(final BindTexture command) {
-        GLES30.glBindTexture(GLES30.GL_TEXTURE_2D, 0);
-        checkError();
+        GLES30.glBindTexture(getTextureTarget(command.getTarget()), 0);
+        checkCallError();
     }
 
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
     @Override
     public void set(final BindArray command) {
         GLES30.glBindVertexArray(command.getVAO().vao);
-        checkError();
+        checkCallError();
     }
 
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
     @Override
     public void clear(final BindArray command) {
         GLES30.glBindVertexArray(0);
-        checkError();
+        checkCallError();
     }
 }
@@ -6,11 +6,18 @@ import android.graphics.PixelFormat;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 import android.os.Bundle;
+import android.view.MotionEvent;
 import android.view.Window;
 import android.view.WindowManager;
 
+import org.quuux.opengl.lib.AssetManager;
 import org.quuux.opengl.renderer.Command;
+import org.quuux.opengl.renderer.Frame;
+import org.quuux.opengl.renderer.ProfilingRenderer;
+import org.quuux.opengl.renderer.StateTrackingRenderer;
+import org.quuux.opengl.scenes.RaycastHit;
 import org.quuux.opengl.scenes.Scene;
+import org.quuux.opengl.scenes.Simulation;
 import org.quuux.scenes.TestScene;
 import org.quuux.feller.Log;
 
@@ -24,6 +31,9 @@ public class SandboxActivity extends Activity {
 
     SceneRenderer renderer = new SceneRenderer();
     private static final long INTERVAL = 5000;
+    // count and time the commands sent to the driver, logged with the frame stats
+    private static final boolean PROFILE = false;
+    private static final int TICKS_PER_SECOND = 60;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -45,23 +55,56 @@ public class SandboxActivity extends Activity {
             setRenderer(renderer);
             setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
         }
+
+        @Override
+        public boolean onTouchEvent(MotionEvent event) {
+            if (event.getActionMasked() != MotionEvent.ACTION_UP)
+                return true;
+
+            renderer.pick(event.getX(), event.getY(), getWidth(), getHeight());
+            return true;
+        }
     }
 
     class SceneRenderer implements GLSurfaceView.Renderer {
 
         Scene scene;
+        volatile Simulation simulation;
         long lastUpdate;
 
         long drawCount;
         long totalDrawTime;
 
-        AndroidGLRenderer renderer = new AndroidGLRenderer();
+        ProfilingRenderer profiler = PROFILE ? new ProfilingRenderer(new AndroidGLRenderer()) : null;
+        StateTrackingRenderer renderer = new StateTrackingRenderer(profiler != null ? profiler : new AndroidGLRenderer());
 
         Command displayList;
 
+        final RaycastHit hit = new RaycastHit();
+
+        // cast on the simulation thread between ticks so it sees a settled scene
+        void pick(final float x, final float y, final int width, final int height) {
+            final Simulation simulation = this.simulation;
+            if (simulation == null)
+                return;
+
+            simulation.post(new Runnable() {
+                @Override
+                public void run() {
+                    simulation.getScene().raycast(x, y, width, height, hit);
+                    Log.d(TAG, "pick %s, %s: %s", x, y, hit);
+                }
+            });
+        }
+
         @Override
         public void onSurfaceCreated(final GL10 gl, final EGLConfig config) {
             Log.d(TAG, "OpenGL Version: %s (%s)", gl.glGetString(GL10.GL_VERSION), config);
+
+            // a new context, cached textures and programs have to be created again, and the
+            // names the tracker thinks are bound may be handed out again for different objects
+            AssetManager.get().invalidate();
+            renderer.invalidate();
         }
 
         @Override
@@ -69,18 +112,28 @@ public class SandboxActivity extends Activity {
             Log.d(TAG, "viewport %s x %s", width, height);
 
             GLES20.glViewport(0, 0, width, height);
-            scene.getCamera().setProjection(45, (double)width/(double)height, 1, 1000.);
+
+            if (simulation != null)
+                simulation.stop();
+
+            // drops the old scene's references so its textures and programs can be evicted
+            if (scene != null)
+                Frame.runChecked(renderer, scene.dispose());
 
             scene = new TestScene();
+            scene.getCamera().setProjection(45, (double)width/(double)height, 1, 1000.);
 
             Command command = scene.initialize();
-            command.run(renderer);
+            Frame.runChecked(renderer, command);
 
             lastUpdate = System.currentTimeMillis();
 
             drawCount = totalDrawTime = 0;
 
             displayList = scene.dispatchDraw();
+
+            simulation = new Simulation(scene, TICKS_PER_SECOND);
+            simulation.start();
         }
 
         @Override
@@ -89,9 +142,12 @@ public class SandboxActivity extends Activity {
             long now = System.currentTimeMillis();
             long elapsed = now - lastUpdate;
 
-            scene.dispatchUpdate(elapsed);
+            simulation.present();
 
-            displayList.run(renderer);
+            Frame.run(renderer, displayList);
+            renderer.endFrame();
+            if (profiler != null)
+                profiler.endFrame();
 
             lastUpdate = now;
 
@@ -100,7 +156,9 @@ public class SandboxActivity extends Activity {
 
             if (totalDrawTime > INTERVAL) {
                 // r * t = d
-                Log.d(TAG, "total frames: %s / fps: %.02f", drawCount, (float)drawCount / (float)totalDrawTime * 1000);
+                Log.d(TAG, "total frames: %s / fps: %.02f / state calls removed: %s / visible: %s / culled: %s", drawCount, (float)drawCount / (float)totalDrawTime * 1000, renderer.getRemovedCalls(), scene.getVisibleCount(), scene.getCulledCount());
+                if (profiler != null)
+                    Log.d(TAG, "%s", profiler.getLastFrame());
                 drawCount = totalDrawTime = 0;
             }
         }
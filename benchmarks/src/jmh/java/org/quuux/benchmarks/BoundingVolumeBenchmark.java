@@ -0,0 +1,124 @@
+package org.quuux.benchmarks;
+
+import org.joml.Vector4d;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.quuux.opengl.entities.Bounded;
+import org.quuux.opengl.scenes.BoundingVolumeHierarchy;
+import org.quuux.opengl.scenes.Camera;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Build, refit and query costs of BoundingVolumeHierarchy over small spheres scattered through a
+// 2000 unit cube, with a linear frustum test over the same items for comparison.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BoundingVolumeBenchmark {
+
+    private static final double EXTENT = 1000;
+
+    static class Item implements Bounded {
+        final Vector4d bounds = new Vector4d();
+
+        @Override
+        public Vector4d getBounds() {
+            return bounds;
+        }
+    }
+
+    @Param({"10000", "100000", "1000000"})
+    int entities;
+
+    final Random random = new Random(1);
+    final Camera camera = new Camera();
+    final List<Item> items = new ArrayList<>();
+    final BoundingVolumeHierarchy<Item> tree = new BoundingVolumeHierarchy<>();
+
+    int visited;
+    final BoundingVolumeHierarchy.Visitor<Item> count = item -> visited++;
+    final BoundingVolumeHierarchy.RayVisitor<Item> countHit = (item, distance) -> visited++;
+
+    // items nudged by each refit, 1% of the scene
+    int moving;
+    double nudge = .5;
+
+    @Setup
+    public void setup() {
+        items.clear();
+        for (int i=0; i<entities; i++) {
+            Item item = new Item();
+            item.bounds.set(coordinate(), coordinate(), coordinate(), 1 + random.nextDouble() * 4);
+            items.add(item);
+        }
+        tree.build(items);
+        moving = Math.max(1, entities / 100);
+
+        camera.setProjection(45, 16. / 9., 1, 1000);
+        camera.setPosition(0, 0, 0);
+    }
+
+    private double coordinate() {
+        return (random.nextDouble() * 2 - 1) * EXTENT;
+    }
+
+    @Benchmark
+    public int build() {
+        tree.build(items);
+        return tree.getNodeCount();
+    }
+
+    @Benchmark
+    public int refit() {
+        nudge = -nudge;
+        for (int i=0; i<moving; i++)
+            items.get(i * 100 % entities).bounds.x += nudge;
+        return tree.refit();
+    }
+
+    @Benchmark
+    public int frustum() {
+        visited = 0;
+        tree.queryFrustum(camera.frustumPlanes, count);
+        return visited;
+    }
+
+    @Benchmark
+    public int linearFrustum() {
+        int rv = 0;
+        for (int i=0; i<items.size(); i++) {
+            if (camera.isVisible(items.get(i).bounds))
+                rv++;
+        }
+        return rv;
+    }
+
+    @Benchmark
+    public int sphere() {
+        visited = 0;
+        tree.querySphere(0, 0, 0, 100, count);
+        return visited;
+    }
+
+    @Benchmark
+    public int ray() {
+        visited = 0;
+        tree.queryRay(0, 0, 0, camera.front.x, camera.front.y, camera.front.z, EXTENT * 2, countHit);
+        return visited;
+    }
+}
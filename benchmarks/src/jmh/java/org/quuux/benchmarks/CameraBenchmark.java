@@ -0,0 +1,68 @@
+package org.quuux.benchmarks;
+
+import org.joml.Matrix4d;
+import org.joml.Matrix4f;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.quuux.opengl.scenes.Camera;
+
+import java.util.concurrent.TimeUnit;
+
+// The camera's per frame matrix work: a full orientation change rebuilds every matrix and the
+// frustum, the rest are the individual steps entities and the render queue call on their own.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CameraBenchmark {
+
+    final Camera camera = new Camera();
+    final Matrix4d model = new Matrix4d().translation(1, 2, 3).rotateY(.5).scale(2);
+    final Matrix4f modelViewProjection = new Matrix4f();
+
+    @Setup
+    public void setup() {
+        camera.setProjection(45, 1024. / 768., 1, 1000);
+        camera.setPosition(0, 50, 50);
+    }
+
+    @Benchmark
+    public Camera rotate() {
+        camera.rotate(.1, .01);
+        return camera;
+    }
+
+    @Benchmark
+    public Matrix4d viewMatrix() {
+        camera.updateViewMatrix();
+        return camera.viewMatrix;
+    }
+
+    @Benchmark
+    public Matrix4d projectionMatrix() {
+        camera.updateProjectionMatrix();
+        return camera.projectionMatrix;
+    }
+
+    @Benchmark
+    public Camera frustum() {
+        camera.updateFrustum();
+        return camera;
+    }
+
+    @Benchmark
+    public Matrix4f modelViewProjection() {
+        camera.modelViewProjectionMatrix(model, modelViewProjection);
+        return modelViewProjection;
+    }
+}
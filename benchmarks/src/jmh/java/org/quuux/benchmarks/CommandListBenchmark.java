@@ -0,0 +1,94 @@
+package org.quuux.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.quuux.opengl.lib.ArrayObject;
+import org.quuux.opengl.lib.BufferObject;
+import org.quuux.opengl.lib.BufferType;
+import org.quuux.opengl.lib.ShaderProgram;
+import org.quuux.opengl.lib.Texture2D;
+import org.quuux.opengl.renderer.Command;
+import org.quuux.opengl.renderer.CommandList;
+import org.quuux.opengl.renderer.CompiledCommandList;
+import org.quuux.opengl.renderer.commands.DrawElements;
+import org.quuux.opengl.renderer.commands.DrawMode;
+import org.quuux.opengl.renderer.commands.SetUniformFloat;
+import org.quuux.opengl.renderer.states.ActivateTexture;
+import org.quuux.opengl.renderer.states.BatchState;
+import org.quuux.opengl.renderer.states.BindArray;
+import org.quuux.opengl.renderer.states.BindBuffer;
+import org.quuux.opengl.renderer.states.BindTexture;
+import org.quuux.opengl.renderer.states.TextureTarget;
+import org.quuux.opengl.renderer.states.UseProgram;
+import org.quuux.opengl.util.ResourceUtil;
+
+import org.joml.Vector3f;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CommandListBenchmark {
+
+    // each mesh is 6 binds, 30 uniforms and a draw
+    private static final int COMMANDS_PER_MESH = 37;
+
+    @Param({"10000"})
+    int commands;
+
+    NullRenderer renderer = new NullRenderer();
+    Command tree;
+    Command compiled;
+
+    static Command buildFrame(int commands) {
+        ShaderProgram shader = new ShaderProgram();
+        Texture2D texture = new Texture2D(ResourceUtil.getColor(new Vector3f(1, 1, 1), 1));
+
+        CommandList rv = new CommandList();
+        for (int i=0; i<commands / COMMANDS_PER_MESH; i++) {
+            BatchState ctx = new BatchState(
+                    new UseProgram(shader),
+                    new BindArray(new ArrayObject()),
+                    new BindBuffer(BufferType.ArrayBuffer, new BufferObject()),
+                    new BindBuffer(BufferType.ElementArrayBuffer, new BufferObject()),
+                    new BatchState(new ActivateTexture(0), new BindTexture(TextureTarget.TEXTURE_2D, texture))
+            );
+            for (int j=0; j<COMMANDS_PER_MESH - 7; j++)
+                ctx.add(new SetUniformFloat(shader, "uniform" + j, (float) j));
+            ctx.add(new DrawElements(DrawMode.Triangles, 36));
+            rv.add(ctx);
+        }
+        return rv;
+    }
+
+    @Setup
+    public void setup() {
+        tree = buildFrame(commands);
+        compiled = CompiledCommandList.compile(tree);
+    }
+
+    @Benchmark
+    public long treeWalk() {
+        tree.run(renderer);
+        return renderer.calls;
+    }
+
+    @Benchmark
+    public long flatReplay() {
+        compiled.run(renderer);
+        return renderer.calls;
+    }
+}
@@ -0,0 +1,174 @@
+package org.quuux.benchmarks;
+
+import org.joml.Vector3d;
+import org.quuux.opengl.entities.ParticleEmitter;
+import org.quuux.opengl.util.RandomUtil;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+// The object-per-particle emitter update as it was before ParticleSystem, kept as a baseline
+class LegacyParticles {
+
+    final int capacity;
+    final int seeds;
+    final int lifespan;
+    final Vector3d eye;
+
+    List<Particle> particles = new ArrayList<>();
+    List<Particle> pool = new ArrayList<>();
+
+    LegacyParticles(int capacity, int seeds, int lifespan, Vector3d eye) {
+        this.capacity = capacity;
+        this.seeds = seeds;
+        this.lifespan = lifespan;
+        this.eye = eye;
+    }
+
+    int size() {
+        return particles.size();
+    }
+
+    private Particle allocateParticle() {
+        if (particles.size() >= capacity)
+            return null;
+        Particle p = (pool.size() > 0) ? pool.remove(pool.size() - 1) : new Particle();
+        particles.add(p);
+        return p;
+    }
+
+    private void recycleParticle(Particle p) {
+        particles.remove(p);
+        pool.add(p);
+    }
+
+    void seedParticles() {
+        for (int i=0; i<seeds; i++) {
+            Particle p = allocateParticle();
+            p.emitsTrail = true;
+            Vector3d position = new Vector3d();
+
+            Vector3d acceleration = new Vector3d(RandomUtil.randomRange(-1, 1), RandomUtil.randomRange(-1, 1), RandomUtil.randomRange(-1, 1));
+            acceleration.mul(.0001);
+
+            Vector3d velocity = new Vector3d(RandomUtil.randomRange(-1, 1), RandomUtil.randomRange(-1, 1), RandomUtil.randomRange(-1, 1));
+            velocity.mul(.02f);
+
+            Vector3d color = new Vector3d(RandomUtil.randomRange(0, 1), 1, 1);
+
+            p.recycle(position, velocity, acceleration, color, RandomUtil.randomInt(lifespan / 2, lifespan * 2));
+        }
+    }
+
+    private void trail(Particle p) {
+        Particle t = allocateParticle();
+        if (t == null)
+            return;
+        t.emitsTrail = false;
+        Vector3d position = new Vector3d(p.position);
+        Vector3d velocity = new Vector3d();
+        velocity.add(
+                RandomUtil.randomRange(.0001, .01),
+                RandomUtil.randomRange(.0001, .01),
+                RandomUtil.randomRange(.0001, .01)
+        );
+        Vector3d acceleration = new Vector3d();
+        t.recycle(position, velocity, acceleration, p.color, p.lifespan / 4);
+    }
+
+    void update(FloatBuffer vertexBuffer, int particleSize) {
+        for (int i=0; i<particles.size(); i++) {
+            Particle p = particles.get(i);
+            p.update();
+            if (!p.isAlive()) {
+                recycleParticle(p);
+            } else if (p.emitsTrail) {
+                trail(p);
+            }
+        }
+
+        if (particles.size() == 0) {
+            seedParticles();
+        }
+
+        updateVertices(vertexBuffer, particleSize);
+    }
+
+    private float colorComponent(int rgb, int shift) {
+        int value = (rgb >> shift) & 0xFF;
+        return (float)((double)value/255.);
+    }
+
+    private void updateVertices(FloatBuffer vertexBuffer, int particleSize) {
+        Collections.sort(particles, particleComparator);
+
+        for (int i=0; i<particles.size(); i++) {
+            Particle p = particles.get(i);
+            int offset = 8 * i;
+            float agePercentile = (float) ((double) p.age / (double) p.lifespan);
+            vertexBuffer.put(offset, (float) p.position.x);
+            vertexBuffer.put(offset + 1, (float) p.position.y);
+            vertexBuffer.put(offset + 2, (float) p.position.z);
+
+            double hue = p.color.x + agePercentile;
+            if (hue > 1)
+                hue -= 1;
+
+            int rgb = ParticleEmitter.HSBtoRGB((float)hue, (float)1 - agePercentile, (float)1 - agePercentile);
+
+            vertexBuffer.put(offset + 3, colorComponent(rgb, 16));
+            vertexBuffer.put(offset + 4, colorComponent(rgb, 8));
+            vertexBuffer.put(offset + 5, colorComponent(rgb, 0));
+            vertexBuffer.put(offset + 6,  (1 - agePercentile));
+
+            double distance = new Vector3d().distance(p.position);
+            double size = (particleSize/distance) * agePercentile;
+            if (size > particleSize)
+                size = particleSize;
+            vertexBuffer.put(offset + 7, (float) size);
+        }
+    }
+
+    static class Particle {
+        int age = 0;
+        int lifespan;
+        Vector3d position;
+        Vector3d velocity;
+        Vector3d acceleration;
+        Vector3d color;
+        boolean emitsTrail;
+
+        boolean isAlive() {
+            return age < lifespan;
+        }
+
+        void recycle(Vector3d position, Vector3d velocity, Vector3d acceleration, Vector3d color, int lifespan) {
+            age = 0;
+            this.position = position;
+            this.velocity = velocity;
+            this.acceleration = acceleration;
+            this.color = color;
+            this.lifespan = lifespan;
+        }
+
+        void update() {
+            age += 1;
+            if (isAlive()) {
+                this.velocity.add(this.acceleration);
+                this.position.add(this.velocity);
+            }
+        }
+    }
+
+    Comparator<Particle> particleComparator = new Comparator<Particle>() {
+        @Override
+        public int compare(Particle o1, Particle o2) {
+            double d1 = eye.distance(o1.position);
+            double d2 = eye.distance(o2.position);
+            return -Double.compare(d1, d2);
+        }
+    };
+}
@@ -0,0 +1,33 @@
+package org.quuux.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.quuux.opengl.lib.Material;
+
+import java.util.concurrent.TimeUnit;
+
+// Decoding a material's diffuse, specular and normal pngs from the classpath, uncached.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MaterialBenchmark {
+
+    @Param({"brick", "world"})
+    String key;
+
+    @Benchmark
+    public Material load() {
+        return Material.load(key, 1);
+    }
+}
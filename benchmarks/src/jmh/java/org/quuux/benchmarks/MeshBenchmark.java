@@ -0,0 +1,93 @@
+package org.quuux.benchmarks;
+
+import de.javagl.obj.Obj;
+import de.javagl.obj.Objs;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.quuux.opengl.entities.Mesh;
+import org.quuux.opengl.lib.Material;
+import org.quuux.opengl.util.GLUtil;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.concurrent.TimeUnit;
+
+// Geometry generation at load time. detail is the ico sphere's recursion level, the uv sphere and
+// the obj (a uv sphere built in memory, so no asset is needed) get 8 << detail rings and sectors.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MeshBenchmark {
+
+    @Param({"2", "3", "4"})
+    int detail;
+
+    final Material material = new Material(null, null, null, 1);
+    Obj obj;
+
+    @Setup
+    public void setup() {
+        obj = createSphereObj(8 << detail, 8 << detail);
+    }
+
+    static Obj createSphereObj(int rings, int sectors) {
+        FloatBuffer vertices = GLUtil.floatBuffer(rings * sectors * 3);
+        FloatBuffer texCoords = GLUtil.floatBuffer(rings * sectors * 2);
+        FloatBuffer normals = GLUtil.floatBuffer(rings * sectors * 3);
+        IntBuffer indices = GLUtil.intBuffer((rings - 1) * (sectors - 1) * 6);
+
+        for (int r=0; r<rings; r++) {
+            for (int s=0; s<sectors; s++) {
+                double theta = Math.PI * r / (rings - 1);
+                double phi = 2 * Math.PI * s / (sectors - 1);
+                float x = (float) (Math.cos(phi) * Math.sin(theta));
+                float y = (float) Math.cos(theta);
+                float z = (float) (Math.sin(phi) * Math.sin(theta));
+                vertices.put(x).put(y).put(z);
+                normals.put(x).put(y).put(z);
+                texCoords.put((float) s / (sectors - 1)).put((float) r / (rings - 1));
+            }
+        }
+
+        for (int r=0; r<rings - 1; r++) {
+            for (int s=0; s<sectors - 1; s++) {
+                int i = r * sectors + s;
+                indices.put(i).put(i + sectors).put(i + 1);
+                indices.put(i + 1).put(i + sectors).put(i + sectors + 1);
+            }
+        }
+
+        vertices.flip();
+        texCoords.flip();
+        normals.flip();
+        indices.flip();
+        return Objs.createFromIndexedTriangleData(indices, vertices, texCoords, normals);
+    }
+
+    @Benchmark
+    public Mesh icoSphere() {
+        return Mesh.createIcoSphere(material, 1, detail);
+    }
+
+    @Benchmark
+    public Mesh uvSphere() {
+        return Mesh.createUVSphere(material, 1, 8 << detail, 8 << detail);
+    }
+
+    @Benchmark
+    public Mesh fromObj() {
+        return Mesh.fromObj(material, obj);
+    }
+}
@@ -0,0 +1,265 @@
+package org.quuux.benchmarks;
+
+import org.quuux.opengl.renderer.Renderer;
+import org.quuux.opengl.renderer.commands.*;
+import org.quuux.opengl.renderer.states.*;
+
+// Accepts every command without touching GL, counting calls so the work can't be optimized away
+public class NullRenderer implements Renderer {
+
+    public long calls;
+
+    @Override
+    public ErrorCheck getErrorCheck() {
+        return ErrorCheck.NONE;
+    }
+
+    @Override
+    public void setErrorCheck(ErrorCheck errorCheck) {
+    }
+
+    @Override
+    public void checkError() {
+        calls++;
+    }
+
+    @Override
+    public void run(BufferData command) {
+        calls++;
+    }
+
+    @Override
+    public void run(BufferSubData command) {
+        calls++;
+    }
+
+    @Override
+    public void run(Clear command) {
+        calls++;
+    }
+
+    @Override
+    public void run(CompileShader command) {
+        calls++;
+    }
+
+    @Override
+    public void run(CreateProgram command) {
+        calls++;
+    }
+
+    @Override
+    public void run(DrawArrays command) {
+        calls++;
+    }
+
+    @Override
+    public void run(DrawElements command) {
+        calls++;
+    }
+
+    @Override
+    public void run(GenerateArray command) {
+        calls++;
+    }
+
+    @Override
+    public void run(GenerateBuffer command) {
+        calls++;
+    }
+
+    @Override
+    public void run(GenerateFramebuffer command) {
+        calls++;
+    }
+
+    @Override
+    public void run(GenerateTexture command) {
+        calls++;
+    }
+
+    @Override
+    public void run(LinkProgram command) {
+        calls++;
+    }
+
+    @Override
+    public void run(LoadTexture command) {
+        calls++;
+    }
+
+    @Override
+    public void run(SetUniformMatrix command) {
+        calls++;
+    }
+
+    @Override
+    public void run(SetUniformFloat command) {
+        calls++;
+    }
+
+    @Override
+    public void run(SetUniformInt command) {
+        calls++;
+    }
+
+    @Override
+    public void run(VertexAttribPointer command) {
+        calls++;
+    }
+
+    @Override
+    public void run(EnableVertexAttribArray command) {
+        calls++;
+    }
+
+    @Override
+    public void run(ClearColor command) {
+        calls++;
+    }
+
+    @Override
+    public void run(BlendFunc command) {
+        calls++;
+    }
+
+    @Override
+    public void run(DepthFunc command) {
+        calls++;
+    }
+
+    @Override
+    public void run(TextureParameter command) {
+        calls++;
+    }
+
+    @Override
+    public void run(GenerateMipMap command) {
+        calls++;
+    }
+
+    @Override
+    public void run(BindBufferBase command) {
+        calls++;
+    }
+
+    @Override
+    public void run(UniformBlockBinding command) {
+        calls++;
+    }
+
+    @Override
+    public void run(DrawArraysInstanced command) {
+        calls++;
+    }
+
+    @Override
+    public void run(DrawElementsInstanced command) {
+        calls++;
+    }
+
+    @Override
+    public void run(VertexAttribDivisor command) {
+        calls++;
+    }
+
+    @Override
+    public void run(TransformFeedbackVaryings command) {
+        calls++;
+    }
+
+    @Override
+    public void run(BeginTransformFeedback command) {
+        calls++;
+    }
+
+    @Override
+    public void run(EndTransformFeedback command) {
+        calls++;
+    }
+
+    @Override
+    public void run(DeleteTexture command) {
+        calls++;
+    }
+
+    @Override
+    public void run(DeleteProgram command) {
+        calls++;
+    }
+
+    @Override
+    public void run(DeleteBuffer command) {
+        calls++;
+    }
+
+    @Override
+    public void set(ActivateTexture command) {
+        calls++;
+    }
+
+    @Override
+    public void clear(ActivateTexture command) {
+        calls++;
+    }
+
+    @Override
+    public void set(BindBuffer command) {
+        calls++;
+    }
+
+    @Override
+    public void clear(BindBuffer command) {
+        calls++;
+    }
+
+    @Override
+    public void set(BindFramebuffer command) {
+        calls++;
+    }
+
+    @Override
+    public void clear(BindFramebuffer command) {
+        calls++;
+    }
+
+    @Override
+    public void set(Enable command) {
+        calls++;
+    }
+
+    @Override
+    public void clear(Enable command) {
+        calls++;
+    }
+
+    @Override
+    public void set(UseProgram command) {
+        calls++;
+    }
+
+    @Override
+    public void clear(UseProgram command) {
+        calls++;
+    }
+
+    @Override
+    public void set(BindTexture command) {
+        calls++;
+    }
+
+    @Override
+    public void clear(BindTexture command) {
+        calls++;
+    }
+
+    @Override
+    public void set(BindArray command) {
+        calls++;
+    }
+
+    @Override
+    public void clear(BindArray command) {
+        calls++;
+    }
+}
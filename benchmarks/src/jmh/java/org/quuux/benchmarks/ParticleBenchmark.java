@@ -0,0 +1,92 @@
+package org.quuux.benchmarks;
+
+import org.joml.Vector3d;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.quuux.opengl.entities.ParticleSystem;
+import org.quuux.opengl.util.GLUtil;
+import org.quuux.opengl.util.RandomUtil;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+// One emitter tick (integrate, retire, trail, depth sort, pack vertices) with the emitter's
+// seed-and-trail population, for the boxed baseline and the array-backed ParticleSystem.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParticleBenchmark {
+
+    private static final int PARTICLE_SIZE = 64;
+    private static final int PARTICLE_LIFESPAN = 75;
+
+    @Param({"10000", "100000", "1000000"})
+    int particles;
+
+    final Vector3d eye = new Vector3d(0, 50, 50);
+
+    FloatBuffer vertexBuffer;
+    LegacyParticles legacy;
+    ParticleSystem system;
+
+    @Setup
+    public void setup() {
+        vertexBuffer = GLUtil.floatBuffer(ParticleSystem.VERTEX_SIZE * particles);
+        legacy = new LegacyParticles(particles, particles / 10, PARTICLE_LIFESPAN, eye);
+        system = new ParticleSystem(particles);
+    }
+
+    private void seed() {
+        for (int i=0; i<particles / 10; i++) {
+            system.spawn(
+                    0, 0, 0,
+                    (float) RandomUtil.randomRange(-1, 1) * .02f, (float) RandomUtil.randomRange(-1, 1) * .02f, (float) RandomUtil.randomRange(-1, 1) * .02f,
+                    (float) RandomUtil.randomRange(-1, 1) * .0001f, (float) RandomUtil.randomRange(-1, 1) * .0001f, (float) RandomUtil.randomRange(-1, 1) * .0001f,
+                    (float) RandomUtil.randomRange(0, 1),
+                    RandomUtil.randomInt(PARTICLE_LIFESPAN / 2, PARTICLE_LIFESPAN * 2),
+                    true);
+        }
+    }
+
+    @Benchmark
+    public int objects() {
+        legacy.update(vertexBuffer, PARTICLE_SIZE);
+        return legacy.size();
+    }
+
+    @Benchmark
+    public int structOfArrays() {
+        ParticleSystem system = this.system;
+        system.update();
+
+        int live = system.size();
+        for (int i=0; i<live; i++) {
+            if (system.emitsTrail(i))
+                system.spawn(
+                        system.getX(i), system.getY(i), system.getZ(i),
+                        (float) RandomUtil.randomRange(.0001, .01), (float) RandomUtil.randomRange(.0001, .01), (float) RandomUtil.randomRange(.0001, .01),
+                        0, 0, 0,
+                        system.getHue(i), system.getLifespan(i) / 4,
+                        false);
+        }
+
+        if (system.size() == 0)
+            seed();
+
+        system.sortByDepth((float) eye.x, (float) eye.y, (float) eye.z);
+        system.pack(vertexBuffer, PARTICLE_SIZE);
+        return system.size();
+    }
+}
@@ -0,0 +1,60 @@
+package org.quuux.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.quuux.opengl.entities.ParticleEmitter;
+import org.quuux.opengl.scenes.Scene;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// A ParticleEmitter tick as the simulation runs it: update integrates, spawns trails, sorts and
+// packs vertices, then the snapshot carries the packed vertices over to the draw side's buffer.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParticleEmitterBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int particles;
+
+    ParticleEmitter emitter;
+    float[] snapshot;
+
+    @Setup
+    public void setup() {
+        // update sorts against the current scene's camera
+        Scene scene = new Scene() { };
+        scene.getCamera().setPosition(0, 50, 50);
+
+        emitter = new ParticleEmitter(particles);
+        emitter.setPool(ForkJoinPool.commonPool());
+        snapshot = new float[emitter.getSnapshotSize()];
+    }
+
+    @Benchmark
+    public ParticleEmitter update() {
+        emitter.update(1000 / 60);
+        return emitter;
+    }
+
+    @Benchmark
+    public float[] updateAndSnapshot() {
+        emitter.update(1000 / 60);
+        emitter.capture(snapshot, 0);
+        emitter.apply(snapshot, snapshot, 0, 1);
+        return snapshot;
+    }
+}
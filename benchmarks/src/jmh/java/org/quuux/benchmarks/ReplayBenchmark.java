@@ -0,0 +1,79 @@
+package org.quuux.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.quuux.opengl.lib.AssetManager;
+import org.quuux.opengl.renderer.CaptureRenderer;
+import org.quuux.opengl.renderer.StateTrackingRenderer;
+import org.quuux.opengl.renderer.Trace;
+import org.quuux.scenes.TestScene;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Replaying a captured trace's frames, everything after the setup frame, against a renderer that
+// does nothing. With no trace given a short TestScene session is captured first; pass a field
+// capture with -p trace=path to benchmark that instead.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReplayBenchmark {
+
+    private static final int CAPTURED_FRAMES = 60;
+
+    @Param({""})
+    String trace;
+
+    final NullRenderer renderer = new NullRenderer();
+    Trace frames;
+
+    @Setup
+    public void setup() throws IOException, InterruptedException {
+        File file = trace.isEmpty() ? captureTestScene() : new File(trace);
+        frames = Trace.load(file);
+        frames.getFrame(0).run(renderer);
+    }
+
+    static File captureTestScene() throws IOException, InterruptedException {
+        File file = File.createTempFile("replay", ".trace");
+        file.deleteOnExit();
+
+        CaptureRenderer capture = new CaptureRenderer(new NullRenderer(), file);
+        StateTrackingRenderer renderer = new StateTrackingRenderer(capture);
+
+        TestScene scene = new TestScene();
+        scene.getCamera().setProjection(45, 1024. / 768., 1, 1000);
+        scene.initialize().run(renderer);
+        while (AssetManager.get().getLoadingCount() > 0)
+            Thread.sleep(10);
+
+        for (int i=0; i<CAPTURED_FRAMES; i++) {
+            scene.dispatchUpdate(1000 / 60);
+            scene.dispatchDraw().run(renderer);
+            renderer.endFrame();
+            capture.endFrame();
+        }
+        capture.close();
+        return file;
+    }
+
+    @Benchmark
+    public long replay() {
+        for (int i=1; i<frames.getFrameCount(); i++)
+            frames.getFrame(i).run(renderer);
+        return renderer.calls;
+    }
+}
@@ -0,0 +1,72 @@
+package org.quuux.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.quuux.opengl.lib.AssetManager;
+import org.quuux.opengl.renderer.Command;
+import org.quuux.opengl.scenes.Scene;
+import org.quuux.scenes.TestScene;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// A whole TestScene frame on the CPU: the update tick, recording the draw list, and running the
+// recorded list against a renderer that does nothing, so GL costs stay out of the numbers.
+// Scenes keep their draw list until the entities change, so recording is measured on a plain
+// scene sharing TestScene's entities with its list invalidated before each call.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SceneBenchmark {
+
+    final NullRenderer renderer = new NullRenderer();
+    TestScene scene;
+    Scene recordScene;
+
+    @Setup
+    public void setup() throws InterruptedException {
+        scene = new TestScene();
+        scene.getCamera().setProjection(45, 1024. / 768., 1, 1000);
+        scene.initialize().run(renderer);
+
+        // textures still loading would be uploaded by whichever frame they land in
+        while (AssetManager.get().getLoadingCount() > 0)
+            Thread.sleep(10);
+        scene.dispatchDraw().run(renderer);
+
+        recordScene = new Scene() { };
+        recordScene.entities = scene.entities;
+        recordScene.setPool(ForkJoinPool.commonPool());
+        Scene.set(scene);
+    }
+
+    @Benchmark
+    public TestScene update() {
+        scene.dispatchUpdate(1000 / 60);
+        return scene;
+    }
+
+    @Benchmark
+    public Command record() {
+        recordScene.invalidateDrawList();
+        return recordScene.draw();
+    }
+
+    @Benchmark
+    public long frame() {
+        scene.dispatchUpdate(1000 / 60);
+        scene.dispatchDraw().run(renderer);
+        return renderer.calls;
+    }
+}
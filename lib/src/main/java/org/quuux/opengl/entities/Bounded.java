@@ -0,0 +1,8 @@
+package org.quuux.opengl.entities;
+
+import org.joml.Vector4d;
+
+// An entity that knows its extent, as a world space bounding sphere (x, y, z, radius)
+public interface Bounded {
+    Vector4d getBounds();
+}
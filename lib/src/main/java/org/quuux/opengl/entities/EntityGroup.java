@@ -3,9 +3,41 @@ package org.quuux.opengl.entities;
 import org.quuux.opengl.renderer.Command;
 import org.quuux.opengl.renderer.CommandList;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class EntityGroup extends ArrayList<Entity> implements Entity {
+
+    // every change takes a new stamp, so the newest stamp in a tree moves whenever any group in it changed
+    private static final AtomicLong STAMPS = new AtomicLong();
+
+    private int stampedModCount = -1;
+    private long stamp;
+
+    // ArrayList doesn't count replacing an element as a modification
+    @Override
+    public Entity set(int index, Entity entity) {
+        Entity rv = super.set(index, entity);
+        modCount++;
+        return rv;
+    }
+
+    // Changes whenever entities are added, removed or replaced in this group or any group under it
+    public long getVersion() {
+        if (stampedModCount != modCount) {
+            stampedModCount = modCount;
+            stamp = STAMPS.incrementAndGet();
+        }
+
+        long rv = stamp;
+        for (int i=0; i<size(); i++) {
+            Entity entity = get(i);
+            if (entity instanceof EntityGroup)
+                rv = Math.max(rv, ((EntityGroup) entity).getVersion());
+        }
+        return rv;
+    }
 
-public class EntityGroup extends LinkedList<Entity> implements Entity {
     @Override
     public void update(long t) {
         for(int i=0; i<size(); i++)
@@ -23,8 +55,11 @@ public class EntityGroup extends LinkedList<Entity> implements Entity {
     @Override
     public Command dispose() {
         CommandList commands = new CommandList();
-        for(int i=0; i<size(); i++)
-            commands.add(get(i).dispose());
+        for(int i=0; i<size(); i++) {
+            Command command = get(i).dispose();
+            if (command != null)
+                commands.add(command);
+        }
         return commands;
     }
 
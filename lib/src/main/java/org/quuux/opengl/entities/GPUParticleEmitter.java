@@ -0,0 +1,208 @@
+package org.quuux.opengl.entities;
+
+import java.nio.FloatBuffer;
+
+import org.joml.Vector3d;
+
+import org.quuux.opengl.lib.ArrayObject;
+import org.quuux.opengl.lib.AssetManager;
+import org.quuux.opengl.lib.BufferObject;
+import org.quuux.opengl.lib.BufferType;
+import org.quuux.opengl.lib.ShaderProgram;
+import org.quuux.opengl.lib.Texture2D;
+import org.quuux.opengl.renderer.Command;
+import org.quuux.opengl.renderer.CommandList;
+import org.quuux.opengl.renderer.CompiledCommandList;
+import org.quuux.opengl.renderer.Renderer;
+import org.quuux.opengl.renderer.commands.*;
+import org.quuux.opengl.renderer.states.*;
+import org.quuux.opengl.scenes.FrameUniforms;
+import org.quuux.opengl.util.GLUtil;
+import org.quuux.opengl.util.RandomUtil;
+import org.quuux.opengl.util.ResourceUtil;
+
+// Particle emitter that keeps all particle state on the gpu. Each frame a transform feedback
+// pass integrates one buffer into the other, then the result is drawn as points and the
+// buffers swap. The cpu only supplies spawn parameters.
+public class GPUParticleEmitter implements Entity, Snapshotable {
+
+    private static final int TOTAL_PARTICLES = 10000;
+    private static final int PARTICLE_SIZE = 64;
+    private static final int PARTICLE_LIFESPAN = 75;
+
+    // position, velocity, acceleration, life (age, lifespan), hue
+    private static final int PARTICLE_FLOATS = 3 + 3 + 3 + 2 + 1;
+    private static final String[] VARYINGS = {"position", "velocity", "acceleration", "life", "hue"};
+
+    final int count;
+
+    Vector3d position = new Vector3d();
+    float nextSeed;
+
+    BufferObject[] vbos = {new BufferObject(), new BufferObject()};
+    ArrayObject[] vaos = {new ArrayObject(), new ArrayObject()};
+
+    Texture2D texture = AssetManager.get().loadTexture("textures/particle1.png");
+    ShaderProgram updateShader = AssetManager.get().loadProgram("particle_update");
+    ShaderProgram renderShader = AssetManager.get().loadProgram("gpu_particle");
+
+    SetUniformFloat origin = new SetUniformFloat(updateShader, "origin", 0, 0, 0);
+    SetUniformFloat seed = new SetUniformFloat(updateShader, "seed", 0);
+
+    Command[] passes = new Command[2];
+    int current;
+
+    Command displayList;
+
+    public GPUParticleEmitter() {
+        this(TOTAL_PARTICLES);
+    }
+
+    public GPUParticleEmitter(int count) {
+        this.count = count;
+    }
+
+    public Vector3d getPosition() {
+        return position;
+    }
+
+    @Override
+    public void update(long t) {
+        nextSeed = (float) RandomUtil.randomRange(0, 1000);
+    }
+
+    // origin, seed
+    @Override
+    public int getSnapshotSize() {
+        return 4;
+    }
+
+    @Override
+    public void capture(float[] data, int offset) {
+        data[offset] = (float) position.x;
+        data[offset + 1] = (float) position.y;
+        data[offset + 2] = (float) position.z;
+        data[offset + 3] = nextSeed;
+    }
+
+    @Override
+    public void apply(float[] previous, float[] current, int offset, float alpha) {
+        origin.set(
+                previous[offset] + (current[offset] - previous[offset]) * alpha,
+                previous[offset + 1] + (current[offset + 1] - previous[offset + 1]) * alpha,
+                previous[offset + 2] + (current[offset + 2] - previous[offset + 2]) * alpha);
+        seed.set(current[offset + 3]);
+    }
+
+    @Override
+    public Command dispose() {
+        return AssetManager.get().release(updateShader, renderShader, texture);
+    }
+
+    // particles start out waiting, with staggered spawn times so they don't all launch at once
+    private FloatBuffer seedParticles() {
+        FloatBuffer rv = GLUtil.floatBuffer(count * PARTICLE_FLOATS);
+        for (int i=0; i<count; i++)
+            rv.put(i * PARTICLE_FLOATS + 9, (float) -RandomUtil.randomInt(0, PARTICLE_LIFESPAN * 2));
+        return rv;
+    }
+
+    @Override
+    public Command initialize() {
+        CommandList rv = new CommandList();
+
+        rv.add(ShaderProgram.build(updateShader,
+                ResourceUtil.getStringResource("shaders/particle_update.vert.glsl"),
+                ResourceUtil.getStringResource("shaders/particle_update.frag.glsl"),
+                VARYINGS));
+
+        rv.add(ShaderProgram.build(renderShader,
+                FrameUniforms.getSource() + ResourceUtil.getStringResource("shaders/gpu_particle.vert.glsl"),
+                ResourceUtil.getStringResource("shaders/particle.frag.glsl")));
+        rv.add(FrameUniforms.bind(renderShader));
+
+        rv.add(texture.initialize(0));
+
+        BatchState update = new BatchState(new UseProgram(updateShader));
+        update.add(new SetUniformFloat(updateShader, "lifespan", PARTICLE_LIFESPAN));
+        rv.add(update);
+
+        BatchState render = new BatchState(new UseProgram(renderShader));
+        render.add(new SetUniformInt(renderShader, "texture", 0));
+        render.add(new SetUniformFloat(renderShader, "particleSize", PARTICLE_SIZE));
+        rv.add(render);
+
+        FloatBuffer particles = seedParticles();
+        for (int i=0; i<2; i++) {
+            rv.add(new GenerateArray(vaos[i]));
+            rv.add(new GenerateBuffer(vbos[i]));
+
+            BatchState ctx = new BatchState(new BindArray(vaos[i]), new BindBuffer(BufferType.ArrayBuffer, vbos[i]));
+            rv.add(ctx);
+
+            ctx.add(new BufferData(BufferType.ArrayBuffer, particles.capacity() * 4, particles, BufferData.Usage.DynamicDraw));
+
+            int stride = PARTICLE_FLOATS * 4;
+            ctx.add(new VertexAttribPointer(0, 3, VertexAttribPointer.Type.Float, false, stride, 0));
+            ctx.add(new EnableVertexAttribArray(0));
+            ctx.add(new VertexAttribPointer(1, 3, VertexAttribPointer.Type.Float, false, stride, 3 * 4));
+            ctx.add(new EnableVertexAttribArray(1));
+            ctx.add(new VertexAttribPointer(2, 3, VertexAttribPointer.Type.Float, false, stride, 6 * 4));
+            ctx.add(new EnableVertexAttribArray(2));
+            ctx.add(new VertexAttribPointer(3, 2, VertexAttribPointer.Type.Float, false, stride, 9 * 4));
+            ctx.add(new EnableVertexAttribArray(3));
+            ctx.add(new VertexAttribPointer(4, 1, VertexAttribPointer.Type.Float, false, stride, 11 * 4));
+            ctx.add(new EnableVertexAttribArray(4));
+        }
+
+        return rv;
+    }
+
+    // simulate from vbos[src] into the other buffer, then draw the result
+    private Command buildPass(int src) {
+        int dst = 1 - src;
+        CommandList rv = new CommandList();
+
+        BatchState update = new BatchState(
+                new UseProgram(updateShader),
+                new BindArray(vaos[src]),
+                new Enable(Enable.Capability.RASTERIZER_DISCARD)
+        );
+        rv.add(update);
+        update.add(origin);
+        update.add(seed);
+        update.add(new BindBufferBase(BufferType.TransformFeedbackBuffer, 0, vbos[dst]));
+        update.add(new BeginTransformFeedback(DrawMode.Points));
+        update.add(new DrawArrays(DrawMode.Points, 0, count));
+        update.add(new EndTransformFeedback());
+
+        BatchState render = new BatchState(
+                new UseProgram(renderShader),
+                new BindArray(vaos[dst]),
+                texture.bind(0)
+        );
+        rv.add(render);
+        render.add(new DrawArrays(DrawMode.Points, 0, count));
+
+        return CompiledCommandList.compile(rv);
+    }
+
+    @Override
+    public Command draw() {
+        if (displayList == null) {
+            passes[0] = buildPass(0);
+            passes[1] = buildPass(1);
+            displayList = new Step();
+        }
+
+        return displayList;
+    }
+
+    class Step extends Command {
+        @Override
+        public void run(Renderer renderer) {
+            passes[current].run(renderer);
+            current = 1 - current;
+        }
+    }
+}
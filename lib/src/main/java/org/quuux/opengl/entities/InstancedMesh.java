@@ -0,0 +1,304 @@
+package org.quuux.opengl.entities;
+
+import org.joml.Matrix4d;
+import org.joml.Vector4f;
+import org.quuux.opengl.lib.ArrayObject;
+import org.quuux.opengl.lib.AssetManager;
+import org.quuux.opengl.lib.BufferObject;
+import org.quuux.opengl.lib.BufferType;
+import org.quuux.opengl.lib.Material;
+import org.quuux.opengl.lib.ShaderProgram;
+import org.quuux.opengl.renderer.Command;
+import org.quuux.opengl.renderer.CommandList;
+import org.quuux.opengl.renderer.CompiledCommandList;
+import org.quuux.opengl.renderer.Renderer;
+import org.quuux.opengl.renderer.commands.BufferData;
+import org.quuux.opengl.renderer.commands.BufferSubData;
+import org.quuux.opengl.renderer.commands.DeleteBuffer;
+import org.quuux.opengl.renderer.commands.DrawArraysInstanced;
+import org.quuux.opengl.renderer.commands.DrawElementsInstanced;
+import org.quuux.opengl.renderer.commands.DrawMode;
+import org.quuux.opengl.renderer.commands.EnableVertexAttribArray;
+import org.quuux.opengl.renderer.commands.GenerateArray;
+import org.quuux.opengl.renderer.commands.GenerateBuffer;
+import org.quuux.opengl.renderer.commands.SetUniformFloat;
+import org.quuux.opengl.renderer.commands.SetUniformInt;
+import org.quuux.opengl.renderer.commands.VertexAttribDivisor;
+import org.quuux.opengl.renderer.commands.VertexAttribPointer;
+import org.quuux.opengl.renderer.states.BatchState;
+import org.quuux.opengl.renderer.states.BindArray;
+import org.quuux.opengl.renderer.states.BindBuffer;
+import org.quuux.opengl.renderer.states.UseProgram;
+import org.quuux.opengl.scenes.FrameUniforms;
+import org.quuux.opengl.util.GLUtil;
+import org.quuux.opengl.util.ResourceUtil;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+// One geometry, one program and one draw call for many copies of a mesh, each with its own
+// model matrix and color taken from a per-instance attribute buffer.
+public class InstancedMesh implements Entity, Snapshotable {
+
+    // model matrix + color
+    private static final int INSTANCE_SIZE = 16 + 4;
+
+    private static final int MODEL_ATTRIBUTE = 3;
+    private static final int COLOR_ATTRIBUTE = 7;
+
+    Material material;
+
+    IntBuffer indicies;
+    FloatBuffer vertexBuffer;
+    FloatBuffer instanceBuffer;
+
+    final int capacity;
+    int count;
+
+    // instances as add/set/remove leave them, a snapshot carries them over to instanceBuffer
+    final float[] instanceData;
+    int drawCount;
+
+    BufferObject vbo = new BufferObject();
+    BufferObject ebo = new BufferObject();
+    BufferObject instances = new BufferObject();
+    ArrayObject vao = new ArrayObject();
+
+    ShaderProgram shader = AssetManager.get().loadProgram("instanced");
+
+    Command displayList;
+
+    // range of instanceBuffer (in floats) changed since the last upload
+    int dirtyStart = -1, dirtyEnd = -1;
+
+    public InstancedMesh(Material material, FloatBuffer vertexBuffer, IntBuffer indicies, int capacity) {
+        this.material = material;
+        this.vertexBuffer = vertexBuffer;
+        this.indicies = indicies;
+        this.capacity = capacity;
+        instanceBuffer = GLUtil.floatBuffer(capacity * INSTANCE_SIZE);
+        instanceData = new float[capacity * INSTANCE_SIZE];
+    }
+
+    // Shares the geometry of a mesh built by one of the Mesh factories. The mesh itself is never drawn,
+    // so its program reference is dropped here, cached and never built nothing needs deleting. The
+    // material now belongs to the instanced mesh and is released with it.
+    public static InstancedMesh create(Mesh mesh, int capacity) {
+        InstancedMesh rv = new InstancedMesh(mesh.material, mesh.vertexBuffer, mesh.indicies, capacity);
+        AssetManager.get().release(mesh.shader);
+        return rv;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int add(Matrix4d model, Vector4f color) {
+        if (count >= capacity)
+            throw new IllegalStateException("instance capacity exceeded: " + capacity);
+        int index = count++;
+        set(index, model, color);
+        return index;
+    }
+
+    public void set(int index, Matrix4d model, Vector4f color) {
+        setModel(index, model);
+        setColor(index, color);
+    }
+
+    public void setModel(int index, Matrix4d model) {
+        model.get(instanceData, index * INSTANCE_SIZE);
+    }
+
+    public void setColor(int index, Vector4f color) {
+        int offset = index * INSTANCE_SIZE + 16;
+        instanceData[offset] = color.x;
+        instanceData[offset + 1] = color.y;
+        instanceData[offset + 2] = color.z;
+        instanceData[offset + 3] = color.w;
+    }
+
+    // moves the last instance into the removed one's place
+    public void remove(int index) {
+        int last = --count;
+        if (index != last)
+            System.arraycopy(instanceData, last * INSTANCE_SIZE, instanceData, index * INSTANCE_SIZE, INSTANCE_SIZE);
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    void markDirty(int offset, int length) {
+        if (dirtyStart < 0) {
+            dirtyStart = offset;
+            dirtyEnd = offset + length;
+        } else {
+            dirtyStart = Math.min(dirtyStart, offset);
+            dirtyEnd = Math.max(dirtyEnd, offset + length);
+        }
+    }
+
+    CommandList buildState() {
+        BatchState rv = new BatchState(
+                new UseProgram(shader),
+                new BindArray(vao),
+                new BindBuffer(BufferType.ElementArrayBuffer, ebo),
+                material.bind()
+        );
+        return rv;
+    }
+
+    @Override
+    public Command initialize() {
+        CommandList rv = new CommandList();
+        rv.add(new GenerateArray(vao));
+        rv.add(new GenerateBuffer(vbo));
+        rv.add(new GenerateBuffer(ebo));
+        rv.add(new GenerateBuffer(instances));
+
+        rv.add(material.initialize());
+
+        rv.add(ShaderProgram.build(shader,
+                FrameUniforms.getSource() + ResourceUtil.getStringResource("shaders/instanced.vert.glsl"),
+                FrameUniforms.getSource() + ResourceUtil.getStringResource("shaders/mesh.frag.glsl")));
+        rv.add(FrameUniforms.bind(shader));
+
+        CommandList ctx = buildState();
+        rv.add(ctx);
+
+        if (indicies != null)
+            ctx.add(new BufferData(BufferType.ElementArrayBuffer, indicies.capacity() * 4, indicies, BufferData.Usage.StaticDraw));
+
+        BatchState geometry = new BatchState(new BindBuffer(BufferType.ArrayBuffer, vbo));
+        ctx.add(geometry);
+        geometry.add(new BufferData(BufferType.ArrayBuffer, vertexBuffer.capacity() * 4, vertexBuffer, BufferData.Usage.StaticDraw));
+
+        geometry.add(new VertexAttribPointer(0, 3, VertexAttribPointer.Type.Float, false, 8 * 4, 0));
+        geometry.add(new EnableVertexAttribArray(0));
+
+        geometry.add(new VertexAttribPointer(1, 3, VertexAttribPointer.Type.Float, false, 8 * 4, 3 * 4));
+        geometry.add(new EnableVertexAttribArray(1));
+
+        geometry.add(new VertexAttribPointer(2, 2, VertexAttribPointer.Type.Float, false, 8 * 4, 6 * 4));
+        geometry.add(new EnableVertexAttribArray(2));
+
+        BatchState instanced = new BatchState(new BindBuffer(BufferType.ArrayBuffer, instances));
+        ctx.add(instanced);
+        instanced.add(new BufferData(BufferType.ArrayBuffer, instanceBuffer.capacity() * 4, instanceBuffer, BufferData.Usage.DynamicDraw));
+
+        // a mat4 attribute is four vec4 columns
+        for (int i=0; i<4; i++) {
+            instanced.add(new VertexAttribPointer(MODEL_ATTRIBUTE + i, 4, VertexAttribPointer.Type.Float, false, INSTANCE_SIZE * 4, i * 4 * 4));
+            instanced.add(new EnableVertexAttribArray(MODEL_ATTRIBUTE + i));
+            instanced.add(new VertexAttribDivisor(MODEL_ATTRIBUTE + i, 1));
+        }
+
+        instanced.add(new VertexAttribPointer(COLOR_ATTRIBUTE, 4, VertexAttribPointer.Type.Float, false, INSTANCE_SIZE * 4, 16 * 4));
+        instanced.add(new EnableVertexAttribArray(COLOR_ATTRIBUTE));
+        instanced.add(new VertexAttribDivisor(COLOR_ATTRIBUTE, 1));
+
+        return rv;
+    }
+
+    @Override
+    public Command dispose() {
+        CommandList rv = new CommandList();
+        rv.add(AssetManager.get().release(shader));
+        rv.add(material.dispose());
+        rv.add(new DeleteBuffer(vbo));
+        rv.add(new DeleteBuffer(ebo));
+        rv.add(new DeleteBuffer(instances));
+        return rv;
+    }
+
+    @Override
+    public Command draw() {
+        if (displayList == null) {
+            CommandList ctx = buildState();
+
+            ctx.add(new SetUniformInt(shader, "material.diffuse", 0));
+            ctx.add(new SetUniformInt(shader, "material.specular", 1));
+            ctx.add(new SetUniformFloat(shader, "material.shininess", material.shininess));
+
+            BatchState upload = new BatchState(new BindBuffer(BufferType.ArrayBuffer, instances));
+            upload.add(new UploadInstances());
+            ctx.add(upload);
+
+            if (indicies != null) {
+                ctx.add(new DrawInstancedElements());
+            } else {
+                ctx.add(new DrawInstancedArrays());
+            }
+
+            displayList = CompiledCommandList.compile(ctx);
+        }
+
+        return displayList;
+    }
+
+    @Override
+    public void update(long t) {
+    }
+
+    // count, then the live instances
+    @Override
+    public int getSnapshotSize() {
+        return 1 + instanceData.length;
+    }
+
+    @Override
+    public void capture(float[] data, int offset) {
+        data[offset] = count;
+        System.arraycopy(instanceData, 0, data, offset + 1, count * INSTANCE_SIZE);
+    }
+
+    // instances are swap-removed so a slot may hold a different instance next tick, nothing blends.
+    // Only the floats that changed are uploaded.
+    @Override
+    public void apply(float[] previous, float[] current, int offset, float alpha) {
+        drawCount = (int) current[offset];
+        for (int i=0, n=drawCount * INSTANCE_SIZE; i<n; i++) {
+            float value = current[offset + 1 + i];
+            if (instanceBuffer.get(i) != value) {
+                instanceBuffer.put(i, value);
+                markDirty(i, 1);
+            }
+        }
+    }
+
+    class UploadInstances extends Command {
+        @Override
+        public void run(Renderer renderer) {
+            if (dirtyStart < 0)
+                return;
+
+            FloatBuffer data = instanceBuffer.duplicate();
+            data.position(dirtyStart);
+            renderer.run(new BufferSubData(BufferType.ArrayBuffer, dirtyStart * 4, (dirtyEnd - dirtyStart) * 4, data));
+            dirtyStart = dirtyEnd = -1;
+        }
+    }
+
+    class DrawInstancedElements extends DrawElementsInstanced {
+        DrawInstancedElements() {
+            super(DrawMode.Triangles, indicies.capacity(), drawCount);
+        }
+
+        @Override
+        public int getInstanceCount() {
+            return drawCount;
+        }
+    }
+
+    class DrawInstancedArrays extends DrawArraysInstanced {
+        DrawInstancedArrays() {
+            super(DrawMode.Triangles, 0, vertexBuffer.capacity() / 8, drawCount);
+        }
+
+        @Override
+        public int getInstanceCount() {
+            return drawCount;
+        }
+    }
+}
@@ -2,31 +2,38 @@ package org.quuux.opengl.entities;
 
 import org.joml.Matrix4d;
 import org.joml.Vector3d;
+import org.joml.Vector3dc;
+import org.joml.Vector4d;
 import org.quuux.opengl.lib.BufferType;
 import org.quuux.opengl.lib.Material;
 import org.quuux.opengl.lib.ShaderProgram;
 import org.quuux.opengl.lib.ArrayObject;
+import org.quuux.opengl.lib.AssetManager;
 import org.quuux.opengl.lib.BufferObject;
 import org.quuux.opengl.renderer.Command;
 import org.quuux.opengl.renderer.CommandList;
+import org.quuux.opengl.renderer.CompiledCommandList;
+import org.quuux.opengl.renderer.Renderer;
 import org.quuux.opengl.renderer.commands.BufferData;
+import org.quuux.opengl.renderer.commands.BufferSubData;
+import org.quuux.opengl.renderer.commands.DeleteBuffer;
 import org.quuux.opengl.renderer.commands.DrawArrays;
 import org.quuux.opengl.renderer.commands.DrawElements;
 import org.quuux.opengl.renderer.commands.DrawMode;
 import org.quuux.opengl.renderer.commands.EnableVertexAttribArray;
 import org.quuux.opengl.renderer.commands.GenerateArray;
 import org.quuux.opengl.renderer.commands.GenerateBuffer;
-import org.quuux.opengl.renderer.commands.SetUniform;
+import org.quuux.opengl.renderer.commands.SetUniformFloat;
+import org.quuux.opengl.renderer.commands.SetUniformInt;
 import org.quuux.opengl.renderer.commands.SetUniformMatrix;
 import org.quuux.opengl.renderer.commands.VertexAttribPointer;
 import org.quuux.opengl.renderer.states.BatchState;
 import org.quuux.opengl.renderer.states.BindArray;
 import org.quuux.opengl.renderer.states.BindBuffer;
 import org.quuux.opengl.renderer.states.UseProgram;
-import org.quuux.opengl.scenes.Camera;
-import org.quuux.opengl.scenes.DirectionalLight;
-import org.quuux.opengl.scenes.PointLight;
-import org.quuux.opengl.scenes.Scene;
+import org.quuux.opengl.scenes.FrameUniforms;
+import org.quuux.opengl.scenes.RaycastHit;
+import org.quuux.opengl.scenes.TriangleHierarchy;
 import org.quuux.opengl.util.GLUtil;
 import org.quuux.opengl.util.ResourceUtil;
 
@@ -43,7 +50,7 @@ import de.javagl.obj.Obj;
 import de.javagl.obj.ObjData;
 
 
-public class Mesh implements Entity {
+public class Mesh implements Entity, Sortable, Raycastable, Snapshotable {
 
     Material material;
 
@@ -54,16 +61,30 @@ public class Mesh implements Entity {
     BufferObject ebo = new BufferObject();
     ArrayObject vao = new ArrayObject();
 
-    ShaderProgram shader = new ShaderProgram();
+    ShaderProgram shader = AssetManager.get().loadProgram("mesh");
 
     public Matrix4d model = new Matrix4d().identity();
 
+    // render queue placement, see RenderQueue
+    public int pass;
+    public boolean translucent;
+
     FloatBuffer modelBuffer = GLUtil.floatBuffer(16);
-    FloatBuffer viewBuffer = GLUtil.floatBuffer(16);
-    FloatBuffer projectionBuffer = GLUtil.floatBuffer(16);
 
     Command displayList;
 
+    // range of vertexBuffer (in floats) changed since the last upload
+    int dirtyStart = -1, dirtyEnd = -1;
+
+    // bounding sphere of the vertices in model space, recomputed when they change
+    Vector4d localBounds;
+    final Vector4d bounds = new Vector4d();
+    final Vector3d scale = new Vector3d();
+
+    // built on the first ray cast, dropped when the vertices change
+    TriangleHierarchy triangles;
+    final Matrix4d inverseModel = new Matrix4d();
+    final Vector3d rayOrigin = new Vector3d(), rayDirection = new Vector3d();
 
     protected Mesh(Material material) {
         this.material = material;
@@ -91,12 +112,17 @@ public class Mesh implements Entity {
         rv.add(material.initialize());
 
         rv.add(ShaderProgram.build(shader,
-                ResourceUtil.getStringResource("shaders/mesh.vert.glsl"),
-                ResourceUtil.getStringResource("shaders/mesh.frag.glsl")));
+                FrameUniforms.getSource() + ResourceUtil.getStringResource("shaders/mesh.vert.glsl"),
+                FrameUniforms.getSource() + ResourceUtil.getStringResource("shaders/mesh.frag.glsl")));
+        rv.add(FrameUniforms.bind(shader));
 
         CommandList ctx = buildState();
         rv.add(ctx);
 
+        ctx.add(new BufferData(BufferType.ArrayBuffer, vertexBuffer.capacity() * 4, vertexBuffer, BufferData.Usage.StaticDraw));
+        if (indicies != null)
+            ctx.add(new BufferData(BufferType.ElementArrayBuffer, indicies.capacity() * 4, indicies, BufferData.Usage.StaticDraw));
+
         ctx.add(new VertexAttribPointer(0, 3, VertexAttribPointer.Type.Float, false, 8 * 4, 0));
         ctx.add(new EnableVertexAttribArray(0));
 
@@ -111,7 +137,11 @@ public class Mesh implements Entity {
 
     @Override
     public Command dispose() {
-        return null;
+        CommandList rv = new CommandList();
+        rv.add(AssetManager.get().release(shader));
+        rv.add(new DeleteBuffer(vbo));
+        rv.add(new DeleteBuffer(ebo));
+        return rv;
     }
 
     @Override
@@ -119,58 +149,170 @@ public class Mesh implements Entity {
         if (displayList == null) {
             CommandList ctx = buildState();
             ctx.add(new SetUniformMatrix(shader, "model", 1, false, modelBuffer));
-            ctx.add(new SetUniformMatrix(shader, "view", 1, false, viewBuffer));
-            ctx.add(new SetUniformMatrix(shader, "projection", 1, false, projectionBuffer));
-
-            Vector3d viewPos = Scene.get().camera.position;
-            ctx.add(new SetUniform(shader, "viewPos", (float) viewPos.x, (float) viewPos.y, (float) viewPos.z));
-
-            ctx.add(new SetUniform(shader, "material.diffuse", 0));
-            ctx.add(new SetUniform(shader, "material.specular", 1));
-            ctx.add(new SetUniform(shader, "material.shininess", material.shininess));
-
-            Scene scene = Scene.get();
-            DirectionalLight directionalLight = scene.directionalLight;
-            if (directionalLight != null) {
-                ctx.add(new SetUniform(shader, "dirLight.direction", directionalLight.direction));
-                ctx.add(new SetUniform(shader, "dirLight.ambient", directionalLight.ambient));
-                ctx.add(new SetUniform(shader, "dirLight.diffuse", directionalLight.diffuse));
-                ctx.add(new SetUniform(shader, "dirLight.specular", directionalLight.specular));
-            }
 
-            for (int i = 0; i < scene.pointLights.size(); i++) {
-                PointLight pointLight = scene.pointLights.get(i);
-                String key = String.format("pointLights[%d]", i);
-                ctx.add(new SetUniform(shader, key + ".position", pointLight.position));
-                ctx.add(new SetUniform(shader, key + ".constant", pointLight.constant));
-                ctx.add(new SetUniform(shader, key + ".linear", pointLight.linear));
-                ctx.add(new SetUniform(shader, key + ".quadratic", pointLight.quadratic));
-                ctx.add(new SetUniform(shader, key + ".ambient", pointLight.ambient));
-                ctx.add(new SetUniform(shader, key + ".diffuse", pointLight.diffuse));
-                ctx.add(new SetUniform(shader, key + ".specular", pointLight.specular));
-            }
+            ctx.add(new SetUniformInt(shader, "material.diffuse", 0));
+            ctx.add(new SetUniformInt(shader, "material.specular", 1));
+            ctx.add(new SetUniformFloat(shader, "material.shininess", material.shininess));
 
-            ctx.add(new BufferData(BufferType.ArrayBuffer, vertexBuffer.capacity() * 4, vertexBuffer, BufferData.Usage.StaticDraw));
+            ctx.add(new UploadVertices());
 
             if (indicies != null) {
-                ctx.add(new BufferData(BufferType.ElementArrayBuffer, indicies.capacity() * 4, indicies, BufferData.Usage.StaticDraw));
                 ctx.add(new DrawElements(DrawMode.Triangles, indicies.capacity()));
             } else {
                 ctx.add(new DrawArrays(DrawMode.Triangles, 0, vertexBuffer.capacity() / 8));
             }
 
-            displayList = ctx;
+            displayList = CompiledCommandList.compile(ctx);
         }
 
         return displayList;
     }
 
+    public FloatBuffer getVertexBuffer() {
+        return vertexBuffer;
+    }
+
+    public void markDirty() {
+        markDirty(0, vertexBuffer.capacity());
+    }
+
+    // flag a range of vertexBuffer (in floats) for upload on the next draw
+    public void markDirty(int offset, int length) {
+        localBounds = null;
+        triangles = null;
+        if (dirtyStart < 0) {
+            dirtyStart = offset;
+            dirtyEnd = offset + length;
+        } else {
+            dirtyStart = Math.min(dirtyStart, offset);
+            dirtyEnd = Math.max(dirtyEnd, offset + length);
+        }
+    }
+
+    class UploadVertices extends Command {
+        @Override
+        public void run(Renderer renderer) {
+            if (dirtyStart < 0)
+                return;
+
+            FloatBuffer data = vertexBuffer.duplicate();
+            data.position(dirtyStart);
+            renderer.run(new BufferSubData(BufferType.ArrayBuffer, dirtyStart * 4, (dirtyEnd - dirtyStart) * 4, data));
+            dirtyStart = dirtyEnd = -1;
+        }
+    }
+
     @Override
     public void update(long t) {
-        Camera camera = Scene.get().getCamera();
-        model.get(modelBuffer);
-        camera.viewMatrix.get(viewBuffer);
-        camera.projectionMatrix.get(projectionBuffer);
+        updateBounds();
+    }
+
+    @Override
+    public int getSnapshotSize() {
+        return 16;
+    }
+
+    @Override
+    public void capture(float[] data, int offset) {
+        model.get(data, offset);
+    }
+
+    // blending the matrices element-wise is close enough across one tick
+    @Override
+    public void apply(float[] previous, float[] current, int offset, float alpha) {
+        for (int i=0; i<16; i++) {
+            float a = previous[offset + i];
+            modelBuffer.put(i, a + (current[offset + i] - a) * alpha);
+        }
+    }
+
+    @Override
+    public Vector4d getBounds() {
+        return bounds;
+    }
+
+    @Override
+    public int getPass() {
+        return pass;
+    }
+
+    @Override
+    public boolean isTranslucent() {
+        return translucent;
+    }
+
+    @Override
+    public ShaderProgram getShader() {
+        return shader;
+    }
+
+    @Override
+    public Material getMaterial() {
+        return material;
+    }
+
+    @Override
+    public ArrayObject getArray() {
+        return vao;
+    }
+
+    // Centered on the middle of the vertices' box, wide enough to hold the farthest one
+    Vector4d computeLocalBounds() {
+        int count = vertexBuffer.capacity() / 8;
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        for (int i=0; i<count; i++) {
+            float x = vertexBuffer.get(i * 8), y = vertexBuffer.get(i * 8 + 1), z = vertexBuffer.get(i * 8 + 2);
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            minZ = Math.min(minZ, z);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+            maxZ = Math.max(maxZ, z);
+        }
+
+        if (count == 0)
+            return new Vector4d();
+
+        double cx = (minX + maxX) / 2.0, cy = (minY + maxY) / 2.0, cz = (minZ + maxZ) / 2.0;
+        double radius = 0;
+        for (int i=0; i<count; i++) {
+            double dx = vertexBuffer.get(i * 8) - cx, dy = vertexBuffer.get(i * 8 + 1) - cy, dz = vertexBuffer.get(i * 8 + 2) - cz;
+            radius = Math.max(radius, dx * dx + dy * dy + dz * dz);
+        }
+        return new Vector4d(cx, cy, cz, Math.sqrt(radius));
+    }
+
+    public TriangleHierarchy getTriangles() {
+        if (triangles == null)
+            triangles = new TriangleHierarchy(vertexBuffer, 8, indicies);
+        return triangles;
+    }
+
+    // The ray is taken into model space without normalizing the direction, so distances along it
+    // stay in world units.
+    @Override
+    public boolean raycast(Vector3dc origin, Vector3dc direction, double maxDistance, RaycastHit hit) {
+        model.invert(inverseModel);
+        inverseModel.transformPosition(origin, rayOrigin);
+        inverseModel.transformDirection(direction, rayDirection);
+
+        if (!getTriangles().raycast(rayOrigin.x, rayOrigin.y, rayOrigin.z, rayDirection.x, rayDirection.y, rayDirection.z, maxDistance, hit))
+            return false;
+
+        hit.entity = this;
+        return true;
+    }
+
+    // moves the model space sphere by the model matrix, growing it by the largest axis scale
+    public void updateBounds() {
+        if (localBounds == null)
+            localBounds = computeLocalBounds();
+
+        bounds.set(localBounds.x, localBounds.y, localBounds.z, 1.0);
+        model.transform(bounds);
+        model.getScale(scale);
+        bounds.w = localBounds.w * Math.max(scale.x, Math.max(scale.y, scale.z));
     }
 
     public static Mesh fromObj(Material material, Obj obj) {
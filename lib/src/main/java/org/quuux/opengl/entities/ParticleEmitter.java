@@ -1,33 +1,33 @@
 package org.quuux.opengl.entities;
 
 import java.nio.FloatBuffer;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.logging.Logger;
 
 import org.joml.Matrix4d;
-import org.joml.Matrix4f;
 import org.joml.Vector3d;
 
 import org.quuux.opengl.lib.BufferType;
 import org.quuux.opengl.lib.ShaderProgram;
 import org.quuux.opengl.lib.Texture2D;
 import org.quuux.opengl.lib.ArrayObject;
+import org.quuux.opengl.lib.AssetManager;
 import org.quuux.opengl.lib.BufferObject;
 import org.quuux.opengl.renderer.Command;
 import org.quuux.opengl.renderer.CommandList;
+import org.quuux.opengl.renderer.CompiledCommandList;
 import org.quuux.opengl.renderer.commands.*;
 import org.quuux.opengl.renderer.states.*;
-import org.quuux.opengl.scenes.Camera;
+import org.quuux.opengl.scenes.FrameUniforms;
 import org.quuux.opengl.scenes.Scene;
 import org.quuux.opengl.util.GLUtil;
+import org.quuux.opengl.util.ParallelUtil;
 import org.quuux.opengl.util.RandomUtil;
 import org.quuux.opengl.util.ResourceUtil;
 
 
-public class ParticleEmitter implements Entity {
+public class ParticleEmitter implements Entity, Snapshotable {
     private static final Logger LOGGER = Logger.getLogger( ParticleEmitter.class.getName() );
 
     private static final int NUM_PARATICLES = 1000;
@@ -35,87 +35,157 @@ public class ParticleEmitter implements Entity {
     private static final int PARTICLE_SIZE = 64;
     private static final int PARTICLE_LIFESPAN = 75;
 
+    // particles per parallel task, small enough to spread a single emitter over a few cores
+    private static final int CHUNK_SIZE = 2048;
+
     long ticks;
 
+    // null, the default, runs everything on the calling thread, see Scene.pool
+    ForkJoinPool pool;
+
+    // Integration and packing are per particle and come out the same however the work is split.
+    // Trails are the only random part: in deterministic mode their velocities are hashed from the
+    // tick and parent index instead of drawn from per-thread generators, so any thread count
+    // produces bit-identical particles.
+    boolean deterministic = true;
+
+    // per chunk trail count, then the first slot that chunk's trails are written to
+    final int[] trailSlots;
+
     Matrix4d model = new Matrix4d().identity();
-    Matrix4f mvp = new Matrix4f();
-    FloatBuffer mvpBuffer = GLUtil.floatBuffer(16);
+    FloatBuffer modelBuffer = GLUtil.floatBuffer(16);
 
     Vector3d position = new Vector3d();
 
-    List<Particle> particles = new ArrayList<>();
-    List<Particle> pool = new ArrayList<>();
+    ParticleSystem particles;
+    // seeded whenever the last particle dies, trails fill the rest of the capacity
+    final int seedCount;
 
-    FloatBuffer vertexBuffer = GLUtil.floatBuffer(8 * TOTAL_PARTICLES);
+    // update packs vertices here, a snapshot carries them over to vertexBuffer for drawing
+    final float[] packed;
+    FloatBuffer packBuffer;
+
+    FloatBuffer vertexBuffer;
+    int drawCount;
+
+    final ParallelUtil.Loop integrate = new ParallelUtil.Loop((chunk, from, to) -> particles.integrate(from, to));
+    final ParallelUtil.Loop countTrails = new ParallelUtil.Loop(this::countTrails);
+    final ParallelUtil.Loop writeTrails = new ParallelUtil.Loop(this::writeTrails);
+    final ParallelUtil.Loop pack = new ParallelUtil.Loop((chunk, from, to) -> particles.pack(packBuffer, PARTICLE_SIZE, from, to));
 
     BufferObject vbo = new BufferObject();
     ArrayObject vao = new ArrayObject();
 
-    Texture2D texture = new Texture2D(ResourceUtil.getPNGResource("particle1"));
-    ShaderProgram shader = new ShaderProgram();
+    Texture2D texture = AssetManager.get().loadTexture("textures/particle1.png");
+    ShaderProgram shader = AssetManager.get().loadProgram("particle");
 
     Command displayList;
 
-    private Particle allocateParticle() {
-        if (particles.size() >= TOTAL_PARTICLES)
-            return null;
-        Particle p = (pool.size() > 0) ? pool.remove(pool.size() - 1) : new Particle();
-        particles.add(p);
-        return p;
+    public ParticleEmitter() {
+        this(TOTAL_PARTICLES);
     }
 
-    private void recycleParticle(Particle p) {
-        particles.remove(p);
-        pool.add(p);
+    public ParticleEmitter(int capacity) {
+        particles = new ParticleSystem(capacity);
+        seedCount = Math.max(capacity / (TOTAL_PARTICLES / NUM_PARATICLES), 1);
+        trailSlots = new int[ParallelUtil.chunks(capacity, CHUNK_SIZE)];
+        packed = new float[ParticleSystem.VERTEX_SIZE * capacity];
+        packBuffer = FloatBuffer.wrap(packed);
+        vertexBuffer = GLUtil.floatBuffer(ParticleSystem.VERTEX_SIZE * capacity);
     }
 
     private void seedParticles() {
-        for (int i=0; i<NUM_PARATICLES; i++) {
-            Particle p = allocateParticle();
-            p.emitsTrail = true;
-            Vector3d position = new Vector3d();
-            position.set(this.position);
+        for (int i=0; i<seedCount; i++) {
+            particles.spawn(
+                    (float) position.x, (float) position.y, (float) position.z,
+                    (float) RandomUtil.randomRange(-1, 1) * .02f, (float) RandomUtil.randomRange(-1, 1) * .02f, (float) RandomUtil.randomRange(-1, 1) * .02f,
+                    (float) RandomUtil.randomRange(-1, 1) * .0001f, (float) RandomUtil.randomRange(-1, 1) * .0001f, (float) RandomUtil.randomRange(-1, 1) * .0001f,
+                    (float) RandomUtil.randomRange(0, 1),
+                    RandomUtil.randomInt(PARTICLE_LIFESPAN / 2, PARTICLE_LIFESPAN * 2),
+                    true);
+        }
+    }
+
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
 
-            Vector3d acceleration = new Vector3d(RandomUtil.randomRange(-1, 1), RandomUtil.randomRange(-1, 1), RandomUtil.randomRange(-1, 1));
-            acceleration.mul(.0001);
+    public void setDeterministic(boolean deterministic) {
+        this.deterministic = deterministic;
+    }
+
+    // SortMode.None when drawn with additive blending
+    public void setSortMode(ParticleSystem.SortMode sortMode) {
+        particles.setSortMode(sortMode);
+    }
 
-            Vector3d velocity = new Vector3d(RandomUtil.randomRange(-1, 1), RandomUtil.randomRange(-1, 1), RandomUtil.randomRange(-1, 1));
-            velocity.mul(.02f);
+    private void countTrails(int chunk, int from, int to) {
+        int n = 0;
+        for (int i=from; i<to; i++) {
+            if (particles.emitsTrail(i))
+                n++;
+        }
+        trailSlots[chunk] = n;
+    }
 
-            Vector3d color = new Vector3d(RandomUtil.randomRange(0, 1), 1, 1);
+    // each chunk owns a contiguous run of new slots, so trails land in parent order however the chunks are scheduled
+    private void writeTrails(int chunk, int from, int to) {
+        int slot = trailSlots[chunk];
+        int tick = (int) ticks;
+        ThreadLocalRandom random = deterministic ? null : ThreadLocalRandom.current();
+
+        for (int i=from; i<to && slot<particles.capacity(); i++) {
+            if (!particles.emitsTrail(i))
+                continue;
+
+            float rx, ry, rz;
+            if (deterministic) {
+                rx = RandomUtil.hash(tick, i, 0);
+                ry = RandomUtil.hash(tick, i, 1);
+                rz = RandomUtil.hash(tick, i, 2);
+            } else {
+                rx = random.nextFloat();
+                ry = random.nextFloat();
+                rz = random.nextFloat();
+            }
 
-            int lifespan = RandomUtil.randomInt(PARTICLE_LIFESPAN / 2, PARTICLE_LIFESPAN * 2);
-            p.recycle(position, velocity, acceleration, color, lifespan);
+            particles.set(slot++,
+                    particles.getX(i), particles.getY(i), particles.getZ(i),
+                    trailVelocity(rx), trailVelocity(ry), trailVelocity(rz),
+                    0, 0, 0,
+                    particles.getHue(i),
+                    particles.getLifespan(i) / 4,
+                    false);
         }
     }
 
-    private void trail(Particle p) {
-        Particle t = allocateParticle();
-        if (t == null)
-            return;
-        t.emitsTrail = false;
-        Vector3d position = new Vector3d(p.position);
-        Vector3d velocity = new Vector3d();
-        velocity.add(
-                RandomUtil.randomRange(.0001, .01),
-                RandomUtil.randomRange(.0001, .01),
-                RandomUtil.randomRange(.0001, .01)
-                );
-        Vector3d acceleration = new Vector3d();
-        t.recycle(position, velocity, acceleration, p.color, p.lifespan / 4);
+    private static float trailVelocity(float r) {
+        return .0001f + r * (.01f - .0001f);
+    }
+
+    // trails spawned this tick start moving on the next one
+    private void spawnTrails() {
+        int live = particles.size();
+        countTrails.forEach(pool, live, CHUNK_SIZE);
+
+        int total = live;
+        for (int chunk=0; chunk<ParallelUtil.chunks(live, CHUNK_SIZE); chunk++) {
+            int n = trailSlots[chunk];
+            trailSlots[chunk] = total;
+            total += n;
+        }
+
+        writeTrails.forEach(pool, live, CHUNK_SIZE);
+        particles.resize(Math.min(total, particles.capacity()));
     }
 
     @Override
     public void update(long t) {
-        for (int i=0; i<particles.size(); i++) {
-            Particle p = particles.get(i);
-            p.update(t);
-            if (!p.isAlive()) {
-                recycleParticle(p);
-            } else if (p.emitsTrail) {
-                trail(p);
-            }
-        }
+        // deaths are merged on this thread so survivors always compact into the same slots
+        integrate.forEach(pool, particles.size(), CHUNK_SIZE);
+        particles.compact();
+
+        spawnTrails();
 
         if (particles.size() == 0) {
             seedParticles();
@@ -123,15 +193,42 @@ public class ParticleEmitter implements Entity {
 
         ticks++;
 
-        Scene.get().getCamera().modelViewProjectionMatrix(model, mvp);
-        mvp.get(mvpBuffer);
-
-        updateVertices(vertexBuffer);
+        Vector3d eye = Scene.get().getCamera().position;
+        particles.sortByDepth((float) eye.x, (float) eye.y, (float) eye.z);
+        pack.forEach(pool, particles.size(), CHUNK_SIZE);
     }
 
     @Override
     public Command dispose() {
-        return null;
+        return AssetManager.get().release(shader, texture);
+    }
+
+    // count, model matrix, packed vertices
+    @Override
+    public int getSnapshotSize() {
+        return 1 + 16 + packed.length;
+    }
+
+    @Override
+    public void capture(float[] data, int offset) {
+        int count = particles.size();
+        data[offset] = count;
+        model.get(data, offset + 1);
+        System.arraycopy(packed, 0, data, offset + 17, count * ParticleSystem.VERTEX_SIZE);
+    }
+
+    // particles don't keep their slots from one tick to the next, so only the matrix blends
+    @Override
+    public void apply(float[] previous, float[] current, int offset, float alpha) {
+        for (int i=0; i<16; i++) {
+            float a = previous[offset + 1 + i];
+            modelBuffer.put(i, a + (current[offset + 1 + i] - a) * alpha);
+        }
+
+        drawCount = (int) current[offset];
+        vertexBuffer.position(0);
+        vertexBuffer.put(current, offset + 17, drawCount * ParticleSystem.VERTEX_SIZE);
+        vertexBuffer.position(0);
     }
 
     @Override
@@ -141,8 +238,9 @@ public class ParticleEmitter implements Entity {
         rv.add(new GenerateBuffer(vbo));
 
         rv.add(ShaderProgram.build(shader,
-                ResourceUtil.getStringResource("shaders/particle.vert.glsl"),
+                FrameUniforms.getSource() + ResourceUtil.getStringResource("shaders/particle.vert.glsl"),
                 ResourceUtil.getStringResource("shaders/particle.frag.glsl")));
+        rv.add(FrameUniforms.bind(shader));
 
         BatchState ctx = new BatchState(
                 new UseProgram(shader),
@@ -153,7 +251,7 @@ public class ParticleEmitter implements Entity {
 
         rv.add(texture.initialize(0));
 
-        ctx.add(new SetUniform(shader, "texture", SetUniform.Type.INT, 0));
+        ctx.add(new SetUniformInt(shader, "texture", 0));
 
         ctx.add(new VertexAttribPointer(0, 3, VertexAttribPointer.Type.Float, false, 8 * 4, 0));
         ctx.add(new EnableVertexAttribArray(0));
@@ -171,54 +269,15 @@ public class ParticleEmitter implements Entity {
     public Command draw() {
         if (displayList == null) {
             BatchState rv = new BatchState(new UseProgram(shader), new BindBuffer(BufferType.ArrayBuffer, vbo),  new BindArray(vao), texture.bind(0));
-            rv.add(new SetUniformMatrix(shader, "mvp", 1, false, mvpBuffer));
+            rv.add(new SetUniformMatrix(shader, "model", 1, false, modelBuffer));
             rv.add(new BufferData(BufferType.ArrayBuffer, vertexBuffer.capacity() * 4, vertexBuffer, BufferData.Usage.StreamDraw));
             rv.add(new DrawParticles());
-            displayList = rv;
+            displayList = CompiledCommandList.compile(rv);
         }
 
         return displayList;
     }
 
-    private float colorComponent(int rgb, int shift) {
-        int value = (rgb >> shift) & 0xFF;
-        return (float)((double)value/255.);
-    }
-
-    private void updateVertices(FloatBuffer vertexBuffer) {
-        Collections.sort(particles, particleComparator);
-
-        for (int i=0; i<particles.size(); i++) {
-            Particle p = particles.get(i);
-            int offset = 8 * i;
-            float agePercentile = (float) ((double) p.age / (double) p.lifespan);
-            vertexBuffer.put(offset, (float) p.position.x);
-            vertexBuffer.put(offset + 1, (float) p.position.y);
-            vertexBuffer.put(offset + 2, (float) p.position.z);
-
-            double hue = p.color.x + agePercentile;
-            if (hue > 1)
-                hue -= 1;
-
-            int rgb = HSBtoRGB(
-                    (float)hue,
-                    (float)1 - agePercentile,
-                    (float)1 - agePercentile
-            );
-
-            vertexBuffer.put(offset + 3, colorComponent(rgb, 16));
-            vertexBuffer.put(offset + 4, colorComponent(rgb, 8));
-            vertexBuffer.put(offset + 5, colorComponent(rgb, 0));
-            vertexBuffer.put(offset + 6,  (1 - agePercentile));
-
-            double distance = new Vector3d().distance(p.position);
-            double size = (PARTICLE_SIZE/distance) * agePercentile;
-            if (size > PARTICLE_SIZE)
-                size = PARTICLE_SIZE;
-            vertexBuffer.put(offset + 7, (float) size);
-        }
-    }
-
     public static int HSBtoRGB(float hue, float saturation, float brightness) {
         int r = 0, g = 0, b = 0;
         if (saturation == 0) {
@@ -265,56 +324,15 @@ public class ParticleEmitter implements Entity {
         return 0xff000000 | (r << 16) | (g << 8) | (b << 0);
     }
 
-    static class Particle {
-        int age = 0;
-        int lifespan;
-        Vector3d position;
-        Vector3d velocity;
-        Vector3d acceleration;
-        Vector3d color;
-        boolean emitsTrail;
-
-        boolean isAlive() {
-            return age < lifespan;
-        }
-
-        void recycle(Vector3d position, Vector3d velocity, Vector3d acceleration, Vector3d color, int lifespan) {
-            age = 0;
-            this.position = position;
-            this.velocity = velocity;
-            this.acceleration = acceleration;
-            this.color = color;
-            this.lifespan = lifespan;
-        }
-
-        void update(long t) {
-            age += 1;
-            if (isAlive()) {
-                this.velocity.add(this.acceleration);
-                this.position.add(this.velocity);
-            }
-        }
-    }
-
-    Comparator<Particle> particleComparator = new Comparator<Particle>() {
-        @Override
-        public int compare(Particle o1, Particle o2) {
-            Camera camera = Scene.get().getCamera();
-            double d1 = camera.position.distance(o1.position);
-            double d2 = camera.position.distance(o2.position);
-            return -Double.compare(d1, d2);
-        }
-    };
-
     class DrawParticles extends DrawArrays {
 
         public DrawParticles() {
-            super(DrawMode.Points, 0, particles.size());
+            super(DrawMode.Points, 0, drawCount);
         }
 
         @Override
         public int getCount() {
-            return particles.size();
+            return drawCount;
         }
     }
 }
@@ -0,0 +1,346 @@
+package org.quuux.opengl.entities;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+// Particle state kept in parallel primitive arrays. Live particles stay packed at the front,
+// dead ones are swap-removed, and nothing is allocated once the system is built.
+public class ParticleSystem {
+
+    // position, rgba, size
+    public static final int VERTEX_SIZE = 8;
+
+    final int capacity;
+    int count;
+
+    final float[] px, py, pz;
+    final float[] vx, vy, vz;
+    final float[] ax, ay, az;
+    final float[] hue;
+    final int[] age, lifespan;
+    final boolean[] emitsTrail;
+
+    public enum SortMode {
+        // radix sort every tick
+        Radix,
+        // insertion sort last tick's order while it is nearly right, radix otherwise
+        Incremental,
+        // creation order, for additive blending where draw order doesn't matter
+        None
+    }
+
+    // insertion sort gives up after this many shifts per particle
+    private static final int INSERTION_BUDGET = 4;
+
+    SortMode sortMode = SortMode.Incremental;
+
+    // float bits of each particle's squared distance, positive floats order the same as their bits
+    final int[] depthKeys;
+
+    // back to front draw order, see sortByDepth
+    final int[] order, scratch;
+    final int[] histogram = new int[256];
+
+    // particles covered by order, 0 when it has to be rebuilt
+    int sorted;
+
+    public ParticleSystem(int capacity) {
+        this.capacity = capacity;
+        px = new float[capacity];
+        py = new float[capacity];
+        pz = new float[capacity];
+        vx = new float[capacity];
+        vy = new float[capacity];
+        vz = new float[capacity];
+        ax = new float[capacity];
+        ay = new float[capacity];
+        az = new float[capacity];
+        hue = new float[capacity];
+        age = new int[capacity];
+        lifespan = new int[capacity];
+        emitsTrail = new boolean[capacity];
+        depthKeys = new int[capacity];
+        order = new int[capacity];
+        scratch = new int[capacity];
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public boolean isAlive(int i) {
+        return age[i] < lifespan[i];
+    }
+
+    public boolean emitsTrail(int i) {
+        return emitsTrail[i];
+    }
+
+    public float getX(int i) {
+        return px[i];
+    }
+
+    public float getY(int i) {
+        return py[i];
+    }
+
+    public float getZ(int i) {
+        return pz[i];
+    }
+
+    public float getHue(int i) {
+        return hue[i];
+    }
+
+    public int getAge(int i) {
+        return age[i];
+    }
+
+    public int getLifespan(int i) {
+        return lifespan[i];
+    }
+
+    // returns the new particle's index, or -1 when the system is full
+    public int spawn(float x, float y, float z,
+                     float vx, float vy, float vz,
+                     float ax, float ay, float az,
+                     float hue, int lifespan, boolean emitsTrail) {
+        if (count >= capacity)
+            return -1;
+
+        int i = count++;
+        set(i, x, y, z, vx, vy, vz, ax, ay, az, hue, lifespan, emitsTrail);
+        return i;
+    }
+
+    // overwrites slot i with a newborn particle, does not change the count
+    public void set(int i, float x, float y, float z,
+                    float vx, float vy, float vz,
+                    float ax, float ay, float az,
+                    float hue, int lifespan, boolean emitsTrail) {
+        px[i] = x;
+        py[i] = y;
+        pz[i] = z;
+        this.vx[i] = vx;
+        this.vy[i] = vy;
+        this.vz[i] = vz;
+        this.ax[i] = ax;
+        this.ay[i] = ay;
+        this.az[i] = az;
+        this.hue[i] = hue;
+        age[i] = 0;
+        this.lifespan[i] = lifespan;
+        this.emitsTrail[i] = emitsTrail;
+    }
+
+    // grows or shrinks the live range, slots added must already have been set
+    public void resize(int count) {
+        if (count < 0 || count > capacity)
+            throw new IllegalArgumentException("size out of range: " + count);
+        this.count = count;
+    }
+
+    // moves the last particle into slot i
+    public void kill(int i) {
+        int last = --count;
+        if (i == last)
+            return;
+
+        px[i] = px[last];
+        py[i] = py[last];
+        pz[i] = pz[last];
+        vx[i] = vx[last];
+        vy[i] = vy[last];
+        vz[i] = vz[last];
+        ax[i] = ax[last];
+        ay[i] = ay[last];
+        az[i] = az[last];
+        hue[i] = hue[last];
+        age[i] = age[last];
+        lifespan[i] = lifespan[last];
+        emitsTrail[i] = emitsTrail[last];
+    }
+
+    public void clear() {
+        count = 0;
+        sorted = 0;
+    }
+
+    public SortMode getSortMode() {
+        return sortMode;
+    }
+
+    public void setSortMode(SortMode sortMode) {
+        this.sortMode = sortMode;
+        sorted = 0;
+    }
+
+    public void update() {
+        integrate(0, count);
+        compact();
+    }
+
+    // ages particles [from, to) one tick and moves the living ones
+    public void integrate(int from, int to) {
+        for (int i=from; i<to; i++) {
+            int a = ++age[i];
+            if (a < lifespan[i]) {
+                vx[i] += ax[i];
+                vy[i] += ay[i];
+                vz[i] += az[i];
+                px[i] += vx[i];
+                py[i] += vy[i];
+                pz[i] += vz[i];
+            }
+        }
+    }
+
+    // drops dead particles, the survivors keep their relative order except for the ones moved into gaps
+    public void compact() {
+        int i = 0;
+        while (i < count) {
+            if (isAlive(i))
+                i++;
+            else
+                kill(i);
+        }
+    }
+
+    // Orders particles far to near from the given point, computing each squared distance once
+    public void sortByDepth(float x, float y, float z) {
+        if (sortMode == SortMode.None) {
+            for (int n=0; n<count; n++)
+                order[n] = n;
+            sorted = count;
+            return;
+        }
+
+        for (int i=0; i<count; i++) {
+            float dx = px[i] - x, dy = py[i] - y, dz = pz[i] - z;
+            depthKeys[i] = Float.floatToIntBits(dx * dx + dy * dy + dz * dz);
+        }
+
+        if (sortMode == SortMode.Incremental && sorted > 0) {
+            reuseOrder();
+            if (insertionSort(count * INSERTION_BUDGET)) {
+                sorted = count;
+                return;
+            }
+        }
+
+        radixSort();
+        sorted = count;
+    }
+
+    // Last tick's order is a permutation of [0, sorted). Dropping indices past the end and appending
+    // the new ones gives a permutation of [0, count) that is still mostly in order, compaction only
+    // moved a few particles.
+    private void reuseOrder() {
+        int n = 0;
+        for (int k=0; k<sorted; k++) {
+            if (order[k] < count)
+                order[n++] = order[k];
+        }
+        for (int i=sorted; i<count; i++)
+            order[n++] = i;
+    }
+
+    // false if the order was too far off to finish within budget shifts
+    private boolean insertionSort(int budget) {
+        for (int n=1; n<count; n++) {
+            int i = order[n];
+            int key = depthKeys[i];
+            int m = n - 1;
+            while (m >= 0 && depthKeys[order[m]] < key) {
+                order[m + 1] = order[m];
+                m--;
+                if (--budget < 0) {
+                    order[m + 1] = i;
+                    return false;
+                }
+            }
+            order[m + 1] = i;
+        }
+        return true;
+    }
+
+    // LSD radix sort, a byte at a time, on the inverted keys so the farthest particle comes first.
+    // Passes where every key shares the same byte are skipped.
+    private void radixSort() {
+        int[] src = order, dst = scratch;
+        for (int n=0; n<count; n++)
+            src[n] = n;
+        if (count < 2)
+            return;
+
+        for (int shift=0; shift<32; shift+=8) {
+            Arrays.fill(histogram, 0);
+            for (int n=0; n<count; n++)
+                histogram[(~depthKeys[src[n]] >>> shift) & 0xFF]++;
+
+            if (histogram[(~depthKeys[src[0]] >>> shift) & 0xFF] == count)
+                continue;
+
+            int sum = 0;
+            for (int b=0; b<256; b++) {
+                int c = histogram[b];
+                histogram[b] = sum;
+                sum += c;
+            }
+
+            for (int n=0; n<count; n++) {
+                int i = src[n];
+                dst[histogram[(~depthKeys[i] >>> shift) & 0xFF]++] = i;
+            }
+
+            int[] tmp = src;
+            src = dst;
+            dst = tmp;
+        }
+
+        if (src != order)
+            System.arraycopy(src, 0, order, 0, count);
+    }
+
+    // index of the particle drawn at position n
+    public int drawOrder(int n) {
+        return order[n];
+    }
+
+    // Writes vertices [from, to) in draw order, 8 floats per particle
+    public void pack(FloatBuffer dest, float maxSize, int from, int to) {
+        for (int n=from; n<to; n++) {
+            int i = drawOrder(n);
+            int offset = VERTEX_SIZE * n;
+            float agePercentile = (float) age[i] / (float) lifespan[i];
+
+            dest.put(offset, px[i]);
+            dest.put(offset + 1, py[i]);
+            dest.put(offset + 2, pz[i]);
+
+            float h = hue[i] + agePercentile;
+            if (h > 1)
+                h -= 1;
+
+            int rgb = ParticleEmitter.HSBtoRGB(h, 1 - agePercentile, 1 - agePercentile);
+            dest.put(offset + 3, ((rgb >> 16) & 0xFF) / 255f);
+            dest.put(offset + 4, ((rgb >> 8) & 0xFF) / 255f);
+            dest.put(offset + 5, (rgb & 0xFF) / 255f);
+            dest.put(offset + 6, 1 - agePercentile);
+
+            float distance = (float) Math.sqrt(px[i] * px[i] + py[i] * py[i] + pz[i] * pz[i]);
+            float size = (maxSize / distance) * agePercentile;
+            if (size > maxSize)
+                size = maxSize;
+            dest.put(offset + 7, size);
+        }
+    }
+
+    public void pack(FloatBuffer dest, float maxSize) {
+        pack(dest, maxSize, 0, count);
+    }
+}
@@ -0,0 +1,10 @@
+package org.quuux.opengl.entities;
+
+import org.joml.Vector3dc;
+import org.quuux.opengl.scenes.RaycastHit;
+
+// An entity a world space ray can hit. Implementations only overwrite hit when they find
+// something closer than maxDistance, and return whether they did.
+public interface Raycastable {
+    boolean raycast(Vector3dc origin, Vector3dc direction, double maxDistance, RaycastHit hit);
+}
@@ -1,12 +1,14 @@
 package org.quuux.opengl.entities;
 
 import org.quuux.opengl.lib.ArrayObject;
+import org.quuux.opengl.lib.AssetManager;
 import org.quuux.opengl.lib.BufferObject;
 import org.quuux.opengl.lib.BufferType;
 import org.quuux.opengl.lib.Cubemap;
 import org.quuux.opengl.lib.ShaderProgram;
 import org.quuux.opengl.renderer.Command;
 import org.quuux.opengl.renderer.CommandList;
+import org.quuux.opengl.renderer.CompiledCommandList;
 import org.quuux.opengl.renderer.commands.BufferData;
 import org.quuux.opengl.renderer.commands.DrawArrays;
 import org.quuux.opengl.renderer.commands.DrawMode;
@@ -70,14 +72,16 @@ public class Skybox implements Entity {
     final String key;
     final Cubemap cubemap;
 
-    ShaderProgram shader = new ShaderProgram();
+    ShaderProgram shader = AssetManager.get().loadProgram("skybox");
 
     BufferObject vbo = new BufferObject();
     ArrayObject vao = new ArrayObject();
 
+    Command displayList;
+
     public Skybox(String key) {
         this.key = key;
-        cubemap = Cubemap.load(key);
+        cubemap = AssetManager.get().loadCubemap(key);
     }
 
     CommandList buildState() {
@@ -104,26 +108,26 @@ public class Skybox implements Entity {
         CommandList ctx = buildState();
         rv.add(ctx);
 
+        ctx.add(new BufferData(BufferType.ArrayBuffer, vertexBuffer.capacity() * 4, vertexBuffer, BufferData.Usage.StaticDraw));
         ctx.add(new VertexAttribPointer(0, 3, VertexAttribPointer.Type.Float, false, 3 * 4, 0));
         ctx.add(new EnableVertexAttribArray(0));
-        ctx.add(new DrawArrays(DrawMode.Triangles, 0, vertices.length / 3));
 
         return rv;
     }
 
     @Override
     public Command dispose() {
-        CommandList rv = new CommandList();
-        return rv;
+        return AssetManager.get().release(shader, cubemap);
     }
 
     @Override
     public Command draw() {
-        CommandList ctx = buildState();
-        ctx.add(cubemap.bind(0));
-        ctx.add(new BufferData(BufferType.ArrayBuffer, vertexBuffer.capacity() * 4, vertexBuffer, BufferData.Usage.StaticDraw));
-        ctx.add(new DrawArrays(DrawMode.Triangles, 0, vertexBuffer.capacity() / 8));
-        return ctx;
+        if (displayList == null) {
+            CommandList ctx = buildState();
+            ctx.add(new DrawArrays(DrawMode.Triangles, 0, vertices.length / 3));
+            displayList = CompiledCommandList.compile(ctx);
+        }
+        return displayList;
     }
 
     @Override
@@ -0,0 +1,15 @@
+package org.quuux.opengl.entities;
+
+// An entity whose draw reads state that update writes. update keeps its own copy, capture copies
+// what draw needs into a snapshot on the update thread, and apply rebuilds the buffers draw reads
+// from two snapshots on the render thread, so the two threads never share a buffer.
+public interface Snapshotable {
+
+    // floats this entity takes in a snapshot, fixed for the entity's lifetime
+    int getSnapshotSize();
+
+    void capture(float[] data, int offset);
+
+    // alpha of the way from previous to current, entities with state that doesn't blend use current
+    void apply(float[] previous, float[] current, int offset, float alpha);
+}
@@ -0,0 +1,15 @@
+package org.quuux.opengl.entities;
+
+import org.quuux.opengl.lib.ArrayObject;
+import org.quuux.opengl.lib.Material;
+import org.quuux.opengl.lib.ShaderProgram;
+
+// A draw the render queue can reorder, grouped with others sharing its state and ordered by depth.
+// Lower passes draw first, see RenderQueue.
+public interface Sortable extends Bounded {
+    int getPass();
+    boolean isTranslucent();
+    ShaderProgram getShader();
+    Material getMaterial();
+    ArrayObject getArray();
+}
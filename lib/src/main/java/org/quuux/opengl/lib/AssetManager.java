@@ -0,0 +1,244 @@
+package org.quuux.opengl.lib;
+
+import de.javagl.obj.Obj;
+
+import org.joml.Vector3f;
+
+import org.quuux.opengl.entities.Mesh;
+import org.quuux.opengl.renderer.Command;
+import org.quuux.opengl.renderer.CommandList;
+import org.quuux.opengl.renderer.Renderer;
+import org.quuux.opengl.util.ResourceUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+// Decodes PNG and OBJ resources on background threads. Textures are handed out straight away
+// holding a 1x1 placeholder, which draws like any other texture until the decoded pixels are
+// uploaded. Uploads happen on the GL thread through getUploads(), a few per frame within a time
+// budget so a burst of finished decodes doesn't stall a frame.
+//
+// Textures, cubemaps and shader programs are shared through a ResourceCache keyed by resource
+// name, so loading the same one twice costs a reference. Hand each back with release().
+public class AssetManager {
+    private static final Logger LOGGER = Logger.getLogger(AssetManager.class.getName());
+
+    private static final long DEFAULT_UPLOAD_BUDGET = 2000000L;
+
+    private static final Vector3f PLACEHOLDER_COLOR = new Vector3f(.5f, .5f, .5f);
+    private static final Vector3f PLACEHOLDER_SPECULAR = new Vector3f(0, 0, 0);
+    private static final Vector3f PLACEHOLDER_NORMAL = new Vector3f(0, 0, 1);
+
+    private static AssetManager instance;
+
+    final ExecutorService executor;
+    final ResourceCache cache = new ResourceCache();
+
+    // decoded, waiting for the GL thread
+    final Queue<Texture> ready = new ConcurrentLinkedQueue<>();
+    final List<Texture> deferred = new ArrayList<>();
+    final AtomicInteger loading = new AtomicInteger();
+
+    long uploadBudget = DEFAULT_UPLOAD_BUDGET;
+
+    final Command uploads = new Uploads();
+
+    public AssetManager(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "asset-loader-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static synchronized AssetManager get() {
+        if (instance == null)
+            instance = new AssetManager(Runtime.getRuntime().availableProcessors());
+        return instance;
+    }
+
+    // decodes still running, finished ones are uploaded by the next frame or two
+    public int getLoadingCount() {
+        return loading.get();
+    }
+
+    public void setUploadBudget(long nanos) {
+        this.uploadBudget = nanos;
+    }
+
+    public ResourceCache getCache() {
+        return cache;
+    }
+
+    // Drops a reference to each, see ResourceCache.release. Run the result on the GL thread.
+    public Command release(Resource... resources) {
+        CommandList rv = new CommandList();
+        for (Resource resource : resources) {
+            Command command = resource != null ? cache.release(resource) : null;
+            if (command != null)
+                rv.add(command);
+        }
+        return rv;
+    }
+
+    // call when the GL context has been recreated
+    public void invalidate() {
+        cache.invalidate();
+        ready.clear();
+        deferred.clear();
+    }
+
+    // Programs are shared by name, each user still builds it in initialize and only the first
+    // build does anything
+    public ShaderProgram loadProgram(String name) {
+        return cache.acquire("program:" + name, () -> new ShaderProgram(name));
+    }
+
+    // 1x1 texture of a flat color
+    public Texture2D color(Vector3f color, float alpha) {
+        String key = String.format("color:%02x%02x%02x%02x",
+                (int) (255 * color.x) & 0xFF, (int) (255 * color.y) & 0xFF, (int) (255 * color.z) & 0xFF, (int) (255 * alpha) & 0xFF);
+        return cache.acquire(key, () -> new Texture2D(ResourceUtil.getColor(color, alpha)));
+    }
+
+    // Plain Futures rather than CompletableFuture, which Android only has from API 24
+    public Future<ResourceUtil.Bitmap> loadPNG(String name) {
+        return executor.submit(() -> ResourceUtil.getPNGResource(name));
+    }
+
+    public Future<Obj> loadObj(String name) {
+        return executor.submit(() -> ResourceUtil.loadObj(name));
+    }
+
+    // geometry is built on the loader thread too, add the mesh to a scene once get() returns
+    public Future<Mesh> loadMesh(Material material, String name) {
+        return executor.submit(() -> Mesh.fromObj(material, ResourceUtil.loadObj(name)));
+    }
+
+    public Texture2D loadTexture(String name) {
+        return loadTexture(name, PLACEHOLDER_COLOR);
+    }
+
+    // the placeholder only matters to whoever loads the texture first
+    public Texture2D loadTexture(String name, Vector3f placeholder) {
+        return cache.acquire(name, () -> decodeTexture(name, placeholder));
+    }
+
+    private Texture2D decodeTexture(String name, Vector3f placeholder) {
+        Texture2D texture = new Texture2D(ResourceUtil.getColor(placeholder, 1));
+        loading.incrementAndGet();
+        executor.execute(() -> {
+            ResourceUtil.Bitmap bitmap = null;
+            try {
+                bitmap = ResourceUtil.getPNGResource(name);
+            } finally {
+                if (bitmap != null) {
+                    texture.setBitmap(bitmap);
+                    ready.add(texture);
+                } else {
+                    LOGGER.warning("could not load " + name + ", keeping placeholder");
+                }
+                loading.decrementAndGet();
+            }
+        });
+        return texture;
+    }
+
+    // Same textures as Material.load, a map that doesn't exist is left out rather than waited for
+    public Material loadMaterial(String key, float shininess) {
+        Texture diffuse = loadMaterialTexture(key, "diffuse", PLACEHOLDER_COLOR);
+        Texture specular = loadMaterialTexture(key, "specular", PLACEHOLDER_SPECULAR);
+        Texture normal = loadMaterialTexture(key, "normal", PLACEHOLDER_NORMAL);
+        return new Material(diffuse, specular, normal, shininess);
+    }
+
+    private Texture loadMaterialTexture(String key, String type, Vector3f placeholder) {
+        String name = Material.getTextureKey(key, type);
+        return ResourceUtil.hasResource(name) ? loadTexture(name, placeholder) : null;
+    }
+
+    // faces are decoded in parallel and uploaded together once the last one is done
+    public Cubemap loadCubemap(String key) {
+        return cache.acquire("cubemap:" + key, () -> decodeCubemap(key));
+    }
+
+    private Cubemap decodeCubemap(String key) {
+        Cubemap.Face[] faces = Cubemap.Face.values();
+        ResourceUtil.Bitmap[] placeholders = new ResourceUtil.Bitmap[faces.length];
+        ResourceUtil.Bitmap[] bitmaps = new ResourceUtil.Bitmap[faces.length];
+        for (Cubemap.Face face : faces)
+            placeholders[face.ordinal()] = ResourceUtil.getColor(PLACEHOLDER_SPECULAR, 1);
+
+        Cubemap cubemap = new Cubemap(placeholders);
+        loading.incrementAndGet();
+        AtomicInteger remaining = new AtomicInteger(faces.length);
+        for (Cubemap.Face face : faces) {
+            executor.execute(() -> {
+                try {
+                    bitmaps[face.ordinal()] = ResourceUtil.getPNGResource(Cubemap.getTextureKey(key, face));
+                } finally {
+                    // the decrement publishes this face's bitmap to whichever thread finishes last
+                    if (remaining.decrementAndGet() == 0)
+                        completeCubemap(key, cubemap, bitmaps);
+                }
+            });
+        }
+        return cubemap;
+    }
+
+    private void completeCubemap(String key, Cubemap cubemap, ResourceUtil.Bitmap[] bitmaps) {
+        boolean complete = true;
+        for (ResourceUtil.Bitmap bitmap : bitmaps)
+            complete &= bitmap != null;
+
+        if (complete) {
+            cubemap.setBitmaps(bitmaps);
+            ready.add(cubemap);
+        } else {
+            LOGGER.warning("could not load cubemap " + key + ", keeping placeholder");
+        }
+        loading.decrementAndGet();
+    }
+
+    // Runs on the GL thread, once per frame, deleting whatever the cache evicted and uploading
+    // finished decodes. A texture that hasn't been generated yet waits only while its initialize
+    // has been built and not run, since that may hold the placeholder. Otherwise it is dropped:
+    // evicted, disposed or never initialized, whichever initialize comes next uploads the pixels.
+    public Command getUploads() {
+        return uploads;
+    }
+
+    class Uploads extends Command {
+        @Override
+        public void run(Renderer renderer) {
+            cache.getDisposals().run(renderer);
+
+            long start = System.nanoTime();
+
+            Texture texture;
+            while ((texture = ready.poll()) != null) {
+                if (texture.texture < 0) {
+                    if (texture.initialized && cache.contains(texture))
+                        deferred.add(texture);
+                    continue;
+                }
+
+                texture.upload(0).run(renderer);
+
+                if (System.nanoTime() - start > uploadBudget)
+                    break;
+            }
+
+            ready.addAll(deferred);
+            deferred.clear();
+        }
+    }
+}
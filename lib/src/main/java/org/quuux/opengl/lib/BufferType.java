@@ -3,4 +3,6 @@ package org.quuux.opengl.lib;
 public enum BufferType {
     ArrayBuffer,
     ElementArrayBuffer,
+    UniformBuffer,
+    TransformFeedbackBuffer,
 }
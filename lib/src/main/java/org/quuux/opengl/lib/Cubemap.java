@@ -1,9 +1,7 @@
 package org.quuux.opengl.lib;
 
 import org.quuux.opengl.renderer.Command;
-import org.quuux.opengl.renderer.CommandList;
 import org.quuux.opengl.renderer.commands.GenerateMipMap;
-import org.quuux.opengl.renderer.commands.GenerateTexture;
 import org.quuux.opengl.renderer.commands.LoadTexture;
 import org.quuux.opengl.renderer.commands.TextureParameter;
 import org.quuux.opengl.renderer.states.BatchState;
@@ -24,7 +22,8 @@ public class Cubemap extends Texture {
             back,
     }
 
-    private final ResourceUtil.Bitmap[] bitmaps;
+    // replaced when asynchronously loaded faces arrive, see AssetManager
+    private volatile ResourceUtil.Bitmap[] bitmaps;
 
     private static final TextureTarget targets[] = {
             TextureTarget.CUBE_MAP_POSITIVE_X,
@@ -48,10 +47,21 @@ public class Cubemap extends Texture {
         this.bitmaps = bitmaps;
     }
 
+    public void setBitmaps(ResourceUtil.Bitmap[] bitmaps) {
+        this.bitmaps = bitmaps;
+    }
+
+    @Override
+    public long getSize() {
+        long size = 0;
+        for (ResourceUtil.Bitmap bitmap : bitmaps)
+            size += getSize(bitmap);
+        return size;
+    }
+
     @Override
-    public Command initialize(final int unit) {
-        CommandList rv = new CommandList();
-        rv.add(new GenerateTexture(this));
+    public Command upload(final int unit) {
+        ResourceUtil.Bitmap[] bitmaps = this.bitmaps;
         BindTexture ctx = new BindTexture(TextureTarget.CUBE_MAP,this);
 
         for (int i=0; i<bitmaps.length; i++) {
@@ -63,7 +73,7 @@ public class Cubemap extends Texture {
         ctx.add(new TextureParameter(TextureTarget.CUBE_MAP, TextureParameter.Parameter.WRAP_T, wrapT));
         ctx.add(new GenerateMipMap(TextureTarget.CUBE_MAP));
 
-        return rv;
+        return ctx;
     }
 
     @Override
@@ -62,10 +62,18 @@ public class Material {
         return new Material(diffuse, specular, normal, shininess);
     }
 
+    // the 1x1 textures are shared with every other material of the same colors
     public static Material color(Vector3f color, float shininess) {
-        ResourceUtil.Bitmap diffuse = ResourceUtil.getColor(color, 1);
-        ResourceUtil.Bitmap specular = ResourceUtil.getColor(new Vector3f(1, 1, 1), 1);
-        ResourceUtil.Bitmap normal = ResourceUtil.getColor(new Vector3f(0, 0, 1), 1);
-        return new Material(new Texture2D(diffuse), new Texture2D(specular), new Texture2D(normal), shininess);
+        AssetManager assets = AssetManager.get();
+        return new Material(
+                assets.color(color, 1),
+                assets.color(new Vector3f(1, 1, 1), 1),
+                assets.color(new Vector3f(0, 0, 1), 1),
+                shininess);
+    }
+
+    // Hands the textures back, to the cache when they came from one or deleted otherwise
+    public Command dispose() {
+        return AssetManager.get().release(diffuse, specular, normal);
     }
 }
@@ -0,0 +1,16 @@
+package org.quuux.opengl.lib;
+
+import org.quuux.opengl.renderer.Command;
+
+// GPU side state that a ResourceCache can share, count and evict
+public interface Resource {
+
+    // bytes of GPU memory held, counted against the cache's budget
+    long getSize();
+
+    // releases the GPU side, the resource can be initialized again afterwards
+    Command dispose();
+
+    // forgets the GPU side without releasing it, for when the context it lived in is gone
+    void invalidate();
+}
@@ -0,0 +1,154 @@
+package org.quuux.opengl.lib;
+
+import org.quuux.opengl.renderer.Command;
+import org.quuux.opengl.renderer.Renderer;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Shares resources between their users by key. acquire takes a reference and release drops one.
+// A resource nobody references stays cached so the next acquire gets it back for free, until the
+// cache holds more than its budget, then idle resources are deleted least recently released first.
+// Deletes are queued and run on the GL thread by getDisposals().
+public class ResourceCache {
+
+    public static final long DEFAULT_BUDGET = 256L * 1024 * 1024;
+
+    // creates a resource the first time its key is acquired, java.util.function needs Android 24
+    public interface Factory<T extends Resource> {
+        T create();
+    }
+
+    static class Entry {
+        final String key;
+        final Resource resource;
+        int refs;
+
+        Entry(String key, Resource resource) {
+            this.key = key;
+            this.resource = resource;
+        }
+    }
+
+    final Map<String, Entry> entries = new HashMap<>();
+    final Map<Resource, Entry> owners = new IdentityHashMap<>();
+
+    // unreferenced entries, least recently released first
+    final LinkedHashMap<String, Entry> idle = new LinkedHashMap<>();
+
+    final Queue<Command> disposals = new ConcurrentLinkedQueue<>();
+    final Command runDisposals = new Disposals();
+
+    long budget = DEFAULT_BUDGET;
+
+    public synchronized void setBudget(long budget) {
+        this.budget = budget;
+        trim();
+    }
+
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    // bytes held by everything cached, referenced or not
+    public synchronized long getSize() {
+        long size = 0;
+        for (Entry entry : entries.values())
+            size += entry.resource.getSize();
+        return size;
+    }
+
+    public synchronized int getCount() {
+        return entries.size();
+    }
+
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    public synchronized boolean contains(Resource resource) {
+        return owners.containsKey(resource);
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized <T extends Resource> T acquire(String key, Factory<T> factory) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry(key, factory.create());
+            entries.put(key, entry);
+            owners.put(entry.resource, entry);
+        }
+
+        if (entry.refs++ == 0)
+            idle.remove(key);
+
+        trim();
+        return (T) entry.resource;
+    }
+
+    // Resources the cache doesn't know are disposed straight away, the returned command
+    // deletes them. Cached ones are deleted later if at all, and null is returned.
+    public synchronized Command release(Resource resource) {
+        Entry entry = owners.get(resource);
+        if (entry == null)
+            return resource.dispose();
+
+        if (entry.refs <= 0)
+            throw new IllegalStateException("released more often than acquired: " + entry.key);
+
+        if (--entry.refs == 0) {
+            idle.put(entry.key, entry);
+            trim();
+        }
+        return null;
+    }
+
+    private void trim() {
+        long size = getSize();
+        Iterator<Entry> it = idle.values().iterator();
+        while (size > budget && it.hasNext()) {
+            Entry entry = it.next();
+            it.remove();
+            entries.remove(entry.key);
+            owners.remove(entry.resource);
+            size -= entry.resource.getSize();
+            disposals.add(entry.resource.dispose());
+        }
+    }
+
+    // deletes everything idle regardless of the budget
+    public synchronized void evictIdle() {
+        for (Entry entry : idle.values()) {
+            entries.remove(entry.key);
+            owners.remove(entry.resource);
+            disposals.add(entry.resource.dispose());
+        }
+        idle.clear();
+    }
+
+    // after a context loss, every cached resource is initialized again by its next user
+    public synchronized void invalidate() {
+        disposals.clear();
+        for (Entry entry : entries.values())
+            entry.resource.invalidate();
+    }
+
+    // runs on the GL thread once per frame
+    public Command getDisposals() {
+        return runDisposals;
+    }
+
+    class Disposals extends Command {
+        @Override
+        public void run(Renderer renderer) {
+            Command command;
+            while ((command = disposals.poll()) != null)
+                command.run(renderer);
+        }
+    }
+}
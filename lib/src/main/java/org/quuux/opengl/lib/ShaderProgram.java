@@ -4,31 +4,95 @@ import org.quuux.opengl.renderer.Command;
 import org.quuux.opengl.renderer.CommandList;
 import org.quuux.opengl.renderer.commands.CompileShader;
 import org.quuux.opengl.renderer.commands.CreateProgram;
+import org.quuux.opengl.renderer.commands.DeleteProgram;
 import org.quuux.opengl.renderer.commands.LinkProgram;
+import org.quuux.opengl.renderer.commands.TransformFeedbackVaryings;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
-public class ShaderProgram {
+public class ShaderProgram implements Resource {
 
     public int program = -1;
 
-    Map<String, Integer> uniformCache = new HashMap<>();
+    // the name programs are loaded by, null for ones built outside the AssetManager
+    private final String name;
 
-    public Integer getUniformLocation(String name) {
-        return uniformCache.get(name);
+    // set once build has been called, so a program shared through a ResourceCache is only built once
+    boolean built;
+
+    // slot zero stands in for uniforms the linker did not keep
+    public static final int INACTIVE_UNIFORM = 0;
+
+    Map<String, Integer> uniformSlots = new HashMap<>();
+    int[] uniformLocations = {-1};
+
+    public ShaderProgram() {
+        this(null);
+    }
+
+    public ShaderProgram(String name) {
+        this.name = name;
     }
 
+    public String getName() {
+        return name;
+    }
+
+    public int getUniformSlot(String name) {
+        Integer slot = uniformSlots.get(name);
+        return slot != null ? slot : INACTIVE_UNIFORM;
+    }
+
+    public int getUniformLocation(int slot) {
+        return uniformLocations[slot];
+    }
+
+    // called by backends for each active uniform once the program is linked, slots stay stable across relinks
     public void setUniformLocation(String name, int location) {
-        uniformCache.put(name, location);
+        Integer slot = uniformSlots.get(name);
+        if (slot == null) {
+            slot = uniformLocations.length;
+            uniformSlots.put(name, slot);
+            uniformLocations = Arrays.copyOf(uniformLocations, slot + 1);
+        }
+        uniformLocations[slot] = location;
+    }
+
+    @Override
+    public long getSize() {
+        return 0;
+    }
+
+    @Override
+    public Command dispose() {
+        built = false;
+        return new DeleteProgram(this);
+    }
+
+    @Override
+    public void invalidate() {
+        built = false;
+        program = -1;
     }
 
     public static Command build(ShaderProgram program, final String vertexShader, final String fragmentShader) {
+        return build(program, vertexShader, fragmentShader, null);
+    }
 
+    // varyings, when given, are captured by transform feedback
+    public static Command build(ShaderProgram program, final String vertexShader, final String fragmentShader, final String[] varyings) {
         CommandList rv = new CommandList();
+        if (program.built)
+            return rv;
+
+        program.built = true;
         rv.add(new CreateProgram(program));
         rv.add(new CompileShader(program, CompileShader.ShaderType.VERTEX, vertexShader));
         rv.add(new CompileShader(program, CompileShader.ShaderType.FRAGMENT, fragmentShader));
+        if (varyings != null)
+            rv.add(new TransformFeedbackVaryings(program, varyings));
         rv.add(new LinkProgram(program));
 
         return rv;
@@ -1,11 +1,48 @@
 package org.quuux.opengl.lib;
 
 import org.quuux.opengl.renderer.Command;
+import org.quuux.opengl.renderer.CommandList;
+import org.quuux.opengl.renderer.commands.DeleteTexture;
+import org.quuux.opengl.renderer.commands.GenerateTexture;
 import org.quuux.opengl.renderer.states.State;
+import org.quuux.opengl.util.ResourceUtil;
 
-public abstract class Texture {
+public abstract class Texture implements Resource {
     public int texture = -1;
 
-    public abstract Command initialize(int unit);
+    // set once initialize has been built, so a texture shared by several materials is only created once
+    boolean initialized;
+
+    public Command initialize(int unit) {
+        CommandList rv = new CommandList();
+        if (initialized)
+            return rv;
+
+        initialized = true;
+        rv.add(new GenerateTexture(this));
+        rv.add(upload(unit));
+        return rv;
+    }
+
     public abstract State bind(int unit);
+
+    // (re)loads the texture's pixels into the generated texture
+    public abstract Command upload(int unit);
+
+    @Override
+    public Command dispose() {
+        initialized = false;
+        return new DeleteTexture(this);
+    }
+
+    @Override
+    public void invalidate() {
+        initialized = false;
+        texture = -1;
+    }
+
+    // rgba, plus a third again for mipmaps
+    static long getSize(ResourceUtil.Bitmap bitmap) {
+        return bitmap != null ? 4L * bitmap.width * bitmap.height * 4 / 3 : 0;
+    }
 }
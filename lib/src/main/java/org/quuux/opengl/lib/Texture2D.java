@@ -3,7 +3,6 @@ package org.quuux.opengl.lib;
 import org.quuux.opengl.renderer.Command;
 import org.quuux.opengl.renderer.CommandList;
 import org.quuux.opengl.renderer.commands.GenerateMipMap;
-import org.quuux.opengl.renderer.commands.GenerateTexture;
 import org.quuux.opengl.renderer.commands.LoadTexture;
 import org.quuux.opengl.renderer.commands.TextureParameter;
 import org.quuux.opengl.renderer.states.ActivateTexture;
@@ -14,7 +13,8 @@ import org.quuux.opengl.renderer.states.TextureTarget;
 import org.quuux.opengl.util.ResourceUtil;
 
 public class Texture2D extends Texture {
-    private final ResourceUtil.Bitmap bitmap;
+    // replaced when an asynchronously loaded bitmap arrives, see AssetManager
+    private volatile ResourceUtil.Bitmap bitmap;
 
     LoadTexture.Format internalFormat = LoadTexture.Format.RGBA;
     LoadTexture.Format format = LoadTexture.Format.RGBA;
@@ -29,10 +29,24 @@ public class Texture2D extends Texture {
         this.bitmap = bitmap;
     }
 
+    public ResourceUtil.Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    public void setBitmap(ResourceUtil.Bitmap bitmap) {
+        this.bitmap = bitmap;
+    }
+
     @Override
-    public Command initialize(int unit) {
+    public long getSize() {
+        return getSize(bitmap);
+    }
+
+    @Override
+    public Command upload(int unit) {
+        ResourceUtil.Bitmap bitmap = this.bitmap;
+
         CommandList rv = new CommandList();
-        rv.add(new GenerateTexture(this));
         rv.add(new ActivateTexture(unit));
 
         BindTexture ctx = new BindTexture(TextureTarget.TEXTURE_2D,this);
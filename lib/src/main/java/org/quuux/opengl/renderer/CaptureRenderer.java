@@ -0,0 +1,737 @@
+package org.quuux.opengl.renderer;
+
+import org.quuux.opengl.lib.ArrayObject;
+import org.quuux.opengl.lib.BufferObject;
+import org.quuux.opengl.lib.Cubemap;
+import org.quuux.opengl.lib.FrameBuffer;
+import org.quuux.opengl.lib.ShaderProgram;
+import org.quuux.opengl.lib.Texture;
+import org.quuux.opengl.renderer.commands.*;
+import org.quuux.opengl.renderer.states.*;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+// Writes every command reaching the wrapped renderer to a binary trace before passing it on, see
+// Trace for the format and replay. Wrap the backend rather than a StateTrackingRenderer to record
+// what the driver was actually sent. A payload whose hash matches an earlier one is compared with
+// the bytes already in the trace and written once, so re-uploading unchanged data costs an id.
+public class CaptureRenderer implements Renderer, Closeable {
+
+    private static final int STAGING_SIZE = 64 * 1024;
+
+    private final Renderer renderer;
+    private final FileChannel channel;
+    private final ByteBuffer staging = ByteBuffer.allocateDirect(STAGING_SIZE).order(ByteOrder.nativeOrder());
+    private final ByteBuffer readBack = ByteBuffer.allocateDirect(STAGING_SIZE);
+    private ByteBuffer scratch = ByteBuffer.allocate(0);
+    private long written;
+
+    private final Map<Object, Integer> handles = new IdentityHashMap<>();
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final Map<Long, Payload> payloads = new HashMap<>();
+    private int payloadCount;
+
+    private int frames;
+    private long payloadBytes, dedupedBytes;
+
+    public CaptureRenderer(Renderer renderer, File file) throws IOException {
+        this.renderer = renderer;
+        // read as well as written, so repeated payloads can be compared with what was captured
+        this.channel = new RandomAccessFile(file, "rw").getChannel();
+        channel.truncate(0);
+        staging.putInt(Trace.MAGIC).putInt(Trace.VERSION);
+    }
+
+    public Renderer getRenderer() {
+        return renderer;
+    }
+
+    public int getFrameCount() {
+        return frames;
+    }
+
+    // Payload bytes written to the trace
+    public long getPayloadBytes() {
+        return payloadBytes;
+    }
+
+    // Payload bytes that repeated an earlier payload and were written as an id instead
+    public long getDedupedBytes() {
+        return dedupedBytes;
+    }
+
+    // Marks the end of a frame, commands after the last marker are dropped on replay. Finished
+    // frames are flushed so a process that exits without closing still leaves a usable trace.
+    public void endFrame() {
+        begin(Trace.FRAME, 0);
+        frames++;
+        flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private ByteBuffer begin(byte opcode, int size) {
+        reserve(size + 1);
+        return staging.put(opcode);
+    }
+
+    private void reserve(int size) {
+        if (staging.remaining() < size)
+            flush();
+    }
+
+    private void flush() {
+        staging.flip();
+        write(staging);
+        staging.clear();
+    }
+
+    private void write(ByteBuffer data) {
+        try {
+            while (data.hasRemaining())
+                written += channel.write(data);
+        } catch (IOException e) {
+            throw new RendererException("Could not write trace", e);
+        }
+    }
+
+    private void put(ByteBuffer data) {
+        if (data.remaining() <= staging.remaining()) {
+            staging.put(data);
+        } else {
+            flush();
+            if (data.remaining() <= staging.remaining())
+                staging.put(data);
+            else
+                write(data);
+        }
+    }
+
+    private int handle(Object object, byte kind) {
+        if (object == null)
+            return Trace.NONE;
+
+        Integer id = handles.get(object);
+        if (id == null) {
+            id = handles.size();
+            handles.put(object, id);
+            begin(Trace.DEFINE_HANDLE, 5).put(kind).putInt(id);
+        }
+        return id;
+    }
+
+    private int buffer(BufferObject buffer) {
+        return handle(buffer, Trace.HANDLE_BUFFER);
+    }
+
+    private int array(ArrayObject array) {
+        return handle(array, Trace.HANDLE_ARRAY);
+    }
+
+    private int texture(Texture texture) {
+        return handle(texture, texture instanceof Cubemap ? Trace.HANDLE_CUBEMAP : Trace.HANDLE_TEXTURE_2D);
+    }
+
+    // programs carry their name so replays can tell them apart
+    private int program(ShaderProgram program) {
+        if (program == null)
+            return Trace.NONE;
+
+        Integer id = handles.get(program);
+        if (id == null) {
+            int name = program.getName() != null ? string(program.getName()) : Trace.NONE;
+            id = handles.size();
+            handles.put(program, id);
+            begin(Trace.DEFINE_HANDLE, 9).put(Trace.HANDLE_PROGRAM).putInt(id).putInt(name);
+        }
+        return id;
+    }
+
+    private int framebuffer(FrameBuffer framebuffer) {
+        return handle(framebuffer, Trace.HANDLE_FRAMEBUFFER);
+    }
+
+    private int string(String value) {
+        Integer id = strings.get(value);
+        if (id == null) {
+            id = strings.size();
+            strings.put(value, id);
+            byte[] bytes = value.getBytes(Trace.UTF_8);
+            begin(Trace.DEFINE_STRING, 8).putInt(id).putInt(bytes.length);
+            put(ByteBuffer.wrap(bytes));
+        }
+        return id;
+    }
+
+    // size is in bytes, read from the buffer's position
+    private int payload(Buffer data, int size) {
+        if (data == null)
+            return Trace.NONE;
+
+        ByteBuffer bytes = bytes(data, size);
+        long key = hash(bytes);
+        Payload payload = payloads.get(key);
+        if (payload != null && matches(payload, bytes)) {
+            dedupedBytes += size;
+            return payload.id;
+        }
+
+        // a colliding payload replaces the one it collided with
+        int id = payloadCount++;
+        begin(Trace.DEFINE_PAYLOAD, 8).putInt(id).putInt(size);
+        put(bytes);
+        payloads.put(key, new Payload(id, written + staging.position() - size, size));
+        payloadBytes += size;
+        return id;
+    }
+
+    static class Payload {
+        final int id;
+        final long offset;
+        final int size;
+
+        Payload(int id, long offset, int size) {
+            this.id = id;
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+    // A payload is either still staged or already written whole, since put flushes before
+    // anything that doesn't fit. Written payloads are read back from the trace a chunk at a time.
+    private boolean matches(Payload payload, ByteBuffer bytes) {
+        int size = bytes.remaining();
+        if (payload.size != size)
+            return false;
+
+        int start = bytes.position();
+        if (payload.offset >= written)
+            return equal(staging, (int) (payload.offset - written), bytes, start, size);
+
+        for (int done=0; done<size; ) {
+            readBack.clear();
+            readBack.limit(Math.min(readBack.capacity(), size - done));
+            try {
+                while (readBack.hasRemaining())
+                    if (channel.read(readBack, payload.offset + done + readBack.position()) < 0)
+                        return false;
+            } catch (IOException e) {
+                throw new RendererException("Could not read trace", e);
+            }
+            if (!equal(readBack, 0, bytes, start + done, readBack.limit()))
+                return false;
+            done += readBack.limit();
+        }
+        return true;
+    }
+
+    private static boolean equal(ByteBuffer a, int from, ByteBuffer b, int start, int size) {
+        for (int i=0; i<size; i++)
+            if (a.get(from + i) != b.get(start + i))
+                return false;
+        return true;
+    }
+
+    private ByteBuffer bytes(Buffer data, int size) {
+        if (data instanceof ByteBuffer) {
+            ByteBuffer rv = ((ByteBuffer) data).duplicate();
+            rv.limit(rv.position() + size);
+            return rv;
+        }
+
+        if (scratch.capacity() < size)
+            scratch = ByteBuffer.allocate(Integer.highestOneBit(size) << 1).order(ByteOrder.nativeOrder());
+        scratch.clear();
+
+        if (data instanceof FloatBuffer) {
+            FloatBuffer in = ((FloatBuffer) data).duplicate();
+            in.limit(in.position() + size / 4);
+            scratch.asFloatBuffer().put(in);
+        } else if (data instanceof IntBuffer) {
+            IntBuffer in = ((IntBuffer) data).duplicate();
+            in.limit(in.position() + size / 4);
+            scratch.asIntBuffer().put(in);
+        } else {
+            throw new UnsupportedException("Unknown buffer type: " + data.getClass());
+        }
+
+        scratch.limit(size);
+        return scratch;
+    }
+
+    // 64 bit FNV-1a taken a word at a time, seeded with the length
+    static long hash(ByteBuffer data) {
+        final long prime = 0x100000001b3L;
+        long rv = 0xcbf29ce484222325L ^ data.remaining();
+        int i = data.position();
+        final int end = data.limit();
+        for (; i + 8 <= end; i += 8)
+            rv = (rv ^ data.getLong(i)) * prime;
+        for (; i < end; i++)
+            rv = (rv ^ data.get(i)) * prime;
+        return rv ^ (rv >>> 29);
+    }
+
+    @Override
+    public ErrorCheck getErrorCheck() {
+        return renderer.getErrorCheck();
+    }
+
+    @Override
+    public void setErrorCheck(ErrorCheck errorCheck) {
+        renderer.setErrorCheck(errorCheck);
+    }
+
+    @Override
+    public void checkError() {
+        renderer.checkError();
+    }
+
+    // Commands
+
+    @Override
+    public void run(BufferData command) {
+        int data = payload(command.getData(), command.getSize());
+        begin(Trace.BUFFER_DATA, 10)
+                .put((byte) command.getTarget().ordinal())
+                .putInt(command.getSize())
+                .put((byte) command.getUsage().ordinal())
+                .putInt(data);
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(BufferSubData command) {
+        int data = payload(command.getData(), command.getSize());
+        begin(Trace.BUFFER_SUB_DATA, 13)
+                .put((byte) command.getTarget().ordinal())
+                .putInt(command.getOffset())
+                .putInt(command.getSize())
+                .putInt(data);
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(Clear command) {
+        int mask = 0;
+        for (Clear.Mode mode : command.getModes())
+            mask |= 1 << mode.ordinal();
+        begin(Trace.CLEAR, 1).put((byte) mask);
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(CompileShader command) {
+        int program = program(command.getProgram());
+        int source = string(command.getShaderSource());
+        begin(Trace.COMPILE_SHADER, 9)
+                .putInt(program)
+                .put((byte) command.getShaderType().ordinal())
+                .putInt(source);
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(CreateProgram command) {
+        int program = program(command.getProgram());
+        begin(Trace.CREATE_PROGRAM, 4).putInt(program);
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(DrawArrays command) {
+        begin(Trace.DRAW_ARRAYS, 9)
+                .put((byte) command.getMode().ordinal())
+                .putInt(command.getFirst())
+                .putInt(command.getCount());
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(DrawElements command) {
+        begin(Trace.DRAW_ELEMENTS, 5)
+                .put((byte) command.getMode().ordinal())
+                .putInt(command.getCount());
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(GenerateArray command) {
+        int array = array(command.getVao());
+        begin(Trace.GENERATE_ARRAY, 4).putInt(array);
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(GenerateBuffer command) {
+        int buffer = buffer(command.getVbo());
+        begin(Trace.GENERATE_BUFFER, 4).putInt(buffer);
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(GenerateFramebuffer command) {
+        int framebuffer = framebuffer(command.getFramebuffer());
+        int texture = texture(command.getTexture());
+        begin(Trace.GENERATE_FRAMEBUFFER, 16)
+                .putInt(framebuffer)
+                .putInt(texture)
+                .putInt(command.getFramebuffer().width)
+                .putInt(command.getFramebuffer().height);
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(GenerateTexture command) {
+        int texture = texture(command.getTexture());
+        begin(Trace.GENERATE_TEXTURE, 4).putInt(texture);
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(LinkProgram command) {
+        int program = program(command.getProgram());
+        begin(Trace.LINK_PROGRAM, 4).putInt(program);
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(LoadTexture command) {
+        int texture = texture(command.getTexture());
+        ByteBuffer buffer = command.getBuffer();
+        int data = payload(buffer, buffer != null ? buffer.remaining() : 0);
+        begin(Trace.LOAD_TEXTURE, 19)
+                .putInt(texture)
+                .put((byte) command.getTarget().ordinal())
+                .put((byte) command.getInternalFormat().ordinal())
+                .putInt(command.getWidth())
+                .putInt(command.getHeight())
+                .put((byte) command.getFormat().ordinal())
+                .putInt(data);
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(SetUniformMatrix command) {
+        int program = program(command.getShader());
+        int attribute = string(command.getAttribute());
+        int data = payload(command.getBuffer(), command.getCount() * 16 * 4);
+        begin(Trace.SET_UNIFORM_MATRIX, 17)
+                .putInt(program)
+                .putInt(attribute)
+                .putInt(command.getCount())
+                .put((byte) (command.isTranspose() ? 1 : 0))
+                .putInt(data);
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(SetUniformFloat command) {
+        int program = program(command.getProgram());
+        int attribute = string(command.getAttribute());
+        begin(Trace.SET_UNIFORM_FLOAT, 25)
+                .putInt(program)
+                .putInt(attribute)
+                .put((byte) command.getSize())
+                .putFloat(command.getX())
+                .putFloat(command.getY())
+                .putFloat(command.getZ())
+                .putFloat(command.getW());
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(SetUniformInt command) {
+        int program = program(command.getProgram());
+        int attribute = string(command.getAttribute());
+        begin(Trace.SET_UNIFORM_INT, 25)
+                .putInt(program)
+                .putInt(attribute)
+                .put((byte) command.getSize())
+                .putInt(command.getX())
+                .putInt(command.getY())
+                .putInt(command.getZ())
+                .putInt(command.getW());
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(VertexAttribPointer command) {
+        begin(Trace.VERTEX_ATTRIB_POINTER, 18)
+                .putInt(command.getIndex())
+                .putInt(command.getSize())
+                .put((byte) command.getType().ordinal())
+                .put((byte) (command.isNormalized() ? 1 : 0))
+                .putInt(command.getStride())
+                .putInt(command.getPointer());
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(EnableVertexAttribArray command) {
+        begin(Trace.ENABLE_VERTEX_ATTRIB_ARRAY, 4).putInt(command.getIndex());
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(ClearColor command) {
+        begin(Trace.CLEAR_COLOR, 16)
+                .putFloat(command.getR())
+                .putFloat(command.getG())
+                .putFloat(command.getB())
+                .putFloat(command.getA());
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(BlendFunc command) {
+        begin(Trace.BLEND_FUNC, 2)
+                .put((byte) command.getSfactor().ordinal())
+                .put((byte) command.getDfactor().ordinal());
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(DepthFunc command) {
+        begin(Trace.DEPTH_FUNC, 1).put((byte) command.getDepthFunc().ordinal());
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(TextureParameter command) {
+        int value = Trace.isWrap(command.getParameter()) ? command.getWrap().ordinal() : command.getFilter().ordinal();
+        begin(Trace.TEXTURE_PARAMETER, 3)
+                .put((byte) command.getTarget().ordinal())
+                .put((byte) command.getParameter().ordinal())
+                .put((byte) value);
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(GenerateMipMap command) {
+        begin(Trace.GENERATE_MIP_MAP, 1).put((byte) command.getTarget().ordinal());
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(BindBufferBase command) {
+        int buffer = buffer(command.getBuffer());
+        begin(Trace.BIND_BUFFER_BASE, 9)
+                .put((byte) command.getTarget().ordinal())
+                .putInt(command.getIndex())
+                .putInt(buffer);
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(UniformBlockBinding command) {
+        int program = program(command.getProgram());
+        int block = string(command.getBlock());
+        begin(Trace.UNIFORM_BLOCK_BINDING, 12)
+                .putInt(program)
+                .putInt(block)
+                .putInt(command.getBinding());
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(DrawArraysInstanced command) {
+        begin(Trace.DRAW_ARRAYS_INSTANCED, 13)
+                .put((byte) command.getMode().ordinal())
+                .putInt(command.getFirst())
+                .putInt(command.getCount())
+                .putInt(command.getInstanceCount());
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(DrawElementsInstanced command) {
+        begin(Trace.DRAW_ELEMENTS_INSTANCED, 9)
+                .put((byte) command.getMode().ordinal())
+                .putInt(command.getCount())
+                .putInt(command.getInstanceCount());
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(VertexAttribDivisor command) {
+        begin(Trace.VERTEX_ATTRIB_DIVISOR, 8)
+                .putInt(command.getIndex())
+                .putInt(command.getDivisor());
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(TransformFeedbackVaryings command) {
+        int program = program(command.getProgram());
+        String[] varyings = command.getVaryings();
+        int[] ids = new int[varyings.length];
+        for (int i=0; i<varyings.length; i++)
+            ids[i] = string(varyings[i]);
+
+        ByteBuffer record = begin(Trace.TRANSFORM_FEEDBACK_VARYINGS, 8 + 4 * ids.length)
+                .putInt(program)
+                .putInt(ids.length);
+        for (int i=0; i<ids.length; i++)
+            record.putInt(ids[i]);
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(BeginTransformFeedback command) {
+        begin(Trace.BEGIN_TRANSFORM_FEEDBACK, 1).put((byte) command.getMode().ordinal());
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(EndTransformFeedback command) {
+        begin(Trace.END_TRANSFORM_FEEDBACK, 0);
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(DeleteTexture command) {
+        int texture = texture(command.getTexture());
+        begin(Trace.DELETE_TEXTURE, 4).putInt(texture);
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(DeleteProgram command) {
+        int program = program(command.getProgram());
+        begin(Trace.DELETE_PROGRAM, 4).putInt(program);
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(DeleteBuffer command) {
+        int buffer = buffer(command.getVbo());
+        begin(Trace.DELETE_BUFFER, 4).putInt(buffer);
+        renderer.run(command);
+    }
+
+    // States
+
+    @Override
+    public void set(ActivateTexture command) {
+        begin(Trace.SET_ACTIVATE_TEXTURE, 4).putInt(command.getTextureUnit());
+        renderer.set(command);
+    }
+
+    @Override
+    public void clear(ActivateTexture command) {
+        begin(Trace.CLEAR_ACTIVATE_TEXTURE, 4).putInt(command.getTextureUnit());
+        renderer.clear(command);
+    }
+
+    @Override
+    public void set(BindBuffer command) {
+        bindBuffer(Trace.SET_BIND_BUFFER, command);
+        renderer.set(command);
+    }
+
+    @Override
+    public void clear(BindBuffer command) {
+        bindBuffer(Trace.CLEAR_BIND_BUFFER, command);
+        renderer.clear(command);
+    }
+
+    private void bindBuffer(byte opcode, BindBuffer command) {
+        int buffer = buffer(command.getVBO());
+        begin(opcode, 5)
+                .put((byte) command.getTarget().ordinal())
+                .putInt(buffer);
+    }
+
+    @Override
+    public void set(BindFramebuffer command) {
+        int framebuffer = framebuffer(command.getFramebuffer());
+        begin(Trace.SET_BIND_FRAMEBUFFER, 4).putInt(framebuffer);
+        renderer.set(command);
+    }
+
+    @Override
+    public void clear(BindFramebuffer command) {
+        int framebuffer = framebuffer(command.getFramebuffer());
+        begin(Trace.CLEAR_BIND_FRAMEBUFFER, 4).putInt(framebuffer);
+        renderer.clear(command);
+    }
+
+    @Override
+    public void set(Enable command) {
+        begin(Trace.SET_ENABLE, 1).put((byte) command.getCapability().ordinal());
+        renderer.set(command);
+    }
+
+    @Override
+    public void clear(Enable command) {
+        begin(Trace.CLEAR_ENABLE, 1).put((byte) command.getCapability().ordinal());
+        renderer.clear(command);
+    }
+
+    @Override
+    public void set(UseProgram command) {
+        int program = program(command.getProgram());
+        begin(Trace.SET_USE_PROGRAM, 4).putInt(program);
+        renderer.set(command);
+    }
+
+    @Override
+    public void clear(UseProgram command) {
+        int program = program(command.getProgram());
+        begin(Trace.CLEAR_USE_PROGRAM, 4).putInt(program);
+        renderer.clear(command);
+    }
+
+    @Override
+    public void set(BindTexture command) {
+        bindTexture(Trace.SET_BIND_TEXTURE, command);
+        renderer.set(command);
+    }
+
+    @Override
+    public void clear(BindTexture command) {
+        bindTexture(Trace.CLEAR_BIND_TEXTURE, command);
+        renderer.clear(command);
+    }
+
+    private void bindTexture(byte opcode, BindTexture command) {
+        int texture = texture(command.getTexture());
+        begin(opcode, 5)
+                .put((byte) command.getTarget().ordinal())
+                .putInt(texture);
+    }
+
+    @Override
+    public void set(BindArray command) {
+        int array = array(command.getVAO());
+        begin(Trace.SET_BIND_ARRAY, 4).putInt(array);
+        renderer.set(command);
+    }
+
+    @Override
+    public void clear(BindArray command) {
+        int array = array(command.getVAO());
+        begin(Trace.CLEAR_BIND_ARRAY, 4).putInt(array);
+        renderer.clear(command);
+    }
+}
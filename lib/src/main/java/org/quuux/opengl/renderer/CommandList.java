@@ -1,5 +1,7 @@
 package org.quuux.opengl.renderer;
 
+import org.quuux.opengl.util.EventUtil;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -20,10 +22,27 @@ public class CommandList extends Command {
     public void run(final Renderer renderer) {
         // System.out.println("run: " + Arrays.toString(commands.toArray()));
 
+        Object event = EventUtil.beginExecute();
+        final Renderer.ErrorCheck errorCheck = renderer.getErrorCheck();
+
         for (int i=0; i<commands.size(); i++) {
             Command command = commands.get(i);
             command.run(renderer);
+            if (errorCheck == Renderer.ErrorCheck.COMMAND)
+                checkError(renderer, command);
+        }
+
+        if (errorCheck == Renderer.ErrorCheck.COMMAND_LIST)
+            checkError(renderer, this);
+
+        EventUtil.endExecute(event, commands.size());
+    }
+
+    static void checkError(Renderer renderer, Object command) {
+        try {
             renderer.checkError();
+        } catch (Renderer.RendererException e) {
+            throw new Renderer.RendererException(e.getMessage() + " after " + command, e);
         }
     }
 }
@@ -0,0 +1,433 @@
+package org.quuux.opengl.renderer;
+
+import org.quuux.opengl.renderer.commands.*;
+import org.quuux.opengl.renderer.states.*;
+import org.quuux.opengl.util.EventUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// A command tree flattened into an opcode stream. Each op packs an opcode and an index
+// into the operand table, so replay is a single loop with no recursion. Error checks are kept
+// in tables beside the stream, so replay under FRAME or NONE runs nothing but the ops.
+public class CompiledCommandList extends Command {
+
+    private static final int OPCODE_SHIFT = 24;
+    private static final int OPERAND_MASK = (1 << OPCODE_SHIFT) - 1;
+
+    private static final int RUN_COMMAND = 2;
+    private static final int SET_STATE = 3;
+    private static final int CLEAR_STATE = 4;
+
+    private static final int RUN_BUFFER_DATA = 10;
+    private static final int RUN_CLEAR = 11;
+    private static final int RUN_COMPILE_SHADER = 12;
+    private static final int RUN_CREATE_PROGRAM = 13;
+    private static final int RUN_DRAW_ARRAYS = 14;
+    private static final int RUN_DRAW_ELEMENTS = 15;
+    private static final int RUN_GENERATE_ARRAY = 16;
+    private static final int RUN_GENERATE_BUFFER = 17;
+    private static final int RUN_GENERATE_FRAMEBUFFER = 18;
+    private static final int RUN_GENERATE_TEXTURE = 19;
+    private static final int RUN_LINK_PROGRAM = 20;
+    private static final int RUN_LOAD_TEXTURE = 21;
+    private static final int RUN_SET_UNIFORM_MATRIX = 22;
+    private static final int RUN_SET_UNIFORM_FLOAT = 23;
+    private static final int RUN_VERTEX_ATTRIB_POINTER = 24;
+    private static final int RUN_ENABLE_VERTEX_ATTRIB_ARRAY = 25;
+    private static final int RUN_CLEAR_COLOR = 26;
+    private static final int RUN_BLEND_FUNC = 27;
+    private static final int RUN_DEPTH_FUNC = 28;
+    private static final int RUN_TEXTURE_PARAMETER = 29;
+    private static final int RUN_GENERATE_MIP_MAP = 30;
+    private static final int RUN_BUFFER_SUB_DATA = 31;
+    private static final int RUN_SET_UNIFORM_INT = 32;
+    private static final int RUN_BIND_BUFFER_BASE = 33;
+    private static final int RUN_UNIFORM_BLOCK_BINDING = 34;
+    private static final int RUN_DRAW_ARRAYS_INSTANCED = 35;
+    private static final int RUN_DRAW_ELEMENTS_INSTANCED = 36;
+    private static final int RUN_VERTEX_ATTRIB_DIVISOR = 37;
+    private static final int RUN_TRANSFORM_FEEDBACK_VARYINGS = 38;
+    private static final int RUN_BEGIN_TRANSFORM_FEEDBACK = 39;
+    private static final int RUN_END_TRANSFORM_FEEDBACK = 40;
+    private static final int RUN_DELETE_TEXTURE = 41;
+    private static final int RUN_DELETE_PROGRAM = 42;
+    private static final int RUN_DELETE_BUFFER = 43;
+
+    private static final int SET_ACTIVATE_TEXTURE = 64;
+    private static final int CLEAR_ACTIVATE_TEXTURE = 65;
+    private static final int SET_BIND_BUFFER = 66;
+    private static final int CLEAR_BIND_BUFFER = 67;
+    private static final int SET_BIND_FRAMEBUFFER = 68;
+    private static final int CLEAR_BIND_FRAMEBUFFER = 69;
+    private static final int SET_ENABLE = 70;
+    private static final int CLEAR_ENABLE = 71;
+    private static final int SET_USE_PROGRAM = 72;
+    private static final int CLEAR_USE_PROGRAM = 73;
+    private static final int SET_BIND_TEXTURE = 74;
+    private static final int CLEAR_BIND_TEXTURE = 75;
+    private static final int SET_BIND_ARRAY = 76;
+    private static final int CLEAR_BIND_ARRAY = 77;
+
+    private final int[] ops;
+    private final Object[] operands;
+    private final Checks commandChecks;
+    private final Checks listChecks;
+
+    private CompiledCommandList(int[] ops, Object[] operands, Checks commandChecks, Checks listChecks) {
+        this.ops = ops;
+        this.operands = operands;
+        this.commandChecks = commandChecks;
+        this.listChecks = listChecks;
+    }
+
+    public static CompiledCommandList compile(Command command) {
+        Compiler compiler = new Compiler();
+        compiler.add(command);
+        return compiler.build();
+    }
+
+    public int size() {
+        return ops.length;
+    }
+
+    @Override
+    public void run(final Renderer renderer) {
+        Object event = EventUtil.beginExecute();
+        final int[] ops = this.ops;
+        final Renderer.ErrorCheck errorCheck = renderer.getErrorCheck();
+
+        if (errorCheck == Renderer.ErrorCheck.COMMAND) {
+            runChecked(renderer, commandChecks);
+        } else if (errorCheck == Renderer.ErrorCheck.COMMAND_LIST) {
+            runChecked(renderer, listChecks);
+        } else {
+            for (int i=0; i<ops.length; i++) {
+                execute(renderer, ops[i]);
+            }
+        }
+
+        EventUtil.endExecute(event, ops.length);
+    }
+
+    private void runChecked(final Renderer renderer, final Checks checks) {
+        int next = 0;
+        for (int i=0; i<ops.length; i++) {
+            next = checks.check(renderer, next, i);
+            execute(renderer, ops[i]);
+        }
+        checks.check(renderer, next, ops.length);
+    }
+
+    private void execute(final Renderer renderer, final int op) {
+        final Object operand = operands[op & OPERAND_MASK];
+
+        switch (op >>> OPCODE_SHIFT) {
+            case RUN_COMMAND: ((Command) operand).run(renderer); break;
+            case SET_STATE: ((State) operand).set(renderer); break;
+            case CLEAR_STATE: ((State) operand).clear(renderer); break;
+
+            case RUN_BUFFER_DATA: ((BufferData) operand).run(renderer); break;
+            case RUN_CLEAR: renderer.run((Clear) operand); break;
+            case RUN_COMPILE_SHADER: ((CompileShader) operand).run(renderer); break;
+            case RUN_CREATE_PROGRAM: renderer.run((CreateProgram) operand); break;
+            case RUN_DRAW_ARRAYS: renderer.run((DrawArrays) operand); break;
+            case RUN_DRAW_ELEMENTS: renderer.run((DrawElements) operand); break;
+            case RUN_GENERATE_ARRAY: renderer.run((GenerateArray) operand); break;
+            case RUN_GENERATE_BUFFER: renderer.run((GenerateBuffer) operand); break;
+            case RUN_GENERATE_FRAMEBUFFER: renderer.run((GenerateFramebuffer) operand); break;
+            case RUN_GENERATE_TEXTURE: renderer.run((GenerateTexture) operand); break;
+            case RUN_LINK_PROGRAM: ((LinkProgram) operand).run(renderer); break;
+            case RUN_LOAD_TEXTURE: ((LoadTexture) operand).run(renderer); break;
+            case RUN_SET_UNIFORM_MATRIX: renderer.run((SetUniformMatrix) operand); break;
+            case RUN_SET_UNIFORM_FLOAT: renderer.run((SetUniformFloat) operand); break;
+            case RUN_SET_UNIFORM_INT: renderer.run((SetUniformInt) operand); break;
+            case RUN_VERTEX_ATTRIB_POINTER: renderer.run((VertexAttribPointer) operand); break;
+            case RUN_ENABLE_VERTEX_ATTRIB_ARRAY: renderer.run((EnableVertexAttribArray) operand); break;
+            case RUN_CLEAR_COLOR: renderer.run((ClearColor) operand); break;
+            case RUN_BLEND_FUNC: renderer.run((BlendFunc) operand); break;
+            case RUN_DEPTH_FUNC: renderer.run((DepthFunc) operand); break;
+            case RUN_TEXTURE_PARAMETER: renderer.run((TextureParameter) operand); break;
+            case RUN_GENERATE_MIP_MAP: renderer.run((GenerateMipMap) operand); break;
+            case RUN_BUFFER_SUB_DATA: renderer.run((BufferSubData) operand); break;
+            case RUN_BIND_BUFFER_BASE: renderer.run((BindBufferBase) operand); break;
+            case RUN_UNIFORM_BLOCK_BINDING: renderer.run((UniformBlockBinding) operand); break;
+            case RUN_DRAW_ARRAYS_INSTANCED: renderer.run((DrawArraysInstanced) operand); break;
+            case RUN_DRAW_ELEMENTS_INSTANCED: renderer.run((DrawElementsInstanced) operand); break;
+            case RUN_VERTEX_ATTRIB_DIVISOR: renderer.run((VertexAttribDivisor) operand); break;
+            case RUN_TRANSFORM_FEEDBACK_VARYINGS: renderer.run((TransformFeedbackVaryings) operand); break;
+            case RUN_BEGIN_TRANSFORM_FEEDBACK: renderer.run((BeginTransformFeedback) operand); break;
+            case RUN_END_TRANSFORM_FEEDBACK: renderer.run((EndTransformFeedback) operand); break;
+            case RUN_DELETE_TEXTURE: renderer.run((DeleteTexture) operand); break;
+            case RUN_DELETE_PROGRAM: renderer.run((DeleteProgram) operand); break;
+            case RUN_DELETE_BUFFER: renderer.run((DeleteBuffer) operand); break;
+
+            case SET_ACTIVATE_TEXTURE: renderer.set((ActivateTexture) operand); break;
+            case CLEAR_ACTIVATE_TEXTURE: renderer.clear((ActivateTexture) operand); break;
+            case SET_BIND_BUFFER: renderer.set((BindBuffer) operand); break;
+            case CLEAR_BIND_BUFFER: renderer.clear((BindBuffer) operand); break;
+            case SET_BIND_FRAMEBUFFER: renderer.set((BindFramebuffer) operand); break;
+            case CLEAR_BIND_FRAMEBUFFER: renderer.clear((BindFramebuffer) operand); break;
+            case SET_ENABLE: renderer.set((Enable) operand); break;
+            case CLEAR_ENABLE: renderer.clear((Enable) operand); break;
+            case SET_USE_PROGRAM: renderer.set((UseProgram) operand); break;
+            case CLEAR_USE_PROGRAM: renderer.clear((UseProgram) operand); break;
+            case SET_BIND_TEXTURE: renderer.set((BindTexture) operand); break;
+            case CLEAR_BIND_TEXTURE: renderer.clear((BindTexture) operand); break;
+            case SET_BIND_ARRAY: renderer.set((BindArray) operand); break;
+            case CLEAR_BIND_ARRAY: renderer.clear((BindArray) operand); break;
+
+            default:
+                throw new Renderer.RendererException("Unknown opcode: " + (op >>> OPCODE_SHIFT));
+        }
+    }
+
+    // The commands or lists to name in an error, each checked before the op at its position.
+    static class Checks {
+        int[] at = new int[16];
+        Object[] subjects = new Object[16];
+        int size;
+
+        void add(int position, Object subject) {
+            if (size == at.length) {
+                at = Arrays.copyOf(at, size * 2);
+                subjects = Arrays.copyOf(subjects, size * 2);
+            }
+            at[size] = position;
+            subjects[size] = subject;
+            size++;
+        }
+
+        void addAll(Checks checks, int base) {
+            for (int i=0; i<checks.size; i++)
+                add(base + checks.at[i], checks.subjects[i]);
+        }
+
+        Checks trim() {
+            at = Arrays.copyOf(at, size);
+            subjects = Arrays.copyOf(subjects, size);
+            return this;
+        }
+
+        // runs the checks due before position, returning the next one still to come
+        int check(Renderer renderer, int next, int position) {
+            while (next < size && at[next] == position)
+                CommandList.checkError(renderer, subjects[next++]);
+            return next;
+        }
+    }
+
+    static class Compiler {
+        int[] ops = new int[64];
+        int size;
+        List<Object> operands = new ArrayList<>();
+        Checks commandChecks = new Checks();
+        Checks listChecks = new Checks();
+
+        Compiler() {
+            // index zero is reserved for ops without an operand
+            operands.add(null);
+        }
+
+        CompiledCommandList build() {
+            return new CompiledCommandList(Arrays.copyOf(ops, size), operands.toArray(), commandChecks.trim(), listChecks.trim());
+        }
+
+        void emit(int opcode, Object operand) {
+            int index = 0;
+            if (operand != null) {
+                index = operands.size();
+                if (index > OPERAND_MASK)
+                    throw new Renderer.RendererException("Command list too long to compile");
+                operands.add(operand);
+            }
+            emit((opcode << OPCODE_SHIFT) | index);
+        }
+
+        void emit(int op) {
+            if (size == ops.length)
+                ops = Arrays.copyOf(ops, size * 2);
+            ops[size++] = op;
+        }
+
+        void add(Command command) {
+            if (command == null)
+                return;
+
+            if (command instanceof CompiledCommandList) {
+                splice((CompiledCommandList) command);
+            } else if (command instanceof State) {
+                State state = (State) command;
+                set(state);
+                addChildren(state);
+                clear(state);
+            } else if (command instanceof CommandList) {
+                addChildren((CommandList) command);
+            } else {
+                emit(getOpcode(command), command);
+            }
+        }
+
+        void addChildren(CommandList list) {
+            for (int i=0; i<list.commands.size(); i++) {
+                Command command = list.commands.get(i);
+                add(command);
+                commandChecks.add(size, command);
+            }
+            listChecks.add(size, list);
+        }
+
+        void splice(CompiledCommandList list) {
+            commandChecks.addAll(list.commandChecks, size);
+            listChecks.addAll(list.listChecks, size);
+
+            int base = operands.size();
+            if (base + list.operands.length - 1 > OPERAND_MASK)
+                throw new Renderer.RendererException("Command list too long to compile");
+            operands.addAll(Arrays.asList(list.operands));
+            for (int i=0; i<list.ops.length; i++) {
+                int op = list.ops[i];
+                int index = op & OPERAND_MASK;
+                emit(index == 0 ? op : (op & ~OPERAND_MASK) | (base + index));
+            }
+        }
+
+        void set(State state) {
+            if (state instanceof BatchState) {
+                State[] states = ((BatchState) state).getStates();
+                for (int i=0; i<states.length; i++)
+                    set(states[i]);
+            } else {
+                emit(getSetOpcode(state), state);
+            }
+        }
+
+        void clear(State state) {
+            if (state instanceof BatchState) {
+                State[] states = ((BatchState) state).getStates();
+                for (int i=0; i<states.length; i++)
+                    clear(states[i]);
+            } else {
+                emit(getClearOpcode(state), state);
+            }
+        }
+
+        static int getOpcode(Command command) {
+            final int rv;
+            if (command instanceof BufferData)
+                rv = RUN_BUFFER_DATA;
+            else if (command instanceof Clear)
+                rv = RUN_CLEAR;
+            else if (command instanceof CompileShader)
+                rv = RUN_COMPILE_SHADER;
+            else if (command instanceof CreateProgram)
+                rv = RUN_CREATE_PROGRAM;
+            else if (command instanceof DrawArrays)
+                rv = RUN_DRAW_ARRAYS;
+            else if (command instanceof DrawElements)
+                rv = RUN_DRAW_ELEMENTS;
+            else if (command instanceof GenerateArray)
+                rv = RUN_GENERATE_ARRAY;
+            else if (command instanceof GenerateBuffer)
+                rv = RUN_GENERATE_BUFFER;
+            else if (command instanceof GenerateFramebuffer)
+                rv = RUN_GENERATE_FRAMEBUFFER;
+            else if (command instanceof GenerateTexture)
+                rv = RUN_GENERATE_TEXTURE;
+            else if (command instanceof LinkProgram)
+                rv = RUN_LINK_PROGRAM;
+            else if (command instanceof LoadTexture)
+                rv = RUN_LOAD_TEXTURE;
+            else if (command instanceof SetUniformMatrix)
+                rv = RUN_SET_UNIFORM_MATRIX;
+            else if (command instanceof SetUniformFloat)
+                rv = RUN_SET_UNIFORM_FLOAT;
+            else if (command instanceof SetUniformInt)
+                rv = RUN_SET_UNIFORM_INT;
+            else if (command instanceof VertexAttribPointer)
+                rv = RUN_VERTEX_ATTRIB_POINTER;
+            else if (command instanceof EnableVertexAttribArray)
+                rv = RUN_ENABLE_VERTEX_ATTRIB_ARRAY;
+            else if (command instanceof ClearColor)
+                rv = RUN_CLEAR_COLOR;
+            else if (command instanceof BlendFunc)
+                rv = RUN_BLEND_FUNC;
+            else if (command instanceof DepthFunc)
+                rv = RUN_DEPTH_FUNC;
+            else if (command instanceof TextureParameter)
+                rv = RUN_TEXTURE_PARAMETER;
+            else if (command instanceof GenerateMipMap)
+                rv = RUN_GENERATE_MIP_MAP;
+            else if (command instanceof BufferSubData)
+                rv = RUN_BUFFER_SUB_DATA;
+            else if (command instanceof BindBufferBase)
+                rv = RUN_BIND_BUFFER_BASE;
+            else if (command instanceof UniformBlockBinding)
+                rv = RUN_UNIFORM_BLOCK_BINDING;
+            else if (command instanceof DrawArraysInstanced)
+                rv = RUN_DRAW_ARRAYS_INSTANCED;
+            else if (command instanceof DrawElementsInstanced)
+                rv = RUN_DRAW_ELEMENTS_INSTANCED;
+            else if (command instanceof VertexAttribDivisor)
+                rv = RUN_VERTEX_ATTRIB_DIVISOR;
+            else if (command instanceof TransformFeedbackVaryings)
+                rv = RUN_TRANSFORM_FEEDBACK_VARYINGS;
+            else if (command instanceof BeginTransformFeedback)
+                rv = RUN_BEGIN_TRANSFORM_FEEDBACK;
+            else if (command instanceof EndTransformFeedback)
+                rv = RUN_END_TRANSFORM_FEEDBACK;
+            else if (command instanceof DeleteTexture)
+                rv = RUN_DELETE_TEXTURE;
+            else if (command instanceof DeleteProgram)
+                rv = RUN_DELETE_PROGRAM;
+            else if (command instanceof DeleteBuffer)
+                rv = RUN_DELETE_BUFFER;
+            else
+                rv = RUN_COMMAND;
+            return rv;
+        }
+
+        static int getSetOpcode(State state) {
+            final int rv;
+            if (state instanceof ActivateTexture)
+                rv = SET_ACTIVATE_TEXTURE;
+            else if (state instanceof BindBuffer)
+                rv = SET_BIND_BUFFER;
+            else if (state instanceof BindFramebuffer)
+                rv = SET_BIND_FRAMEBUFFER;
+            else if (state instanceof Enable)
+                rv = SET_ENABLE;
+            else if (state instanceof UseProgram)
+                rv = SET_USE_PROGRAM;
+            else if (state instanceof BindTexture)
+                rv = SET_BIND_TEXTURE;
+            else if (state instanceof BindArray)
+                rv = SET_BIND_ARRAY;
+            else
+                rv = SET_STATE;
+            return rv;
+        }
+
+        static int getClearOpcode(State state) {
+            final int rv;
+            if (state instanceof ActivateTexture)
+                rv = CLEAR_ACTIVATE_TEXTURE;
+            else if (state instanceof BindBuffer)
+                rv = CLEAR_BIND_BUFFER;
+            else if (state instanceof BindFramebuffer)
+                rv = CLEAR_BIND_FRAMEBUFFER;
+            else if (state instanceof Enable)
+                rv = CLEAR_ENABLE;
+            else if (state instanceof UseProgram)
+                rv = CLEAR_USE_PROGRAM;
+            else if (state instanceof BindTexture)
+                rv = CLEAR_BIND_TEXTURE;
+            else if (state instanceof BindArray)
+                rv = CLEAR_BIND_ARRAY;
+            else
+                rv = CLEAR_STATE;
+            return rv;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.quuux.opengl.renderer;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+public class Frame {
+
+    // renderers switched to per-command checks by a failed frame, keyed weakly so a dropped
+    // renderer isn't kept alive
+    private static final Map<Renderer, Boolean> narrowing = Collections.synchronizedMap(new WeakHashMap<Renderer, Boolean>());
+
+    // Runs a frame's commands, checking for errors once at the end when the renderer asks for
+    // per-frame checks. Replaying a failed frame would repeat its uploads, object creation and
+    // draws, so instead the renderer switches to per-command checks until a later frame names
+    // the command at fault, then goes back to checking per frame.
+    public static void run(Renderer renderer, Command frame) {
+        try {
+            frame.run(renderer);
+        } catch (Renderer.RendererException e) {
+            if (narrowing.remove(renderer) != null)
+                renderer.setErrorCheck(Renderer.ErrorCheck.FRAME);
+            throw e;
+        }
+
+        if (renderer.getErrorCheck() != Renderer.ErrorCheck.FRAME)
+            return;
+
+        try {
+            renderer.checkError();
+        } catch (Renderer.RendererException e) {
+            renderer.setErrorCheck(Renderer.ErrorCheck.COMMAND);
+            narrowing.put(renderer, Boolean.TRUE);
+            throw new Renderer.RendererException(e.getMessage() + " (checking every command from the next frame)", e);
+        }
+    }
+
+    // Runs commands that only ever run once, like a scene's initialize or dispose, checking every
+    // command since there is no later frame to name a failure in. The renderer's policy is restored
+    // afterwards, and a renderer that checks nothing is left alone.
+    public static void runChecked(Renderer renderer, Command command) {
+        Renderer.ErrorCheck errorCheck = renderer.getErrorCheck();
+        if (errorCheck == Renderer.ErrorCheck.NONE) {
+            command.run(renderer);
+            return;
+        }
+
+        renderer.setErrorCheck(Renderer.ErrorCheck.COMMAND);
+        try {
+            command.run(renderer);
+            CommandList.checkError(renderer, command);
+        } finally {
+            renderer.setErrorCheck(errorCheck);
+        }
+    }
+}
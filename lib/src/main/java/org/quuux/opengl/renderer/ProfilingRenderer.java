@@ -0,0 +1,558 @@
+package org.quuux.opengl.renderer;
+
+import org.quuux.opengl.renderer.commands.*;
+import org.quuux.opengl.renderer.states.*;
+
+import java.nio.ByteBuffer;
+
+// Counts and times every call reaching the wrapped renderer into preallocated per-frame counters.
+// Wrap the backend rather than a StateTrackingRenderer to see what the driver was actually sent,
+// and leave it out of the chain when not profiling so it costs nothing. Times are the CPU side of
+// each call, a GL backend may defer the real work to a later call or the swap.
+public class ProfilingRenderer implements Renderer {
+
+    public enum Category {
+        DRAW,
+        STATE_SET,
+        STATE_CLEAR,
+        UNIFORM,
+        UPLOAD,
+        OTHER,
+    }
+
+    // One per Renderer method
+    public enum Type {
+        BUFFER_DATA(Category.UPLOAD),
+        BUFFER_SUB_DATA(Category.UPLOAD),
+        CLEAR(Category.OTHER),
+        COMPILE_SHADER(Category.OTHER),
+        CREATE_PROGRAM(Category.OTHER),
+        DRAW_ARRAYS(Category.DRAW),
+        DRAW_ELEMENTS(Category.DRAW),
+        GENERATE_ARRAY(Category.OTHER),
+        GENERATE_BUFFER(Category.OTHER),
+        GENERATE_FRAMEBUFFER(Category.OTHER),
+        GENERATE_TEXTURE(Category.OTHER),
+        LINK_PROGRAM(Category.OTHER),
+        LOAD_TEXTURE(Category.UPLOAD),
+        SET_UNIFORM_MATRIX(Category.UNIFORM),
+        SET_UNIFORM_FLOAT(Category.UNIFORM),
+        SET_UNIFORM_INT(Category.UNIFORM),
+        VERTEX_ATTRIB_POINTER(Category.OTHER),
+        ENABLE_VERTEX_ATTRIB_ARRAY(Category.OTHER),
+        CLEAR_COLOR(Category.OTHER),
+        BLEND_FUNC(Category.OTHER),
+        DEPTH_FUNC(Category.OTHER),
+        TEXTURE_PARAMETER(Category.OTHER),
+        GENERATE_MIP_MAP(Category.OTHER),
+        BIND_BUFFER_BASE(Category.OTHER),
+        UNIFORM_BLOCK_BINDING(Category.UNIFORM),
+        DRAW_ARRAYS_INSTANCED(Category.DRAW),
+        DRAW_ELEMENTS_INSTANCED(Category.DRAW),
+        VERTEX_ATTRIB_DIVISOR(Category.OTHER),
+        TRANSFORM_FEEDBACK_VARYINGS(Category.OTHER),
+        BEGIN_TRANSFORM_FEEDBACK(Category.OTHER),
+        END_TRANSFORM_FEEDBACK(Category.OTHER),
+        DELETE_TEXTURE(Category.OTHER),
+        DELETE_PROGRAM(Category.OTHER),
+        DELETE_BUFFER(Category.OTHER),
+        SET_ACTIVATE_TEXTURE(Category.STATE_SET),
+        CLEAR_ACTIVATE_TEXTURE(Category.STATE_CLEAR),
+        SET_BIND_BUFFER(Category.STATE_SET),
+        CLEAR_BIND_BUFFER(Category.STATE_CLEAR),
+        SET_BIND_FRAMEBUFFER(Category.STATE_SET),
+        CLEAR_BIND_FRAMEBUFFER(Category.STATE_CLEAR),
+        SET_ENABLE(Category.STATE_SET),
+        CLEAR_ENABLE(Category.STATE_CLEAR),
+        SET_USE_PROGRAM(Category.STATE_SET),
+        CLEAR_USE_PROGRAM(Category.STATE_CLEAR),
+        SET_BIND_TEXTURE(Category.STATE_SET),
+        CLEAR_BIND_TEXTURE(Category.STATE_CLEAR),
+        SET_BIND_ARRAY(Category.STATE_SET),
+        CLEAR_BIND_ARRAY(Category.STATE_CLEAR);
+
+        private final Category category;
+
+        Type(Category category) {
+            this.category = category;
+        }
+
+        public Category getCategory() {
+            return category;
+        }
+    }
+
+    private static final Type[] TYPES = Type.values();
+    private static final Category[] CATEGORIES = Category.values();
+
+    // Counters for one frame. Instances are reused, copy one with set() to keep it past endFrame().
+    public static class Stats {
+        private final long[] counts = new long[TYPES.length];
+        private final long[] nanos = new long[TYPES.length];
+        private final long[] categoryCounts = new long[CATEGORIES.length];
+        private final long[] categoryNanos = new long[CATEGORIES.length];
+        private long uploadedBytes;
+
+        void record(Type type, long elapsed) {
+            counts[type.ordinal()]++;
+            nanos[type.ordinal()] += elapsed;
+            categoryCounts[type.category.ordinal()]++;
+            categoryNanos[type.category.ordinal()] += elapsed;
+        }
+
+        void upload(long bytes) {
+            uploadedBytes += bytes;
+        }
+
+        public long getCount(Type type) {
+            return counts[type.ordinal()];
+        }
+
+        public long getNanos(Type type) {
+            return nanos[type.ordinal()];
+        }
+
+        public long getCount(Category category) {
+            return categoryCounts[category.ordinal()];
+        }
+
+        public long getNanos(Category category) {
+            return categoryNanos[category.ordinal()];
+        }
+
+        public long getUploadedBytes() {
+            return uploadedBytes;
+        }
+
+        public long getTotalCount() {
+            long rv = 0;
+            for (int i=0; i<categoryCounts.length; i++)
+                rv += categoryCounts[i];
+            return rv;
+        }
+
+        public long getTotalNanos() {
+            long rv = 0;
+            for (int i=0; i<categoryNanos.length; i++)
+                rv += categoryNanos[i];
+            return rv;
+        }
+
+        // The type that took the most time, or null for an empty frame
+        public Type getSlowest() {
+            Type rv = null;
+            for (int i=0; i<nanos.length; i++)
+                if (counts[i] > 0 && (rv == null || nanos[i] > nanos[rv.ordinal()]))
+                    rv = TYPES[i];
+            return rv;
+        }
+
+        public void set(Stats other) {
+            System.arraycopy(other.counts, 0, counts, 0, counts.length);
+            System.arraycopy(other.nanos, 0, nanos, 0, nanos.length);
+            System.arraycopy(other.categoryCounts, 0, categoryCounts, 0, categoryCounts.length);
+            System.arraycopy(other.categoryNanos, 0, categoryNanos, 0, categoryNanos.length);
+            uploadedBytes = other.uploadedBytes;
+        }
+
+        public void reset() {
+            for (int i=0; i<counts.length; i++)
+                counts[i] = nanos[i] = 0;
+            for (int i=0; i<categoryCounts.length; i++)
+                categoryCounts[i] = categoryNanos[i] = 0;
+            uploadedBytes = 0;
+        }
+
+        @Override
+        public String toString() {
+            Type slowest = getSlowest();
+            return String.format("calls: %d (%.3f ms) / draws: %d / state sets: %d / state clears: %d / uniforms: %d / uploads: %d (%d bytes) / slowest: %s",
+                    getTotalCount(), getTotalNanos() / 1e6,
+                    getCount(Category.DRAW), getCount(Category.STATE_SET), getCount(Category.STATE_CLEAR),
+                    getCount(Category.UNIFORM), getCount(Category.UPLOAD), uploadedBytes,
+                    slowest != null ? String.format("%s %.3f ms", slowest, getNanos(slowest) / 1e6) : "none");
+        }
+    }
+
+    private final Renderer renderer;
+    private final Stats current = new Stats();
+    private final Stats last = new Stats();
+
+    public ProfilingRenderer(Renderer renderer) {
+        this.renderer = renderer;
+    }
+
+    public Renderer getRenderer() {
+        return renderer;
+    }
+
+    // Counters for the last completed frame, overwritten by the next endFrame()
+    public Stats getLastFrame() {
+        return last;
+    }
+
+    public void endFrame() {
+        last.set(current);
+        current.reset();
+    }
+
+    @Override
+    public ErrorCheck getErrorCheck() {
+        return renderer.getErrorCheck();
+    }
+
+    @Override
+    public void setErrorCheck(ErrorCheck errorCheck) {
+        renderer.setErrorCheck(errorCheck);
+    }
+
+    @Override
+    public void checkError() {
+        renderer.checkError();
+    }
+
+    // Commands
+
+    @Override
+    public void run(BufferData command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.BUFFER_DATA, System.nanoTime() - start);
+        current.upload(command.getSize());
+    }
+
+    @Override
+    public void run(BufferSubData command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.BUFFER_SUB_DATA, System.nanoTime() - start);
+        current.upload(command.getSize());
+    }
+
+    @Override
+    public void run(Clear command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.CLEAR, System.nanoTime() - start);
+    }
+
+    @Override
+    public void run(CompileShader command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.COMPILE_SHADER, System.nanoTime() - start);
+    }
+
+    @Override
+    public void run(CreateProgram command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.CREATE_PROGRAM, System.nanoTime() - start);
+    }
+
+    @Override
+    public void run(DrawArrays command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.DRAW_ARRAYS, System.nanoTime() - start);
+    }
+
+    @Override
+    public void run(DrawElements command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.DRAW_ELEMENTS, System.nanoTime() - start);
+    }
+
+    @Override
+    public void run(GenerateArray command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.GENERATE_ARRAY, System.nanoTime() - start);
+    }
+
+    @Override
+    public void run(GenerateBuffer command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.GENERATE_BUFFER, System.nanoTime() - start);
+    }
+
+    @Override
+    public void run(GenerateFramebuffer command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.GENERATE_FRAMEBUFFER, System.nanoTime() - start);
+    }
+
+    @Override
+    public void run(GenerateTexture command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.GENERATE_TEXTURE, System.nanoTime() - start);
+    }
+
+    @Override
+    public void run(LinkProgram command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.LINK_PROGRAM, System.nanoTime() - start);
+    }
+
+    @Override
+    public void run(LoadTexture command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.LOAD_TEXTURE, System.nanoTime() - start);
+        ByteBuffer buffer = command.getBuffer();
+        if (buffer != null)
+            current.upload(buffer.remaining());
+    }
+
+    @Override
+    public void run(SetUniformMatrix command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.SET_UNIFORM_MATRIX, System.nanoTime() - start);
+    }
+
+    @Override
+    public void run(SetUniformFloat command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.SET_UNIFORM_FLOAT, System.nanoTime() - start);
+    }
+
+    @Override
+    public void run(SetUniformInt command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.SET_UNIFORM_INT, System.nanoTime() - start);
+    }
+
+    @Override
+    public void run(VertexAttribPointer command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.VERTEX_ATTRIB_POINTER, System.nanoTime() - start);
+    }
+
+    @Override
+    public void run(EnableVertexAttribArray command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.ENABLE_VERTEX_ATTRIB_ARRAY, System.nanoTime() - start);
+    }
+
+    @Override
+    public void run(ClearColor command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.CLEAR_COLOR, System.nanoTime() - start);
+    }
+
+    @Override
+    public void run(BlendFunc command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.BLEND_FUNC, System.nanoTime() - start);
+    }
+
+    @Override
+    public void run(DepthFunc command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.DEPTH_FUNC, System.nanoTime() - start);
+    }
+
+    @Override
+    public void run(TextureParameter command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.TEXTURE_PARAMETER, System.nanoTime() - start);
+    }
+
+    @Override
+    public void run(GenerateMipMap command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.GENERATE_MIP_MAP, System.nanoTime() - start);
+    }
+
+    @Override
+    public void run(BindBufferBase command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.BIND_BUFFER_BASE, System.nanoTime() - start);
+    }
+
+    @Override
+    public void run(UniformBlockBinding command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.UNIFORM_BLOCK_BINDING, System.nanoTime() - start);
+    }
+
+    @Override
+    public void run(DrawArraysInstanced command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.DRAW_ARRAYS_INSTANCED, System.nanoTime() - start);
+    }
+
+    @Override
+    public void run(DrawElementsInstanced command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.DRAW_ELEMENTS_INSTANCED, System.nanoTime() - start);
+    }
+
+    @Override
+    public void run(VertexAttribDivisor command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.VERTEX_ATTRIB_DIVISOR, System.nanoTime() - start);
+    }
+
+    @Override
+    public void run(TransformFeedbackVaryings command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.TRANSFORM_FEEDBACK_VARYINGS, System.nanoTime() - start);
+    }
+
+    @Override
+    public void run(BeginTransformFeedback command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.BEGIN_TRANSFORM_FEEDBACK, System.nanoTime() - start);
+    }
+
+    @Override
+    public void run(EndTransformFeedback command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.END_TRANSFORM_FEEDBACK, System.nanoTime() - start);
+    }
+
+    @Override
+    public void run(DeleteTexture command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.DELETE_TEXTURE, System.nanoTime() - start);
+    }
+
+    @Override
+    public void run(DeleteProgram command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.DELETE_PROGRAM, System.nanoTime() - start);
+    }
+
+    @Override
+    public void run(DeleteBuffer command) {
+        long start = System.nanoTime();
+        renderer.run(command);
+        current.record(Type.DELETE_BUFFER, System.nanoTime() - start);
+    }
+
+    // States
+
+    @Override
+    public void set(ActivateTexture command) {
+        long start = System.nanoTime();
+        renderer.set(command);
+        current.record(Type.SET_ACTIVATE_TEXTURE, System.nanoTime() - start);
+    }
+
+    @Override
+    public void clear(ActivateTexture command) {
+        long start = System.nanoTime();
+        renderer.clear(command);
+        current.record(Type.CLEAR_ACTIVATE_TEXTURE, System.nanoTime() - start);
+    }
+
+    @Override
+    public void set(BindBuffer command) {
+        long start = System.nanoTime();
+        renderer.set(command);
+        current.record(Type.SET_BIND_BUFFER, System.nanoTime() - start);
+    }
+
+    @Override
+    public void clear(BindBuffer command) {
+        long start = System.nanoTime();
+        renderer.clear(command);
+        current.record(Type.CLEAR_BIND_BUFFER, System.nanoTime() - start);
+    }
+
+    @Override
+    public void set(BindFramebuffer command) {
+        long start = System.nanoTime();
+        renderer.set(command);
+        current.record(Type.SET_BIND_FRAMEBUFFER, System.nanoTime() - start);
+    }
+
+    @Override
+    public void clear(BindFramebuffer command) {
+        long start = System.nanoTime();
+        renderer.clear(command);
+        current.record(Type.CLEAR_BIND_FRAMEBUFFER, System.nanoTime() - start);
+    }
+
+    @Override
+    public void set(Enable command) {
+        long start = System.nanoTime();
+        renderer.set(command);
+        current.record(Type.SET_ENABLE, System.nanoTime() - start);
+    }
+
+    @Override
+    public void clear(Enable command) {
+        long start = System.nanoTime();
+        renderer.clear(command);
+        current.record(Type.CLEAR_ENABLE, System.nanoTime() - start);
+    }
+
+    @Override
+    public void set(UseProgram command) {
+        long start = System.nanoTime();
+        renderer.set(command);
+        current.record(Type.SET_USE_PROGRAM, System.nanoTime() - start);
+    }
+
+    @Override
+    public void clear(UseProgram command) {
+        long start = System.nanoTime();
+        renderer.clear(command);
+        current.record(Type.CLEAR_USE_PROGRAM, System.nanoTime() - start);
+    }
+
+    @Override
+    public void set(BindTexture command) {
+        long start = System.nanoTime();
+        renderer.set(command);
+        current.record(Type.SET_BIND_TEXTURE, System.nanoTime() - start);
+    }
+
+    @Override
+    public void clear(BindTexture command) {
+        long start = System.nanoTime();
+        renderer.clear(command);
+        current.record(Type.CLEAR_BIND_TEXTURE, System.nanoTime() - start);
+    }
+
+    @Override
+    public void set(BindArray command) {
+        long start = System.nanoTime();
+        renderer.set(command);
+        current.record(Type.SET_BIND_ARRAY, System.nanoTime() - start);
+    }
+
+    @Override
+    public void clear(BindArray command) {
+        long start = System.nanoTime();
+        renderer.clear(command);
+        current.record(Type.CLEAR_BIND_ARRAY, System.nanoTime() - start);
+    }
+}
@@ -1,5 +1,8 @@
 package org.quuux.opengl.renderer;
 
+// Renderables only record commands, a Renderer runs them on the thread that owns the GL context.
+// draw() may be called from worker threads, concurrently for different renderables, so it must
+// not touch a Renderer or state shared with other renderables.
 public interface Renderable {
     Command initialize();
     Command dispose();
@@ -9,6 +9,10 @@ public interface Renderer {
         public RendererException(String message) {
             super(message);
         }
+
+        public RendererException(String message, Throwable cause) {
+            super(message, cause);
+        }
     }
     class UnsupportedException extends RendererException {
         public UnsupportedException(String message) {
@@ -16,10 +20,21 @@ public interface Renderer {
         }
     }
 
+    // How often command execution asks the backend for errors
+    enum ErrorCheck {
+        COMMAND,
+        COMMAND_LIST,
+        FRAME,
+        NONE,
+    }
+
+    ErrorCheck getErrorCheck();
+    void setErrorCheck(ErrorCheck errorCheck);
     void checkError();
 
     // Commands
     void run(BufferData command);
+    void run(BufferSubData command);
     void run(Clear command);
     void run(CompileShader command);
     void run(CreateProgram command);
@@ -32,7 +47,8 @@ public interface Renderer {
     void run(LinkProgram command);
     void run(LoadTexture command);
     void run(SetUniformMatrix command);
-    void run(SetUniform command);
+    void run(SetUniformFloat command);
+    void run(SetUniformInt command);
     void run(VertexAttribPointer command);
     void run(EnableVertexAttribArray command);
     void run(ClearColor command);
@@ -40,6 +56,17 @@ public interface Renderer {
     void run(DepthFunc command);
     void run(TextureParameter command);
     void run(GenerateMipMap command);
+    void run(BindBufferBase command);
+    void run(UniformBlockBinding command);
+    void run(DrawArraysInstanced command);
+    void run(DrawElementsInstanced command);
+    void run(VertexAttribDivisor command);
+    void run(TransformFeedbackVaryings command);
+    void run(BeginTransformFeedback command);
+    void run(EndTransformFeedback command);
+    void run(DeleteTexture command);
+    void run(DeleteProgram command);
+    void run(DeleteBuffer command);
 
     // States
     void set(ActivateTexture command);
@@ -0,0 +1,458 @@
+package org.quuux.opengl.renderer;
+
+import org.quuux.opengl.lib.BufferType;
+import org.quuux.opengl.renderer.commands.*;
+import org.quuux.opengl.renderer.states.*;
+
+// Shadows bound GL state and defers set/clear calls until a command needs them, dropping
+// any that would leave the bound state unchanged. Wraps any backend renderer.
+public class StateTrackingRenderer implements Renderer {
+
+    private static final int UNKNOWN = Integer.MIN_VALUE;
+    private static final int MAX_TEXTURE_UNITS = 32;
+
+    static class Slot {
+        State command;
+        boolean set;
+        int value;
+        int applied = UNKNOWN;
+
+        void request(State command, boolean set, int value) {
+            this.command = command;
+            this.set = set;
+            this.value = value;
+        }
+
+        boolean isPending() {
+            return command != null && value != applied;
+        }
+    }
+
+    private final Renderer renderer;
+
+    private final Slot framebuffer = new Slot();
+    private final Slot program = new Slot();
+    private final Slot array = new Slot();
+    private final Slot[] buffers = slots(BufferType.values().length);
+    private final Slot[] capabilities = slots(Enable.Capability.values().length);
+    private final Slot[][] textures = new Slot[MAX_TEXTURE_UNITS][];
+
+    private final ActivateTexture[] units = new ActivateTexture[MAX_TEXTURE_UNITS];
+    private int activeUnit = 0;
+    private int appliedUnit = UNKNOWN;
+    private int dirtyUnits;
+    private boolean dirty;
+
+    private int requested, issued, removed;
+
+    public StateTrackingRenderer(Renderer renderer) {
+        this.renderer = renderer;
+        for (int i=0; i<MAX_TEXTURE_UNITS; i++) {
+            textures[i] = slots(TextureTarget.values().length);
+            units[i] = new ActivateTexture(i);
+        }
+    }
+
+    private static Slot[] slots(int count) {
+        Slot[] rv = new Slot[count];
+        for (int i=0; i<count; i++)
+            rv[i] = new Slot();
+        return rv;
+    }
+
+    public Renderer getRenderer() {
+        return renderer;
+    }
+
+    // Number of set/clear calls dropped during the last completed frame
+    public int getRemovedCalls() {
+        return removed;
+    }
+
+    public void endFrame() {
+        removed = requested - issued;
+        requested = issued = 0;
+    }
+
+    // Forget everything known about the bound state, e.g. after foreign GL calls
+    public void invalidate() {
+        framebuffer.applied = program.applied = array.applied = UNKNOWN;
+        for (int i=0; i<buffers.length; i++)
+            buffers[i].applied = UNKNOWN;
+        for (int i=0; i<capabilities.length; i++)
+            capabilities[i].applied = UNKNOWN;
+        for (int i=0; i<MAX_TEXTURE_UNITS; i++)
+            for (int j=0; j<textures[i].length; j++)
+                textures[i][j].applied = UNKNOWN;
+        appliedUnit = UNKNOWN;
+        dirtyUnits = -1;
+        dirty = true;
+    }
+
+    public void flush() {
+        if (!dirty)
+            return;
+
+        apply(framebuffer);
+        apply(program);
+
+        if (array.isPending()) {
+            apply(array);
+            // the element array binding is part of the vertex array state
+            buffers[BufferType.ElementArrayBuffer.ordinal()].applied = UNKNOWN;
+        }
+
+        for (int i=0; i<buffers.length; i++)
+            apply(buffers[i]);
+
+        for (int unit=0; dirtyUnits != 0 && unit<MAX_TEXTURE_UNITS; unit++) {
+            if ((dirtyUnits & (1 << unit)) == 0)
+                continue;
+            Slot[] targets = textures[unit];
+            for (int i=0; i<targets.length; i++) {
+                if (targets[i].isPending()) {
+                    activate(unit);
+                    apply(targets[i]);
+                }
+            }
+        }
+        dirtyUnits = 0;
+
+        activate(activeUnit);
+
+        for (int i=0; i<capabilities.length; i++)
+            apply(capabilities[i]);
+
+        dirty = false;
+    }
+
+    private void apply(Slot slot) {
+        if (!slot.isPending())
+            return;
+        if (slot.set)
+            slot.command.set(renderer);
+        else
+            slot.command.clear(renderer);
+        slot.applied = slot.value;
+        issued++;
+    }
+
+    private void activate(int unit) {
+        if (appliedUnit == unit)
+            return;
+        renderer.set(units[unit]);
+        appliedUnit = unit;
+        issued++;
+    }
+
+    private void request(Slot slot, State command, boolean set, int value) {
+        requested++;
+        slot.request(command, set, value);
+        dirty |= slot.isPending();
+    }
+
+    @Override
+    public ErrorCheck getErrorCheck() {
+        return renderer.getErrorCheck();
+    }
+
+    @Override
+    public void setErrorCheck(ErrorCheck errorCheck) {
+        renderer.setErrorCheck(errorCheck);
+    }
+
+    @Override
+    public void checkError() {
+        renderer.checkError();
+    }
+
+    // Commands
+
+    @Override
+    public void run(BufferData command) {
+        flush();
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(BufferSubData command) {
+        flush();
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(Clear command) {
+        flush();
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(CompileShader command) {
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(CreateProgram command) {
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(DrawArrays command) {
+        flush();
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(DrawElements command) {
+        flush();
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(GenerateArray command) {
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(GenerateBuffer command) {
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(GenerateFramebuffer command) {
+        flush();
+        renderer.run(command);
+        // backends bind the new framebuffer and its texture while building it
+        invalidate();
+    }
+
+    @Override
+    public void run(GenerateTexture command) {
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(LinkProgram command) {
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(LoadTexture command) {
+        flush();
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(SetUniformMatrix command) {
+        flush();
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(SetUniformFloat command) {
+        flush();
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(SetUniformInt command) {
+        flush();
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(VertexAttribPointer command) {
+        flush();
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(EnableVertexAttribArray command) {
+        flush();
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(ClearColor command) {
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(BlendFunc command) {
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(DepthFunc command) {
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(TextureParameter command) {
+        flush();
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(GenerateMipMap command) {
+        flush();
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(BindBufferBase command) {
+        flush();
+        renderer.run(command);
+        // also replaces the target's generic binding
+        buffers[command.getTarget().ordinal()].applied = UNKNOWN;
+    }
+
+    @Override
+    public void run(UniformBlockBinding command) {
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(DrawArraysInstanced command) {
+        flush();
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(DrawElementsInstanced command) {
+        flush();
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(VertexAttribDivisor command) {
+        flush();
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(TransformFeedbackVaryings command) {
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(BeginTransformFeedback command) {
+        flush();
+        renderer.run(command);
+    }
+
+    @Override
+    public void run(EndTransformFeedback command) {
+        renderer.run(command);
+    }
+
+    // a deleted texture is unbound from every unit and its name can come back from the next
+    // GenerateTexture, so nothing bound to it can be trusted
+    @Override
+    public void run(DeleteTexture command) {
+        // backends reset the handle as they delete it
+        int texture = command.getTexture().texture;
+        flush();
+        renderer.run(command);
+        for (int i=0; i<MAX_TEXTURE_UNITS; i++)
+            for (int j=0; j<textures[i].length; j++)
+                if (textures[i][j].applied == texture)
+                    textures[i][j].applied = UNKNOWN;
+    }
+
+    @Override
+    public void run(DeleteProgram command) {
+        int name = command.getProgram().program;
+        flush();
+        renderer.run(command);
+        if (program.applied == name)
+            program.applied = UNKNOWN;
+    }
+
+    // a deleted buffer is unbound from every target it was bound to
+    @Override
+    public void run(DeleteBuffer command) {
+        int name = command.getVbo().vbo;
+        flush();
+        renderer.run(command);
+        for (int i=0; i<buffers.length; i++)
+            if (buffers[i].applied == name)
+                buffers[i].applied = UNKNOWN;
+    }
+
+    // States
+
+    @Override
+    public void set(ActivateTexture command) {
+        requested++;
+        activeUnit = command.getTextureUnit();
+        dirty |= activeUnit != appliedUnit;
+    }
+
+    @Override
+    public void clear(ActivateTexture command) {
+        requested++;
+    }
+
+    @Override
+    public void set(BindBuffer command) {
+        request(buffers[command.getTarget().ordinal()], command, true, command.getVBO().vbo);
+    }
+
+    @Override
+    public void clear(BindBuffer command) {
+        request(buffers[command.getTarget().ordinal()], command, false, 0);
+    }
+
+    @Override
+    public void set(BindFramebuffer command) {
+        request(framebuffer, command, true, command.getFramebuffer().fbo);
+    }
+
+    @Override
+    public void clear(BindFramebuffer command) {
+        request(framebuffer, command, false, 0);
+    }
+
+    @Override
+    public void set(Enable command) {
+        request(capabilities[command.getCapability().ordinal()], command, true, 1);
+    }
+
+    @Override
+    public void clear(Enable command) {
+        request(capabilities[command.getCapability().ordinal()], command, false, 0);
+    }
+
+    @Override
+    public void set(UseProgram command) {
+        request(program, command, true, command.getProgram().program);
+    }
+
+    @Override
+    public void clear(UseProgram command) {
+        request(program, command, false, 0);
+    }
+
+    @Override
+    public void set(BindTexture command) {
+        request(textures[activeUnit][command.getTarget().ordinal()], command, true, command.getTexture().texture);
+        dirtyUnits |= 1 << activeUnit;
+    }
+
+    @Override
+    public void clear(BindTexture command) {
+        request(textures[activeUnit][command.getTarget().ordinal()], command, false, 0);
+        dirtyUnits |= 1 << activeUnit;
+    }
+
+    @Override
+    public void set(BindArray command) {
+        request(array, command, true, command.getVAO().vao);
+    }
+
+    @Override
+    public void clear(BindArray command) {
+        request(array, command, false, 0);
+    }
+}
@@ -0,0 +1,603 @@
+package org.quuux.opengl.renderer;
+
+import org.quuux.opengl.lib.ArrayObject;
+import org.quuux.opengl.lib.BufferObject;
+import org.quuux.opengl.lib.BufferType;
+import org.quuux.opengl.lib.Cubemap;
+import org.quuux.opengl.lib.FrameBuffer;
+import org.quuux.opengl.lib.ShaderProgram;
+import org.quuux.opengl.lib.Texture;
+import org.quuux.opengl.lib.Texture2D;
+import org.quuux.opengl.renderer.commands.*;
+import org.quuux.opengl.renderer.states.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// A binary trace written by CaptureRenderer, memory mapped and decoded once into commands so
+// frames can be replayed into any renderer with no parsing on the way. Payloads are read only
+// slices of the mapping rather than copies.
+//
+// The file is a header followed by records, each an opcode byte and its fields in native byte
+// order. Handles, strings and payloads are defined by their own records before the first command
+// that refers to them, commands then refer to them by id. Program handles also carry the name the
+// program was loaded by, so a replay can pick out programs the way the capturing run did. A frame
+// ends with a FRAME record, commands after the last one belong to an unfinished frame and are dropped.
+public class Trace {
+
+    static final int MAGIC = 0x51545243;
+    static final int VERSION = 2;
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // no handle or payload
+    static final int NONE = -1;
+
+    static final byte DEFINE_HANDLE = 1;
+    static final byte DEFINE_STRING = 2;
+    static final byte DEFINE_PAYLOAD = 3;
+    static final byte FRAME = 4;
+
+    static final byte HANDLE_BUFFER = 0;
+    static final byte HANDLE_ARRAY = 1;
+    static final byte HANDLE_TEXTURE_2D = 2;
+    static final byte HANDLE_CUBEMAP = 3;
+    static final byte HANDLE_PROGRAM = 4;
+    static final byte HANDLE_FRAMEBUFFER = 5;
+
+    static final byte BUFFER_DATA = 10;
+    static final byte CLEAR = 11;
+    static final byte COMPILE_SHADER = 12;
+    static final byte CREATE_PROGRAM = 13;
+    static final byte DRAW_ARRAYS = 14;
+    static final byte DRAW_ELEMENTS = 15;
+    static final byte GENERATE_ARRAY = 16;
+    static final byte GENERATE_BUFFER = 17;
+    static final byte GENERATE_FRAMEBUFFER = 18;
+    static final byte GENERATE_TEXTURE = 19;
+    static final byte LINK_PROGRAM = 20;
+    static final byte LOAD_TEXTURE = 21;
+    static final byte SET_UNIFORM_MATRIX = 22;
+    static final byte SET_UNIFORM_FLOAT = 23;
+    static final byte VERTEX_ATTRIB_POINTER = 24;
+    static final byte ENABLE_VERTEX_ATTRIB_ARRAY = 25;
+    static final byte CLEAR_COLOR = 26;
+    static final byte BLEND_FUNC = 27;
+    static final byte DEPTH_FUNC = 28;
+    static final byte TEXTURE_PARAMETER = 29;
+    static final byte GENERATE_MIP_MAP = 30;
+    static final byte BUFFER_SUB_DATA = 31;
+    static final byte SET_UNIFORM_INT = 32;
+    static final byte BIND_BUFFER_BASE = 33;
+    static final byte UNIFORM_BLOCK_BINDING = 34;
+    static final byte DRAW_ARRAYS_INSTANCED = 35;
+    static final byte DRAW_ELEMENTS_INSTANCED = 36;
+    static final byte VERTEX_ATTRIB_DIVISOR = 37;
+    static final byte TRANSFORM_FEEDBACK_VARYINGS = 38;
+    static final byte BEGIN_TRANSFORM_FEEDBACK = 39;
+    static final byte END_TRANSFORM_FEEDBACK = 40;
+    static final byte DELETE_TEXTURE = 41;
+    static final byte DELETE_PROGRAM = 42;
+    static final byte DELETE_BUFFER = 43;
+
+    static final byte SET_ACTIVATE_TEXTURE = 64;
+    static final byte CLEAR_ACTIVATE_TEXTURE = 65;
+    static final byte SET_BIND_BUFFER = 66;
+    static final byte CLEAR_BIND_BUFFER = 67;
+    static final byte SET_BIND_FRAMEBUFFER = 68;
+    static final byte CLEAR_BIND_FRAMEBUFFER = 69;
+    static final byte SET_ENABLE = 70;
+    static final byte CLEAR_ENABLE = 71;
+    static final byte SET_USE_PROGRAM = 72;
+    static final byte CLEAR_USE_PROGRAM = 73;
+    static final byte SET_BIND_TEXTURE = 74;
+    static final byte CLEAR_BIND_TEXTURE = 75;
+    static final byte SET_BIND_ARRAY = 76;
+    static final byte CLEAR_BIND_ARRAY = 77;
+
+    private static final int OPCODE_SHIFT = 24;
+    private static final int OPERAND_MASK = (1 << OPCODE_SHIFT) - 1;
+
+    private static final int RUN_COMMAND = 0;
+    private static final int SET_STATE = 1;
+    private static final int CLEAR_STATE = 2;
+
+    private final int[] ops;
+    private final Object[] operands;
+    private final Segment[] frames;
+
+    private Trace(int[] ops, Object[] operands, int[] frameEnds) {
+        this.ops = ops;
+        this.operands = operands;
+        this.frames = new Segment[frameEnds.length];
+        for (int i=0; i<frameEnds.length; i++)
+            frames[i] = new Segment(i > 0 ? frameEnds[i - 1] : 0, frameEnds[i]);
+    }
+
+    public static Trace load(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = input.getChannel();
+            // the mapping outlives the channel
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new Decoder(data.order(ByteOrder.nativeOrder())).decode();
+        } finally {
+            input.close();
+        }
+    }
+
+    public int getFrameCount() {
+        return frames.length;
+    }
+
+    // The commands of one captured frame, the first frame also carries whatever ran before it
+    public Command getFrame(int index) {
+        return frames[index];
+    }
+
+    // Every frame in order
+    public void run(Renderer renderer) {
+        for (int i=0; i<frames.length; i++)
+            frames[i].run(renderer);
+    }
+
+    public int size() {
+        return ops.length;
+    }
+
+    class Segment extends Command {
+        final int start, end;
+
+        Segment(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public void run(final Renderer renderer) {
+            final int[] ops = Trace.this.ops;
+            final Object[] operands = Trace.this.operands;
+            final Renderer.ErrorCheck errorCheck = renderer.getErrorCheck();
+
+            for (int i=start; i<end; i++) {
+                final int op = ops[i];
+                final Object operand = operands[op & OPERAND_MASK];
+
+                switch (op >>> OPCODE_SHIFT) {
+                    case RUN_COMMAND: ((Command) operand).run(renderer); break;
+                    case SET_STATE: ((State) operand).set(renderer); break;
+                    case CLEAR_STATE: ((State) operand).clear(renderer); break;
+                }
+
+                if (errorCheck == Renderer.ErrorCheck.COMMAND)
+                    CommandList.checkError(renderer, operand);
+            }
+
+            if (errorCheck == Renderer.ErrorCheck.COMMAND_LIST)
+                CommandList.checkError(renderer, this);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("<%s %d-%d>", getClass().getSimpleName(), start, end);
+        }
+    }
+
+    static class Decoder {
+        final ByteBuffer data;
+
+        final List<Object> handles = new ArrayList<>();
+        final List<String> strings = new ArrayList<>();
+        final List<ByteBuffer> payloads = new ArrayList<>();
+
+        int[] ops = new int[1024];
+        int size;
+        final List<Object> operands = new ArrayList<>();
+
+        int[] frameEnds = new int[64];
+        int frameCount;
+
+        Decoder(ByteBuffer data) {
+            this.data = data;
+        }
+
+        Trace decode() {
+            if (data.remaining() < 8)
+                throw new Renderer.RendererException("Not a trace");
+
+            int magic = data.getInt();
+            if (magic == Integer.reverseBytes(MAGIC))
+                throw new Renderer.RendererException("Trace was captured with a different byte order");
+            if (magic != MAGIC)
+                throw new Renderer.RendererException("Not a trace");
+
+            int version = data.getInt();
+            if (version != VERSION)
+                throw new Renderer.RendererException("Unsupported trace version: " + version);
+
+            while (data.hasRemaining())
+                record(data.get());
+
+            // commands after the last frame marker are an unfinished frame
+            return new Trace(Arrays.copyOf(ops, frameCount > 0 ? frameEnds[frameCount - 1] : 0),
+                    operands.toArray(), Arrays.copyOf(frameEnds, frameCount));
+        }
+
+        void emit(int opcode, Object operand) {
+            if (operands.size() > OPERAND_MASK)
+                throw new Renderer.RendererException("Trace too long to replay");
+            if (size == ops.length)
+                ops = Arrays.copyOf(ops, size * 2);
+            ops[size++] = (opcode << OPCODE_SHIFT) | operands.size();
+            operands.add(operand);
+        }
+
+        void run(Command command) {
+            emit(RUN_COMMAND, command);
+        }
+
+        void set(State state) {
+            emit(SET_STATE, state);
+        }
+
+        void clear(State state) {
+            emit(CLEAR_STATE, state);
+        }
+
+        void record(byte opcode) {
+            switch (opcode) {
+                case DEFINE_HANDLE: defineHandle(); break;
+                case DEFINE_STRING: defineString(); break;
+                case DEFINE_PAYLOAD: definePayload(); break;
+
+                case FRAME:
+                    if (frameCount == frameEnds.length)
+                        frameEnds = Arrays.copyOf(frameEnds, frameCount * 2);
+                    frameEnds[frameCount++] = size;
+                    break;
+
+                case BUFFER_DATA: {
+                    BufferType target = bufferType();
+                    int size = data.getInt();
+                    BufferData.Usage usage = BufferData.Usage.values()[data.get()];
+                    run(new BufferData(target, size, payload(), usage));
+                    break;
+                }
+
+                case BUFFER_SUB_DATA: {
+                    BufferType target = bufferType();
+                    int offset = data.getInt();
+                    int size = data.getInt();
+                    run(new BufferSubData(target, offset, size, payload()));
+                    break;
+                }
+
+                case CLEAR: {
+                    int mask = data.get();
+                    List<Clear.Mode> modes = new ArrayList<>();
+                    for (Clear.Mode mode : Clear.Mode.values())
+                        if ((mask & (1 << mode.ordinal())) != 0)
+                            modes.add(mode);
+                    run(new Clear(modes.toArray(new Clear.Mode[0])));
+                    break;
+                }
+
+                case COMPILE_SHADER: {
+                    ShaderProgram program = program();
+                    CompileShader.ShaderType type = CompileShader.ShaderType.values()[data.get()];
+                    run(new CompileShader(program, type, string()));
+                    break;
+                }
+
+                case CREATE_PROGRAM: run(new CreateProgram(program())); break;
+
+                case DRAW_ARRAYS: {
+                    DrawMode mode = drawMode();
+                    int first = data.getInt();
+                    run(new DrawArrays(mode, first, data.getInt()));
+                    break;
+                }
+
+                case DRAW_ELEMENTS: {
+                    DrawMode mode = drawMode();
+                    run(new DrawElements(mode, data.getInt()));
+                    break;
+                }
+
+                case GENERATE_ARRAY: run(new GenerateArray(array())); break;
+                case GENERATE_BUFFER: run(new GenerateBuffer(buffer())); break;
+
+                case GENERATE_FRAMEBUFFER: {
+                    FrameBuffer framebuffer = framebuffer();
+                    Texture2D texture = (Texture2D) texture();
+                    framebuffer.width = data.getInt();
+                    framebuffer.height = data.getInt();
+                    run(new GenerateFramebuffer(framebuffer, texture));
+                    break;
+                }
+
+                case GENERATE_TEXTURE: run(new GenerateTexture(texture())); break;
+                case LINK_PROGRAM: run(new LinkProgram(program())); break;
+
+                case LOAD_TEXTURE: {
+                    Texture texture = texture();
+                    TextureTarget target = textureTarget();
+                    LoadTexture.Format internalFormat = LoadTexture.Format.values()[data.get()];
+                    int width = data.getInt();
+                    int height = data.getInt();
+                    LoadTexture.Format format = LoadTexture.Format.values()[data.get()];
+                    run(new LoadTexture(texture, target, internalFormat, width, height, format, payload()));
+                    break;
+                }
+
+                case SET_UNIFORM_MATRIX: {
+                    ShaderProgram program = program();
+                    String attribute = string();
+                    int count = data.getInt();
+                    boolean transpose = data.get() != 0;
+                    ByteBuffer payload = payload();
+                    run(new SetUniformMatrix(program, attribute, count, transpose, payload != null ? payload.asFloatBuffer() : null));
+                    break;
+                }
+
+                case SET_UNIFORM_FLOAT: {
+                    ShaderProgram program = program();
+                    String attribute = string();
+                    int size = data.get();
+                    float x = data.getFloat(), y = data.getFloat(), z = data.getFloat(), w = data.getFloat();
+                    final SetUniformFloat command;
+                    if (size == 1)
+                        command = new SetUniformFloat(program, attribute, x);
+                    else if (size == 2)
+                        command = new SetUniformFloat(program, attribute, x, y);
+                    else if (size == 3)
+                        command = new SetUniformFloat(program, attribute, x, y, z);
+                    else
+                        command = new SetUniformFloat(program, attribute, x, y, z, w);
+                    run(command);
+                    break;
+                }
+
+                case SET_UNIFORM_INT: {
+                    ShaderProgram program = program();
+                    String attribute = string();
+                    int size = data.get();
+                    int x = data.getInt(), y = data.getInt(), z = data.getInt(), w = data.getInt();
+                    final SetUniformInt command;
+                    if (size == 1)
+                        command = new SetUniformInt(program, attribute, x);
+                    else if (size == 2)
+                        command = new SetUniformInt(program, attribute, x, y);
+                    else if (size == 3)
+                        command = new SetUniformInt(program, attribute, x, y, z);
+                    else
+                        command = new SetUniformInt(program, attribute, x, y, z, w);
+                    run(command);
+                    break;
+                }
+
+                case VERTEX_ATTRIB_POINTER: {
+                    int index = data.getInt();
+                    int size = data.getInt();
+                    VertexAttribPointer.Type type = VertexAttribPointer.Type.values()[data.get()];
+                    boolean normalized = data.get() != 0;
+                    int stride = data.getInt();
+                    int pointer = data.getInt();
+                    run(new VertexAttribPointer(index, size, type, normalized, stride, pointer));
+                    break;
+                }
+
+                case ENABLE_VERTEX_ATTRIB_ARRAY: run(new EnableVertexAttribArray(data.getInt())); break;
+
+                case CLEAR_COLOR: {
+                    float r = data.getFloat(), g = data.getFloat(), b = data.getFloat(), a = data.getFloat();
+                    run(new ClearColor(r, g, b, a));
+                    break;
+                }
+
+                case BLEND_FUNC: {
+                    BlendFunc.Factor sfactor = BlendFunc.Factor.values()[data.get()];
+                    BlendFunc.Factor dfactor = BlendFunc.Factor.values()[data.get()];
+                    run(new BlendFunc(sfactor, dfactor));
+                    break;
+                }
+
+                case DEPTH_FUNC: run(new DepthFunc(DepthFunc.Function.values()[data.get()])); break;
+
+                case TEXTURE_PARAMETER: {
+                    TextureTarget target = textureTarget();
+                    TextureParameter.Parameter parameter = TextureParameter.Parameter.values()[data.get()];
+                    int value = data.get();
+                    if (isWrap(parameter))
+                        run(new TextureParameter(target, parameter, TextureParameter.Wrap.values()[value]));
+                    else
+                        run(new TextureParameter(target, parameter, TextureParameter.Filter.values()[value]));
+                    break;
+                }
+
+                case GENERATE_MIP_MAP: run(new GenerateMipMap(textureTarget())); break;
+
+                case BIND_BUFFER_BASE: {
+                    BufferType target = bufferType();
+                    int index = data.getInt();
+                    run(new BindBufferBase(target, index, buffer()));
+                    break;
+                }
+
+                case UNIFORM_BLOCK_BINDING: {
+                    ShaderProgram program = program();
+                    String block = string();
+                    run(new UniformBlockBinding(program, block, data.getInt()));
+                    break;
+                }
+
+                case DRAW_ARRAYS_INSTANCED: {
+                    DrawMode mode = drawMode();
+                    int first = data.getInt();
+                    int count = data.getInt();
+                    run(new DrawArraysInstanced(mode, first, count, data.getInt()));
+                    break;
+                }
+
+                case DRAW_ELEMENTS_INSTANCED: {
+                    DrawMode mode = drawMode();
+                    int count = data.getInt();
+                    run(new DrawElementsInstanced(mode, count, data.getInt()));
+                    break;
+                }
+
+                case VERTEX_ATTRIB_DIVISOR: {
+                    int index = data.getInt();
+                    run(new VertexAttribDivisor(index, data.getInt()));
+                    break;
+                }
+
+                case TRANSFORM_FEEDBACK_VARYINGS: {
+                    ShaderProgram program = program();
+                    String[] varyings = new String[data.getInt()];
+                    for (int i=0; i<varyings.length; i++)
+                        varyings[i] = string();
+                    run(new TransformFeedbackVaryings(program, varyings));
+                    break;
+                }
+
+                case BEGIN_TRANSFORM_FEEDBACK: run(new BeginTransformFeedback(drawMode())); break;
+                case END_TRANSFORM_FEEDBACK: run(new EndTransformFeedback()); break;
+                case DELETE_TEXTURE: run(new DeleteTexture(texture())); break;
+                case DELETE_PROGRAM: run(new DeleteProgram(program())); break;
+                case DELETE_BUFFER: run(new DeleteBuffer(buffer())); break;
+
+                case SET_ACTIVATE_TEXTURE: set(new ActivateTexture(data.getInt())); break;
+                case CLEAR_ACTIVATE_TEXTURE: clear(new ActivateTexture(data.getInt())); break;
+                case SET_BIND_BUFFER: set(bindBuffer()); break;
+                case CLEAR_BIND_BUFFER: clear(bindBuffer()); break;
+                case SET_BIND_FRAMEBUFFER: set(new BindFramebuffer(framebuffer())); break;
+                case CLEAR_BIND_FRAMEBUFFER: clear(new BindFramebuffer(framebuffer())); break;
+                case SET_ENABLE: set(new Enable(Enable.Capability.values()[data.get()])); break;
+                case CLEAR_ENABLE: clear(new Enable(Enable.Capability.values()[data.get()])); break;
+                case SET_USE_PROGRAM: set(new UseProgram(program())); break;
+                case CLEAR_USE_PROGRAM: clear(new UseProgram(program())); break;
+                case SET_BIND_TEXTURE: set(bindTexture()); break;
+                case CLEAR_BIND_TEXTURE: clear(bindTexture()); break;
+                case SET_BIND_ARRAY: set(new BindArray(array())); break;
+                case CLEAR_BIND_ARRAY: clear(new BindArray(array())); break;
+
+                default:
+                    throw new Renderer.RendererException(String.format("Unknown record %d at offset %d", opcode, data.position() - 1));
+            }
+        }
+
+        void defineHandle() {
+            byte kind = data.get();
+            int id = data.getInt();
+            if (id != handles.size())
+                throw new Renderer.RendererException("Handle defined out of order: " + id);
+
+            final Object handle;
+            if (kind == HANDLE_BUFFER)
+                handle = new BufferObject();
+            else if (kind == HANDLE_ARRAY)
+                handle = new ArrayObject();
+            else if (kind == HANDLE_TEXTURE_2D)
+                handle = new Texture2D(null);
+            else if (kind == HANDLE_CUBEMAP)
+                handle = new Cubemap(null);
+            else if (kind == HANDLE_PROGRAM)
+                handle = new ShaderProgram(string());
+            else if (kind == HANDLE_FRAMEBUFFER)
+                handle = new FrameBuffer(0, 0);
+            else
+                throw new Renderer.RendererException("Unknown handle kind: " + kind);
+            handles.add(handle);
+        }
+
+        void defineString() {
+            int id = data.getInt();
+            if (id != strings.size())
+                throw new Renderer.RendererException("String defined out of order: " + id);
+            byte[] bytes = new byte[data.getInt()];
+            data.get(bytes);
+            strings.add(new String(bytes, UTF_8));
+        }
+
+        void definePayload() {
+            int id = data.getInt();
+            if (id != payloads.size())
+                throw new Renderer.RendererException("Payload defined out of order: " + id);
+            int size = data.getInt();
+            ByteBuffer payload = data.duplicate();
+            payload.limit(payload.position() + size);
+            payloads.add(payload.slice().order(data.order()));
+            data.position(data.position() + size);
+        }
+
+        Object handle() {
+            int id = data.getInt();
+            return id != NONE ? handles.get(id) : null;
+        }
+
+        BufferObject buffer() {
+            return (BufferObject) handle();
+        }
+
+        ArrayObject array() {
+            return (ArrayObject) handle();
+        }
+
+        Texture texture() {
+            return (Texture) handle();
+        }
+
+        ShaderProgram program() {
+            return (ShaderProgram) handle();
+        }
+
+        FrameBuffer framebuffer() {
+            return (FrameBuffer) handle();
+        }
+
+        String string() {
+            int id = data.getInt();
+            return id != NONE ? strings.get(id) : null;
+        }
+
+        ByteBuffer payload() {
+            int id = data.getInt();
+            return id != NONE ? payloads.get(id) : null;
+        }
+
+        BufferType bufferType() {
+            return BufferType.values()[data.get()];
+        }
+
+        DrawMode drawMode() {
+            return DrawMode.values()[data.get()];
+        }
+
+        TextureTarget textureTarget() {
+            return TextureTarget.values()[data.get()];
+        }
+
+        BindBuffer bindBuffer() {
+            BufferType target = bufferType();
+            return new BindBuffer(target, buffer());
+        }
+
+        BindTexture bindTexture() {
+            TextureTarget target = textureTarget();
+            return new BindTexture(target, texture());
+        }
+    }
+
+    static boolean isWrap(TextureParameter.Parameter parameter) {
+        return parameter == TextureParameter.Parameter.WRAP_S || parameter == TextureParameter.Parameter.WRAP_T;
+    }
+}
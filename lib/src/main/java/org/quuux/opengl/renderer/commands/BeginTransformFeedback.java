@@ -0,0 +1,23 @@
+package org.quuux.opengl.renderer.commands;
+
+import org.quuux.opengl.renderer.Command;
+import org.quuux.opengl.renderer.Renderer;
+
+// Starts capturing vertex shader outputs into the buffers bound to the transform feedback binding points
+public class BeginTransformFeedback extends Command {
+
+    private final DrawMode mode;
+
+    public BeginTransformFeedback(final DrawMode mode) {
+        this.mode = mode;
+    }
+
+    @Override
+    public void run(final Renderer renderer) {
+        renderer.run(this);
+    }
+
+    public DrawMode getMode() {
+        return mode;
+    }
+}
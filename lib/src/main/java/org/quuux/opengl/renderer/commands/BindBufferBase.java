@@ -0,0 +1,37 @@
+package org.quuux.opengl.renderer.commands;
+
+import org.quuux.opengl.lib.BufferObject;
+import org.quuux.opengl.lib.BufferType;
+import org.quuux.opengl.renderer.Command;
+import org.quuux.opengl.renderer.Renderer;
+
+// Attaches a buffer to an indexed binding point, e.g. the uniform block binding shaders read from
+public class BindBufferBase extends Command {
+
+    private final BufferType target;
+    private final int index;
+    private final BufferObject buffer;
+
+    public BindBufferBase(BufferType target, int index, BufferObject buffer) {
+        this.target = target;
+        this.index = index;
+        this.buffer = buffer;
+    }
+
+    @Override
+    public void run(final Renderer renderer) {
+        renderer.run(this);
+    }
+
+    public BufferType getTarget() {
+        return target;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public BufferObject getBuffer() {
+        return buffer;
+    }
+}
@@ -3,6 +3,7 @@ package org.quuux.opengl.renderer.commands;
 import org.quuux.opengl.lib.BufferType;
 import org.quuux.opengl.renderer.Command;
 import org.quuux.opengl.renderer.Renderer;
+import org.quuux.opengl.util.EventUtil;
 
 import java.nio.Buffer;
 
@@ -28,7 +29,9 @@ public class BufferData extends Command {
 
     @Override
     public void run(final Renderer renderer) {
+        Object event = EventUtil.beginUpload();
         renderer.run(this);
+        EventUtil.endUpload(event, "BufferData", target, size);
     }
 
     public BufferType getTarget() {
@@ -0,0 +1,43 @@
+package org.quuux.opengl.renderer.commands;
+
+import org.quuux.opengl.lib.BufferType;
+import org.quuux.opengl.renderer.Command;
+import org.quuux.opengl.renderer.Renderer;
+
+import java.nio.Buffer;
+
+public class BufferSubData extends Command {
+
+    private final BufferType target;
+    private final int offset;
+    private final int size;
+    private final Buffer data;
+
+    public BufferSubData(BufferType target, int offset, int size, Buffer data) {
+        this.target = target;
+        this.offset = offset;
+        this.size = size;
+        this.data = data;
+    }
+
+    @Override
+    public void run(final Renderer renderer) {
+        renderer.run(this);
+    }
+
+    public BufferType getTarget() {
+        return target;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public Buffer getData() {
+        return data;
+    }
+}
@@ -3,6 +3,7 @@ package org.quuux.opengl.renderer.commands;
 import org.quuux.opengl.lib.ShaderProgram;
 import org.quuux.opengl.renderer.Command;
 import org.quuux.opengl.renderer.Renderer;
+import org.quuux.opengl.util.EventUtil;
 
 
 public class CompileShader extends Command {
@@ -24,7 +25,9 @@ public class CompileShader extends Command {
 
     @Override
     public void run(final Renderer renderer) {
+        Object event = EventUtil.beginShader();
         renderer.run(this);
+        EventUtil.endShader(event, "compile", shaderType, program.program);
     }
 
     public ShaderProgram getProgram() {
@@ -35,6 +38,11 @@ public class CompileShader extends Command {
         return shaderType;
     }
 
+    // the source as given, without the version line backends prepend
+    public String getShaderSource() {
+        return shaderSource;
+    }
+
     public String getShaderSource(String version) {
         return "#version " + version + "\n" + shaderSource;
     }
@@ -0,0 +1,23 @@
+package org.quuux.opengl.renderer.commands;
+
+import org.quuux.opengl.lib.ShaderProgram;
+import org.quuux.opengl.renderer.Command;
+import org.quuux.opengl.renderer.Renderer;
+
+
+public class DeleteProgram extends Command {
+    private final ShaderProgram program;
+
+    public DeleteProgram(ShaderProgram program) {
+        this.program = program;
+    }
+
+    @Override
+    public void run(final Renderer renderer) {
+        renderer.run(this);
+    }
+
+    public ShaderProgram getProgram() {
+        return program;
+    }
+}
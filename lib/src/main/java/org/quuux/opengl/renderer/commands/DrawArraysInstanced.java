@@ -0,0 +1,40 @@
+package org.quuux.opengl.renderer.commands;
+
+import org.quuux.opengl.renderer.Command;
+import org.quuux.opengl.renderer.Renderer;
+
+public class DrawArraysInstanced extends Command {
+
+    private final DrawMode mode;
+    private final int first;
+    private final int count;
+    private final int instances;
+
+    public DrawArraysInstanced(final DrawMode mode, final int first, final int count, final int instances) {
+        this.mode = mode;
+        this.first = first;
+        this.count = count;
+        this.instances = instances;
+    }
+
+    @Override
+    public void run(final Renderer renderer) {
+        renderer.run(this);
+    }
+
+    public DrawMode getMode() {
+        return mode;
+    }
+
+    public int getFirst() {
+        return first;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getInstanceCount() {
+        return instances;
+    }
+}
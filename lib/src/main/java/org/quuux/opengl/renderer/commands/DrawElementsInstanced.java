@@ -0,0 +1,34 @@
+package org.quuux.opengl.renderer.commands;
+
+import org.quuux.opengl.renderer.Command;
+import org.quuux.opengl.renderer.Renderer;
+
+public class DrawElementsInstanced extends Command {
+
+    private final DrawMode mode;
+    private final int count;
+    private final int instances;
+
+    public DrawElementsInstanced(final DrawMode mode, final int count, final int instances) {
+        this.mode = mode;
+        this.count = count;
+        this.instances = instances;
+    }
+
+    @Override
+    public void run(final Renderer renderer) {
+        renderer.run(this);
+    }
+
+    public DrawMode getMode() {
+        return mode;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getInstanceCount() {
+        return instances;
+    }
+}
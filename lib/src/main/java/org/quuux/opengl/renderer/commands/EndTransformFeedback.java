@@ -0,0 +1,12 @@
+package org.quuux.opengl.renderer.commands;
+
+import org.quuux.opengl.renderer.Command;
+import org.quuux.opengl.renderer.Renderer;
+
+public class EndTransformFeedback extends Command {
+
+    @Override
+    public void run(final Renderer renderer) {
+        renderer.run(this);
+    }
+}
@@ -3,6 +3,7 @@ package org.quuux.opengl.renderer.commands;
 import org.quuux.opengl.lib.ShaderProgram;
 import org.quuux.opengl.renderer.Command;
 import org.quuux.opengl.renderer.Renderer;
+import org.quuux.opengl.util.EventUtil;
 
 
 public class LinkProgram extends Command {
@@ -14,7 +15,9 @@ public class LinkProgram extends Command {
 
     @Override
     public void run(final Renderer renderer) {
+        Object event = EventUtil.beginShader();
         renderer.run(this);
+        EventUtil.endShader(event, "link", null, program.program);
     }
 
     public ShaderProgram getProgram() {
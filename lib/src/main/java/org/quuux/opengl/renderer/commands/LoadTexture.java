@@ -4,6 +4,7 @@ import org.quuux.opengl.lib.Texture;
 import org.quuux.opengl.renderer.Command;
 import org.quuux.opengl.renderer.Renderer;
 import org.quuux.opengl.renderer.states.TextureTarget;
+import org.quuux.opengl.util.EventUtil;
 
 import java.nio.ByteBuffer;
 
@@ -36,7 +37,9 @@ public class LoadTexture extends Command {
     
     @Override
     public void run(final Renderer renderer) {
+        Object event = EventUtil.beginUpload();
         renderer.run(this);
+        EventUtil.endUpload(event, "LoadTexture", target, buffer != null ? buffer.remaining() : 0);
     }
 
     public Texture getTexture() {
@@ -0,0 +1,114 @@
+package org.quuux.opengl.renderer.commands;
+
+import org.joml.Vector3f;
+import org.quuux.opengl.lib.ShaderProgram;
+import org.quuux.opengl.renderer.Command;
+import org.quuux.opengl.renderer.Renderer;
+
+// A float, vec2, vec3 or vec4 uniform. Values are primitive fields that can be updated in place.
+public class SetUniformFloat extends Command {
+
+    private final ShaderProgram program;
+    private final String attribute;
+    private int slot = -1;
+    private final int size;
+    private float x, y, z, w;
+
+    public SetUniformFloat(ShaderProgram program, String attribute, float x) {
+        this.program = program;
+        this.attribute = attribute;
+        this.size = 1;
+        set(x);
+    }
+
+    public SetUniformFloat(ShaderProgram program, String attribute, float x, float y) {
+        this.program = program;
+        this.attribute = attribute;
+        this.size = 2;
+        set(x, y);
+    }
+
+    public SetUniformFloat(ShaderProgram program, String attribute, float x, float y, float z) {
+        this.program = program;
+        this.attribute = attribute;
+        this.size = 3;
+        set(x, y, z);
+    }
+
+    public SetUniformFloat(ShaderProgram program, String attribute, float x, float y, float z, float w) {
+        this.program = program;
+        this.attribute = attribute;
+        this.size = 4;
+        set(x, y, z, w);
+    }
+
+    public SetUniformFloat(ShaderProgram program, String attribute, Vector3f vec) {
+        this(program, attribute, vec.x, vec.y, vec.z);
+    }
+
+    @Override
+    public void run(final Renderer renderer) {
+        renderer.run(this);
+    }
+
+    public void set(float x) {
+        this.x = x;
+    }
+
+    public void set(float x, float y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    public void set(float x, float y, float z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    public void set(float x, float y, float z, float w) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.w = w;
+    }
+
+    public void set(Vector3f vec) {
+        set(vec.x, vec.y, vec.z);
+    }
+
+    public ShaderProgram getProgram() {
+        return program;
+    }
+
+    public String getAttribute() {
+        return attribute;
+    }
+
+    // resolves the uniform's slot on first use, after that it's an array lookup
+    public int getLocation() {
+        if (slot < 0)
+            slot = program.getUniformSlot(attribute);
+        return program.getUniformLocation(slot);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public float getX() {
+        return x;
+    }
+
+    public float getY() {
+        return y;
+    }
+
+    public float getZ() {
+        return z;
+    }
+
+    public float getW() {
+        return w;
+    }
+}
@@ -0,0 +1,105 @@
+package org.quuux.opengl.renderer.commands;
+
+import org.quuux.opengl.lib.ShaderProgram;
+import org.quuux.opengl.renderer.Command;
+import org.quuux.opengl.renderer.Renderer;
+
+// An int, ivec2, ivec3 or ivec4 uniform. Values are primitive fields that can be updated in place.
+public class SetUniformInt extends Command {
+
+    private final ShaderProgram program;
+    private final String attribute;
+    private int slot = -1;
+    private final int size;
+    private int x, y, z, w;
+
+    public SetUniformInt(ShaderProgram program, String attribute, int x) {
+        this.program = program;
+        this.attribute = attribute;
+        this.size = 1;
+        set(x);
+    }
+
+    public SetUniformInt(ShaderProgram program, String attribute, int x, int y) {
+        this.program = program;
+        this.attribute = attribute;
+        this.size = 2;
+        set(x, y);
+    }
+
+    public SetUniformInt(ShaderProgram program, String attribute, int x, int y, int z) {
+        this.program = program;
+        this.attribute = attribute;
+        this.size = 3;
+        set(x, y, z);
+    }
+
+    public SetUniformInt(ShaderProgram program, String attribute, int x, int y, int z, int w) {
+        this.program = program;
+        this.attribute = attribute;
+        this.size = 4;
+        set(x, y, z, w);
+    }
+
+    @Override
+    public void run(final Renderer renderer) {
+        renderer.run(this);
+    }
+
+    public void set(int x) {
+        this.x = x;
+    }
+
+    public void set(int x, int y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    public void set(int x, int y, int z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    public void set(int x, int y, int z, int w) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.w = w;
+    }
+
+    public ShaderProgram getProgram() {
+        return program;
+    }
+
+    public String getAttribute() {
+        return attribute;
+    }
+
+    // resolves the uniform's slot on first use, after that it's an array lookup
+    public int getLocation() {
+        if (slot < 0)
+            slot = program.getUniformSlot(attribute);
+        return program.getUniformLocation(slot);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getZ() {
+        return z;
+    }
+
+    public int getW() {
+        return w;
+    }
+}
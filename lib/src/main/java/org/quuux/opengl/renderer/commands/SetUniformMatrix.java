@@ -10,6 +10,7 @@ public class SetUniformMatrix extends Command {
 
     private final ShaderProgram shader;
     private final String attribute;
+    private int slot = -1;
     private final int count;
     private final boolean transpose;
     private final FloatBuffer buffer;
@@ -35,6 +36,13 @@ public class SetUniformMatrix extends Command {
         return attribute;
     }
 
+    // resolves the uniform's slot on first use, after that it's an array lookup
+    public int getLocation() {
+        if (slot < 0)
+            slot = shader.getUniformSlot(attribute);
+        return shader.getUniformLocation(slot);
+    }
+
     public int getCount() {
         return count;
     }
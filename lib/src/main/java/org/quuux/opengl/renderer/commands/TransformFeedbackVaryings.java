@@ -0,0 +1,30 @@
+package org.quuux.opengl.renderer.commands;
+
+import org.quuux.opengl.lib.ShaderProgram;
+import org.quuux.opengl.renderer.Command;
+import org.quuux.opengl.renderer.Renderer;
+
+// Names the vertex shader outputs to capture, interleaved into a single buffer. Must run before LinkProgram.
+public class TransformFeedbackVaryings extends Command {
+
+    private final ShaderProgram program;
+    private final String[] varyings;
+
+    public TransformFeedbackVaryings(ShaderProgram program, String... varyings) {
+        this.program = program;
+        this.varyings = varyings;
+    }
+
+    @Override
+    public void run(final Renderer renderer) {
+        renderer.run(this);
+    }
+
+    public ShaderProgram getProgram() {
+        return program;
+    }
+
+    public String[] getVaryings() {
+        return varyings;
+    }
+}
@@ -0,0 +1,36 @@
+package org.quuux.opengl.renderer.commands;
+
+import org.quuux.opengl.lib.ShaderProgram;
+import org.quuux.opengl.renderer.Command;
+import org.quuux.opengl.renderer.Renderer;
+
+// Points a program's named uniform block at a binding point, blocks the program lacks are ignored
+public class UniformBlockBinding extends Command {
+
+    private final ShaderProgram program;
+    private final String block;
+    private final int binding;
+
+    public UniformBlockBinding(ShaderProgram program, String block, int binding) {
+        this.program = program;
+        this.block = block;
+        this.binding = binding;
+    }
+
+    @Override
+    public void run(final Renderer renderer) {
+        renderer.run(this);
+    }
+
+    public ShaderProgram getProgram() {
+        return program;
+    }
+
+    public String getBlock() {
+        return block;
+    }
+
+    public int getBinding() {
+        return binding;
+    }
+}
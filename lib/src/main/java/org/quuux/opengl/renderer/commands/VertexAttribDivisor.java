@@ -0,0 +1,29 @@
+package org.quuux.opengl.renderer.commands;
+
+import org.quuux.opengl.renderer.Command;
+import org.quuux.opengl.renderer.Renderer;
+
+
+public class VertexAttribDivisor extends Command {
+
+    private final int index;
+    private final int divisor;
+
+    public VertexAttribDivisor(int index, int divisor) {
+        this.index = index;
+        this.divisor = divisor;
+    }
+
+    @Override
+    public void run(final Renderer renderer) {
+        renderer.run(this);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getDivisor() {
+        return divisor;
+    }
+}
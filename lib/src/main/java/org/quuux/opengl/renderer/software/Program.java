@@ -0,0 +1,65 @@
+package org.quuux.opengl.renderer.software;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+// Uniform values and block bindings of one program, handed to its Shader at the start of each draw
+public class Program {
+
+    private static final float[] UNSET = new float[16];
+
+    final SoftwareRenderer renderer;
+    Shader shader;
+    // set once a draw has been skipped for want of a shader
+    boolean warned;
+
+    // by location, ints are kept as floats
+    float[][] uniforms = new float[0][];
+    final Map<String, Integer> blockBindings = new HashMap<>();
+
+    Program(SoftwareRenderer renderer) {
+        this.renderer = renderer;
+    }
+
+    void link(Shader shader) {
+        this.shader = shader;
+        uniforms = new float[shader.getUniforms().length][];
+    }
+
+    float[] getValues(int location, int size) {
+        float[] values = uniforms[location];
+        if (values == null || values.length < size)
+            values = uniforms[location] = new float[size];
+        return values;
+    }
+
+    // zeros for uniforms that were never set, matrices are column major
+    public float[] getUniform(int location) {
+        float[] values = uniforms[location];
+        return values != null ? values : UNSET;
+    }
+
+    public float getFloat(int location) {
+        return getUniform(location)[0];
+    }
+
+    public int getInt(int location) {
+        return (int) getUniform(location)[0];
+    }
+
+    // the 2D texture bound to the unit a sampler uniform names
+    public SoftwareTexture getTexture(int location) {
+        return renderer.getBoundTexture(getInt(location), false);
+    }
+
+    public SoftwareTexture getCubemap(int location) {
+        return renderer.getBoundTexture(getInt(location), true);
+    }
+
+    // contents of the buffer bound to a uniform block's binding point, null when there is none
+    public ByteBuffer getBlock(String name) {
+        Integer binding = blockBindings.get(name);
+        return binding != null ? renderer.getUniformBuffer(binding) : null;
+    }
+}
@@ -0,0 +1,351 @@
+package org.quuux.opengl.renderer.software;
+
+import org.quuux.opengl.renderer.states.BlendFunc;
+import org.quuux.opengl.util.ParallelUtil;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+// Sets up the primitives of one draw, bins them into screen tiles, then shades the tiles in
+// parallel. Each tile is owned by one task and walks its bin in submission order, so blending
+// and depth ties come out the same as drawing every primitive in order on one thread.
+class Rasterizer {
+
+    static final int TILE_SIZE = 64;
+
+    ForkJoinPool pool;
+
+    RenderTarget target;
+    int tilesX, tilesY;
+    int[][] bins = new int[0][];
+    int[] binCounts = new int[0];
+    int[] active = new int[0];
+    int activeCount;
+
+    // draw state, set before begin
+    Shader shader;
+    boolean points;
+    boolean depthTest, blend;
+    BlendFunc.Factor srcFactor = BlendFunc.Factor.SRC_ALPHA, dstFactor = BlendFunc.Factor.ONE_MINUS_SRC_ALPHA;
+
+    int varyings;
+    // a triangle is three (x, y, depth, 1/w, varyings / w) vertices, a point is (x, y, depth, size, varyings)
+    int vertexSize, primitiveSize;
+    float[] primitives = new float[1024];
+    int primitiveCount;
+
+    // near plane clipping output, up to four vertices in Shader layout
+    float[] clipped = new float[0];
+    int clippedSize;
+
+    final ParallelUtil.Loop rasterize = new ParallelUtil.Loop((chunk, from, to) -> rasterizeTile(active[chunk]));
+
+    void setTarget(RenderTarget target) {
+        if (this.target == target)
+            return;
+
+        this.target = target;
+        tilesX = (target.width + TILE_SIZE - 1) / TILE_SIZE;
+        tilesY = (target.height + TILE_SIZE - 1) / TILE_SIZE;
+
+        int tiles = tilesX * tilesY;
+        if (bins.length < tiles) {
+            bins = Arrays.copyOf(bins, tiles);
+            for (int i=0; i<tiles; i++) {
+                if (bins[i] == null)
+                    bins[i] = new int[64];
+            }
+            binCounts = new int[tiles];
+            active = new int[tiles];
+        }
+    }
+
+    void begin(Shader shader, boolean points) {
+        this.shader = shader;
+        this.points = points;
+        varyings = shader.getVaryingCount();
+        vertexSize = 4 + varyings;
+        primitiveSize = points ? vertexSize : 3 * vertexSize;
+        primitiveCount = 0;
+
+        clippedSize = Shader.VARYINGS + varyings;
+        if (clipped.length < 4 * clippedSize)
+            clipped = new float[4 * clippedSize];
+    }
+
+    private int allocate() {
+        int offset = primitiveCount * primitiveSize;
+        if (offset + primitiveSize > primitives.length)
+            primitives = Arrays.copyOf(primitives, Math.max(primitives.length * 2, offset + primitiveSize));
+        return offset;
+    }
+
+    // vertices are shader outputs, clip space position first
+    void addTriangle(float[] vertices, int a, int b, int c) {
+        float da = vertices[a + 2] + vertices[a + 3];
+        float db = vertices[b + 2] + vertices[b + 3];
+        float dc = vertices[c + 2] + vertices[c + 3];
+
+        if (da >= 0 && db >= 0 && dc >= 0) {
+            setupTriangle(vertices, a, vertices, b, vertices, c);
+            return;
+        }
+        if (da < 0 && db < 0 && dc < 0)
+            return;
+
+        // Sutherland-Hodgman against the near plane, z >= -w
+        int n = 0;
+        int[] in = {a, b, c};
+        float[] d = {da, db, dc};
+        for (int i=0; i<3; i++) {
+            int j = (i + 1) % 3;
+            if (d[i] >= 0)
+                System.arraycopy(vertices, in[i], clipped, n++ * clippedSize, clippedSize);
+            if ((d[i] >= 0) != (d[j] >= 0)) {
+                float t = d[i] / (d[i] - d[j]);
+                int dest = n++ * clippedSize;
+                for (int k=0; k<clippedSize; k++) {
+                    float from = vertices[in[i] + k];
+                    clipped[dest + k] = from + (vertices[in[j] + k] - from) * t;
+                }
+            }
+        }
+
+        for (int i=2; i<n; i++)
+            setupTriangle(clipped, 0, clipped, (i - 1) * clippedSize, clipped, i * clippedSize);
+    }
+
+    private void setupTriangle(float[] va, int a, float[] vb, int b, float[] vc, int c) {
+        int offset = allocate();
+        setupVertex(va, a, offset);
+        setupVertex(vb, b, offset + vertexSize);
+        setupVertex(vc, c, offset + 2 * vertexSize);
+
+        float ax = primitives[offset], ay = primitives[offset + 1];
+        float bx = primitives[offset + vertexSize], by = primitives[offset + vertexSize + 1];
+        float cx = primitives[offset + 2 * vertexSize], cy = primitives[offset + 2 * vertexSize + 1];
+
+        float area = (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+        if (!(area != 0))
+            return;
+
+        bin(Math.min(ax, Math.min(bx, cx)), Math.min(ay, Math.min(by, cy)),
+                Math.max(ax, Math.max(bx, cx)), Math.max(ay, Math.max(by, cy)));
+    }
+
+    private void setupVertex(float[] vertices, int v, int offset) {
+        float invW = 1 / vertices[v + 3];
+        primitives[offset] = (vertices[v] * invW * .5f + .5f) * target.width;
+        primitives[offset + 1] = (vertices[v + 1] * invW * .5f + .5f) * target.height;
+        primitives[offset + 2] = vertices[v + 2] * invW * .5f + .5f;
+        primitives[offset + 3] = invW;
+        for (int k=0; k<varyings; k++)
+            primitives[offset + 4 + k] = vertices[v + Shader.VARYINGS + k] * invW;
+    }
+
+    void addPoint(float[] vertices, int v) {
+        float w = vertices[v + 3];
+        float z = vertices[v + 2];
+        float size = vertices[v + Shader.POINT_SIZE];
+        if (w <= 0 || z < -w || z > w || !(size > 0))
+            return;
+
+        int offset = allocate();
+        float x = (vertices[v] / w * .5f + .5f) * target.width;
+        float y = (vertices[v + 1] / w * .5f + .5f) * target.height;
+        primitives[offset] = x;
+        primitives[offset + 1] = y;
+        primitives[offset + 2] = z / w * .5f + .5f;
+        primitives[offset + 3] = size;
+        System.arraycopy(vertices, v + Shader.VARYINGS, primitives, offset + 4, varyings);
+
+        float half = size * .5f;
+        bin(x - half, y - half, x + half, y + half);
+    }
+
+    private void bin(float minX, float minY, float maxX, float maxY) {
+        if (!(maxX >= 0 && maxY >= 0 && minX < target.width && minY < target.height))
+            return;
+
+        int tx0 = Math.max(0, (int) minX / TILE_SIZE);
+        int ty0 = Math.max(0, (int) minY / TILE_SIZE);
+        int tx1 = Math.min(tilesX - 1, (int) Math.min(maxX, target.width - 1) / TILE_SIZE);
+        int ty1 = Math.min(tilesY - 1, (int) Math.min(maxY, target.height - 1) / TILE_SIZE);
+
+        int primitive = primitiveCount++;
+        for (int ty=ty0; ty<=ty1; ty++) {
+            for (int tx=tx0; tx<=tx1; tx++) {
+                int tile = ty * tilesX + tx;
+                int count = binCounts[tile];
+                if (count == 0)
+                    active[activeCount++] = tile;
+                else if (count == bins[tile].length)
+                    bins[tile] = Arrays.copyOf(bins[tile], count * 2);
+                bins[tile][count] = primitive;
+                binCounts[tile] = count + 1;
+            }
+        }
+    }
+
+    void flush() {
+        rasterize.forEach(pool, activeCount, 1);
+
+        for (int i=0; i<activeCount; i++)
+            binCounts[active[i]] = 0;
+        activeCount = 0;
+        primitiveCount = 0;
+    }
+
+    private void rasterizeTile(int tile) {
+        int x0 = (tile % tilesX) * TILE_SIZE;
+        int y0 = (tile / tilesX) * TILE_SIZE;
+        int x1 = Math.min(x0 + TILE_SIZE, target.width);
+        int y1 = Math.min(y0 + TILE_SIZE, target.height);
+
+        float[] in = new float[Shader.VARYINGS + varyings];
+        float[] color = new float[4];
+
+        int[] bin = bins[tile];
+        for (int i=0, n=binCounts[tile]; i<n; i++) {
+            int offset = bin[i] * primitiveSize;
+            if (points)
+                rasterizePoint(offset, x0, y0, x1, y1, in, color);
+            else
+                rasterizeTriangle(offset, x0, y0, x1, y1, in, color);
+        }
+    }
+
+    private void rasterizeTriangle(int offset, int tileX0, int tileY0, int tileX1, int tileY1, float[] in, float[] color) {
+        float[] p = primitives;
+        int a = offset, b = offset + vertexSize, c = offset + 2 * vertexSize;
+
+        float area = (p[b] - p[a]) * (p[c + 1] - p[a + 1]) - (p[b + 1] - p[a + 1]) * (p[c] - p[a]);
+        // counter clockwise from here on, so shared edges face opposite ways in their two triangles
+        if (area < 0) {
+            int tmp = b;
+            b = c;
+            c = tmp;
+            area = -area;
+        }
+
+        float ax = p[a], ay = p[a + 1], bx = p[b], by = p[b + 1], cx = p[c], cy = p[c + 1];
+
+        int minX = Math.max(tileX0, (int) Math.floor(Math.min(ax, Math.min(bx, cx))));
+        int minY = Math.max(tileY0, (int) Math.floor(Math.min(ay, Math.min(by, cy))));
+        int maxX = Math.min(tileX1 - 1, (int) Math.ceil(Math.max(ax, Math.max(bx, cx))));
+        int maxY = Math.min(tileY1 - 1, (int) Math.ceil(Math.max(ay, Math.max(by, cy))));
+
+        // edge opposite each vertex, e(p) = A * x + B * y + C
+        float a0 = by - cy, b0 = cx - bx, c0 = bx * cy - by * cx;
+        float a1 = cy - ay, b1 = ax - cx, c1 = cx * ay - cy * ax;
+        float a2 = ay - by, b2 = bx - ax, c2 = ax * by - ay * bx;
+
+        boolean topLeft0 = isTopLeft(a0, b0), topLeft1 = isTopLeft(a1, b1), topLeft2 = isTopLeft(a2, b2);
+        float invArea = 1 / area;
+
+        for (int y=minY; y<=maxY; y++) {
+            float py = y + .5f;
+            for (int x=minX; x<=maxX; x++) {
+                float px = x + .5f;
+
+                float w0 = a0 * px + b0 * py + c0;
+                float w1 = a1 * px + b1 * py + c1;
+                float w2 = a2 * px + b2 * py + c2;
+                if (!inside(w0, topLeft0) || !inside(w1, topLeft1) || !inside(w2, topLeft2))
+                    continue;
+
+                float l0 = w0 * invArea, l1 = w1 * invArea, l2 = w2 * invArea;
+                float depth = l0 * p[a + 2] + l1 * p[b + 2] + l2 * p[c + 2];
+                int pixel = y * target.width + x;
+                if (!testDepth(pixel, depth))
+                    continue;
+
+                float invW = l0 * p[a + 3] + l1 * p[b + 3] + l2 * p[c + 3];
+                float w = 1 / invW;
+                in[0] = px;
+                in[1] = py;
+                in[2] = depth;
+                in[3] = invW;
+                for (int k=0; k<varyings; k++)
+                    in[Shader.VARYINGS + k] = (l0 * p[a + 4 + k] + l1 * p[b + 4 + k] + l2 * p[c + 4 + k]) * w;
+
+                if (shader.fragment(in, color))
+                    write(pixel, depth, color);
+            }
+        }
+    }
+
+    // edges are walked counter clockwise, pixel centers exactly on an edge go to top and left edges only
+    private static boolean isTopLeft(float a, float b) {
+        return a > 0 || (a == 0 && b < 0);
+    }
+
+    private static boolean inside(float w, boolean topLeft) {
+        return w > 0 || (w == 0 && topLeft);
+    }
+
+    private void rasterizePoint(int offset, int tileX0, int tileY0, int tileX1, int tileY1, float[] in, float[] color) {
+        float[] p = primitives;
+        float cx = p[offset], cy = p[offset + 1], depth = p[offset + 2], size = p[offset + 3];
+        float half = size * .5f;
+        float left = cx - half, top = cy + half;
+
+        int minX = Math.max(tileX0, (int) Math.ceil(left - .5f));
+        int minY = Math.max(tileY0, (int) Math.ceil(cy - half - .5f));
+        int maxX = Math.min(tileX1 - 1, (int) Math.ceil(cx + half - .5f) - 1);
+        int maxY = Math.min(tileY1 - 1, (int) Math.ceil(top - .5f) - 1);
+
+        for (int y=minY; y<=maxY; y++) {
+            float py = y + .5f;
+            for (int x=minX; x<=maxX; x++) {
+                float px = x + .5f;
+                int pixel = y * target.width + x;
+                if (!testDepth(pixel, depth))
+                    continue;
+
+                in[0] = px;
+                in[1] = py;
+                in[2] = depth;
+                in[3] = 1;
+                // gl_PointCoord runs top to bottom
+                in[Shader.POINT_COORD] = (px - left) / size;
+                in[Shader.POINT_COORD + 1] = (top - py) / size;
+                System.arraycopy(p, offset + 4, in, Shader.VARYINGS, varyings);
+
+                if (shader.fragment(in, color))
+                    write(pixel, depth, color);
+            }
+        }
+    }
+
+    private boolean testDepth(int pixel, float depth) {
+        if (depth < 0 || depth > 1)
+            return false;
+        return !depthTest || depth < target.depth[pixel];
+    }
+
+    private void write(int pixel, float depth, float[] color) {
+        if (depthTest)
+            target.depth[pixel] = depth;
+
+        float r = color[0], g = color[1], b = color[2], a = color[3];
+        if (blend) {
+            int dst = target.color[pixel];
+            float sf = factor(srcFactor, a), df = factor(dstFactor, a);
+            r = r * sf + SoftwareTexture.red(dst) * df;
+            g = g * sf + SoftwareTexture.green(dst) * df;
+            b = b * sf + SoftwareTexture.blue(dst) * df;
+            a = a * sf + SoftwareTexture.alpha(dst) * df;
+        }
+
+        target.color[pixel] = pack(a) << 24 | pack(r) << 16 | pack(g) << 8 | pack(b);
+    }
+
+    private static float factor(BlendFunc.Factor factor, float srcAlpha) {
+        return factor == BlendFunc.Factor.SRC_ALPHA ? srcAlpha : 1 - srcAlpha;
+    }
+
+    private static int pack(float c) {
+        return c <= 0 ? 0 : c >= 1 ? 255 : (int) (c * 255 + .5f);
+    }
+}
@@ -0,0 +1,27 @@
+package org.quuux.opengl.renderer.software;
+
+import java.util.Arrays;
+
+// Color and depth for the default framebuffer or a FrameBuffer, rows bottom to top as GL lays them out
+class RenderTarget {
+
+    final int width, height;
+    final int[] color;
+    final float[] depth;
+
+    RenderTarget(int width, int height) {
+        this.width = width;
+        this.height = height;
+        color = new int[width * height];
+        depth = new float[width * height];
+        Arrays.fill(depth, 1);
+    }
+
+    void clearColor(int argb) {
+        Arrays.fill(color, argb);
+    }
+
+    void clearDepth() {
+        Arrays.fill(depth, 1);
+    }
+}
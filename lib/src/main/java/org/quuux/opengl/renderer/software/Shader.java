@@ -0,0 +1,32 @@
+package org.quuux.opengl.renderer.software;
+
+// A Java stand-in for a linked GLSL program, registered with SoftwareRenderer per ShaderProgram.
+//
+// Vertex outputs and fragment inputs share one float layout: the fixed slots below followed by
+// getVaryingCount() varyings, which the rasterizer interpolates with perspective correction.
+// begin runs on the renderer's thread before each draw and is the place to read uniforms into
+// fields. vertex and fragment then run on many threads at once and must only read that state.
+public interface Shader {
+
+    // clip space x, y, z, w out of vertex, window x, y, depth and 1/w into fragment
+    int POSITION = 0;
+
+    // gl_PointSize out of vertex, gl_PointCoord s, t into fragment
+    int POINT_SIZE = 4;
+    int POINT_COORD = 4;
+
+    int VARYINGS = 6;
+
+    // uniform names in location order, a uniform's location is its index here
+    String[] getUniforms();
+
+    int getVaryingCount();
+
+    void begin(Program program);
+
+    // attributes holds four floats per location, missing components default to (0, 0, 0, 1)
+    void vertex(float[] attributes, int vertexId, float[] out);
+
+    // writes rgba to color, false discards the fragment
+    boolean fragment(float[] in, float[] color);
+}
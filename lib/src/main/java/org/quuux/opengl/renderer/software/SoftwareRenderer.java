@@ -0,0 +1,765 @@
+package org.quuux.opengl.renderer.software;
+
+import org.quuux.opengl.lib.BufferType;
+import org.quuux.opengl.lib.FrameBuffer;
+import org.quuux.opengl.lib.ShaderProgram;
+import org.quuux.opengl.renderer.Renderer;
+import org.quuux.opengl.renderer.commands.*;
+import org.quuux.opengl.renderer.states.*;
+import org.quuux.opengl.util.ParallelUtil;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Logger;
+
+// Runs command lists without a GL context, for rendering on machines with no gpu. Buffers, vertex
+// arrays, textures and framebuffers are kept in Java memory and follow GL's binding rules, programs
+// shade with Java Shader ports registered per ShaderProgram (see shaders.DefaultShaders), and
+// triangles and points are rasterized in parallel a tile at a time, see Rasterizer.
+//
+// Every draw finishes before the command returns, so commands may be issued from one thread only.
+// The color buffer holds argb ints, rows bottom to top like glReadPixels.
+public class SoftwareRenderer implements Renderer {
+    private static final Logger LOGGER = Logger.getLogger( SoftwareRenderer.class.getName() );
+
+    static final int MAX_ATTRIBUTES = 16;
+    static final int MAX_TEXTURE_UNITS = 32;
+    static final int MAX_BINDINGS = 16;
+
+    // vertices shaded per parallel task
+    private static final int VERTEX_CHUNK_SIZE = 256;
+
+    static class BufferStore {
+        ByteBuffer data = allocate(0);
+    }
+
+    static class Attribute {
+        boolean enabled;
+        BufferStore buffer;
+        int size, stride, pointer, divisor;
+    }
+
+    static class VertexArray {
+        final Attribute[] attributes = new Attribute[MAX_ATTRIBUTES];
+        BufferStore elements;
+
+        Attribute get(int index) {
+            if (attributes[index] == null)
+                attributes[index] = new Attribute();
+            return attributes[index];
+        }
+    }
+
+    ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    final Map<ShaderProgram, Shader> shaders = new IdentityHashMap<>();
+    final Map<String, Shader> namedShaders = new HashMap<>();
+
+    int nextName = 1;
+    final Map<Integer, BufferStore> buffers = new HashMap<>();
+    final Map<Integer, VertexArray> arrays = new HashMap<>();
+    final Map<Integer, SoftwareTexture> textures = new HashMap<>();
+    final Map<Integer, Program> programs = new HashMap<>();
+    final Map<Integer, RenderTarget> framebuffers = new HashMap<>();
+
+    RenderTarget screen;
+    RenderTarget target;
+    final Rasterizer rasterizer = new Rasterizer();
+
+    final VertexArray defaultArray = new VertexArray();
+    VertexArray array = defaultArray;
+    BufferStore arrayBuffer, uniformBuffer, feedbackBuffer;
+    final BufferStore[] uniformBindings = new BufferStore[MAX_BINDINGS];
+
+    Program program;
+    int activeTexture;
+    final SoftwareTexture[] textures2D = new SoftwareTexture[MAX_TEXTURE_UNITS];
+    final SoftwareTexture[] cubemaps = new SoftwareTexture[MAX_TEXTURE_UNITS];
+
+    int clearColor = 0;
+    boolean depthTest, blend, rasterizerDiscard;
+
+    boolean capturing;
+    int feedbackOffset;
+
+    // the draw being shaded
+    Shader shader;
+    int stride, firstVertex, instance;
+    float[] vertices = new float[0];
+    int[] indices = new int[0];
+
+    final ParallelUtil.Loop shade = new ParallelUtil.Loop(this::shade);
+
+    public SoftwareRenderer(int width, int height) {
+        setSize(width, height);
+        rasterizer.pool = pool;
+    }
+
+    public void setSize(int width, int height) {
+        boolean current = target == screen;
+        screen = new RenderTarget(width, height);
+        if (current)
+            target = screen;
+    }
+
+    // null rasterizes and shades on the calling thread
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+        rasterizer.pool = pool;
+    }
+
+    public void register(ShaderProgram program, Shader shader) {
+        shaders.put(program, shader);
+    }
+
+    // shades every program loaded by name, including programs recreated by a trace replay
+    public void register(String name, Shader shader) {
+        namedShaders.put(name, shader);
+    }
+
+    public int getWidth() {
+        return screen.width;
+    }
+
+    public int getHeight() {
+        return screen.height;
+    }
+
+    public int[] getColorBuffer() {
+        return screen.color;
+    }
+
+    SoftwareTexture getBoundTexture(int unit, boolean cubemap) {
+        if (unit < 0 || unit >= MAX_TEXTURE_UNITS)
+            return null;
+        return cubemap ? cubemaps[unit] : textures2D[unit];
+    }
+
+    ByteBuffer getUniformBuffer(int binding) {
+        BufferStore store = binding >= 0 && binding < MAX_BINDINGS ? uniformBindings[binding] : null;
+        return store != null ? store.data : null;
+    }
+
+    private static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.nativeOrder());
+    }
+
+    // copies size bytes from the data's position, as glBufferSubData reads it
+    private static void copy(Buffer data, ByteBuffer dest, int offset, int size) {
+        ByteBuffer out = dest.duplicate().order(dest.order());
+        out.position(offset);
+
+        if (data instanceof ByteBuffer) {
+            ByteBuffer in = ((ByteBuffer) data).duplicate();
+            in.limit(in.position() + size);
+            out.put(in);
+        } else if (data instanceof FloatBuffer) {
+            FloatBuffer in = ((FloatBuffer) data).duplicate();
+            in.limit(in.position() + size / 4);
+            out.asFloatBuffer().put(in);
+        } else if (data instanceof IntBuffer) {
+            IntBuffer in = ((IntBuffer) data).duplicate();
+            in.limit(in.position() + size / 4);
+            out.asIntBuffer().put(in);
+        } else {
+            throw new UnsupportedException("Unknown buffer type: " + data.getClass());
+        }
+    }
+
+    private BufferStore getBound(BufferType target) {
+        final BufferStore rv;
+        if (target == BufferType.ArrayBuffer)
+            rv = arrayBuffer;
+        else if (target == BufferType.ElementArrayBuffer)
+            rv = array.elements;
+        else if (target == BufferType.UniformBuffer)
+            rv = uniformBuffer;
+        else if (target == BufferType.TransformFeedbackBuffer)
+            rv = feedbackBuffer;
+        else
+            throw new UnsupportedException("Unknown target: " + target);
+
+        if (rv == null)
+            throw new RendererException("No buffer bound to " + target);
+        return rv;
+    }
+
+    private void bind(BufferType target, BufferStore store) {
+        if (target == BufferType.ArrayBuffer)
+            arrayBuffer = store;
+        else if (target == BufferType.ElementArrayBuffer)
+            array.elements = store;
+        else if (target == BufferType.UniformBuffer)
+            uniformBuffer = store;
+        else if (target == BufferType.TransformFeedbackBuffer)
+            feedbackBuffer = store;
+        else
+            throw new UnsupportedException("Unknown target: " + target);
+    }
+
+    private SoftwareTexture getBoundTexture(TextureTarget target) {
+        SoftwareTexture rv = target == TextureTarget.TEXTURE_2D ? textures2D[activeTexture] : cubemaps[activeTexture];
+        if (rv == null)
+            throw new RendererException("No texture bound to " + target);
+        return rv;
+    }
+
+    private int getFace(TextureTarget target) {
+        final int rv;
+        switch (target) {
+            case TEXTURE_2D: rv = 0; break;
+            case CUBE_MAP_POSITIVE_X: rv = 0; break;
+            case CUBE_MAP_NEGATIVE_X: rv = 1; break;
+            case CUBE_MAP_POSITIVE_Y: rv = 2; break;
+            case CUBE_MAP_NEGATIVE_Y: rv = 3; break;
+            case CUBE_MAP_POSITIVE_Z: rv = 4; break;
+            case CUBE_MAP_NEGATIVE_Z: rv = 5; break;
+            default:
+                throw new UnsupportedException("Unknown target: " + target);
+        }
+        return rv;
+    }
+
+    private static int pack(float c) {
+        return c <= 0 ? 0 : c >= 1 ? 255 : (int) (c * 255 + .5f);
+    }
+
+    @Override
+    public ErrorCheck getErrorCheck() {
+        return ErrorCheck.NONE;
+    }
+
+    @Override
+    public void setErrorCheck(ErrorCheck errorCheck) {
+    }
+
+    // errors are thrown as commands run
+    @Override
+    public void checkError() {
+    }
+
+    @Override
+    public void run(final BufferData command) {
+        BufferStore store = getBound(command.getTarget());
+        store.data = allocate(command.getSize());
+        if (command.getData() != null)
+            copy(command.getData(), store.data, 0, command.getSize());
+    }
+
+    @Override
+    public void run(final BufferSubData command) {
+        BufferStore store = getBound(command.getTarget());
+        copy(command.getData(), store.data, command.getOffset(), command.getSize());
+    }
+
+    @Override
+    public void run(final Clear command) {
+        for (Clear.Mode mode : command.getModes()) {
+            if (mode == Clear.Mode.COLOR_BUFFER)
+                target.clearColor(clearColor);
+            else if (mode == Clear.Mode.DEPTH_BUFFER)
+                target.clearDepth();
+            else
+                throw new UnsupportedException("Unknown mode: " + mode);
+        }
+    }
+
+    @Override
+    public void run(final CompileShader command) {
+        // the source is only for GL, the program shades with its registered Shader
+    }
+
+    @Override
+    public void run(final CreateProgram command) {
+        int name = nextName++;
+        programs.put(name, new Program(this));
+        command.getProgram().program = name;
+    }
+
+    @Override
+    public void run(final LinkProgram command) {
+        ShaderProgram shaderProgram = command.getProgram();
+        Shader shader = shaders.get(shaderProgram);
+        if (shader == null && shaderProgram.getName() != null)
+            shader = namedShaders.get(shaderProgram.getName());
+        if (shader == null)
+            return;
+
+        programs.get(shaderProgram.program).link(shader);
+        String[] uniforms = shader.getUniforms();
+        for (int i=0; i<uniforms.length; i++)
+            shaderProgram.setUniformLocation(uniforms[i], i);
+    }
+
+    @Override
+    public void run(final DrawArrays command) {
+        draw(command.getMode(), command.getFirst(), command.getCount(), false, 1);
+    }
+
+    @Override
+    public void run(final DrawElements command) {
+        draw(command.getMode(), 0, command.getCount(), true, 1);
+    }
+
+    @Override
+    public void run(final DrawArraysInstanced command) {
+        draw(command.getMode(), command.getFirst(), command.getCount(), false, command.getInstanceCount());
+    }
+
+    @Override
+    public void run(final DrawElementsInstanced command) {
+        draw(command.getMode(), 0, command.getCount(), true, command.getInstanceCount());
+    }
+
+    private void draw(DrawMode mode, int first, int count, boolean indexed, int instances) {
+        if (program == null)
+            throw new RendererException("No program in use");
+        if (count <= 0 || instances <= 0)
+            return;
+
+        shader = program.shader;
+        if (shader == null) {
+            if (!program.warned)
+                LOGGER.warning("skipping draws with a program that has no registered Shader");
+            program.warned = true;
+            return;
+        }
+
+        // shade the range of vertices the draw touches, once per instance
+        int lo = first, hi = first + count;
+        if (indexed) {
+            ByteBuffer elements = getBound(BufferType.ElementArrayBuffer).data;
+            if (indices.length < count)
+                indices = new int[count];
+            lo = Integer.MAX_VALUE;
+            hi = 0;
+            for (int i=0; i<count; i++) {
+                int index = elements.getInt(i * 4);
+                indices[i] = index;
+                lo = Math.min(lo, index);
+                hi = Math.max(hi, index + 1);
+            }
+        }
+
+        stride = Shader.VARYINGS + shader.getVaryingCount();
+        firstVertex = lo;
+        if (vertices.length < (hi - lo) * stride)
+            vertices = new float[(hi - lo) * stride];
+
+        shader.begin(program);
+
+        boolean points = mode == DrawMode.Points;
+        boolean raster = !rasterizerDiscard;
+        if (raster) {
+            rasterizer.setTarget(target);
+            rasterizer.depthTest = depthTest;
+            rasterizer.blend = blend;
+            rasterizer.begin(shader, points);
+        }
+
+        for (instance=0; instance<instances; instance++) {
+            shade.forEach(pool, hi - lo, VERTEX_CHUNK_SIZE);
+
+            if (capturing)
+                capture(first, count, indexed);
+
+            if (!raster)
+                continue;
+
+            if (points) {
+                for (int i=0; i<count; i++)
+                    rasterizer.addPoint(vertices, offset(first, i, indexed));
+            } else {
+                for (int i=0; i+2<count; i+=3)
+                    rasterizer.addTriangle(vertices, offset(first, i, indexed), offset(first, i + 1, indexed), offset(first, i + 2, indexed));
+            }
+        }
+
+        if (raster)
+            rasterizer.flush();
+    }
+
+    private int offset(int first, int i, boolean indexed) {
+        int vertex = indexed ? indices[i] : first + i;
+        return (vertex - firstVertex) * stride;
+    }
+
+    private void shade(int chunk, int from, int to) {
+        VertexArray array = this.array;
+        float[] attributes = new float[MAX_ATTRIBUTES * 4];
+        float[] out = new float[stride];
+
+        for (int i=from; i<to; i++) {
+            int vertex = firstVertex + i;
+            fetch(array, vertex, instance, attributes);
+
+            out[Shader.POINT_SIZE] = 1;
+            shader.vertex(attributes, vertex, out);
+            System.arraycopy(out, 0, vertices, i * stride, stride);
+        }
+    }
+
+    private static void fetch(VertexArray array, int vertex, int instance, float[] attributes) {
+        for (int i=0; i<MAX_ATTRIBUTES; i++) {
+            Attribute attribute = array.attributes[i];
+            int offset = i * 4;
+
+            if (attribute == null || !attribute.enabled || attribute.buffer == null) {
+                attributes[offset] = 0;
+                attributes[offset + 1] = 0;
+                attributes[offset + 2] = 0;
+                attributes[offset + 3] = 1;
+                continue;
+            }
+
+            ByteBuffer data = attribute.buffer.data;
+            int index = attribute.divisor == 0 ? vertex : instance / attribute.divisor;
+            int base = attribute.pointer + index * attribute.stride;
+            for (int c=0; c<4; c++)
+                attributes[offset + c] = c < attribute.size ? data.getFloat(base + c * 4) : c == 3 ? 1 : 0;
+        }
+    }
+
+    // varyings of each vertex in draw order, as interleaved transform feedback writes them
+    private void capture(int first, int count, boolean indexed) {
+        if (feedbackBuffer == null)
+            throw new RendererException("No transform feedback buffer bound");
+
+        ByteBuffer data = feedbackBuffer.data;
+        int varyings = stride - Shader.VARYINGS;
+        for (int i=0; i<count; i++) {
+            int offset = offset(first, i, indexed) + Shader.VARYINGS;
+            for (int k=0; k<varyings; k++) {
+                data.putFloat(feedbackOffset, vertices[offset + k]);
+                feedbackOffset += 4;
+            }
+        }
+    }
+
+    @Override
+    public void run(final GenerateArray command) {
+        int name = nextName++;
+        arrays.put(name, new VertexArray());
+        command.getVao().vao = name;
+    }
+
+    @Override
+    public void run(final GenerateBuffer command) {
+        int name = nextName++;
+        buffers.put(name, new BufferStore());
+        command.getVbo().vbo = name;
+    }
+
+    @Override
+    public void run(final GenerateFramebuffer command) {
+        FrameBuffer framebuffer = command.getFramebuffer();
+        RenderTarget target = new RenderTarget(framebuffer.width, framebuffer.height);
+
+        int name = nextName++;
+        framebuffers.put(name, target);
+        framebuffer.fbo = name;
+
+        SoftwareTexture texture = new SoftwareTexture();
+        texture.attach(target);
+        texture.linear = false;
+
+        name = nextName++;
+        textures.put(name, texture);
+        command.getTexture().texture = name;
+    }
+
+    @Override
+    public void run(final GenerateTexture command) {
+        int name = nextName++;
+        textures.put(name, new SoftwareTexture());
+        command.getTexture().texture = name;
+    }
+
+    @Override
+    public void run(final LoadTexture command) {
+        TextureTarget target = command.getTarget();
+        SoftwareTexture texture = getBoundTexture(target == TextureTarget.TEXTURE_2D ? target : TextureTarget.CUBE_MAP);
+        texture.load(getFace(target), command.getWidth(), command.getHeight(), command.getInternalFormat(), command.getFormat(), command.getBuffer());
+    }
+
+    @Override
+    public void run(final SetUniformMatrix command) {
+        int location = command.getLocation();
+        if (location < 0 || program == null)
+            return;
+
+        int count = command.getCount();
+        FloatBuffer buffer = command.getBuffer();
+        int position = buffer.position();
+        float[] values = program.getValues(location, 16 * count);
+        for (int m=0; m<count; m++) {
+            for (int i=0; i<16; i++) {
+                int from = command.isTranspose() ? (i % 4) * 4 + i / 4 : i;
+                values[m * 16 + i] = buffer.get(position + m * 16 + from);
+            }
+        }
+    }
+
+    @Override
+    public void run(final SetUniformFloat command) {
+        int location = command.getLocation();
+        if (location < 0 || program == null)
+            return;
+
+        float[] values = program.getValues(location, command.getSize());
+        values[0] = command.getX();
+        if (command.getSize() > 1)
+            values[1] = command.getY();
+        if (command.getSize() > 2)
+            values[2] = command.getZ();
+        if (command.getSize() > 3)
+            values[3] = command.getW();
+    }
+
+    @Override
+    public void run(final SetUniformInt command) {
+        int location = command.getLocation();
+        if (location < 0 || program == null)
+            return;
+
+        float[] values = program.getValues(location, command.getSize());
+        values[0] = command.getX();
+        if (command.getSize() > 1)
+            values[1] = command.getY();
+        if (command.getSize() > 2)
+            values[2] = command.getZ();
+        if (command.getSize() > 3)
+            values[3] = command.getW();
+    }
+
+    @Override
+    public void run(final VertexAttribPointer command) {
+        if (command.getType() != VertexAttribPointer.Type.Float)
+            throw new UnsupportedException("Unknown type: " + command.getType());
+        if (arrayBuffer == null)
+            throw new RendererException("No buffer bound to " + BufferType.ArrayBuffer);
+
+        Attribute attribute = array.get(command.getIndex());
+        attribute.buffer = arrayBuffer;
+        attribute.size = command.getSize();
+        attribute.stride = command.getStride() != 0 ? command.getStride() : command.getSize() * 4;
+        attribute.pointer = command.getPointer();
+    }
+
+    @Override
+    public void run(final EnableVertexAttribArray command) {
+        array.get(command.getIndex()).enabled = true;
+    }
+
+    @Override
+    public void run(final VertexAttribDivisor command) {
+        array.get(command.getIndex()).divisor = command.getDivisor();
+    }
+
+    @Override
+    public void run(final ClearColor command) {
+        clearColor = pack(command.getA()) << 24 | pack(command.getR()) << 16 | pack(command.getG()) << 8 | pack(command.getB());
+    }
+
+    @Override
+    public void run(final BlendFunc command) {
+        rasterizer.srcFactor = command.getSfactor();
+        rasterizer.dstFactor = command.getDfactor();
+    }
+
+    @Override
+    public void run(final DepthFunc command) {
+        if (command.getDepthFunc() != DepthFunc.Function.LESS)
+            throw new UnsupportedException("Unknown depth function: " + command.getDepthFunc());
+    }
+
+    @Override
+    public void run(final TextureParameter command) {
+        SoftwareTexture texture = getBoundTexture(command.getTarget());
+        TextureParameter.Parameter parameter = command.getParameter();
+
+        // without mip levels only the mag filter is used
+        if (parameter == TextureParameter.Parameter.MAG_FILTER)
+            texture.setFilter(command.getFilter());
+        else if (parameter == TextureParameter.Parameter.WRAP_S || parameter == TextureParameter.Parameter.WRAP_T)
+            texture.setWrap(parameter, command.getWrap());
+    }
+
+    @Override
+    public void run(final GenerateMipMap command) {
+        // sampling reads the base level, see SoftwareTexture
+    }
+
+    @Override
+    public void run(final BindBufferBase command) {
+        BufferStore store = buffers.get(command.getBuffer().vbo);
+        BufferType target = command.getTarget();
+
+        if (target == BufferType.UniformBuffer) {
+            uniformBindings[command.getIndex()] = store;
+            uniformBuffer = store;
+        } else if (target == BufferType.TransformFeedbackBuffer) {
+            if (command.getIndex() != 0)
+                throw new UnsupportedException("Only transform feedback binding 0 is supported");
+            feedbackBuffer = store;
+        } else {
+            throw new UnsupportedException("Unknown target: " + target);
+        }
+    }
+
+    @Override
+    public void run(final UniformBlockBinding command) {
+        Program program = programs.get(command.getProgram().program);
+        program.blockBindings.put(command.getBlock(), command.getBinding());
+    }
+
+    // the Shader writes the captured outputs as its varyings, in the order the names are given
+    @Override
+    public void run(final TransformFeedbackVaryings command) {
+    }
+
+    @Override
+    public void run(final BeginTransformFeedback command) {
+        capturing = true;
+        feedbackOffset = 0;
+    }
+
+    @Override
+    public void run(final EndTransformFeedback command) {
+        capturing = false;
+    }
+
+    @Override
+    public void run(final DeleteTexture command) {
+        SoftwareTexture texture = textures.remove(command.getTexture().texture);
+        for (int i=0; i<MAX_TEXTURE_UNITS; i++) {
+            if (textures2D[i] == texture)
+                textures2D[i] = null;
+            if (cubemaps[i] == texture)
+                cubemaps[i] = null;
+        }
+        command.getTexture().texture = -1;
+    }
+
+    @Override
+    public void run(final DeleteProgram command) {
+        Program program = programs.remove(command.getProgram().program);
+        if (this.program == program)
+            this.program = null;
+        command.getProgram().program = -1;
+    }
+
+    @Override
+    public void run(final DeleteBuffer command) {
+        BufferStore store = buffers.remove(command.getVbo().vbo);
+        if (arrayBuffer == store)
+            arrayBuffer = null;
+        if (uniformBuffer == store)
+            uniformBuffer = null;
+        if (feedbackBuffer == store)
+            feedbackBuffer = null;
+        if (array.elements == store)
+            array.elements = null;
+        for (int i=0; i<MAX_BINDINGS; i++)
+            if (uniformBindings[i] == store)
+                uniformBindings[i] = null;
+        command.getVbo().vbo = -1;
+    }
+
+    @Override
+    public void set(final ActivateTexture command) {
+        if (command.getTextureUnit() < 0 || command.getTextureUnit() >= MAX_TEXTURE_UNITS)
+            throw new UnsupportedException("Unknown texture unit: " + command.getTextureUnit());
+        activeTexture = command.getTextureUnit();
+    }
+
+    @Override
+    public void clear(final ActivateTexture command) {
+    }
+
+    @Override
+    public void set(final BindBuffer command) {
+        bind(command.getTarget(), buffers.get(command.getVBO().vbo));
+    }
+
+    @Override
+    public void clear(final BindBuffer command) {
+        bind(command.getTarget(), null);
+    }
+
+    @Override
+    public void set(final BindFramebuffer command) {
+        target = framebuffers.get(command.getFramebuffer().fbo);
+    }
+
+    @Override
+    public void clear(final BindFramebuffer command) {
+        target = screen;
+    }
+
+    @Override
+    public void set(final Enable command) {
+        enable(command.getCapability(), true);
+    }
+
+    @Override
+    public void clear(final Enable command) {
+        enable(command.getCapability(), false);
+    }
+
+    private void enable(Enable.Capability capability, boolean enabled) {
+        if (capability == Enable.Capability.DEPTH_TEST)
+            depthTest = enabled;
+        else if (capability == Enable.Capability.BLEND)
+            blend = enabled;
+        else if (capability == Enable.Capability.RASTERIZER_DISCARD)
+            rasterizerDiscard = enabled;
+        // there is no multisampling, and point sizes always come from the shader
+        else if (capability != Enable.Capability.MULTISAMPLE && capability != Enable.Capability.POINT_SIZE)
+            throw new UnsupportedException("Unknown capability: " + capability);
+    }
+
+    @Override
+    public void set(final UseProgram command) {
+        program = programs.get(command.getProgram().program);
+    }
+
+    @Override
+    public void clear(final UseProgram command) {
+        program = null;
+    }
+
+    @Override
+    public void set(final BindTexture command) {
+        SoftwareTexture texture = textures.get(command.getTexture().texture);
+        if (command.getTarget() == TextureTarget.CUBE_MAP)
+            cubemaps[activeTexture] = texture;
+        else
+            textures2D[activeTexture] = texture;
+    }
+
+    @Override
+    public void clear(final BindTexture command) {
+        if (command.getTarget() == TextureTarget.CUBE_MAP)
+            cubemaps[activeTexture] = null;
+        else
+            textures2D[activeTexture] = null;
+    }
+
+    @Override
+    public void set(final BindArray command) {
+        array = arrays.get(command.getVAO().vao);
+    }
+
+    @Override
+    public void clear(final BindArray command) {
+        array = defaultArray;
+    }
+}
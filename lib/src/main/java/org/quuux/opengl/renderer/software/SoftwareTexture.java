@@ -0,0 +1,189 @@
+package org.quuux.opengl.renderer.software;
+
+import org.quuux.opengl.renderer.commands.LoadTexture;
+import org.quuux.opengl.renderer.commands.TextureParameter;
+
+import java.nio.ByteBuffer;
+
+// Texels of a 2D texture or the six faces of a cube map, packed as argb ints with row 0 at t = 0.
+// Sampling always reads the base level, filtered with the mag filter, since the rasterizer has no
+// screen space derivatives to pick a mip level from. Samples come back as packed argb too so
+// shaders can filter without scratch arrays.
+public class SoftwareTexture {
+
+    private static final float[] SRGB_TO_LINEAR = new float[256];
+
+    static {
+        for (int i=0; i<256; i++) {
+            float c = i / 255f;
+            SRGB_TO_LINEAR[i] = c <= 0.04045f ? c / 12.92f : (float) Math.pow((c + 0.055f) / 1.055f, 2.4f);
+        }
+    }
+
+    // one face for TEXTURE_2D, in TextureTarget order (+x, -x, +y, -y, +z, -z) for cube maps
+    final int[][] faces = new int[6][];
+    int width, height;
+
+    boolean linear = true;
+    boolean clampS, clampT;
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    void load(int face, int width, int height, LoadTexture.Format internalFormat, LoadTexture.Format format, ByteBuffer buffer) {
+        this.width = width;
+        this.height = height;
+
+        int[] texels = new int[width * height];
+        faces[face] = texels;
+        if (buffer == null)
+            return;
+
+        boolean rgb = format == LoadTexture.Format.RGB;
+        int pixelSize = rgb ? 3 : 4;
+        // rows are unpacked with an alignment of 4
+        int rowSize = (width * pixelSize + 3) & ~3;
+        int base = buffer.position();
+        boolean srgb = internalFormat == LoadTexture.Format.SRGB_ALPHA;
+
+        for (int y=0; y<height; y++) {
+            int row = base + y * rowSize;
+            for (int x=0; x<width; x++) {
+                int offset = row + x * pixelSize;
+                int r = buffer.get(offset) & 0xff;
+                int g = buffer.get(offset + 1) & 0xff;
+                int b = buffer.get(offset + 2) & 0xff;
+                int a = rgb ? 0xff : buffer.get(offset + 3) & 0xff;
+                if (srgb) {
+                    r = (int) (SRGB_TO_LINEAR[r] * 255 + .5f);
+                    g = (int) (SRGB_TO_LINEAR[g] * 255 + .5f);
+                    b = (int) (SRGB_TO_LINEAR[b] * 255 + .5f);
+                }
+                texels[y * width + x] = a << 24 | r << 16 | g << 8 | b;
+            }
+        }
+    }
+
+    // the texture samples straight out of a render target's color buffer
+    void attach(RenderTarget target) {
+        width = target.width;
+        height = target.height;
+        faces[0] = target.color;
+    }
+
+    void setFilter(TextureParameter.Filter filter) {
+        linear = filter != TextureParameter.Filter.NEAREST;
+    }
+
+    void setWrap(TextureParameter.Parameter parameter, TextureParameter.Wrap wrap) {
+        boolean clamp = wrap == TextureParameter.Wrap.CLAMP;
+        if (parameter == TextureParameter.Parameter.WRAP_S)
+            clampS = clamp;
+        else
+            clampT = clamp;
+    }
+
+    public int sample(float s, float t) {
+        return sample(faces[0], s, t);
+    }
+
+    // direction need not be normalized, faces are picked as the GL spec does
+    public int sampleCube(float x, float y, float z) {
+        float ax = Math.abs(x), ay = Math.abs(y), az = Math.abs(z);
+        int face;
+        float sc, tc, ma;
+        if (ax >= ay && ax >= az) {
+            face = x > 0 ? 0 : 1;
+            sc = x > 0 ? -z : z;
+            tc = -y;
+            ma = ax;
+        } else if (ay >= az) {
+            face = y > 0 ? 2 : 3;
+            sc = x;
+            tc = y > 0 ? z : -z;
+            ma = ay;
+        } else {
+            face = z > 0 ? 4 : 5;
+            sc = z > 0 ? x : -x;
+            tc = -y;
+            ma = az;
+        }
+
+        if (ma == 0)
+            return 0xff000000;
+        return sample(faces[face], (sc / ma + 1) * .5f, (tc / ma + 1) * .5f);
+    }
+
+    private int sample(int[] texels, float s, float t) {
+        // incomplete textures read as opaque black
+        if (texels == null || width == 0 || height == 0)
+            return 0xff000000;
+
+        float u = s * width - .5f;
+        float v = t * height - .5f;
+
+        if (!linear)
+            return texels[row(Math.round(v)) + column(Math.round(u))];
+
+        int x0 = (int) Math.floor(u);
+        int y0 = (int) Math.floor(v);
+        float fx = u - x0, fy = v - y0;
+
+        int c0 = column(x0), c1 = column(x0 + 1);
+        int r0 = row(y0), r1 = row(y0 + 1);
+
+        return bilinear(texels[r0 + c0], texels[r0 + c1], texels[r1 + c0], texels[r1 + c1], fx, fy);
+    }
+
+    private int column(int x) {
+        return clampS ? clamp(x, width) : wrap(x, width);
+    }
+
+    private int row(int y) {
+        return (clampT ? clamp(y, height) : wrap(y, height)) * width;
+    }
+
+    private static int clamp(int i, int size) {
+        return i < 0 ? 0 : i >= size ? size - 1 : i;
+    }
+
+    private static int wrap(int i, int size) {
+        i %= size;
+        return i < 0 ? i + size : i;
+    }
+
+    private static int bilinear(int t00, int t10, int t01, int t11, float fx, float fy) {
+        if (t00 == t10 && t00 == t01 && t00 == t11)
+            return t00;
+
+        float w11 = fx * fy, w01 = fy - w11, w10 = fx - w11, w00 = 1 - fx - w01;
+        int rv = 0;
+        for (int shift=0; shift<32; shift+=8) {
+            float c = ((t00 >>> shift) & 0xff) * w00 + ((t10 >>> shift) & 0xff) * w10
+                    + ((t01 >>> shift) & 0xff) * w01 + ((t11 >>> shift) & 0xff) * w11;
+            rv |= ((int) (c + .5f)) << shift;
+        }
+        return rv;
+    }
+
+    public static float alpha(int argb) {
+        return (argb >>> 24) / 255f;
+    }
+
+    public static float red(int argb) {
+        return ((argb >> 16) & 0xff) / 255f;
+    }
+
+    public static float green(int argb) {
+        return ((argb >> 8) & 0xff) / 255f;
+    }
+
+    public static float blue(int argb) {
+        return (argb & 0xff) / 255f;
+    }
+}
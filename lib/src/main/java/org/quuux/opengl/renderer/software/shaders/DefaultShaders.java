@@ -0,0 +1,17 @@
+package org.quuux.opengl.renderer.software.shaders;
+
+import org.quuux.opengl.renderer.software.SoftwareRenderer;
+
+// Registers ports of the library's programs with a SoftwareRenderer by the names entities load them
+// with from the AssetManager, so they also shade programs recreated by a trace replay.
+// The skybox sources are not in the tree, so Skybox draws are skipped.
+public class DefaultShaders {
+
+    public static void register(SoftwareRenderer renderer) {
+        renderer.register("mesh", new MeshShader(false));
+        renderer.register("instanced", new MeshShader(true));
+        renderer.register("particle", new ParticleShader());
+        renderer.register("particle_update", new ParticleUpdateShader());
+        renderer.register("gpu_particle", new GPUParticleShader());
+    }
+}
@@ -0,0 +1,88 @@
+package org.quuux.opengl.renderer.software.shaders;
+
+import org.quuux.opengl.renderer.software.Program;
+import org.quuux.opengl.scenes.FrameUniforms;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// The Frame uniform block (shaders/frame.glsl) unpacked from the std140 layout FrameUniforms writes
+class FrameBlock {
+
+    // position, constant, linear, quadratic, ambient, diffuse, specular
+    static final int POINT_LIGHT_SIZE = 15;
+
+    // column major
+    final float[] view = new float[16];
+    final float[] projection = new float[16];
+    final float[] viewProjection = new float[16];
+
+    final float[] viewPos = new float[3];
+
+    // direction, ambient, diffuse, specular
+    final float[] dirLight = new float[12];
+
+    int numPointLights;
+    final float[] pointLights = new float[FrameUniforms.MAX_POINT_LIGHTS * POINT_LIGHT_SIZE];
+
+    void read(Program program) {
+        ByteBuffer data = program.getBlock(FrameUniforms.BLOCK);
+        if (data == null || data.capacity() < FrameUniforms.SIZE) {
+            Arrays.fill(view, 0);
+            Arrays.fill(projection, 0);
+            Arrays.fill(viewProjection, 0);
+            numPointLights = 0;
+            return;
+        }
+
+        for (int i=0; i<16; i++) {
+            view[i] = data.getFloat(FrameUniforms.VIEW + i * 4);
+            projection[i] = data.getFloat(FrameUniforms.PROJECTION + i * 4);
+        }
+        multiply(projection, view, viewProjection);
+
+        get(data, FrameUniforms.VIEW_POS, viewPos, 0);
+
+        for (int i=0; i<4; i++)
+            get(data, FrameUniforms.DIR_LIGHT + i * 16, dirLight, i * 3);
+
+        numPointLights = Math.min(data.getInt(FrameUniforms.NUM_POINT_LIGHTS), FrameUniforms.MAX_POINT_LIGHTS);
+        for (int i=0; i<numPointLights; i++) {
+            int offset = FrameUniforms.POINT_LIGHTS + i * FrameUniforms.POINT_LIGHT_STRIDE;
+            int light = i * POINT_LIGHT_SIZE;
+            get(data, offset, pointLights, light);
+            pointLights[light + 3] = data.getFloat(offset + 12);
+            pointLights[light + 4] = data.getFloat(offset + 16);
+            pointLights[light + 5] = data.getFloat(offset + 20);
+            get(data, offset + 32, pointLights, light + 6);
+            get(data, offset + 48, pointLights, light + 9);
+            get(data, offset + 64, pointLights, light + 12);
+        }
+    }
+
+    private static void get(ByteBuffer data, int offset, float[] dest, int index) {
+        dest[index] = data.getFloat(offset);
+        dest[index + 1] = data.getFloat(offset + 4);
+        dest[index + 2] = data.getFloat(offset + 8);
+    }
+
+    // dest = a * b, all column major
+    static void multiply(float[] a, float[] b, float[] dest) {
+        for (int column=0; column<4; column++) {
+            for (int row=0; row<4; row++) {
+                float sum = 0;
+                for (int k=0; k<4; k++)
+                    sum += a[k * 4 + row] * b[column * 4 + k];
+                dest[column * 4 + row] = sum;
+            }
+        }
+    }
+
+    // dest = m * (x, y, z, 1), m column major
+    static void transform(float[] m, float x, float y, float z, float[] dest, int offset) {
+        dest[offset] = m[0] * x + m[4] * y + m[8] * z + m[12];
+        dest[offset + 1] = m[1] * x + m[5] * y + m[9] * z + m[13];
+        dest[offset + 2] = m[2] * x + m[6] * y + m[10] * z + m[14];
+        dest[offset + 3] = m[3] * x + m[7] * y + m[11] * z + m[15];
+    }
+}
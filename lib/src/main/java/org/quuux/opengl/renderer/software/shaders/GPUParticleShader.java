@@ -0,0 +1,62 @@
+package org.quuux.opengl.renderer.software.shaders;
+
+import org.quuux.opengl.renderer.software.Program;
+
+// gpu_particle.vert with particle.frag, draws the particles ParticleUpdateShader integrates
+public class GPUParticleShader extends ParticleShader {
+
+    static final String[] UNIFORMS = {"texture", "particleSize"};
+
+    static final int TEXTURE = 0;
+    static final int PARTICLE_SIZE = 1;
+
+    // attribute locations, see GPUParticleEmitter
+    static final int LIFE_ATTRIBUTE = 3;
+    static final int HUE_ATTRIBUTE = 4;
+
+    float particleSize;
+
+    @Override
+    public String[] getUniforms() {
+        return UNIFORMS;
+    }
+
+    @Override
+    public void begin(Program program) {
+        frame.read(program);
+        texture = program.getTexture(TEXTURE);
+        particleSize = program.getFloat(PARTICLE_SIZE);
+    }
+
+    @Override
+    public void vertex(float[] attributes, int vertexId, float[] out) {
+        float x = attributes[0], y = attributes[1], z = attributes[2];
+        float age = attributes[LIFE_ATTRIBUTE * 4], lifespan = attributes[LIFE_ATTRIBUTE * 4 + 1];
+        float percentile = lifespan > 0 ? Math.min(Math.max(age / lifespan, 0), 1) : 0;
+
+        hsv2rgb(fract(attributes[HUE_ATTRIBUTE * 4] + percentile), 1 - percentile, 1 - percentile, out, VERTEX_COLOR);
+        out[VERTEX_COLOR + 3] = 1 - percentile;
+
+        FrameBlock.transform(frame.viewProjection, x, y, z, out, POSITION);
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        out[POINT_SIZE] = age < 0 ? 0 : Math.min(particleSize / length * percentile, particleSize);
+    }
+
+    static float fract(float x) {
+        return x - (float) Math.floor(x);
+    }
+
+    static void hsv2rgb(float h, float s, float v, float[] dest, int offset) {
+        dest[offset] = v * mix(1, clamp(Math.abs(fract(h + 1) * 6 - 3) - 1), s);
+        dest[offset + 1] = v * mix(1, clamp(Math.abs(fract(h + 2 / 3f) * 6 - 3) - 1), s);
+        dest[offset + 2] = v * mix(1, clamp(Math.abs(fract(h + 1 / 3f) * 6 - 3) - 1), s);
+    }
+
+    static float mix(float a, float b, float t) {
+        return a + (b - a) * t;
+    }
+
+    static float clamp(float x) {
+        return Math.min(Math.max(x, 0), 1);
+    }
+}
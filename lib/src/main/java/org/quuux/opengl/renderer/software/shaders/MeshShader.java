@@ -0,0 +1,178 @@
+package org.quuux.opengl.renderer.software.shaders;
+
+import org.quuux.opengl.renderer.software.Program;
+import org.quuux.opengl.renderer.software.Shader;
+import org.quuux.opengl.renderer.software.SoftwareTexture;
+
+// mesh.vert or instanced.vert with mesh.frag. The fragment shader takes its normal from the
+// normal map rather than the interpolated Normal, so Normal is left out of the varyings.
+public class MeshShader implements Shader {
+
+    static final String[] UNIFORMS = {"model", "material.diffuse", "material.specular", "material.normal", "material.shininess"};
+
+    static final int MODEL = 0;
+    static final int DIFFUSE = 1;
+    static final int SPECULAR = 2;
+    static final int NORMAL = 3;
+    static final int SHININESS = 4;
+
+    // FragPos, TexCoords, Color
+    static final int FRAG_POS = VARYINGS;
+    static final int TEX_COORDS = VARYINGS + 3;
+    static final int COLOR = VARYINGS + 5;
+
+    // per instance model matrix and color attribute locations, see InstancedMesh
+    static final int MODEL_ATTRIBUTE = 3;
+    static final int COLOR_ATTRIBUTE = 7;
+
+    final boolean instanced;
+    final FrameBlock frame = new FrameBlock();
+
+    float[] model;
+    SoftwareTexture diffuse, specular, normal;
+    float shininess;
+    // whole exponents are raised by repeated multiplication, Math.pow dominates otherwise
+    int exponent;
+
+    public MeshShader(boolean instanced) {
+        this.instanced = instanced;
+    }
+
+    @Override
+    public String[] getUniforms() {
+        return UNIFORMS;
+    }
+
+    @Override
+    public int getVaryingCount() {
+        return 3 + 2 + 4;
+    }
+
+    @Override
+    public void begin(Program program) {
+        frame.read(program);
+        model = program.getUniform(MODEL);
+        diffuse = program.getTexture(DIFFUSE);
+        specular = program.getTexture(SPECULAR);
+        normal = program.getTexture(NORMAL);
+        shininess = program.getFloat(SHININESS);
+        exponent = shininess == (int) shininess && shininess >= 0 && shininess <= 64 ? (int) shininess : -1;
+    }
+
+    @Override
+    public void vertex(float[] attributes, int vertexId, float[] out) {
+        float x = attributes[0], y = attributes[1], z = attributes[2];
+
+        if (instanced) {
+            // the mat4 attribute is four vec4 columns, one location each
+            int m = MODEL_ATTRIBUTE * 4;
+            out[FRAG_POS] = attributes[m] * x + attributes[m + 4] * y + attributes[m + 8] * z + attributes[m + 12];
+            out[FRAG_POS + 1] = attributes[m + 1] * x + attributes[m + 5] * y + attributes[m + 9] * z + attributes[m + 13];
+            out[FRAG_POS + 2] = attributes[m + 2] * x + attributes[m + 6] * y + attributes[m + 10] * z + attributes[m + 14];
+            System.arraycopy(attributes, COLOR_ATTRIBUTE * 4, out, COLOR, 4);
+        } else {
+            out[FRAG_POS] = model[0] * x + model[4] * y + model[8] * z + model[12];
+            out[FRAG_POS + 1] = model[1] * x + model[5] * y + model[9] * z + model[13];
+            out[FRAG_POS + 2] = model[2] * x + model[6] * y + model[10] * z + model[14];
+            out[COLOR] = out[COLOR + 1] = out[COLOR + 2] = out[COLOR + 3] = 1;
+        }
+
+        out[TEX_COORDS] = attributes[8];
+        out[TEX_COORDS + 1] = attributes[9];
+
+        FrameBlock.transform(frame.viewProjection, out[FRAG_POS], out[FRAG_POS + 1], out[FRAG_POS + 2], out, POSITION);
+    }
+
+    @Override
+    public boolean fragment(float[] in, float[] color) {
+        float s = in[TEX_COORDS], t = in[TEX_COORDS + 1];
+        int diffuseTexel = sample(diffuse, s, t);
+        int specularTexel = sample(specular, s, t);
+        int normalTexel = sample(normal, s, t);
+
+        float dr = SoftwareTexture.red(diffuseTexel), dg = SoftwareTexture.green(diffuseTexel), db = SoftwareTexture.blue(diffuseTexel);
+        float sr = SoftwareTexture.red(specularTexel), sg = SoftwareTexture.green(specularTexel), sb = SoftwareTexture.blue(specularTexel);
+
+        float nx = SoftwareTexture.red(normalTexel) * 2 - 1;
+        float ny = SoftwareTexture.green(normalTexel) * 2 - 1;
+        float nz = SoftwareTexture.blue(normalTexel) * 2 - 1;
+        float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (length > 0) {
+            nx /= length;
+            ny /= length;
+            nz /= length;
+        }
+
+        float px = in[FRAG_POS], py = in[FRAG_POS + 1], pz = in[FRAG_POS + 2];
+        float vx = frame.viewPos[0] - px, vy = frame.viewPos[1] - py, vz = frame.viewPos[2] - pz;
+        length = (float) Math.sqrt(vx * vx + vy * vy + vz * vz);
+        if (length > 0) {
+            vx /= length;
+            vy /= length;
+            vz /= length;
+        }
+
+        float[] light = frame.dirLight;
+        float r, g, b;
+        {
+            float lx = -light[0], ly = -light[1], lz = -light[2];
+            length = (float) Math.sqrt(lx * lx + ly * ly + lz * lz);
+            if (length > 0) {
+                lx /= length;
+                ly /= length;
+                lz /= length;
+            }
+
+            float diff = Math.max(nx * lx + ny * ly + nz * lz, 0);
+            float spec = specular(nx, ny, nz, lx, ly, lz, vx, vy, vz);
+
+            r = light[3] * dr + light[6] * diff * dr + light[9] * spec * sr;
+            g = light[4] * dg + light[7] * diff * dg + light[10] * spec * sg;
+            b = light[5] * db + light[8] * diff * db + light[11] * spec * sb;
+        }
+
+        float[] lights = frame.pointLights;
+        for (int i=0; i<frame.numPointLights; i++) {
+            int l = i * FrameBlock.POINT_LIGHT_SIZE;
+            float lx = lights[l] - px, ly = lights[l + 1] - py, lz = lights[l + 2] - pz;
+            float distance = (float) Math.sqrt(lx * lx + ly * ly + lz * lz);
+            if (distance > 0) {
+                lx /= distance;
+                ly /= distance;
+                lz /= distance;
+            }
+
+            float diff = Math.max(nx * lx + ny * ly + nz * lz, 0);
+            float spec = specular(nx, ny, nz, lx, ly, lz, vx, vy, vz);
+            float attenuation = 1 / (lights[l + 3] + lights[l + 4] * distance + lights[l + 5] * distance * distance);
+
+            r += (lights[l + 6] * dr + lights[l + 9] * diff * dr + lights[l + 12] * spec * sr) * attenuation;
+            g += (lights[l + 7] * dg + lights[l + 10] * diff * dg + lights[l + 13] * spec * sg) * attenuation;
+            b += (lights[l + 8] * db + lights[l + 11] * diff * db + lights[l + 14] * spec * sb) * attenuation;
+        }
+
+        color[0] = r * in[COLOR];
+        color[1] = g * in[COLOR + 1];
+        color[2] = b * in[COLOR + 2];
+        color[3] = in[COLOR + 3];
+        return true;
+    }
+
+    // pow(max(dot(viewDir, reflect(-lightDir, normal)), 0), shininess)
+    private float specular(float nx, float ny, float nz, float lx, float ly, float lz, float vx, float vy, float vz) {
+        float d = 2 * (nx * lx + ny * ly + nz * lz);
+        float rx = d * nx - lx, ry = d * ny - ly, rz = d * nz - lz;
+        float base = Math.max(vx * rx + vy * ry + vz * rz, 0);
+        if (exponent < 0)
+            return (float) Math.pow(base, shininess);
+
+        float rv = 1;
+        for (int i=0; i<exponent; i++)
+            rv *= base;
+        return rv;
+    }
+
+    private static int sample(SoftwareTexture texture, float s, float t) {
+        return texture != null ? texture.sample(s, t) : 0xff000000;
+    }
+}
@@ -0,0 +1,61 @@
+package org.quuux.opengl.renderer.software.shaders;
+
+import org.quuux.opengl.renderer.software.Program;
+import org.quuux.opengl.renderer.software.Shader;
+import org.quuux.opengl.renderer.software.SoftwareTexture;
+
+// particle.vert with particle.frag, textured point sprites
+public class ParticleShader implements Shader {
+
+    static final String[] UNIFORMS = {"model", "texture"};
+
+    static final int MODEL = 0;
+    static final int TEXTURE = 1;
+
+    // vertexColor
+    static final int VERTEX_COLOR = VARYINGS;
+
+    final FrameBlock frame = new FrameBlock();
+    final float[] modelViewProjection = new float[16];
+
+    SoftwareTexture texture;
+
+    @Override
+    public String[] getUniforms() {
+        return UNIFORMS;
+    }
+
+    @Override
+    public int getVaryingCount() {
+        return 4;
+    }
+
+    @Override
+    public void begin(Program program) {
+        frame.read(program);
+        FrameBlock.multiply(frame.viewProjection, program.getUniform(MODEL), modelViewProjection);
+        texture = program.getTexture(TEXTURE);
+    }
+
+    @Override
+    public void vertex(float[] attributes, int vertexId, float[] out) {
+        FrameBlock.transform(modelViewProjection, attributes[0], attributes[1], attributes[2], out, POSITION);
+        System.arraycopy(attributes, 4, out, VERTEX_COLOR, 4);
+        out[POINT_SIZE] = attributes[8];
+    }
+
+    @Override
+    public boolean fragment(float[] in, float[] color) {
+        int texel = texture != null ? texture.sample(in[POINT_COORD], in[POINT_COORD + 1]) : 0xff000000;
+
+        float a = SoftwareTexture.alpha(texel) * in[VERTEX_COLOR + 3];
+        if (a < .01f)
+            return false;
+
+        color[0] = SoftwareTexture.red(texel) * in[VERTEX_COLOR];
+        color[1] = SoftwareTexture.green(texel) * in[VERTEX_COLOR + 1];
+        color[2] = SoftwareTexture.blue(texel) * in[VERTEX_COLOR + 2];
+        color[3] = a;
+        return true;
+    }
+}
@@ -0,0 +1,96 @@
+package org.quuux.opengl.renderer.software.shaders;
+
+import org.quuux.opengl.renderer.software.Program;
+import org.quuux.opengl.renderer.software.Shader;
+
+// particle_update.vert, captured by transform feedback with rasterization discarded
+public class ParticleUpdateShader implements Shader {
+
+    static final String[] UNIFORMS = {"origin", "seed", "lifespan"};
+
+    static final int ORIGIN = 0;
+    static final int SEED = 1;
+    static final int LIFESPAN = 2;
+
+    // position, velocity, acceleration, life, hue in the order GPUParticleEmitter captures them
+    static final int POSITION_OUT = VARYINGS;
+    static final int VELOCITY_OUT = VARYINGS + 3;
+    static final int ACCELERATION_OUT = VARYINGS + 6;
+    static final int LIFE_OUT = VARYINGS + 9;
+    static final int HUE_OUT = VARYINGS + 11;
+
+    float originX, originY, originZ;
+    float seed, lifespan;
+
+    @Override
+    public String[] getUniforms() {
+        return UNIFORMS;
+    }
+
+    @Override
+    public int getVaryingCount() {
+        return 3 + 3 + 3 + 2 + 1;
+    }
+
+    @Override
+    public void begin(Program program) {
+        float[] origin = program.getUniform(ORIGIN);
+        originX = origin[0];
+        originY = origin[1];
+        originZ = origin[2];
+        seed = program.getFloat(SEED);
+        lifespan = program.getFloat(LIFESPAN);
+    }
+
+    private float random(float n) {
+        return GPUParticleShader.fract((float) Math.sin(n * 12.9898f + seed * 78.233f) * 43758.5453f);
+    }
+
+    private float randomRange(float n, float lo, float hi) {
+        return GPUParticleShader.mix(lo, hi, random(n));
+    }
+
+    @Override
+    public void vertex(float[] attributes, int vertexId, float[] out) {
+        // life is (age, lifespan), particles with a negative age are waiting to spawn
+        float age = attributes[12] + 1;
+        float particleLifespan = attributes[13];
+
+        if (age >= 0 && age >= particleLifespan) {
+            float n = vertexId;
+            out[POSITION_OUT] = originX;
+            out[POSITION_OUT + 1] = originY;
+            out[POSITION_OUT + 2] = originZ;
+            out[VELOCITY_OUT] = randomRange(n, -1, 1) * .02f;
+            out[VELOCITY_OUT + 1] = randomRange(n + .1f, -1, 1) * .02f;
+            out[VELOCITY_OUT + 2] = randomRange(n + .2f, -1, 1) * .02f;
+            out[ACCELERATION_OUT] = randomRange(n + .3f, -1, 1) * .0001f;
+            out[ACCELERATION_OUT + 1] = randomRange(n + .4f, -1, 1) * .0001f;
+            out[ACCELERATION_OUT + 2] = randomRange(n + .5f, -1, 1) * .0001f;
+            out[LIFE_OUT] = 0;
+            out[LIFE_OUT + 1] = randomRange(n + .6f, lifespan / 2, lifespan * 2);
+            out[HUE_OUT] = random(n + .7f);
+        } else {
+            for (int i=0; i<3; i++) {
+                float velocity = attributes[4 + i], acceleration = attributes[8 + i];
+                out[ACCELERATION_OUT + i] = acceleration;
+                out[VELOCITY_OUT + i] = age > 0 ? velocity + acceleration : velocity;
+                out[POSITION_OUT + i] = age > 0 ? attributes[i] + out[VELOCITY_OUT + i] : attributes[i];
+            }
+            out[LIFE_OUT] = age;
+            out[LIFE_OUT + 1] = particleLifespan;
+            out[HUE_OUT] = attributes[16];
+        }
+
+        out[POSITION] = out[POSITION_OUT];
+        out[POSITION + 1] = out[POSITION_OUT + 1];
+        out[POSITION + 2] = out[POSITION_OUT + 2];
+        out[POSITION + 3] = 1;
+    }
+
+    // never runs, the update pass discards rasterization
+    @Override
+    public boolean fragment(float[] in, float[] color) {
+        return false;
+    }
+}
@@ -29,6 +29,10 @@ public class BatchState extends State {
         }
     }
 
+    public State[] getStates() {
+        return states;
+    }
+
     @Override
     public String toString() {
         return String.format("<%s %s>", getClass().getSimpleName(), Arrays.toString(states));
@@ -9,6 +9,7 @@ public class Enable extends State {
         BLEND,
         MULTISAMPLE,
         POINT_SIZE,
+        RASTERIZER_DISCARD,
     }
 
     private final Capability capability;
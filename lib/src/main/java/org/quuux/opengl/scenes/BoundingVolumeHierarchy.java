@@ -0,0 +1,364 @@
+package org.quuux.opengl.scenes;
+
+import org.joml.Vector4d;
+import org.quuux.opengl.entities.Bounded;
+
+import java.util.Collection;
+
+// Axis aligned box tree over the bounding spheres of a set of items, split top down at the median
+// of the longest axis. Nodes and items live in flat arrays, the items under any node are a
+// contiguous run. refit() picks up items that moved without rebuilding the tree, which works well
+// as long as they don't move far.
+public class BoundingVolumeHierarchy<T extends Bounded> {
+
+    public interface Visitor<T> {
+        void visit(T item);
+    }
+
+    public interface RayVisitor<T> {
+        // distance along the ray to where it enters the item's bounding sphere
+        void visit(T item, double distance);
+    }
+
+    static final int LEAF_SIZE = 4;
+
+    Object[] items = new Object[0];
+    int size;
+
+    // each item's bounds as of the last build or refit, (x, y, z, radius)
+    double[] spheres = new double[0];
+    int[] leafOf = new int[0];
+
+    // per node box (min x, y, z, max x, y, z). A leaf holds count items starting at first,
+    // an inner node has count 0 and children first and first + 1.
+    double[] boxes = new double[0];
+    int[] first = new int[0], count = new int[0], parent = new int[0];
+    int nodeCount;
+
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int i) {
+        return (T) items[i];
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public void build(Collection<? extends T> source) {
+        items = source.toArray();
+        size = items.length;
+        spheres = new double[size * 4];
+        leafOf = new int[size];
+        for (int i=0; i<size; i++)
+            read(i);
+
+        int maxNodes = Math.max(1, 2 * size);
+        boxes = new double[maxNodes * 6];
+        first = new int[maxNodes];
+        count = new int[maxNodes];
+        parent = new int[maxNodes];
+
+        nodeCount = 0;
+        if (size == 0)
+            return;
+
+        nodeCount = 1;
+        parent[0] = -1;
+        split(0, 0, size);
+    }
+
+    // Re-reads every item's bounds and refits the boxes above the ones that moved, stopping as soon
+    // as a box comes out unchanged. Returns the number of items that moved.
+    public int refit() {
+        int moved = 0;
+        for (int i=0; i<size; i++) {
+            if (read(i)) {
+                moved++;
+                int node = leafOf[i];
+                while (node >= 0 && fit(node))
+                    node = parent[node];
+            }
+        }
+        return moved;
+    }
+
+    private boolean read(int i) {
+        Vector4d bounds = ((Bounded) items[i]).getBounds();
+        int o = i * 4;
+        if (spheres[o] == bounds.x && spheres[o + 1] == bounds.y && spheres[o + 2] == bounds.z && spheres[o + 3] == bounds.w)
+            return false;
+        spheres[o] = bounds.x;
+        spheres[o + 1] = bounds.y;
+        spheres[o + 2] = bounds.z;
+        spheres[o + 3] = bounds.w;
+        return true;
+    }
+
+    private void split(int node, int from, int to) {
+        if (to - from <= LEAF_SIZE) {
+            first[node] = from;
+            count[node] = to - from;
+            for (int i=from; i<to; i++)
+                leafOf[i] = node;
+            fit(node);
+            return;
+        }
+
+        int axis = longestAxis(from, to);
+        int mid = (from + to) >>> 1;
+        select(from, to, mid, axis);
+
+        int left = nodeCount;
+        nodeCount += 2;
+        parent[left] = parent[left + 1] = node;
+        first[node] = left;
+        count[node] = 0;
+
+        split(left, from, mid);
+        split(left + 1, mid, to);
+        fit(node);
+    }
+
+    // axis along which the centers of items [from, to) spread the most
+    private int longestAxis(int from, int to) {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+        for (int i=from; i<to; i++) {
+            double x = spheres[i * 4], y = spheres[i * 4 + 1], z = spheres[i * 4 + 2];
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            minZ = Math.min(minZ, z);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+            maxZ = Math.max(maxZ, z);
+        }
+
+        double dx = maxX - minX, dy = maxY - minY, dz = maxZ - minZ;
+        if (dx >= dy && dx >= dz)
+            return 0;
+        return dy >= dz ? 1 : 2;
+    }
+
+    // partial quicksort that leaves the kth smallest center along axis at k
+    private void select(int from, int to, int k, int axis) {
+        while (to - from > 1) {
+            double pivot = spheres[((from + to) >>> 1) * 4 + axis];
+            int i = from, j = to - 1;
+            while (i <= j) {
+                while (spheres[i * 4 + axis] < pivot)
+                    i++;
+                while (spheres[j * 4 + axis] > pivot)
+                    j--;
+                if (i <= j)
+                    swap(i++, j--);
+            }
+
+            if (k <= j)
+                to = j + 1;
+            else if (k >= i)
+                from = i;
+            else
+                return;
+        }
+    }
+
+    private void swap(int a, int b) {
+        Object item = items[a];
+        items[a] = items[b];
+        items[b] = item;
+        for (int o=0; o<4; o++) {
+            double t = spheres[a * 4 + o];
+            spheres[a * 4 + o] = spheres[b * 4 + o];
+            spheres[b * 4 + o] = t;
+        }
+    }
+
+    // recomputes a node's box from its items or children, returns whether it changed
+    private boolean fit(int node) {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+
+        if (count[node] > 0) {
+            for (int i=first[node], end=first[node] + count[node]; i<end; i++) {
+                int o = i * 4;
+                double r = spheres[o + 3];
+                minX = Math.min(minX, spheres[o] - r);
+                minY = Math.min(minY, spheres[o + 1] - r);
+                minZ = Math.min(minZ, spheres[o + 2] - r);
+                maxX = Math.max(maxX, spheres[o] + r);
+                maxY = Math.max(maxY, spheres[o + 1] + r);
+                maxZ = Math.max(maxZ, spheres[o + 2] + r);
+            }
+        } else {
+            for (int c=first[node]; c<first[node] + 2; c++) {
+                int o = c * 6;
+                minX = Math.min(minX, boxes[o]);
+                minY = Math.min(minY, boxes[o + 1]);
+                minZ = Math.min(minZ, boxes[o + 2]);
+                maxX = Math.max(maxX, boxes[o + 3]);
+                maxY = Math.max(maxY, boxes[o + 4]);
+                maxZ = Math.max(maxZ, boxes[o + 5]);
+            }
+        }
+
+        int o = node * 6;
+        if (boxes[o] == minX && boxes[o + 1] == minY && boxes[o + 2] == minZ
+                && boxes[o + 3] == maxX && boxes[o + 4] == maxY && boxes[o + 5] == maxZ)
+            return false;
+
+        boxes[o] = minX;
+        boxes[o + 1] = minY;
+        boxes[o + 2] = minZ;
+        boxes[o + 3] = maxX;
+        boxes[o + 4] = maxY;
+        boxes[o + 5] = maxZ;
+        return true;
+    }
+
+    // Visits the items whose spheres are not entirely outside any of the planes, see
+    // Camera.frustumPlanes. Returns the number visited.
+    public int queryFrustum(Vector4d[] planes, Visitor<? super T> visitor) {
+        if (nodeCount == 0)
+            return 0;
+        return queryFrustum(0, planes, (1 << planes.length) - 1, visitor);
+    }
+
+    // mask holds the planes the node's parent straddled, planes it is entirely inside of are skipped below it
+    @SuppressWarnings("unchecked")
+    private int queryFrustum(int node, Vector4d[] planes, int mask, Visitor<? super T> visitor) {
+        int o = node * 6;
+        for (int p=0; p<planes.length; p++) {
+            if ((mask & (1 << p)) == 0)
+                continue;
+
+            Vector4d plane = planes[p];
+            double nearest = plane.w
+                    + plane.x * (plane.x >= 0 ? boxes[o + 3] : boxes[o])
+                    + plane.y * (plane.y >= 0 ? boxes[o + 4] : boxes[o + 1])
+                    + plane.z * (plane.z >= 0 ? boxes[o + 5] : boxes[o + 2]);
+            if (nearest < 0)
+                return 0;
+
+            double farthest = plane.w
+                    + plane.x * (plane.x >= 0 ? boxes[o] : boxes[o + 3])
+                    + plane.y * (plane.y >= 0 ? boxes[o + 1] : boxes[o + 4])
+                    + plane.z * (plane.z >= 0 ? boxes[o + 2] : boxes[o + 5]);
+            if (farthest >= 0)
+                mask &= ~(1 << p);
+        }
+
+        if (count[node] == 0)
+            return queryFrustum(first[node], planes, mask, visitor) + queryFrustum(first[node] + 1, planes, mask, visitor);
+
+        int rv = 0;
+        for (int i=first[node], end=first[node] + count[node]; i<end; i++) {
+            if (sphereInside(i, planes, mask)) {
+                visitor.visit((T) items[i]);
+                rv++;
+            }
+        }
+        return rv;
+    }
+
+    private boolean sphereInside(int i, Vector4d[] planes, int mask) {
+        int o = i * 4;
+        for (int p=0; p<planes.length; p++) {
+            if ((mask & (1 << p)) == 0)
+                continue;
+            Vector4d plane = planes[p];
+            if (plane.x * spheres[o] + plane.y * spheres[o + 1] + plane.z * spheres[o + 2] + plane.w < -spheres[o + 3])
+                return false;
+        }
+        return true;
+    }
+
+    // Visits the items whose spheres overlap the given one, returns the number visited
+    public int querySphere(double x, double y, double z, double radius, Visitor<? super T> visitor) {
+        if (nodeCount == 0)
+            return 0;
+        return querySphere(0, x, y, z, radius, visitor);
+    }
+
+    @SuppressWarnings("unchecked")
+    private int querySphere(int node, double x, double y, double z, double radius, Visitor<? super T> visitor) {
+        int o = node * 6;
+        double dx = Math.max(boxes[o] - x, Math.max(0, x - boxes[o + 3]));
+        double dy = Math.max(boxes[o + 1] - y, Math.max(0, y - boxes[o + 4]));
+        double dz = Math.max(boxes[o + 2] - z, Math.max(0, z - boxes[o + 5]));
+        if (dx * dx + dy * dy + dz * dz > radius * radius)
+            return 0;
+
+        if (count[node] == 0)
+            return querySphere(first[node], x, y, z, radius, visitor) + querySphere(first[node] + 1, x, y, z, radius, visitor);
+
+        int rv = 0;
+        for (int i=first[node], end=first[node] + count[node]; i<end; i++) {
+            int s = i * 4;
+            double ex = spheres[s] - x, ey = spheres[s + 1] - y, ez = spheres[s + 2] - z;
+            double reach = radius + spheres[s + 3];
+            if (ex * ex + ey * ey + ez * ez <= reach * reach) {
+                visitor.visit((T) items[i]);
+                rv++;
+            }
+        }
+        return rv;
+    }
+
+    // Visits the items whose spheres the ray enters within maxDistance, in no particular order.
+    // The direction should be unit length. Returns the number visited.
+    public int queryRay(double ox, double oy, double oz, double dx, double dy, double dz, double maxDistance, RayVisitor<? super T> visitor) {
+        if (nodeCount == 0)
+            return 0;
+        return queryRay(0, ox, oy, oz, 1 / dx, 1 / dy, 1 / dz, dx, dy, dz, maxDistance, visitor);
+    }
+
+    @SuppressWarnings("unchecked")
+    private int queryRay(int node, double ox, double oy, double oz, double ix, double iy, double iz,
+                         double dx, double dy, double dz, double maxDistance, RayVisitor<? super T> visitor) {
+        // slab test, an axis the ray runs parallel to gives +-infinity and drops out of the min/max
+        int o = node * 6;
+        double t1 = (boxes[o] - ox) * ix, t2 = (boxes[o + 3] - ox) * ix;
+        double near = Math.min(t1, t2), far = Math.max(t1, t2);
+        t1 = (boxes[o + 1] - oy) * iy;
+        t2 = (boxes[o + 4] - oy) * iy;
+        near = Math.max(near, Math.min(t1, t2));
+        far = Math.min(far, Math.max(t1, t2));
+        t1 = (boxes[o + 2] - oz) * iz;
+        t2 = (boxes[o + 5] - oz) * iz;
+        near = Math.max(near, Math.min(t1, t2));
+        far = Math.min(far, Math.max(t1, t2));
+        if (far < Math.max(near, 0) || near > maxDistance)
+            return 0;
+
+        if (count[node] == 0)
+            return queryRay(first[node], ox, oy, oz, ix, iy, iz, dx, dy, dz, maxDistance, visitor)
+                    + queryRay(first[node] + 1, ox, oy, oz, ix, iy, iz, dx, dy, dz, maxDistance, visitor);
+
+        int rv = 0;
+        for (int i=first[node], end=first[node] + count[node]; i<end; i++) {
+            int s = i * 4;
+            double cx = spheres[s] - ox, cy = spheres[s + 1] - oy, cz = spheres[s + 2] - oz;
+            double r = spheres[s + 3];
+            double along = cx * dx + cy * dy + cz * dz;
+            double d2 = cx * cx + cy * cy + cz * cz - along * along;
+            if (d2 > r * r)
+                continue;
+
+            double half = Math.sqrt(r * r - d2);
+            if (along + half < 0)
+                continue;
+
+            double distance = Math.max(0, along - half);
+            if (distance > maxDistance)
+                continue;
+
+            visitor.visit((T) items[i], distance);
+            rv++;
+        }
+        return rv;
+    }
+}
@@ -3,6 +3,7 @@ package org.quuux.opengl.scenes;
 import org.joml.Matrix4d;
 import org.joml.Matrix4f;
 import org.joml.Vector3d;
+import org.joml.Vector4d;
 
 
 public class Camera {
@@ -31,6 +32,15 @@ public class Camera {
 
     public Matrix4d scratch = new Matrix4d();
 
+    // projection * view, and the six clip planes (left, right, bottom, top, near, far) taken from it.
+    // Each plane is (a, b, c, d) with a unit normal pointing into the frustum.
+    public Matrix4d viewProjectionMatrix = new Matrix4d();
+    public final Vector4d[] frustumPlanes = {
+            new Vector4d(), new Vector4d(), new Vector4d(), new Vector4d(), new Vector4d(), new Vector4d()
+    };
+
+    final int[] viewport = new int[4];
+
     public Camera() { }
 
 
@@ -104,6 +114,39 @@ public class Camera {
 
         updateProjectionMatrix();
         updateViewMatrix();
+        updateFrustum();
+    }
+
+    public void updateFrustum() {
+        viewProjectionMatrix.set(projectionMatrix).mul(viewMatrix);
+        for (int i=0; i<frustumPlanes.length; i++) {
+            Vector4d plane = viewProjectionMatrix.frustumPlane(i, frustumPlanes[i]);
+            plane.div(Math.sqrt(plane.x * plane.x + plane.y * plane.y + plane.z * plane.z));
+        }
+    }
+
+    // false only when the sphere is entirely outside one of the planes
+    public boolean isVisible(double x, double y, double z, double radius) {
+        for (int i=0; i<frustumPlanes.length; i++) {
+            Vector4d plane = frustumPlanes[i];
+            if (plane.x * x + plane.y * y + plane.z * z + plane.w < -radius)
+                return false;
+        }
+        return true;
+    }
+
+    public boolean isVisible(Vector4d sphere) {
+        return isVisible(sphere.x, sphere.y, sphere.z, sphere.w);
+    }
+
+    // World space ray through a point on a width x height window, measured in pixels from the top
+    // left the way mouse and touch events report it. The origin is on the near plane and the
+    // direction is unit length.
+    public void screenRay(double x, double y, int width, int height, Vector3d origin, Vector3d direction) {
+        viewport[2] = width;
+        viewport[3] = height;
+        viewProjectionMatrix.unprojectRay(x, height - y, viewport, origin, direction);
+        direction.normalize();
     }
 
     public void modelViewProjectionMatrix(Matrix4d model, Matrix4f dest) {
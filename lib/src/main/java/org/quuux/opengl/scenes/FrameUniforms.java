@@ -0,0 +1,159 @@
+package org.quuux.opengl.scenes;
+
+import org.quuux.opengl.entities.Entity;
+import org.quuux.opengl.entities.Snapshotable;
+import org.quuux.opengl.lib.BufferObject;
+import org.quuux.opengl.lib.BufferType;
+import org.quuux.opengl.lib.ShaderProgram;
+import org.quuux.opengl.renderer.Command;
+import org.quuux.opengl.renderer.CommandList;
+import org.quuux.opengl.renderer.commands.BindBufferBase;
+import org.quuux.opengl.renderer.commands.BufferData;
+import org.quuux.opengl.renderer.commands.BufferSubData;
+import org.quuux.opengl.renderer.commands.DeleteBuffer;
+import org.quuux.opengl.renderer.commands.GenerateBuffer;
+import org.quuux.opengl.renderer.commands.UniformBlockBinding;
+import org.quuux.opengl.renderer.states.BatchState;
+import org.quuux.opengl.renderer.states.BindBuffer;
+import org.quuux.opengl.util.GLUtil;
+import org.quuux.opengl.util.ResourceUtil;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.nio.ByteBuffer;
+
+// The camera and lights as one std140 uniform block (shaders/frame.glsl), uploaded once a
+// frame and read by every program that binds the block instead of per-mesh uniforms.
+public class FrameUniforms implements Entity, Snapshotable {
+
+    public static final String BLOCK = "Frame";
+    public static final int BINDING = 0;
+    public static final int MAX_POINT_LIGHTS = 8;
+
+    // std140 offsets, in bytes
+    public static final int VIEW = 0;
+    public static final int PROJECTION = 64;
+    public static final int VIEW_POS = 128;
+    public static final int NUM_POINT_LIGHTS = 140;
+    public static final int DIR_LIGHT = 144;
+    public static final int POINT_LIGHTS = 208;
+    public static final int POINT_LIGHT_STRIDE = 80;
+    public static final int SIZE = POINT_LIGHTS + MAX_POINT_LIGHTS * POINT_LIGHT_STRIDE;
+
+    // the camera part (view, projection, viewPos) blends between snapshots, the rest is copied
+    static final int BLENDED = NUM_POINT_LIGHTS / 4;
+
+    private static String source;
+
+    final Scene scene;
+    // written by update, uploaded by draw
+    final ByteBuffer staging = GLUtil.byteBuffer(SIZE);
+    final ByteBuffer data = GLUtil.byteBuffer(SIZE);
+    final Matrix4f matrix = new Matrix4f();
+
+    BufferObject ubo = new BufferObject();
+    Command displayList;
+
+    public FrameUniforms(Scene scene) {
+        this.scene = scene;
+    }
+
+    // Block declaration to prepend to shader sources that read it
+    public static String getSource() {
+        if (source == null)
+            source = ResourceUtil.getStringResource("shaders/frame.glsl");
+        return source;
+    }
+
+    // Hooks a linked program's block up to the shared binding point
+    public static Command bind(ShaderProgram program) {
+        return new UniformBlockBinding(program, BLOCK, BINDING);
+    }
+
+    @Override
+    public Command initialize() {
+        CommandList rv = new CommandList();
+        rv.add(new GenerateBuffer(ubo));
+
+        BatchState ctx = new BatchState(new BindBuffer(BufferType.UniformBuffer, ubo));
+        ctx.add(new BufferData(BufferType.UniformBuffer, SIZE, data, BufferData.Usage.DynamicDraw));
+        rv.add(ctx);
+
+        rv.add(new BindBufferBase(BufferType.UniformBuffer, BINDING, ubo));
+        return rv;
+    }
+
+    @Override
+    public Command dispose() {
+        return new DeleteBuffer(ubo);
+    }
+
+    @Override
+    public Command draw() {
+        if (displayList == null) {
+            BatchState rv = new BatchState(new BindBuffer(BufferType.UniformBuffer, ubo));
+            rv.add(new BufferSubData(BufferType.UniformBuffer, 0, SIZE, data));
+            displayList = rv;
+        }
+        return displayList;
+    }
+
+    @Override
+    public void update(long t) {
+        Camera camera = scene.getCamera();
+        matrix.set(camera.viewMatrix).get(VIEW, staging);
+        matrix.set(camera.projectionMatrix).get(PROJECTION, staging);
+        staging.putFloat(VIEW_POS, (float) camera.position.x);
+        staging.putFloat(VIEW_POS + 4, (float) camera.position.y);
+        staging.putFloat(VIEW_POS + 8, (float) camera.position.z);
+
+        DirectionalLight directionalLight = scene.directionalLight;
+        if (directionalLight != null) {
+            put(DIR_LIGHT, directionalLight.direction);
+            put(DIR_LIGHT + 16, directionalLight.ambient);
+            put(DIR_LIGHT + 32, directionalLight.diffuse);
+            put(DIR_LIGHT + 48, directionalLight.specular);
+        }
+
+        int count = Math.min(scene.pointLights.size(), MAX_POINT_LIGHTS);
+        staging.putInt(NUM_POINT_LIGHTS, count);
+        for (int i=0; i<count; i++) {
+            PointLight pointLight = scene.pointLights.get(i);
+            int offset = POINT_LIGHTS + i * POINT_LIGHT_STRIDE;
+            put(offset, pointLight.position);
+            staging.putFloat(offset + 12, pointLight.constant);
+            staging.putFloat(offset + 16, pointLight.linear);
+            staging.putFloat(offset + 20, pointLight.quadratic);
+            put(offset + 32, pointLight.ambient);
+            put(offset + 48, pointLight.diffuse);
+            put(offset + 64, pointLight.specular);
+        }
+    }
+
+    private void put(int offset, Vector3f v) {
+        v.get(offset, staging);
+    }
+
+    @Override
+    public int getSnapshotSize() {
+        return SIZE / 4;
+    }
+
+    // ints go through as float bits, small counts are denormals and survive the trip
+    @Override
+    public void capture(float[] snapshot, int offset) {
+        for (int i=0; i<SIZE / 4; i++)
+            snapshot[offset + i] = staging.getFloat(i * 4);
+    }
+
+    @Override
+    public void apply(float[] previous, float[] current, int offset, float alpha) {
+        for (int i=0; i<BLENDED; i++) {
+            float a = previous[offset + i];
+            data.putFloat(i * 4, a + (current[offset + i] - a) * alpha);
+        }
+        for (int i=BLENDED; i<SIZE / 4; i++)
+            data.putFloat(i * 4, current[offset + i]);
+    }
+}
@@ -0,0 +1,39 @@
+package org.quuux.opengl.scenes;
+
+import org.joml.Vector3d;
+import org.quuux.opengl.entities.Entity;
+
+// Nearest hit of a ray cast, reused between casts
+public class RaycastHit {
+
+    public Entity entity;
+
+    // index of the triangle in the mesh's index buffer (or vertex buffer when it has none), counted in triangles
+    public int triangle = -1;
+
+    public double distance = Double.POSITIVE_INFINITY;
+
+    // barycentric weights of the triangle's second and third vertices, the first gets 1 - u - v
+    public double u, v;
+
+    // world space point of the hit
+    public final Vector3d position = new Vector3d();
+
+    public boolean isHit() {
+        return entity != null;
+    }
+
+    public void reset() {
+        entity = null;
+        triangle = -1;
+        distance = Double.POSITIVE_INFINITY;
+        u = v = 0;
+    }
+
+    @Override
+    public String toString() {
+        if (!isHit())
+            return "<RaycastHit miss>";
+        return String.format("<RaycastHit %s triangle=%d distance=%.3f u=%.3f v=%.3f>", entity, triangle, distance, u, v);
+    }
+}
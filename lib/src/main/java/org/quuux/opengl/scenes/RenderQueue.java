@@ -0,0 +1,266 @@
+package org.quuux.opengl.scenes;
+
+import org.joml.Vector4d;
+import org.quuux.opengl.entities.Bounded;
+import org.quuux.opengl.entities.Entity;
+import org.quuux.opengl.entities.Sortable;
+import org.quuux.opengl.renderer.Command;
+import org.quuux.opengl.renderer.Renderer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Entity draws, reordered every frame by a 64 bit key and radix sorted before they run:
+//
+//   opaque       pass:2 | 0:1 | -:1 | shader:12 | material:12 | vao:12 | depth:24
+//   translucent  pass:2 | 1:1 | -:1 | far:24 | shader:12 | material:12 | vao:12
+//
+// so within a pass opaque draws come first grouped by state and front to back for early z,
+// then translucent ones back to front. Draws of entities that aren't Sortable go in DEFAULT_PASS
+// and, the sort being stable, keep the order they were added in. Bounded entities are skipped
+// in frames where the last cull didn't see them.
+//
+// Culling may run on an update thread while the queue draws. Items are stamped with the cull's
+// frame as it finds them and drawn while their stamp is at least drawFrame, the last cull
+// published to the render thread, so a cull in progress can only add draws, never drop them.
+public class RenderQueue extends Command {
+
+    public static final int DEFAULT_PASS = 1;
+
+    static final int ID_BITS = 12;
+    static final int DEPTH_BITS = 24;
+    static final long ID_MASK = (1L << ID_BITS) - 1;
+    static final long DEPTH_MAX = (1L << DEPTH_BITS) - 1;
+    static final int VIEW_SIZE = 7;
+
+    public class Item implements Bounded {
+        final Entity entity;
+        final Command draw;
+        final boolean bounded;
+
+        // key without the depth
+        final long state;
+        final boolean translucent;
+
+        // visible until the next cull has had a look at it
+        volatile int visibleFrame = frame;
+
+        Item(Entity entity, Command draw) {
+            this.entity = entity;
+            this.draw = draw;
+            this.bounded = entity instanceof Bounded;
+
+            if (entity instanceof Sortable) {
+                Sortable sortable = (Sortable) entity;
+                translucent = sortable.isTranslucent();
+                long pass = sortable.getPass() & 3;
+                long shader = id(sortable.getShader()), material = id(sortable.getMaterial()), vao = id(sortable.getArray());
+                if (translucent)
+                    state = pass << 62 | 1L << 61 | shader << 2 * ID_BITS | material << ID_BITS | vao;
+                else
+                    state = pass << 62 | shader << 48 | material << 36 | vao << 24;
+            } else {
+                translucent = false;
+                state = (long) DEFAULT_PASS << 62;
+            }
+        }
+
+        public Entity getEntity() {
+            return entity;
+        }
+
+        public boolean isVisible() {
+            return !bounded || visibleFrame >= drawFrame;
+        }
+
+        @Override
+        public Vector4d getBounds() {
+            return ((Bounded) entity).getBounds();
+        }
+
+        long key() {
+            if (!(entity instanceof Sortable))
+                return state;
+
+            long depth = depth(((Bounded) entity).getBounds());
+            return translucent ? state | (DEPTH_MAX - depth) << 3 * ID_BITS : state | depth;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("<Item %s>", draw);
+        }
+    }
+
+    final Camera camera;
+    final List<Item> items = new ArrayList<>();
+
+    // dense ids for the shaders, materials and vaos of the items queued since the last clear,
+    // ids past ID_BITS wrap
+    final Map<Object, Long> ids = new IdentityHashMap<>();
+
+    // the cull in progress or last finished, and the one drawn with
+    volatile int frame;
+    int drawFrame;
+
+    long[] keys = new long[0], scratchKeys = new long[0];
+    int[] order = new int[0], scratchOrder = new int[0];
+    final int[] histogram = new int[256];
+    int drawCount;
+
+    // eye x, y, z, view direction x, y, z and far plane depth is measured against, see setView
+    final double[] view = new double[VIEW_SIZE];
+    boolean hasView;
+
+    public RenderQueue(Camera camera) {
+        this.camera = camera;
+    }
+
+    static void getView(Camera camera, double[] view) {
+        view[0] = camera.position.x;
+        view[1] = camera.position.y;
+        view[2] = camera.position.z;
+        view[3] = camera.front.x;
+        view[4] = camera.front.y;
+        view[5] = camera.front.z;
+        view[6] = camera.zFar;
+    }
+
+    // the camera as of a snapshot, so draws don't read it while the update thread moves it.
+    // Until a view is set the camera is read directly.
+    public void setView(double[] view) {
+        System.arraycopy(view, 0, this.view, 0, VIEW_SIZE);
+        hasView = true;
+    }
+
+    public Item add(Entity entity, Command draw) {
+        Item item = new Item(entity, draw);
+        items.add(item);
+        return item;
+    }
+
+    public List<Item> getItems() {
+        return items;
+    }
+
+    // the ids go with the items, so states that were dropped don't use up ids for good
+    public void clear() {
+        items.clear();
+        ids.clear();
+    }
+
+    // starts a new cull, bounded items are hidden once it's drawn unless marked
+    public int nextFrame() {
+        return ++frame;
+    }
+
+    // the cull to draw with, set from a snapshot
+    public void setDrawFrame(int drawFrame) {
+        this.drawFrame = drawFrame;
+    }
+
+    public void markVisible(Item item) {
+        item.visibleFrame = frame;
+    }
+
+    // draws run by the last frame
+    public int getDrawCount() {
+        return drawCount;
+    }
+
+    long id(Object state) {
+        if (state == null)
+            return 0;
+        Long rv = ids.get(state);
+        if (rv == null) {
+            rv = (ids.size() + 1) & ID_MASK;
+            ids.put(state, rv);
+        }
+        return rv;
+    }
+
+    // distance along the view direction, scaled to the far plane
+    long depth(Vector4d bounds) {
+        if (!hasView)
+            getView(camera, view);
+        double z = (bounds.x - view[0]) * view[3]
+                + (bounds.y - view[1]) * view[4]
+                + (bounds.z - view[2]) * view[5];
+        double scaled = view[6] > 0 ? z / view[6] : 0;
+        if (scaled <= 0)
+            return 0;
+        if (scaled >= 1)
+            return DEPTH_MAX;
+        return (long) (scaled * DEPTH_MAX);
+    }
+
+    @Override
+    public void run(Renderer renderer) {
+        int size = items.size();
+        if (keys.length < size) {
+            keys = new long[size];
+            scratchKeys = new long[size];
+            order = new int[size];
+            scratchOrder = new int[size];
+        }
+
+        int count = 0;
+        for (int i=0; i<size; i++) {
+            Item item = items.get(i);
+            if (item.isVisible()) {
+                keys[count] = item.key();
+                order[count++] = i;
+            }
+        }
+
+        sort(count);
+
+        for (int i=0; i<count; i++)
+            items.get(order[i]).draw.run(renderer);
+        drawCount = count;
+    }
+
+    // LSD radix sort of keys with order alongside, a byte at a time. Stable, and bytes every key
+    // shares (most of the high ones) are skipped.
+    void sort(int count) {
+        long[] srcKeys = keys, dstKeys = scratchKeys;
+        int[] srcOrder = order, dstOrder = scratchOrder;
+
+        for (int shift=0; shift<64 && count > 1; shift+=8) {
+            Arrays.fill(histogram, 0);
+            for (int i=0; i<count; i++)
+                histogram[(int) (srcKeys[i] >>> shift) & 0xFF]++;
+
+            if (histogram[(int) (srcKeys[0] >>> shift) & 0xFF] == count)
+                continue;
+
+            int sum = 0;
+            for (int b=0; b<256; b++) {
+                int c = histogram[b];
+                histogram[b] = sum;
+                sum += c;
+            }
+
+            for (int i=0; i<count; i++) {
+                int slot = histogram[(int) (srcKeys[i] >>> shift) & 0xFF]++;
+                dstKeys[slot] = srcKeys[i];
+                dstOrder[slot] = srcOrder[i];
+            }
+
+            long[] tk = srcKeys;
+            srcKeys = dstKeys;
+            dstKeys = tk;
+            int[] to = srcOrder;
+            srcOrder = dstOrder;
+            dstOrder = to;
+        }
+
+        if (srcKeys != keys) {
+            System.arraycopy(srcKeys, 0, keys, 0, count);
+            System.arraycopy(srcOrder, 0, order, 0, count);
+        }
+    }
+}
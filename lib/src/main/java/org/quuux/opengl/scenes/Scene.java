@@ -1,20 +1,75 @@
 package org.quuux.opengl.scenes;
 
+import org.quuux.opengl.entities.Bounded;
 import org.quuux.opengl.entities.Entity;
 import org.quuux.opengl.entities.EntityGroup;
+import org.quuux.opengl.entities.Raycastable;
+import org.quuux.opengl.entities.Snapshotable;
+import org.quuux.opengl.lib.AssetManager;
 import org.quuux.opengl.renderer.Command;
+import org.quuux.opengl.renderer.CommandList;
+import org.quuux.opengl.util.EventUtil;
+import org.quuux.opengl.util.ParallelUtil;
+
+import org.joml.Vector3d;
+import org.joml.Vector3dc;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 
 public class Scene implements Entity {
     private static Scene instance;
 
+    // entity draws recorded per task, small since one draw can compile a whole display list
+    private static final int RECORD_CHUNK_SIZE = 4;
+
     public Camera camera = new Camera();
     public DirectionalLight directionalLight = new DirectionalLight();
     public List<PointLight> pointLights = new ArrayList<>();
     public EntityGroup entities = new EntityGroup();
+    public FrameUniforms uniforms = new FrameUniforms(this);
+
+    // entity draws in state and depth order, bounded ones indexed by their bounds and tested
+    // against the camera once per update
+    final RenderQueue queue = new RenderQueue(camera);
+    final BoundingVolumeHierarchy<RenderQueue.Item> index = new BoundingVolumeHierarchy<>();
+    final BoundingVolumeHierarchy.Visitor<RenderQueue.Item> markVisible = queue::markVisible;
+    final List<RenderQueue.Item> bounded = new ArrayList<>();
+    int visibleCount, culledCount;
+
+    // the draw list and the entity tree it was recorded from, recorded again when the tree changes
+    CommandList drawList;
+    EntityGroup drawnEntities;
+    long drawnVersion;
+
+    // held while the queue and index are rebuilt on the render thread or culled on the update thread
+    final Object indexLock = new Object();
+
+    // Entity draws are recorded in parallel, each into its own slot, then added to the queue in
+    // tree order so the result doesn't depend on scheduling. null, the default, records on the
+    // calling thread. Drivers pass a pool in with setPool, ForkJoinPool.commonPool() needs Android 24.
+    ForkJoinPool pool;
+    final List<Entity> recording = new ArrayList<>();
+    Command[] recorded = new Command[16];
+    final ParallelUtil.Loop record = new ParallelUtil.Loop(this::record);
+
+    // broad phase results of the current ray cast, sorted nearest first before the narrow phase
+    RenderQueue.Item[] candidates = new RenderQueue.Item[16];
+    double[] candidateDistances = new double[16];
+    int candidateCount;
+    final BoundingVolumeHierarchy.RayVisitor<RenderQueue.Item> collect = this::addCandidate;
+    final Vector3d rayOrigin = new Vector3d(), rayDirection = new Vector3d();
+
+    // entities with render state in snapshots, and where each one's starts, laid out on first use
+    List<Snapshotable> snapshotted;
+    int[] snapshotOffsets;
+    int snapshotSize;
+
+    // dispatchUpdate captures and applies in place when no Simulation is running
+    Snapshot immediate;
 
     protected Scene() {
         set(this);
@@ -33,31 +88,248 @@ public class Scene implements Entity {
         return camera;
     }
 
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    // bounded entities that passed the last frustum test
+    public int getVisibleCount() {
+        return visibleCount;
+    }
+
+    // bounded entities skipped by the last frustum test
+    public int getCulledCount() {
+        return culledCount;
+    }
+
+    // Nearest entity under a window position, in pixels from the top left. Only entities drawn
+    // by the current draw list and implementing Raycastable can be hit. Casts read entities as
+    // updates leave them, so call from the thread that updates, with a Simulation through post().
+    public boolean raycast(double x, double y, int width, int height, RaycastHit hit) {
+        camera.screenRay(x, y, width, height, rayOrigin, rayDirection);
+        return raycast(rayOrigin, rayDirection, Double.POSITIVE_INFINITY, hit);
+    }
+
+    // Broad phase over the bounds index, then the candidates are cast against nearest first until
+    // the next one's bounds start beyond the best hit so far. direction must be unit length.
+    public boolean raycast(Vector3dc origin, Vector3dc direction, double maxDistance, RaycastHit hit) {
+        hit.reset();
+
+        candidateCount = 0;
+        synchronized (indexLock) {
+            index.queryRay(origin.x(), origin.y(), origin.z(), direction.x(), direction.y(), direction.z(), maxDistance, collect);
+        }
+        sortCandidates();
+
+        double best = maxDistance;
+        for (int i=0; i<candidateCount && candidateDistances[i] < best; i++) {
+            Entity entity = candidates[i].getEntity();
+            if (entity instanceof Raycastable && ((Raycastable) entity).raycast(origin, direction, best, hit))
+                best = hit.distance;
+        }
+
+        if (!hit.isHit())
+            return false;
+
+        hit.position.set(direction).mul(hit.distance).add(origin);
+        return true;
+    }
+
+    private void addCandidate(RenderQueue.Item item, double distance) {
+        if (candidateCount == candidates.length) {
+            candidates = Arrays.copyOf(candidates, candidateCount * 2);
+            candidateDistances = Arrays.copyOf(candidateDistances, candidateCount * 2);
+        }
+        candidates[candidateCount] = item;
+        candidateDistances[candidateCount++] = distance;
+    }
+
+    // insertion sort, a ray only crosses a handful of bounds
+    private void sortCandidates() {
+        for (int i=1; i<candidateCount; i++) {
+            RenderQueue.Item item = candidates[i];
+            double distance = candidateDistances[i];
+            int j = i - 1;
+            while (j >= 0 && candidateDistances[j] > distance) {
+                candidates[j + 1] = candidates[j];
+                candidateDistances[j + 1] = candidateDistances[j];
+                j--;
+            }
+            candidates[j + 1] = item;
+            candidateDistances[j + 1] = distance;
+        }
+    }
+
+    // Updates and applies the result straight away, for drivers that update and draw on one thread.
+    // See Simulation for running updates on their own.
     public void dispatchUpdate(long t) {
+        Object event = EventUtil.beginUpdate();
         this.update(t);
+        if (immediate == null)
+            immediate = createSnapshot();
+        capture(immediate);
+        apply(immediate, immediate, 1);
+        EventUtil.end(event);
+    }
+
+    void layoutSnapshot() {
+        if (snapshotted != null)
+            return;
+
+        snapshotted = new ArrayList<>();
+        snapshotted.add(uniforms);
+        collectSnapshotted(entities);
+
+        snapshotOffsets = new int[snapshotted.size()];
+        int size = 0;
+        for (int i=0; i<snapshotted.size(); i++) {
+            snapshotOffsets[i] = size;
+            size += snapshotted.get(i).getSnapshotSize();
+        }
+        snapshotSize = size;
+    }
+
+    private void collectSnapshotted(Entity entity) {
+        if (entity instanceof EntityGroup) {
+            EntityGroup group = (EntityGroup) entity;
+            for (int i=0; i<group.size(); i++)
+                collectSnapshotted(group.get(i));
+        } else if (entity instanceof Snapshotable) {
+            snapshotted.add((Snapshotable) entity);
+        }
+    }
+
+    // Sized for the entities the scene has now, entities added later aren't captured
+    public Snapshot createSnapshot() {
+        layoutSnapshot();
+        return new Snapshot(snapshotSize);
+    }
+
+    // update thread, after update
+    public void capture(Snapshot snapshot) {
+        layoutSnapshot();
+        snapshot.cullFrame = queue.frame;
+        RenderQueue.getView(camera, snapshot.view);
+        for (int i=0; i<snapshotted.size(); i++)
+            snapshotted.get(i).capture(snapshot.data, snapshotOffsets[i]);
+    }
+
+    // render thread, before draw
+    public void apply(Snapshot previous, Snapshot current, float alpha) {
+        layoutSnapshot();
+        queue.setDrawFrame(current.cullFrame);
+        queue.setView(current.view);
+        for (int i=0; i<snapshotted.size(); i++)
+            snapshotted.get(i).apply(previous.data, current.data, snapshotOffsets[i], alpha);
     }
 
     public Command dispatchDraw() {
-        return this.draw();
+        Object event = EventUtil.beginDrawList();
+        Command rv = this.draw();
+        EventUtil.end(event);
+        return rv;
     }
 
     @Override
     public void update(final long t) {
         entities.update(t);
+        uniforms.update(t);
+        cull();
+    }
+
+    void cull() {
+        synchronized (indexLock) {
+            index.refit();
+            queue.nextFrame();
+            visibleCount = index.queryFrustum(camera.frustumPlanes, markVisible);
+            culledCount = index.size() - visibleCount;
+        }
+    }
+
+    void collectDrawn(Entity entity) {
+        if (entity instanceof EntityGroup) {
+            EntityGroup group = (EntityGroup) entity;
+            for (int i=0; i<group.size(); i++)
+                collectDrawn(group.get(i));
+            return;
+        }
+        recording.add(entity);
+    }
+
+    private void record(int chunk, int from, int to) {
+        for (int i=from; i<to; i++)
+            recorded[i] = recording.get(i).draw();
+    }
+
+    void enqueue(Entity entity) {
+        recording.clear();
+        collectDrawn(entity);
+
+        int count = recording.size();
+        if (recorded.length < count)
+            recorded = new Command[count];
+        record.forEach(pool, count, RECORD_CHUNK_SIZE);
+
+        // recording runs unlocked, only swapping in the new queue and index holds up a cull
+        synchronized (indexLock) {
+            queue.clear();
+            bounded.clear();
+            for (int i=0; i<count; i++) {
+                Command draw = recorded[i];
+                recorded[i] = null;
+                if (draw == null)
+                    continue;
+
+                Entity drawn = recording.get(i);
+                RenderQueue.Item item = queue.add(drawn, draw);
+                if (drawn instanceof Bounded)
+                    bounded.add(item);
+            }
+            index.build(bounded);
+        }
+        recording.clear();
     }
 
     @Override
     public Command initialize() {
-        return entities.initialize();
+        CommandList rv = new CommandList();
+        rv.add(uniforms.initialize());
+        rv.add(entities.initialize());
+        return rv;
     }
 
     @Override
     public Command dispose() {
-        return entities.dispose();
+        CommandList rv = new CommandList();
+        rv.add(entities.dispose());
+        rv.add(uniforms.dispose());
+        return rv;
     }
 
+    // Draw lists are built once, the queue decides what runs and in which order each frame.
+    // Textures that finished loading since the last frame are uploaded first. Entities are only
+    // recorded, queued and indexed again when the tree changes, moving ones are refit by cull.
     @Override
     public Command draw() {
-        return entities.draw();
+        long version = entities.getVersion();
+        if (drawList != null && drawnEntities == entities && drawnVersion == version)
+            return drawList;
+
+        CommandList rv = new CommandList();
+        rv.add(AssetManager.get().getUploads());
+        rv.add(uniforms.draw());
+
+        enqueue(entities);
+        rv.add(queue);
+
+        drawList = rv;
+        drawnEntities = entities;
+        drawnVersion = version;
+        return rv;
+    }
+
+    // the next draw records every entity again, for entities that changed their draw list
+    public void invalidateDrawList() {
+        drawList = null;
     }
 }
@@ -0,0 +1,144 @@
+package org.quuux.opengl.scenes;
+
+import org.quuux.opengl.util.EventUtil;
+import org.quuux.opengl.util.TripleBuffer;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+// Runs a scene's updates at a fixed tick rate on a thread of its own. Each tick's render state is
+// published through a triple buffer, and the render thread calls present() before drawing to
+// blend the two newest ticks for the current time. Drawing runs a tick behind the simulation
+// so there is always a later tick to blend towards, and a slow tick only holds back the state
+// being drawn, never the frame.
+//
+// Build the scene's draw list before starting, the update thread culls against the index it makes.
+// Work that reads the scene, like ray casts, goes through post() to run between ticks.
+public class Simulation implements Runnable {
+    private static final Logger LOGGER = Logger.getLogger(Simulation.class.getName());
+
+    // ticks run back to back when behind, past this many the simulation slows down instead
+    private static final int MAX_CATCH_UP = 5;
+
+    final Scene scene;
+    final long tickNanos;
+
+    final TripleBuffer<Snapshot> snapshots;
+
+    // render thread side, the tick before the front one
+    final Snapshot previous;
+    boolean started;
+
+    volatile boolean running;
+    volatile Thread thread;
+    volatile long ticks;
+
+    final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    public Simulation(Scene scene, int ticksPerSecond) {
+        this.scene = scene;
+        this.tickNanos = 1000000000L / ticksPerSecond;
+        snapshots = new TripleBuffer<>(scene.createSnapshot(), scene.createSnapshot(), scene.createSnapshot());
+
+        // the state to draw until the first tick is in, taken before the update thread starts
+        previous = scene.createSnapshot();
+        scene.capture(previous);
+        previous.time = System.nanoTime();
+    }
+
+    public Scene getScene() {
+        return scene;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    // Runs task on the update thread after the current tick, any thread may post. Tasks wait
+    // while the simulation is stopped.
+    public void post(Runnable task) {
+        tasks.add(task);
+        Thread thread = this.thread;
+        if (thread != null)
+            LockSupport.unpark(thread);
+    }
+
+    public void start() {
+        if (running)
+            return;
+        running = true;
+        thread = new Thread(this, "simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (thread == null)
+            return;
+
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    @Override
+    public void run() {
+        long tickMillis = tickNanos / 1000000L;
+        long next = System.nanoTime();
+
+        while (running) {
+            int steps = 0;
+            while (System.nanoTime() - next >= 0 && steps < MAX_CATCH_UP) {
+                Object event = EventUtil.beginUpdate();
+                scene.update(tickMillis);
+                EventUtil.end(event);
+                next += tickNanos;
+                ticks++;
+                steps++;
+            }
+
+            if (steps == MAX_CATCH_UP) {
+                LOGGER.fine("simulation fell behind, dropping " + (System.nanoTime() - next) / tickNanos + " ticks");
+                next = System.nanoTime();
+            }
+
+            if (steps > 0) {
+                Snapshot snapshot = snapshots.getBack();
+                scene.capture(snapshot);
+                snapshot.time = next;
+                snapshots.publish();
+            }
+
+            Runnable task;
+            while ((task = tasks.poll()) != null)
+                task.run();
+
+            LockSupport.parkNanos(next - System.nanoTime());
+        }
+    }
+
+    // Render thread, applies the scene state for now. Until the first tick is in that is the state
+    // the scene had when the simulation was made, so every frame has something to draw.
+    public void present() {
+        if (snapshots.isFresh()) {
+            // the old front goes back to the writer on acquire, keep it to blend from
+            if (started)
+                previous.copy(snapshots.getFront());
+            snapshots.acquire();
+            started = true;
+        }
+
+        Snapshot current = started ? snapshots.getFront() : previous;
+        long span = current.time - previous.time;
+        long renderTime = System.nanoTime() - tickNanos;
+        float alpha = span > 0 ? (float) (renderTime - previous.time) / span : 1;
+        scene.apply(previous, current, Math.max(0, Math.min(1, alpha)));
+    }
+}
@@ -0,0 +1,23 @@
+package org.quuux.opengl.scenes;
+
+// Render state of a scene as of one update, see Scene.capture
+public class Snapshot {
+
+    // simulated time the state belongs to, in nanoseconds
+    public long time;
+
+    int cullFrame;
+    final double[] view = new double[RenderQueue.VIEW_SIZE];
+    final float[] data;
+
+    Snapshot(int size) {
+        data = new float[size];
+    }
+
+    void copy(Snapshot other) {
+        time = other.time;
+        cullFrame = other.cullFrame;
+        System.arraycopy(other.view, 0, view, 0, view.length);
+        System.arraycopy(other.data, 0, data, 0, data.length);
+    }
+}
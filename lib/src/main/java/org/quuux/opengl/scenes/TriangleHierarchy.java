@@ -0,0 +1,254 @@
+package org.quuux.opengl.scenes;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+// Box tree over a mesh's triangles, in the mesh's model space, for nearest hit ray casts. Triangle
+// corners are copied out of the vertex buffer in tree order so a leaf's triangles sit next to each
+// other in memory. Built once per mesh geometry, see Mesh.getTriangles.
+public class TriangleHierarchy {
+
+    static final int LEAF_SIZE = 4;
+
+    final int size;
+
+    // x, y, z of the three corners per triangle, in tree order
+    final float[] corners;
+    // index of the triangle in the original buffers, in tree order
+    final int[] triangles;
+    // centroid of each triangle, only needed while building
+    final float[] centers;
+
+    // per node box (min x, y, z, max x, y, z). A leaf holds count triangles starting at first,
+    // an inner node has count 0 and children first and first + 1.
+    final float[] boxes;
+    final int[] first, count;
+    int nodeCount;
+
+    final int[] stack = new int[64];
+
+    // Triangles from a vertex buffer of stride floats per vertex with the position first, indexed
+    // by indices, or taken three vertices at a time when indices is null
+    public TriangleHierarchy(FloatBuffer vertices, int stride, IntBuffer indices) {
+        size = indices != null ? indices.capacity() / 3 : vertices.capacity() / stride / 3;
+        corners = new float[size * 9];
+        triangles = new int[size];
+        centers = new float[size * 3];
+
+        for (int t=0; t<size; t++) {
+            triangles[t] = t;
+            for (int c=0; c<3; c++) {
+                int vertex = indices != null ? indices.get(t * 3 + c) : t * 3 + c;
+                for (int axis=0; axis<3; axis++) {
+                    float value = vertices.get(vertex * stride + axis);
+                    corners[t * 9 + c * 3 + axis] = value;
+                    centers[t * 3 + axis] += value / 3f;
+                }
+            }
+        }
+
+        int maxNodes = Math.max(1, 2 * size);
+        boxes = new float[maxNodes * 6];
+        first = new int[maxNodes];
+        count = new int[maxNodes];
+
+        if (size > 0) {
+            nodeCount = 1;
+            split(0, 0, size);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void split(int node, int from, int to) {
+        fit(node, from, to);
+
+        if (to - from <= LEAF_SIZE) {
+            first[node] = from;
+            count[node] = to - from;
+            return;
+        }
+
+        int o = node * 6;
+        float dx = boxes[o + 3] - boxes[o], dy = boxes[o + 4] - boxes[o + 1], dz = boxes[o + 5] - boxes[o + 2];
+        int axis = dx >= dy && dx >= dz ? 0 : dy >= dz ? 1 : 2;
+
+        int mid = (from + to) >>> 1;
+        select(from, to, mid, axis);
+
+        int left = nodeCount;
+        nodeCount += 2;
+        first[node] = left;
+        count[node] = 0;
+
+        split(left, from, mid);
+        split(left + 1, mid, to);
+    }
+
+    private void fit(int node, int from, int to) {
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        for (int i=from * 9; i<to * 9; i+=3) {
+            minX = Math.min(minX, corners[i]);
+            minY = Math.min(minY, corners[i + 1]);
+            minZ = Math.min(minZ, corners[i + 2]);
+            maxX = Math.max(maxX, corners[i]);
+            maxY = Math.max(maxY, corners[i + 1]);
+            maxZ = Math.max(maxZ, corners[i + 2]);
+        }
+
+        int o = node * 6;
+        boxes[o] = minX;
+        boxes[o + 1] = minY;
+        boxes[o + 2] = minZ;
+        boxes[o + 3] = maxX;
+        boxes[o + 4] = maxY;
+        boxes[o + 5] = maxZ;
+    }
+
+    // partial quicksort that leaves the kth smallest centroid along axis at k
+    private void select(int from, int to, int k, int axis) {
+        while (to - from > 1) {
+            float pivot = centers[((from + to) >>> 1) * 3 + axis];
+            int i = from, j = to - 1;
+            while (i <= j) {
+                while (centers[i * 3 + axis] < pivot)
+                    i++;
+                while (centers[j * 3 + axis] > pivot)
+                    j--;
+                if (i <= j)
+                    swap(i++, j--);
+            }
+
+            if (k <= j)
+                to = j + 1;
+            else if (k >= i)
+                from = i;
+            else
+                return;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int t = triangles[a];
+        triangles[a] = triangles[b];
+        triangles[b] = t;
+        swap(centers, a * 3, b * 3, 3);
+        swap(corners, a * 9, b * 9, 9);
+    }
+
+    private static void swap(float[] values, int a, int b, int length) {
+        for (int i=0; i<length; i++) {
+            float t = values[a + i];
+            values[a + i] = values[b + i];
+            values[b + i] = t;
+        }
+    }
+
+    // Nearest triangle the ray hits closer than maxDistance, from either side. Distances are in
+    // multiples of the direction. Fills in the triangle, distance and barycentrics of hit and
+    // returns true when one is found, leaves hit alone otherwise.
+    public boolean raycast(double ox, double oy, double oz, double dx, double dy, double dz, double maxDistance, RaycastHit hit) {
+        if (nodeCount == 0)
+            return false;
+
+        double ix = 1 / dx, iy = 1 / dy, iz = 1 / dz;
+        double best = maxDistance;
+        int found = -1;
+        double foundU = 0, foundV = 0;
+
+        int top = 0;
+        if (enter(0, ox, oy, oz, ix, iy, iz, best) < Double.POSITIVE_INFINITY)
+            stack[top++] = 0;
+
+        while (top > 0) {
+            int node = stack[--top];
+
+            if (count[node] == 0) {
+                // near child is pushed last so it is searched first, the far one is often skipped by then
+                int left = first[node], right = left + 1;
+                double l = enter(left, ox, oy, oz, ix, iy, iz, best);
+                double r = enter(right, ox, oy, oz, ix, iy, iz, best);
+                if (l <= r) {
+                    if (r < Double.POSITIVE_INFINITY)
+                        stack[top++] = right;
+                    if (l < Double.POSITIVE_INFINITY)
+                        stack[top++] = left;
+                } else {
+                    if (l < Double.POSITIVE_INFINITY)
+                        stack[top++] = left;
+                    stack[top++] = right;
+                }
+                continue;
+            }
+
+            for (int t=first[node], end=first[node] + count[node]; t<end; t++) {
+                int c = t * 9;
+                double ax = corners[c], ay = corners[c + 1], az = corners[c + 2];
+                double e1x = corners[c + 3] - ax, e1y = corners[c + 4] - ay, e1z = corners[c + 5] - az;
+                double e2x = corners[c + 6] - ax, e2y = corners[c + 7] - ay, e2z = corners[c + 8] - az;
+
+                // Moller-Trumbore
+                double px = dy * e2z - dz * e2y, py = dz * e2x - dx * e2z, pz = dx * e2y - dy * e2x;
+                double det = e1x * px + e1y * py + e1z * pz;
+                if (Math.abs(det) < 1e-12)
+                    continue;
+                double inv = 1 / det;
+
+                double sx = ox - ax, sy = oy - ay, sz = oz - az;
+                double u = (sx * px + sy * py + sz * pz) * inv;
+                if (u < 0 || u > 1)
+                    continue;
+
+                double qx = sy * e1z - sz * e1y, qy = sz * e1x - sx * e1z, qz = sx * e1y - sy * e1x;
+                double v = (dx * qx + dy * qy + dz * qz) * inv;
+                if (v < 0 || u + v > 1)
+                    continue;
+
+                double distance = (e2x * qx + e2y * qy + e2z * qz) * inv;
+                if (distance < 0 || distance >= best)
+                    continue;
+
+                best = distance;
+                found = t;
+                foundU = u;
+                foundV = v;
+            }
+        }
+
+        if (found < 0)
+            return false;
+
+        hit.triangle = triangles[found];
+        hit.distance = best;
+        hit.u = foundU;
+        hit.v = foundV;
+        return true;
+    }
+
+    // where the ray enters a node's box, infinity when it misses or enters past maxDistance
+    private double enter(int node, double ox, double oy, double oz, double ix, double iy, double iz, double maxDistance) {
+        int o = node * 6;
+        double t1 = (boxes[o] - ox) * ix, t2 = (boxes[o + 3] - ox) * ix;
+        double near = Math.min(t1, t2), far = Math.max(t1, t2);
+        t1 = (boxes[o + 1] - oy) * iy;
+        t2 = (boxes[o + 4] - oy) * iy;
+        near = Math.max(near, Math.min(t1, t2));
+        far = Math.min(far, Math.max(t1, t2));
+        t1 = (boxes[o + 2] - oz) * iz;
+        t2 = (boxes[o + 5] - oz) * iz;
+        near = Math.max(near, Math.min(t1, t2));
+        far = Math.min(far, Math.max(t1, t2));
+
+        // a ray parallel to a face it starts on gives 0 * infinity, keep the node rather than lose the hit
+        if (Double.isNaN(near) || Double.isNaN(far))
+            return 0;
+
+        near = Math.max(near, 0);
+        if (far < near || near >= maxDistance)
+            return Double.POSITIVE_INFINITY;
+        return near;
+    }
+}
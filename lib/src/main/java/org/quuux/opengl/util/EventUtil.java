@@ -0,0 +1,191 @@
+package org.quuux.opengl.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+// Flight Recorder events for frame phases, command execution, uploads, shader builds and resource
+// decodes, so a recording lines frame spikes up with what the engine was doing. Each begin returns
+// null unless a recording has that event enabled, and the matching end ignores null, so call sites
+// pay a branch and allocate nothing when nothing is recording. Event types never appear in callers' signatures, keeping
+// jdk.jfr out of classes loaded on runtimes without it, e.g. Android, where begin always returns null.
+public class EventUtil {
+
+    public static final boolean AVAILABLE = isAvailable();
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    @Name("org.quuux.opengl.Update")
+    @Label("Scene Update")
+    @Category({"OpenGL Engine", "Frame"})
+    static class UpdateEvent extends Event {
+    }
+
+    @Name("org.quuux.opengl.DrawList")
+    @Label("Draw List Build")
+    @Category({"OpenGL Engine", "Frame"})
+    static class DrawListEvent extends Event {
+    }
+
+    // command lists nest, every bound state is one, so only slow ones are kept by default
+    @Name("org.quuux.opengl.Execute")
+    @Label("Command Execution")
+    @Category({"OpenGL Engine", "Frame"})
+    @Threshold("1 ms")
+    static class ExecuteEvent extends Event {
+        @Label("Commands")
+        int commands;
+    }
+
+    @Name("org.quuux.opengl.Upload")
+    @Label("Upload")
+    @Category({"OpenGL Engine", "Resources"})
+    static class UploadEvent extends Event {
+        @Label("Command")
+        String command;
+
+        @Label("Target")
+        String target;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("org.quuux.opengl.Shader")
+    @Label("Shader Build")
+    @Category({"OpenGL Engine", "Resources"})
+    static class ShaderEvent extends Event {
+        @Label("Operation")
+        @Description("compile or link")
+        String operation;
+
+        @Label("Shader Type")
+        String shaderType;
+
+        @Label("Program")
+        int program;
+    }
+
+    @Name("org.quuux.opengl.Decode")
+    @Label("Resource Decode")
+    @Category({"OpenGL Engine", "Resources"})
+    static class DecodeEvent extends Event {
+        @Label("Resource")
+        String resource;
+
+        @Label("Format")
+        String format;
+
+        @Label("Size")
+        @Description("decoded pixel bytes for images, vertices for meshes")
+        long size;
+    }
+
+    // looked up once, only loaded when AVAILABLE. Checked before an event is allocated.
+    static class Types {
+        static final EventType UPDATE = EventType.getEventType(UpdateEvent.class);
+        static final EventType DRAW_LIST = EventType.getEventType(DrawListEvent.class);
+        static final EventType EXECUTE = EventType.getEventType(ExecuteEvent.class);
+        static final EventType UPLOAD = EventType.getEventType(UploadEvent.class);
+        static final EventType SHADER = EventType.getEventType(ShaderEvent.class);
+        static final EventType DECODE = EventType.getEventType(DecodeEvent.class);
+    }
+
+    public static Object beginUpdate() {
+        return AVAILABLE && Types.UPDATE.isEnabled() ? begin(new UpdateEvent()) : null;
+    }
+
+    public static Object beginDrawList() {
+        return AVAILABLE && Types.DRAW_LIST.isEnabled() ? begin(new DrawListEvent()) : null;
+    }
+
+    public static Object beginExecute() {
+        return AVAILABLE && Types.EXECUTE.isEnabled() ? begin(new ExecuteEvent()) : null;
+    }
+
+    public static Object beginUpload() {
+        return AVAILABLE && Types.UPLOAD.isEnabled() ? begin(new UploadEvent()) : null;
+    }
+
+    public static Object beginShader() {
+        return AVAILABLE && Types.SHADER.isEnabled() ? begin(new ShaderEvent()) : null;
+    }
+
+    public static Object beginDecode() {
+        return AVAILABLE && Types.DECODE.isEnabled() ? begin(new DecodeEvent()) : null;
+    }
+
+    private static Event begin(Event event) {
+        event.begin();
+        return event;
+    }
+
+    public static void end(Object event) {
+        if (event == null)
+            return;
+        ((Event) event).commit();
+    }
+
+    public static void endExecute(Object event, int commands) {
+        if (event == null)
+            return;
+        ExecuteEvent rv = (ExecuteEvent) event;
+        rv.end();
+        if (!rv.shouldCommit())
+            return;
+        rv.commands = commands;
+        rv.commit();
+    }
+
+    public static void endUpload(Object event, String command, Enum<?> target, long bytes) {
+        if (event == null)
+            return;
+        UploadEvent rv = (UploadEvent) event;
+        rv.end();
+        if (!rv.shouldCommit())
+            return;
+        rv.command = command;
+        rv.target = target != null ? target.name() : null;
+        rv.bytes = bytes;
+        rv.commit();
+    }
+
+    public static void endShader(Object event, String operation, Enum<?> shaderType, int program) {
+        if (event == null)
+            return;
+        ShaderEvent rv = (ShaderEvent) event;
+        rv.end();
+        if (!rv.shouldCommit())
+            return;
+        rv.operation = operation;
+        rv.shaderType = shaderType != null ? shaderType.name() : null;
+        rv.program = program;
+        rv.commit();
+    }
+
+    public static void endDecode(Object event, String resource, String format, long size) {
+        if (event == null)
+            return;
+        DecodeEvent rv = (DecodeEvent) event;
+        rv.end();
+        if (!rv.shouldCommit())
+            return;
+        rv.resource = resource;
+        rv.format = format;
+        rv.size = size;
+        rv.commit();
+    }
+}
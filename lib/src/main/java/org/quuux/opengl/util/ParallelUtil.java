@@ -0,0 +1,116 @@
+package org.quuux.opengl.util;
+
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+public class ParallelUtil {
+
+    public interface Range {
+        void run(int chunk, int from, int to);
+    }
+
+    public static int chunks(int count, int chunkSize) {
+        return (count + chunkSize - 1) / chunkSize;
+    }
+
+    // Runs one range over and over, keeping its tasks between calls so a run allocates nothing once
+    // the loop has seen its largest chunk count. A loop runs on one thread at a time.
+    public static class Loop {
+        final Range range;
+        final AtomicInteger pending = new AtomicInteger();
+        Chunk[] tasks = new Chunk[0];
+        int count, chunkSize;
+        volatile Thread waiter;
+        volatile Throwable failure;
+
+        public Loop(Range range) {
+            this.range = range;
+        }
+
+        // Runs range over [0, count) in chunkSize pieces spread across pool, or inline when pool is null.
+        // Chunk boundaries depend only on count and chunkSize, never on the number of threads.
+        public void forEach(ForkJoinPool pool, int count, int chunkSize) {
+            int chunks = chunks(count, chunkSize);
+            this.count = count;
+            this.chunkSize = chunkSize;
+
+            if (pool == null || chunks <= 1) {
+                for (int chunk=0; chunk<chunks; chunk++)
+                    run(chunk);
+                return;
+            }
+
+            if (tasks.length < chunks) {
+                Chunk[] grown = new Chunk[chunks];
+                System.arraycopy(tasks, 0, grown, 0, tasks.length);
+                for (int i=tasks.length; i<chunks; i++)
+                    grown[i] = new Chunk(i);
+                tasks = grown;
+            }
+
+            // chunks never complete, so the framework never writes their status and they can be handed
+            // out again as soon as the last one counts down. A worker of pool runs what nobody stole,
+            // anyone else parks, since joining from outside the pool allocates a wait node.
+            boolean worker = ForkJoinTask.getPool() == pool;
+            waiter = Thread.currentThread();
+            pending.set(chunks - 1);
+            for (int i=chunks-1; i>0; i--) {
+                if (worker)
+                    tasks[i].fork();
+                else
+                    pool.execute(tasks[i]);
+            }
+
+            try {
+                run(0);
+            } finally {
+                if (worker)
+                    for (int i=1; i<chunks; i++)
+                        if (tasks[i].tryUnfork())
+                            tasks[i].compute();
+                while (pending.get() > 0)
+                    LockSupport.park(this);
+            }
+
+            Throwable failure = this.failure;
+            if (failure != null) {
+                this.failure = null;
+                if (failure instanceof RuntimeException)
+                    throw (RuntimeException) failure;
+                if (failure instanceof Error)
+                    throw (Error) failure;
+                throw new RuntimeException(failure);
+            }
+        }
+
+        void run(int chunk) {
+            int from = chunk * chunkSize;
+            range.run(chunk, from, Math.min(count, from + chunkSize));
+        }
+
+        class Chunk extends CountedCompleter<Void> {
+            private static final long serialVersionUID = 1L;
+
+            final int chunk;
+
+            Chunk(int chunk) {
+                this.chunk = chunk;
+            }
+
+            @Override
+            public void compute() {
+                try {
+                    run(chunk);
+                } catch (Throwable t) {
+                    failure = t;
+                } finally {
+                    if (pending.decrementAndGet() == 0)
+                        LockSupport.unpark(waiter);
+                }
+            }
+        }
+    }
+}
@@ -19,4 +19,15 @@ public class RandomUtil {
     public static int randomInt(int min, int max) {
         return min + getInstance().nextInt(max-min);
     }
+
+    // Uniform [0, 1) from a hash of the inputs, reproducible no matter which thread asks
+    public static float hash(int a, int b, int c) {
+        int h = a * 0x9E3779B1 ^ b * 0x85EBCA77 ^ c * 0xC2B2AE3D;
+        h ^= h >>> 16;
+        h *= 0x7FEB352D;
+        h ^= h >>> 15;
+        h *= 0x846CA68B;
+        h ^= h >>> 16;
+        return (h >>> 8) * 0x1p-24f;
+    }
 }
@@ -31,6 +31,10 @@ public class ResourceUtil {
         return ResourceUtil.class.getClassLoader().getResourceAsStream(name);
     }
 
+    public static boolean hasResource(String name) {
+        return ResourceUtil.class.getClassLoader().getResource(name) != null;
+    }
+
     public static String getStringResource(String name) {
         return slurp(getResource(name));
     }
@@ -41,11 +45,13 @@ public class ResourceUtil {
             InputStream in = getResource(name);
             if (in == null)
                 return null;
+            Object event = EventUtil.beginDecode();
             PNGDecoder decoder = new PNGDecoder(in);
 
             ByteBuffer buffer = ByteBuffer.allocateDirect(4 * decoder.getWidth() * decoder.getHeight());
             decoder.decode(buffer, decoder.getWidth() * 4, PNGDecoder.Format.RGBA);
             buffer.flip();
+            EventUtil.endDecode(event, name, "png", buffer.remaining());
 
             rv = new Bitmap(buffer, decoder.getWidth(), decoder.getHeight());
             System.out.println(String.format("load png %s (width=%s, height=%s)", name, rv.width, rv.height));
@@ -74,7 +80,9 @@ public class ResourceUtil {
         Obj rv = null;
         try {
             InputStream in = getResource(name);
+            Object event = EventUtil.beginDecode();
             rv = ObjReader.read(in);
+            EventUtil.endDecode(event, name, "obj", rv.getNumVertices());
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -0,0 +1,58 @@
+package org.quuux.opengl.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Hands values from one writer thread to one reader thread without locks. The writer fills the
+// back slot and publishes it, the reader acquires the newest published slot as its front. Neither
+// ever waits on the other, a reader that falls behind just skips the slots it missed.
+public class TripleBuffer<T> {
+
+    private static final int INDEX = 3;
+    private static final int FRESH = 4;
+
+    private final T slot0, slot1, slot2;
+
+    // the slot between the two threads, FRESH while it holds something the reader hasn't taken
+    private final AtomicInteger middle = new AtomicInteger(1);
+
+    private int back = 2;
+    private int front = 0;
+
+    public TripleBuffer(T slot0, T slot1, T slot2) {
+        this.slot0 = slot0;
+        this.slot1 = slot1;
+        this.slot2 = slot2;
+    }
+
+    private T get(int slot) {
+        return slot == 0 ? slot0 : slot == 1 ? slot1 : slot2;
+    }
+
+    // writer side, the slot to fill next
+    public T getBack() {
+        return get(back);
+    }
+
+    // writer side, hands the back slot over and takes the middle one to fill next
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & INDEX;
+    }
+
+    // reader side, whether acquire would swap in a newer slot. Once true it stays true until acquired.
+    public boolean isFresh() {
+        return (middle.get() & FRESH) != 0;
+    }
+
+    // reader side, true when a newer slot was published and swapped in as the front
+    public boolean acquire() {
+        if ((middle.get() & FRESH) == 0)
+            return false;
+        front = middle.getAndSet(front) & INDEX;
+        return true;
+    }
+
+    // reader side, the most recently acquired slot
+    public T getFront() {
+        return get(front);
+    }
+}
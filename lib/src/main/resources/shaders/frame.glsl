@@ -0,0 +1,32 @@
+struct DirLight {
+    vec3 direction;
+
+    vec3 ambient;
+    vec3 diffuse;
+    vec3 specular;
+};
+
+struct PointLight {
+    vec3 position;
+
+    float constant;
+    float linear;
+    float quadratic;
+
+    vec3 ambient;
+    vec3 diffuse;
+    vec3 specular;
+};
+
+#define MAX_POINT_LIGHTS 8
+
+// written once a frame by FrameUniforms, keep the std140 offsets there in sync
+layout (std140) uniform Frame {
+    mat4 view;
+    mat4 projection;
+    vec3 viewPos;
+    int numPointLights;
+    DirLight dirLight;
+    PointLight pointLights[MAX_POINT_LIGHTS];
+};
+
@@ -0,0 +1,24 @@
+layout (location = 0) in vec3 aPosition;
+layout (location = 3) in vec2 aLife;
+layout (location = 4) in float aHue;
+
+uniform float particleSize;
+
+out vec4 vertexColor;
+
+vec3 hsv2rgb(vec3 c)
+{
+    vec4 K = vec4(1.0, 2.0 / 3.0, 1.0 / 3.0, 3.0);
+    vec3 p = abs(fract(c.xxx + K.xyz) * 6.0 - K.www);
+    return c.z * mix(K.xxx, clamp(p - K.xxx, 0.0, 1.0), c.y);
+}
+
+void main()
+{
+    float age = aLife.y > 0.0 ? clamp(aLife.x / aLife.y, 0.0, 1.0) : 0.0;
+
+    vertexColor = vec4(hsv2rgb(vec3(fract(aHue + age), 1.0 - age, 1.0 - age)), 1.0 - age);
+
+    gl_Position = projection * view * vec4(aPosition, 1.0);
+    gl_PointSize = aLife.x < 0.0 ? 0.0 : min(particleSize / length(aPosition) * age, particleSize);
+}
\ No newline at end of file
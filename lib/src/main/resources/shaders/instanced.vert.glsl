@@ -0,0 +1,21 @@
+layout (location = 0) in vec3 aPos;
+layout (location = 1) in vec3 aNormal;
+layout (location = 2) in vec2 aTexCoords;
+
+// per instance, the model matrix takes locations 3-6
+layout (location = 3) in mat4 aModel;
+layout (location = 7) in vec4 aColor;
+
+out vec3 FragPos;
+out vec3 Normal;
+out vec2 TexCoords;
+out vec4 Color;
+
+void main()
+{
+    FragPos = vec3(aModel * vec4(aPos, 1.0));
+    Normal = mat3(transpose(inverse(aModel))) * aNormal;
+    TexCoords = aTexCoords;
+    Color = aColor;
+    gl_Position = projection * view * vec4(FragPos, 1.0);
+}
\ No newline at end of file
@@ -3,31 +3,7 @@ out vec4 FragColor;
 in vec3 FragPos;
 in vec3 Normal;
 in vec2 TexCoords;
-
-struct DirLight {
-    vec3 direction;
-
-    vec3 ambient;
-    vec3 diffuse;
-    vec3 specular;
-};
-uniform DirLight dirLight;
-
-struct PointLight {
-    vec3 position;
-
-    float constant;
-    float linear;
-    float quadratic;
-
-    vec3 ambient;
-    vec3 diffuse;
-    vec3 specular;
-};
-
-#define NUM_POINT_LIGHTS 3
-uniform PointLight pointLights[NUM_POINT_LIGHTS];
-
+in vec4 Color;
 
 struct Material {
     sampler2D diffuse;
@@ -37,9 +13,6 @@ struct Material {
 };
 uniform Material material;
 
-
-uniform vec3 viewPos;
-
 vec3 CalcDirLight(DirLight light, vec3 normal, vec3 viewDir)
 {
     vec3 lightDir = normalize(-light.direction);
@@ -86,8 +59,8 @@ void main()
     vec3 viewDir = normalize(viewPos - FragPos);
 
     vec3 result = CalcDirLight(dirLight, norm, viewDir);
-    for(int i = 0; i < NUM_POINT_LIGHTS; i++)
+    for(int i = 0; i < numPointLights; i++)
             result += CalcPointLight(pointLights[i], norm, FragPos, viewDir);
 
-    FragColor = vec4(result, 1.0);
+    FragColor = vec4(result, 1.0) * Color;
 }
\ No newline at end of file
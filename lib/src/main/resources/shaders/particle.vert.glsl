@@ -2,13 +2,13 @@ layout (location = 0) in vec3 aPos;
 layout (location = 1) in vec4 aColor;
 layout (location = 2) in float aSize;
 
-uniform mat4 mvp;
+uniform mat4 model;
 
 out vec4 vertexColor;
 
 void main()
 {
-    gl_Position = mvp * vec4(aPos, 1.0);
+    gl_Position = projection * view * model * vec4(aPos, 1.0);
     gl_PointSize = aSize;
     vertexColor = aColor;
 }
\ No newline at end of file
@@ -0,0 +1,7 @@
+out vec4 FragColor;
+
+// never runs, the update pass discards rasterization
+void main()
+{
+    FragColor = vec4(0.0);
+}
\ No newline at end of file
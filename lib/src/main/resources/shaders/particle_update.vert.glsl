@@ -0,0 +1,49 @@
+layout (location = 0) in vec3 aPosition;
+layout (location = 1) in vec3 aVelocity;
+layout (location = 2) in vec3 aAcceleration;
+layout (location = 3) in vec2 aLife;
+layout (location = 4) in float aHue;
+
+// spawn parameters, the only per-frame input from the cpu
+uniform vec3 origin;
+uniform float seed;
+uniform float lifespan;
+
+out vec3 position;
+out vec3 velocity;
+out vec3 acceleration;
+out vec2 life;
+out float hue;
+
+float random(float n)
+{
+    return fract(sin(n * 12.9898 + seed * 78.233) * 43758.5453);
+}
+
+float randomRange(float n, float lo, float hi)
+{
+    return mix(lo, hi, random(n));
+}
+
+void main()
+{
+    // life is (age, lifespan), particles with a negative age are waiting to spawn
+    float age = aLife.x + 1.0;
+
+    if (age >= 0.0 && age >= aLife.y) {
+        float n = float(gl_VertexID);
+        position = origin;
+        velocity = vec3(randomRange(n, -1.0, 1.0), randomRange(n + 0.1, -1.0, 1.0), randomRange(n + 0.2, -1.0, 1.0)) * 0.02;
+        acceleration = vec3(randomRange(n + 0.3, -1.0, 1.0), randomRange(n + 0.4, -1.0, 1.0), randomRange(n + 0.5, -1.0, 1.0)) * 0.0001;
+        life = vec2(0.0, randomRange(n + 0.6, lifespan / 2.0, lifespan * 2.0));
+        hue = random(n + 0.7);
+    } else {
+        acceleration = aAcceleration;
+        velocity = age > 0.0 ? aVelocity + aAcceleration : aVelocity;
+        position = age > 0.0 ? aPosition + velocity : aPosition;
+        life = vec2(age, aLife.y);
+        hue = aHue;
+    }
+
+    gl_Position = vec4(position, 1.0);
+}
\ No newline at end of file
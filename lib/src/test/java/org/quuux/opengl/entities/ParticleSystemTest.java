@@ -0,0 +1,149 @@
+package org.quuux.opengl.entities;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ParticleSystemTest {
+
+    static final int CAPACITY = 5000;
+
+    static void spawn(ParticleSystem particles, Random random, int count) {
+        for (int i=0; i<count; i++)
+            particles.spawn(random.nextFloat() * 200 - 100, random.nextFloat() * 200 - 100, random.nextFloat() * 200 - 100,
+                    random.nextFloat() - .5f, random.nextFloat() - .5f, random.nextFloat() - .5f,
+                    0, -.01f, 0,
+                    random.nextFloat(), 1 + random.nextInt(60), false);
+    }
+
+    static float distance(ParticleSystem particles, int i, float x, float y, float z) {
+        float dx = particles.getX(i) - x, dy = particles.getY(i) - y, dz = particles.getZ(i) - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    // the draw order must be a permutation whose distances match a reference sort, farthest first
+    static void assertSorted(ParticleSystem particles, float x, float y, float z) {
+        int count = particles.size();
+        float[] expected = new float[count];
+        for (int i=0; i<count; i++)
+            expected[i] = distance(particles, i, x, y, z);
+        Arrays.sort(expected);
+
+        boolean[] seen = new boolean[count];
+        for (int n=0; n<count; n++) {
+            int i = particles.drawOrder(n);
+            assertFalse("drawn twice: " + i, seen[i]);
+            seen[i] = true;
+            assertEquals("position " + n, expected[count - 1 - n], distance(particles, i, x, y, z), 0);
+        }
+    }
+
+    @Test
+    public void updateKeepsExactlyTheLivingParticles() {
+        Random random = new Random(1);
+        ParticleSystem particles = new ParticleSystem(CAPACITY);
+        spawn(particles, random, 1000);
+
+        // each particle is identified by its hue, which never changes
+        List<float[]> reference = new ArrayList<>();
+        for (int i=0; i<particles.size(); i++)
+            reference.add(new float[] {particles.getHue(i), particles.getLifespan(i)});
+
+        for (int tick=1; tick<=70; tick++) {
+            particles.update();
+
+            List<Float> expected = new ArrayList<>();
+            for (float[] particle : reference)
+                if (tick < particle[1])
+                    expected.add(particle[0]);
+
+            List<Float> actual = new ArrayList<>();
+            for (int i=0; i<particles.size(); i++) {
+                assertTrue(particles.isAlive(i));
+                assertEquals(tick, particles.getAge(i));
+                actual.add(particles.getHue(i));
+            }
+
+            expected.sort(null);
+            actual.sort(null);
+            assertEquals("tick " + tick, expected, actual);
+        }
+        assertEquals(0, particles.size());
+    }
+
+    @Test
+    public void spawnStopsAtCapacity() {
+        ParticleSystem particles = new ParticleSystem(2);
+        spawn(particles, new Random(2), 2);
+        assertEquals(-1, particles.spawn(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, false));
+        assertEquals(2, particles.size());
+    }
+
+    @Test
+    public void radixSortMatchesReference() {
+        Random random = new Random(3);
+        ParticleSystem particles = new ParticleSystem(CAPACITY);
+        particles.setSortMode(ParticleSystem.SortMode.Radix);
+        spawn(particles, random, CAPACITY);
+
+        for (int tick=0; tick<20; tick++) {
+            particles.sortByDepth(1, 2, 3);
+            assertSorted(particles, 1, 2, 3);
+            particles.update();
+        }
+    }
+
+    @Test
+    public void incrementalSortMatchesReference() {
+        Random random = new Random(4);
+        ParticleSystem particles = new ParticleSystem(CAPACITY);
+        particles.setSortMode(ParticleSystem.SortMode.Incremental);
+
+        // particles die, are compacted into gaps and are born every tick, and the camera moves
+        for (int tick=0; tick<100; tick++) {
+            spawn(particles, random, Math.min(100, CAPACITY - particles.size()));
+            float x = tick * .5f;
+            particles.sortByDepth(x, 0, -x);
+            assertSorted(particles, x, 0, -x);
+            particles.update();
+        }
+    }
+
+    @Test
+    public void incrementalSortRecoversFromAShuffle() {
+        Random random = new Random(5);
+        ParticleSystem particles = new ParticleSystem(CAPACITY);
+        spawn(particles, random, CAPACITY);
+        particles.sortByDepth(0, 0, 0);
+
+        // looking from the opposite corner reverses most of the order, past the insertion budget
+        particles.sortByDepth(1000, 1000, 1000);
+        assertSorted(particles, 1000, 1000, 1000);
+    }
+
+    @Test
+    public void equalDistancesAreAllDrawn() {
+        ParticleSystem particles = new ParticleSystem(16);
+        for (int i=0; i<16; i++)
+            particles.spawn(i % 2 == 0 ? 1 : -1, 0, 0, 0, 0, 0, 0, 0, 0, i, 10, false);
+
+        particles.setSortMode(ParticleSystem.SortMode.Radix);
+        particles.sortByDepth(0, 0, 0);
+        assertSorted(particles, 0, 0, 0);
+    }
+
+    @Test
+    public void unsortedModeDrawsInCreationOrder() {
+        ParticleSystem particles = new ParticleSystem(CAPACITY);
+        particles.setSortMode(ParticleSystem.SortMode.None);
+        spawn(particles, new Random(6), 100);
+        particles.sortByDepth(0, 0, 0);
+        for (int n=0; n<particles.size(); n++)
+            assertEquals(n, particles.drawOrder(n));
+    }
+}
@@ -0,0 +1,107 @@
+package org.quuux.opengl.renderer;
+
+import org.junit.Test;
+import org.quuux.opengl.renderer.software.SoftwareRenderer;
+
+import static org.junit.Assert.*;
+
+public class FrameTest {
+
+    // raises an error from the command named "bad", reported by the next check
+    static class FailingRenderer extends SoftwareRenderer {
+        ErrorCheck errorCheck = ErrorCheck.FRAME;
+        boolean error;
+
+        FailingRenderer() {
+            super(1, 1);
+            setPool(null);
+        }
+
+        @Override
+        public ErrorCheck getErrorCheck() {
+            return errorCheck;
+        }
+
+        @Override
+        public void setErrorCheck(ErrorCheck errorCheck) {
+            this.errorCheck = errorCheck;
+        }
+
+        @Override
+        public void checkError() {
+            if (error) {
+                error = false;
+                throw new RendererException("GL_INVALID_OPERATION");
+            }
+        }
+    }
+
+    static class Named extends Command {
+        final String name;
+
+        Named(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void run(Renderer renderer) {
+            if (name.equals("bad"))
+                ((FailingRenderer) renderer).error = true;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    static Command list(String... names) {
+        CommandList rv = new CommandList();
+        for (String name : names)
+            rv.add(new Named(name));
+        return rv;
+    }
+
+    static String error(Renderer renderer, Command command, boolean once) {
+        try {
+            if (once)
+                Frame.runChecked(renderer, command);
+            else
+                Frame.run(renderer, command);
+        } catch (Renderer.RendererException e) {
+            return e.getMessage();
+        }
+        fail("no error");
+        return null;
+    }
+
+    @Test
+    public void failedFrameIsNarrowedDownThenChecksGoBackToFrames() {
+        FailingRenderer renderer = new FailingRenderer();
+        Command frame = list("a", "bad", "c");
+
+        assertTrue(error(renderer, frame, false).contains("checking every command"));
+        assertEquals(Renderer.ErrorCheck.COMMAND, renderer.getErrorCheck());
+
+        Frame.run(renderer, list("a", "c"));
+        assertEquals(Renderer.ErrorCheck.COMMAND, renderer.getErrorCheck());
+
+        assertEquals("GL_INVALID_OPERATION after bad", error(renderer, frame, false));
+        assertEquals(Renderer.ErrorCheck.FRAME, renderer.getErrorCheck());
+    }
+
+    @Test
+    public void oneShotCommandsNameTheirFailureAndRestoreThePolicy() {
+        FailingRenderer renderer = new FailingRenderer();
+
+        assertEquals("GL_INVALID_OPERATION after bad", error(renderer, list("a", "bad", "c"), true));
+        assertEquals(Renderer.ErrorCheck.FRAME, renderer.getErrorCheck());
+
+        assertEquals("GL_INVALID_OPERATION after bad", error(renderer, new Named("bad"), true));
+        assertEquals(Renderer.ErrorCheck.FRAME, renderer.getErrorCheck());
+
+        renderer.setErrorCheck(Renderer.ErrorCheck.NONE);
+        Frame.runChecked(renderer, list("bad"));
+        assertEquals(Renderer.ErrorCheck.NONE, renderer.getErrorCheck());
+    }
+}
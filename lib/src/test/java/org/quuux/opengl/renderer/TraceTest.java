@@ -0,0 +1,204 @@
+package org.quuux.opengl.renderer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.quuux.opengl.lib.ArrayObject;
+import org.quuux.opengl.lib.BufferObject;
+import org.quuux.opengl.lib.BufferType;
+import org.quuux.opengl.lib.ShaderProgram;
+import org.quuux.opengl.renderer.commands.*;
+import org.quuux.opengl.renderer.software.Program;
+import org.quuux.opengl.renderer.software.Shader;
+import org.quuux.opengl.renderer.software.SoftwareRenderer;
+import org.quuux.opengl.renderer.states.*;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TraceTest {
+
+    static final int SIZE = 32;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // passes clip space positions through and fills with opaque red
+    static class FlatShader implements Shader {
+        @Override
+        public String[] getUniforms() {
+            return new String[0];
+        }
+
+        @Override
+        public int getVaryingCount() {
+            return 0;
+        }
+
+        @Override
+        public void begin(Program program) {
+        }
+
+        @Override
+        public void vertex(float[] attributes, int vertexId, float[] out) {
+            System.arraycopy(attributes, 0, out, POSITION, 4);
+        }
+
+        @Override
+        public boolean fragment(float[] in, float[] color) {
+            color[0] = 1;
+            color[1] = color[2] = 0;
+            color[3] = 1;
+            return true;
+        }
+    }
+
+    static SoftwareRenderer renderer() {
+        SoftwareRenderer rv = new SoftwareRenderer(SIZE, SIZE);
+        rv.setPool(null);
+        rv.register("flat", new FlatShader());
+        return rv;
+    }
+
+    static Command initialize(ShaderProgram program, ArrayObject vao, BufferObject vbo) {
+        FloatBuffer vertices = ByteBuffer.allocateDirect(9 * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        vertices.put(new float[] {-1, -1, 0, 1, -1, 0, -1, 1, 0}).flip();
+
+        CommandList rv = new CommandList();
+        rv.add(new GenerateArray(vao));
+        rv.add(new GenerateBuffer(vbo));
+        rv.add(ShaderProgram.build(program, "void main() {}", "void main() {}"));
+
+        BindArray array = new BindArray(vao);
+        BindBuffer buffer = new BindBuffer(BufferType.ArrayBuffer, vbo);
+        array.add(buffer);
+        buffer.add(new BufferData(BufferType.ArrayBuffer, 9 * 4, vertices, BufferData.Usage.StaticDraw));
+        buffer.add(new VertexAttribPointer(0, 3, VertexAttribPointer.Type.Float, false, 3 * 4, 0));
+        buffer.add(new EnableVertexAttribArray(0));
+        rv.add(array);
+        return rv;
+    }
+
+    static Command draw(ShaderProgram program, ArrayObject vao) {
+        CommandList rv = new CommandList();
+        rv.add(new ClearColor(0, 0, 0, 1));
+        rv.add(new Clear(Clear.Mode.COLOR_BUFFER));
+
+        UseProgram use = new UseProgram(program);
+        BindArray array = new BindArray(vao);
+        use.add(array);
+        array.add(new DrawArrays(DrawMode.Triangles, 0, 3));
+        rv.add(use);
+        return rv;
+    }
+
+    static int countRed(int[] pixels) {
+        int rv = 0;
+        for (int pixel : pixels)
+            if ((pixel & 0xffffff) == 0xff0000)
+                rv++;
+        return rv;
+    }
+
+    @Test
+    public void replayRendersTheCapturedPixels() throws Exception {
+        File file = folder.newFile("frames.trace");
+
+        ShaderProgram program = new ShaderProgram("flat");
+        ArrayObject vao = new ArrayObject();
+        SoftwareRenderer live = renderer();
+        CaptureRenderer capture = new CaptureRenderer(live, file);
+        Frame.run(capture, initialize(program, vao, new BufferObject()));
+        capture.endFrame();
+        Frame.run(capture, draw(program, vao));
+        capture.endFrame();
+        capture.close();
+
+        int[] expected = live.getColorBuffer().clone();
+        assertTrue("live frame drew nothing", countRed(expected) > 0);
+
+        Trace trace = Trace.load(file);
+        assertEquals(2, trace.getFrameCount());
+
+        SoftwareRenderer replay = renderer();
+        Frame.run(replay, trace.getFrame(0));
+        Frame.run(replay, trace.getFrame(1));
+
+        assertArrayEquals(expected, replay.getColorBuffer());
+    }
+
+    @Test
+    public void programNamesSurviveTheRoundTrip() throws Exception {
+        File file = folder.newFile("programs.trace");
+
+        CaptureRenderer capture = new CaptureRenderer(renderer(), file);
+        Frame.run(capture, initialize(new ShaderProgram("flat"), new ArrayObject(), new BufferObject()));
+        Frame.run(capture, initialize(new ShaderProgram(), new ArrayObject(), new BufferObject()));
+        capture.endFrame();
+        capture.close();
+
+        final StringBuilder names = new StringBuilder();
+        SoftwareRenderer renderer = new SoftwareRenderer(SIZE, SIZE) {
+            @Override
+            public void run(CreateProgram command) {
+                super.run(command);
+                names.append(command.getProgram().getName()).append(' ');
+            }
+        };
+        Trace.load(file).run(renderer);
+
+        assertEquals("flat null ", names.toString());
+    }
+
+    static ByteBuffer payload(int size, int seed) {
+        ByteBuffer rv = ByteBuffer.allocateDirect(size);
+        for (int i=0; i<size; i++)
+            rv.put(i, (byte) (i * seed + seed));
+        return rv;
+    }
+
+    // the large payloads leave the staging buffer, so their repeats are compared against the file
+    @Test
+    public void repeatedPayloadsAreWrittenOnce() throws Exception {
+        File file = folder.newFile("payloads.trace");
+
+        int large = 200 * 1024;
+        List<ByteBuffer> uploads = Arrays.asList(payload(64, 1), payload(large, 2), payload(64, 1), payload(large, 3),
+                payload(large, 2), payload(large, 3));
+
+        BufferObject vbo = new BufferObject();
+        CommandList frame = new CommandList();
+        frame.add(new GenerateBuffer(vbo));
+        BindBuffer buffer = new BindBuffer(BufferType.ArrayBuffer, vbo);
+        for (ByteBuffer data : uploads)
+            buffer.add(new BufferData(BufferType.ArrayBuffer, data.remaining(), data, BufferData.Usage.StaticDraw));
+        frame.add(buffer);
+
+        CaptureRenderer capture = new CaptureRenderer(renderer(), file);
+        Frame.run(capture, frame);
+        capture.endFrame();
+        capture.close();
+
+        assertEquals(64 + 2 * large, capture.getPayloadBytes());
+        assertEquals(64 + 2 * large, capture.getDedupedBytes());
+
+        final List<ByteBuffer> replayed = new ArrayList<>();
+        SoftwareRenderer renderer = new SoftwareRenderer(SIZE, SIZE) {
+            @Override
+            public void run(BufferData command) {
+                super.run(command);
+                replayed.add(((ByteBuffer) command.getData()).duplicate());
+            }
+        };
+        Trace.load(file).run(renderer);
+
+        assertEquals(uploads, replayed);
+    }
+}
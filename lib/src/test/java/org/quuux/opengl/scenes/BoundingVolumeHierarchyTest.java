@@ -0,0 +1,196 @@
+package org.quuux.opengl.scenes;
+
+import org.joml.Vector3d;
+import org.joml.Vector4d;
+import org.junit.Test;
+import org.quuux.opengl.entities.Bounded;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class BoundingVolumeHierarchyTest {
+
+    static class Item implements Bounded {
+        final Vector4d bounds = new Vector4d();
+
+        Item(double x, double y, double z, double radius) {
+            bounds.set(x, y, z, radius);
+        }
+
+        @Override
+        public Vector4d getBounds() {
+            return bounds;
+        }
+    }
+
+    static List<Item> items(Random random, int count) {
+        List<Item> rv = new ArrayList<>();
+        for (int i=0; i<count; i++)
+            rv.add(new Item(random.nextDouble() * 200 - 100, random.nextDouble() * 200 - 100, random.nextDouble() * 200 - 100,
+                    random.nextDouble() * 5));
+        return rv;
+    }
+
+    static BoundingVolumeHierarchy<Item> build(List<Item> items) {
+        BoundingVolumeHierarchy<Item> rv = new BoundingVolumeHierarchy<>();
+        rv.build(items);
+        return rv;
+    }
+
+    static Camera camera(Random random) {
+        Camera rv = new Camera();
+        rv.setProjection(Math.toRadians(45), 16 / 9.0, .1, 150);
+        rv.rotate(random.nextDouble() * 360, random.nextDouble() * 120 - 60);
+        rv.setPosition(random.nextDouble() * 100 - 50, random.nextDouble() * 100 - 50, random.nextDouble() * 100 - 50);
+        return rv;
+    }
+
+    static Set<Item> queryFrustum(BoundingVolumeHierarchy<Item> index, Camera camera) {
+        final Set<Item> rv = new HashSet<>();
+        int visited = index.queryFrustum(camera.frustumPlanes, new BoundingVolumeHierarchy.Visitor<Item>() {
+            @Override
+            public void visit(Item item) {
+                assertTrue("visited twice", rv.add(item));
+            }
+        });
+        assertEquals(rv.size(), visited);
+        return rv;
+    }
+
+    static Set<Item> cullFrustum(List<Item> items, Camera camera) {
+        Set<Item> rv = new HashSet<>();
+        for (Item item : items)
+            if (camera.isVisible(item.bounds))
+                rv.add(item);
+        return rv;
+    }
+
+    static void assertFrustumMatches(List<Item> items, BoundingVolumeHierarchy<Item> index, Random random) {
+        for (int i=0; i<50; i++) {
+            Camera camera = camera(random);
+            assertEquals(cullFrustum(items, camera), queryFrustum(index, camera));
+        }
+    }
+
+    @Test
+    public void frustumQueryMatchesBruteForce() {
+        Random random = new Random(1);
+        for (int size : new int[] {1, BoundingVolumeHierarchy.LEAF_SIZE, BoundingVolumeHierarchy.LEAF_SIZE + 1, 100, 2000}) {
+            List<Item> items = items(random, size);
+            assertFrustumMatches(items, build(items), random);
+        }
+    }
+
+    @Test
+    public void sphereQueryMatchesBruteForce() {
+        Random random = new Random(2);
+        List<Item> items = items(random, 2000);
+        BoundingVolumeHierarchy<Item> index = build(items);
+
+        for (int i=0; i<100; i++) {
+            double x = random.nextDouble() * 200 - 100, y = random.nextDouble() * 200 - 100, z = random.nextDouble() * 200 - 100;
+            double radius = random.nextDouble() * 30;
+
+            Set<Item> expected = new HashSet<>();
+            for (Item item : items) {
+                Vector4d b = item.bounds;
+                double dx = b.x - x, dy = b.y - y, dz = b.z - z;
+                double reach = radius + b.w;
+                if (dx * dx + dy * dy + dz * dz <= reach * reach)
+                    expected.add(item);
+            }
+
+            final Set<Item> actual = new HashSet<>();
+            index.querySphere(x, y, z, radius, new BoundingVolumeHierarchy.Visitor<Item>() {
+                @Override
+                public void visit(Item item) {
+                    actual.add(item);
+                }
+            });
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void rayQueryMatchesBruteForce() {
+        Random random = new Random(3);
+        List<Item> items = items(random, 2000);
+        BoundingVolumeHierarchy<Item> index = build(items);
+
+        for (int i=0; i<200; i++) {
+            Vector3d origin = new Vector3d(random.nextDouble() * 300 - 150, random.nextDouble() * 300 - 150, random.nextDouble() * 300 - 150);
+            Vector3d direction = new Vector3d(random.nextGaussian(), random.nextGaussian(), random.nextGaussian()).normalize();
+            // axis aligned rays exercise the infinite slabs
+            if (i % 4 == 0)
+                direction.set(0, 0, i % 8 == 0 ? 1 : -1);
+            double maxDistance = random.nextDouble() * 300;
+
+            Map<Item, Double> expected = new HashMap<>();
+            for (Item item : items) {
+                Vector4d b = item.bounds;
+                Vector3d c = new Vector3d(b.x, b.y, b.z).sub(origin);
+                double along = c.dot(direction);
+                double d2 = c.lengthSquared() - along * along;
+                if (d2 > b.w * b.w)
+                    continue;
+                double half = Math.sqrt(b.w * b.w - d2);
+                double distance = Math.max(0, along - half);
+                if (along + half >= 0 && distance <= maxDistance)
+                    expected.put(item, distance);
+            }
+
+            final Map<Item, Double> actual = new HashMap<>();
+            index.queryRay(origin.x, origin.y, origin.z, direction.x, direction.y, direction.z, maxDistance,
+                    new BoundingVolumeHierarchy.RayVisitor<Item>() {
+                        @Override
+                        public void visit(Item item, double distance) {
+                            assertNull("visited twice", actual.put(item, distance));
+                        }
+                    });
+
+            assertEquals(expected.keySet(), actual.keySet());
+            for (Map.Entry<Item, Double> entry : expected.entrySet())
+                assertEquals(entry.getValue(), actual.get(entry.getKey()), 1e-9);
+        }
+    }
+
+    @Test
+    public void refitFollowsMovedItems() {
+        Random random = new Random(4);
+        List<Item> items = items(random, 2000);
+        BoundingVolumeHierarchy<Item> index = build(items);
+
+        for (int step=0; step<10; step++) {
+            int moved = 0;
+            for (Item item : items) {
+                if (random.nextInt(4) != 0)
+                    continue;
+                // mostly small steps, now and then one across the world
+                double scale = random.nextInt(20) == 0 ? 100 : 2;
+                item.bounds.add(random.nextGaussian() * scale, random.nextGaussian() * scale, random.nextGaussian() * scale, 0);
+                moved++;
+            }
+
+            assertEquals(moved, index.refit());
+            assertFrustumMatches(items, index, random);
+        }
+
+        assertEquals(0, index.refit());
+    }
+
+    @Test
+    public void emptyTreeFindsNothing() {
+        BoundingVolumeHierarchy<Item> index = build(new ArrayList<Item>());
+        assertEquals(0, index.size());
+        assertTrue(queryFrustum(index, camera(new Random(5))).isEmpty());
+        assertEquals(0, index.querySphere(0, 0, 0, 1000, null));
+        assertEquals(0, index.queryRay(0, 0, 0, 0, 0, 1, 1000, null));
+    }
+}
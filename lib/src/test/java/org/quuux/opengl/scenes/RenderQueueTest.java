@@ -0,0 +1,283 @@
+package org.quuux.opengl.scenes;
+
+import org.joml.Vector3d;
+import org.joml.Vector4d;
+import org.junit.Before;
+import org.junit.Test;
+import org.quuux.opengl.entities.Entity;
+import org.quuux.opengl.entities.Sortable;
+import org.quuux.opengl.lib.ArrayObject;
+import org.quuux.opengl.lib.Material;
+import org.quuux.opengl.lib.ShaderProgram;
+import org.quuux.opengl.renderer.Command;
+import org.quuux.opengl.renderer.Renderer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RenderQueueTest {
+
+    static class Plain implements Entity {
+        @Override
+        public void update(long t) {
+        }
+
+        @Override
+        public Command initialize() {
+            return null;
+        }
+
+        @Override
+        public Command dispose() {
+            return null;
+        }
+
+        @Override
+        public Command draw() {
+            return null;
+        }
+    }
+
+    static final ArrayObject ARRAY = new ArrayObject();
+
+    static class Draw extends Plain implements Sortable {
+        final Vector4d bounds = new Vector4d();
+        final int pass;
+        final boolean translucent;
+        final ShaderProgram shader;
+
+        Draw(int pass, boolean translucent, ShaderProgram shader, Vector3d position) {
+            this.pass = pass;
+            this.translucent = translucent;
+            this.shader = shader;
+            bounds.set(position.x, position.y, position.z, 1);
+        }
+
+        @Override
+        public Vector4d getBounds() {
+            return bounds;
+        }
+
+        @Override
+        public int getPass() {
+            return pass;
+        }
+
+        @Override
+        public boolean isTranslucent() {
+            return translucent;
+        }
+
+        @Override
+        public ShaderProgram getShader() {
+            return shader;
+        }
+
+        @Override
+        public Material getMaterial() {
+            return null;
+        }
+
+        @Override
+        public ArrayObject getArray() {
+            return ARRAY;
+        }
+    }
+
+    // records which entity drew
+    static class Record extends Command {
+        final List<Entity> drawn;
+        final Entity entity;
+
+        Record(List<Entity> drawn, Entity entity) {
+            this.drawn = drawn;
+            this.entity = entity;
+        }
+
+        @Override
+        public void run(Renderer renderer) {
+            drawn.add(entity);
+        }
+    }
+
+    Camera camera;
+    RenderQueue queue;
+    List<Entity> drawn;
+
+    @Before
+    public void setUp() {
+        camera = new Camera();
+        camera.setProjection(Math.toRadians(45), 1, .1, 100);
+        camera.setPosition(0, 0, 0);
+        queue = new RenderQueue(camera);
+        drawn = new ArrayList<>();
+    }
+
+    Vector3d ahead(double distance) {
+        return new Vector3d(camera.front).mul(distance).add(camera.position);
+    }
+
+    <T extends Entity> T add(T entity) {
+        queue.add(entity, new Record(drawn, entity));
+        return entity;
+    }
+
+    // the queue's sort against a stable reference, keys compared unsigned as the radix sort sees them
+    void assertSortMatchesReference(long[] keys) {
+        int count = keys.length;
+        queue.keys = Arrays.copyOf(keys, count);
+        queue.scratchKeys = new long[count];
+        queue.order = new int[count];
+        queue.scratchOrder = new int[count];
+        for (int i=0; i<count; i++)
+            queue.order[i] = i;
+
+        queue.sort(count);
+
+        Integer[] expected = new Integer[count];
+        for (int i=0; i<count; i++)
+            expected[i] = i;
+        final long[] source = keys;
+        Arrays.sort(expected, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compareUnsigned(source[a], source[b]);
+            }
+        });
+
+        for (int i=0; i<count; i++) {
+            assertEquals("order at " + i, (int) expected[i], queue.order[i]);
+            assertEquals("key at " + i, keys[expected[i]], queue.keys[i]);
+        }
+    }
+
+    @Test
+    public void sortMatchesReference() {
+        Random random = new Random(1);
+        long[] keys = new long[5000];
+        for (int i=0; i<keys.length; i++)
+            keys[i] = random.nextLong();
+        assertSortMatchesReference(keys);
+    }
+
+    @Test
+    public void sortIsStable() {
+        Random random = new Random(2);
+        long[] keys = new long[5000];
+        for (int i=0; i<keys.length; i++)
+            keys[i] = (long) random.nextInt(4) << 62 | random.nextInt(8);
+        assertSortMatchesReference(keys);
+    }
+
+    @Test
+    public void sortHandlesSharedBytes() {
+        long[] keys = new long[1000];
+        Arrays.fill(keys, 0x4000_0000_0000_0000L);
+        for (int i=0; i<keys.length; i+=3)
+            keys[i] |= 1L << 40;
+        assertSortMatchesReference(keys);
+        assertSortMatchesReference(new long[] {42});
+        assertSortMatchesReference(new long[0]);
+    }
+
+    @Test
+    public void drawsOpaqueFrontToBackThenTranslucentBackToFront() {
+        ShaderProgram shader = new ShaderProgram();
+        Draw nearOpaque = add(new Draw(RenderQueue.DEFAULT_PASS, false, shader, ahead(5)));
+        Draw farTranslucent = add(new Draw(RenderQueue.DEFAULT_PASS, true, shader, ahead(50)));
+        Draw farOpaque = add(new Draw(RenderQueue.DEFAULT_PASS, false, shader, ahead(50)));
+        Draw nearTranslucent = add(new Draw(RenderQueue.DEFAULT_PASS, true, shader, ahead(5)));
+        Draw background = add(new Draw(0, false, shader, ahead(90)));
+        Draw overlay = add(new Draw(2, false, shader, ahead(1)));
+
+        queue.run(null);
+
+        assertEquals(Arrays.<Entity>asList(background, nearOpaque, farOpaque, farTranslucent, nearTranslucent, overlay), drawn);
+    }
+
+    @Test
+    public void unsortableDrawsKeepTheirOrder() {
+        List<Entity> expected = new ArrayList<>();
+        for (int i=0; i<100; i++)
+            expected.add(add(new Plain()));
+
+        queue.run(null);
+
+        assertEquals(expected, drawn);
+    }
+
+    @Test
+    public void opaqueDrawsGroupByShader() {
+        Random random = new Random(3);
+        ShaderProgram[] shaders = {new ShaderProgram(), new ShaderProgram(), new ShaderProgram()};
+        for (int i=0; i<300; i++)
+            add(new Draw(RenderQueue.DEFAULT_PASS, false, shaders[random.nextInt(shaders.length)], ahead(random.nextDouble() * 90)));
+
+        queue.run(null);
+
+        // each shader's draws form one run, front to back within it
+        List<ShaderProgram> runs = new ArrayList<>();
+        double depth = 0;
+        for (Entity entity : drawn) {
+            Draw draw = (Draw) entity;
+            double distance = new Vector3d(draw.bounds.x, draw.bounds.y, draw.bounds.z).distance(camera.position);
+            if (runs.isEmpty() || runs.get(runs.size() - 1) != draw.shader) {
+                assertFalse("shader drawn in two runs", runs.contains(draw.shader));
+                runs.add(draw.shader);
+                depth = 0;
+            }
+            assertTrue(distance >= depth - 1e-3);
+            depth = distance;
+        }
+        assertEquals(300, drawn.size());
+    }
+
+    @Test
+    public void rebuildingForgetsDroppedStates() {
+        // more rebuilds with fresh shaders than there are ids
+        for (int i=0; i<=RenderQueue.ID_MASK; i++) {
+            queue.clear();
+            add(new Draw(RenderQueue.DEFAULT_PASS, false, new ShaderProgram(), ahead(10)));
+        }
+
+        Draw first = add(new Draw(RenderQueue.DEFAULT_PASS, false, new ShaderProgram(), ahead(10)));
+        Draw second = add(new Draw(RenderQueue.DEFAULT_PASS, false, new ShaderProgram(), ahead(10)));
+        assertTrue(queue.ids.size() <= 4);
+
+        long[] states = new long[2];
+        for (RenderQueue.Item item : queue.getItems())
+            if (item.getEntity() == first || item.getEntity() == second)
+                states[item.getEntity() == first ? 0 : 1] = item.state;
+        assertNotEquals(states[0], states[1]);
+    }
+
+    @Test
+    public void culledDrawsAreSkipped() {
+        ShaderProgram shader = new ShaderProgram();
+        Draw seen = add(new Draw(RenderQueue.DEFAULT_PASS, false, shader, ahead(10)));
+        Draw hidden = add(new Draw(RenderQueue.DEFAULT_PASS, false, shader, ahead(20)));
+        Plain unbounded = add(new Plain());
+
+        // a cull in progress hides nothing
+        int frame = queue.nextFrame();
+        queue.run(null);
+        assertEquals(3, queue.getDrawCount());
+
+        for (RenderQueue.Item item : queue.getItems())
+            if (item.getEntity() == seen)
+                queue.markVisible(item);
+        queue.setDrawFrame(frame);
+
+        drawn.clear();
+        queue.run(null);
+        // draws without a state key come first in their pass
+        assertEquals(Arrays.<Entity>asList(unbounded, seen), drawn);
+        assertEquals(2, queue.getDrawCount());
+        assertFalse(drawn.contains(hidden));
+    }
+}
@@ -0,0 +1,125 @@
+package org.quuux.opengl.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class TripleBufferTest {
+
+    static final int SLOT_SIZE = 1024;
+
+    static TripleBuffer<long[]> create() {
+        return new TripleBuffer<>(new long[SLOT_SIZE], new long[SLOT_SIZE], new long[SLOT_SIZE]);
+    }
+
+    static void fill(long[] slot, long value) {
+        for (int i=0; i<slot.length; i++)
+            slot[i] = value;
+    }
+
+    @Test
+    public void nothingToAcquireUntilPublished() {
+        TripleBuffer<long[]> buffer = create();
+        assertFalse(buffer.isFresh());
+        assertFalse(buffer.acquire());
+
+        fill(buffer.getBack(), 1);
+        buffer.publish();
+        assertTrue(buffer.isFresh());
+        assertTrue(buffer.acquire());
+        assertEquals(1, buffer.getFront()[0]);
+
+        assertFalse(buffer.isFresh());
+        assertFalse(buffer.acquire());
+        assertEquals(1, buffer.getFront()[0]);
+    }
+
+    @Test
+    public void readerGetsTheNewestPublished() {
+        TripleBuffer<long[]> buffer = create();
+        for (long value=1; value<=5; value++) {
+            fill(buffer.getBack(), value);
+            buffer.publish();
+        }
+
+        assertTrue(buffer.acquire());
+        assertEquals(5, buffer.getFront()[0]);
+    }
+
+    @Test
+    public void writerNeverFillsTheFront() {
+        TripleBuffer<long[]> buffer = create();
+        fill(buffer.getBack(), 1);
+        buffer.publish();
+        buffer.acquire();
+        long[] front = buffer.getFront();
+
+        for (int i=0; i<10; i++) {
+            assertNotSame(front, buffer.getBack());
+            fill(buffer.getBack(), 2 + i);
+            buffer.publish();
+        }
+        assertEquals(1, front[0]);
+    }
+
+    // The writer fills each slot with one value a word at a time, so a reader looking at a slot
+    // that is still being written sees two values in it. Values must also only ever increase.
+    @Test
+    public void readerNeverSeesASlotBeingWritten() throws Exception {
+        final TripleBuffer<long[]> buffer = create();
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (long value=1; !done.get(); value++) {
+                    fill(buffer.getBack(), value);
+                    buffer.publish();
+                }
+            }
+        });
+
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    long last = 0;
+                    long deadline = System.nanoTime() + 1_000_000_000L;
+                    int acquired = 0;
+                    while (System.nanoTime() < deadline) {
+                        if (!buffer.acquire())
+                            continue;
+                        acquired++;
+
+                        // read the slot twice so a writer touching it in between is caught too
+                        long[] front = buffer.getFront();
+                        for (int pass=0; pass<2; pass++) {
+                            long value = front[0];
+                            for (int i=1; i<front.length; i++)
+                                assertEquals("torn slot", value, front[i]);
+                            assertTrue("went back from " + last + " to " + value, value > last || pass > 0 && value == last);
+                            last = value;
+                        }
+                    }
+                    assertTrue("nothing acquired", acquired > 0);
+                } catch (Throwable t) {
+                    failure.set(t);
+                } finally {
+                    done.set(true);
+                }
+            }
+        });
+
+        writer.start();
+        reader.start();
+        reader.join();
+        writer.join();
+
+        if (failure.get() != null)
+            throw new AssertionError(failure.get());
+    }
+}
@@ -1,36 +1,37 @@
 package org.quuux.scenes;
 
-import org.joml.Vector3d;
-import org.quuux.opengl.entities.Entity;
+import org.joml.Matrix4d;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+import org.quuux.opengl.entities.InstancedMesh;
+import org.quuux.opengl.lib.AssetManager;
 import org.quuux.opengl.lib.Cubemap;
 import org.quuux.opengl.lib.Material;
 import org.quuux.opengl.entities.Mesh;
 import org.quuux.opengl.renderer.Command;
 import org.quuux.opengl.renderer.CommandList;
+import org.quuux.opengl.renderer.CompiledCommandList;
 import org.quuux.opengl.renderer.commands.*;
 import org.quuux.opengl.renderer.states.*;
 import org.quuux.opengl.scenes.PointLight;
 import org.quuux.opengl.scenes.Scene;
 
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
 
 public class TestScene extends Scene {
 
     long ticks, totalElapsed;
 
-    Material worldmap = Material.load("world", 1f);
-    Material brick = Material.load("brick", 1f);
+    Material worldmap = AssetManager.get().loadMaterial("world", 1f);
+    Material brick = AssetManager.get().loadMaterial("brick", 1f);
 
-    Cubemap cubemap = Cubemap.load("space-1");
+    Cubemap cubemap = AssetManager.get().loadCubemap("space-1");
 
     Mesh globe = Mesh.createIcoSphere(worldmap, 20, 3);
     Mesh ground = Mesh.createQuad(brick);
-    List<Mesh> bulbs = new ArrayList<>();
+    InstancedMesh bulbs = InstancedMesh.create(Mesh.createCube(Material.color(new Vector3f(1, 1, 1), 1)), 16);
 
     CommandList initializeCommand;
-    CommandList drawCommand;
+    Command drawCommand, recorded;
 
     public TestScene() {
         super();
@@ -88,11 +89,10 @@ public class TestScene extends Scene {
         entities.add(ground);
 
         for (PointLight pointLight : pointLights) {
-            Mesh bulb = Mesh.createCube(Material.color(pointLight.ambient, 1));
-            bulb.model.translate(pointLight.position);
-            entities.add(bulb);
-            bulbs.add(bulb);
+            Matrix4d model = new Matrix4d().translate(pointLight.position.x, pointLight.position.y, pointLight.position.z);
+            bulbs.add(model, new Vector4f(pointLight.ambient, 1));
         }
+        entities.add(bulbs);
 
     }
 
@@ -117,6 +117,16 @@ public class TestScene extends Scene {
         return initializeCommand;
     }
 
+    @Override
+    public Command dispose() {
+        CommandList rv = new CommandList();
+        rv.add(super.dispose());
+        rv.add(worldmap.dispose());
+        rv.add(brick.dispose());
+        rv.add(AssetManager.get().release(cubemap));
+        return rv;
+    }
+
     @Override
     public void update(long t) {
         ticks += 1;
@@ -127,7 +137,9 @@ public class TestScene extends Scene {
 
     @Override
     public Command draw() {
-        if (drawCommand == null) {
+        // Scene hands back the same list until the entities change
+        Command entityDraws = super.draw();
+        if (drawCommand == null || entityDraws != recorded) {
             CommandList rv = new CommandList();
 
             BatchState ctx = new BatchState(
@@ -137,26 +149,10 @@ public class TestScene extends Scene {
             );
             rv.add(ctx);
             ctx.add(new Clear(Clear.Mode.COLOR_BUFFER, Clear.Mode.DEPTH_BUFFER));
-            ctx.add(super.draw());
-            drawCommand = rv;
+            ctx.add(entityDraws);
+            drawCommand = CompiledCommandList.compile(rv);
+            recorded = entityDraws;
         }
         return drawCommand;
     }
-
-    Comparator<Entity> entityComparator = new Comparator<Entity>() {
-
-        Vector3d v1 = new Vector3d();
-        Vector3d v2 = new Vector3d();
-
-        @Override
-        public int compare(final Entity e1, final Entity e2) {
-            Mesh m1 = (Mesh)e1;
-            Mesh m2 = (Mesh)e2;
-            m1.model.getTranslation(v1);
-            m2.model.getTranslation(v2);
-            double d1 = v1.distance(camera.position);
-            double d2 = v2.distance(camera.position);
-            return Double.compare(d1, d2);
-        }
-    };
 }
@@ -2,8 +2,15 @@ package org.quuux.driver;
 
 import com.jogamp.opengl.GLProfile;
 
+import org.quuux.opengl.renderer.Renderer;
+
 public class Config {
     public static final int WIDTH = 1024;
     public static final int HEIGHT = 768;
     public static String GL_PROFILE = GLProfile.GL4;
+    public static Renderer.ErrorCheck ERROR_CHECK = Renderer.ErrorCheck.valueOf(System.getProperty("errorCheck", "FRAME"));
+    // trace file to capture submitted frames into, see Replay
+    public static String CAPTURE = System.getProperty("capture");
+    // count and time the commands sent to the driver, printed with the frame stats
+    public static boolean PROFILE = Boolean.getBoolean("profile");
 }
@@ -27,6 +27,12 @@ public class DebugRenderer extends JOGLRenderer {
         super.run(command);
     }
 
+    @Override
+    public void run(BufferSubData command) {
+        log(command);
+        super.run(command);
+    }
+
     @Override
     public void run(Clear command) {
         log(command);
@@ -94,7 +100,13 @@ public class DebugRenderer extends JOGLRenderer {
     }
 
     @Override
-    public void run(SetUniform command) {
+    public void run(SetUniformFloat command) {
+        log(command);
+        super.run(command);
+    }
+
+    @Override
+    public void run(SetUniformInt command) {
         log(command);
         super.run(command);
     }
@@ -129,6 +141,72 @@ public class DebugRenderer extends JOGLRenderer {
         super.run(command);
     }
 
+    @Override
+    public void run(BindBufferBase command) {
+        log(command);
+        super.run(command);
+    }
+
+    @Override
+    public void run(UniformBlockBinding command) {
+        log(command);
+        super.run(command);
+    }
+
+    @Override
+    public void run(DrawArraysInstanced command) {
+        log(command);
+        super.run(command);
+    }
+
+    @Override
+    public void run(DrawElementsInstanced command) {
+        log(command);
+        super.run(command);
+    }
+
+    @Override
+    public void run(VertexAttribDivisor command) {
+        log(command);
+        super.run(command);
+    }
+
+    @Override
+    public void run(TransformFeedbackVaryings command) {
+        log(command);
+        super.run(command);
+    }
+
+    @Override
+    public void run(BeginTransformFeedback command) {
+        log(command);
+        super.run(command);
+    }
+
+    @Override
+    public void run(EndTransformFeedback command) {
+        log(command);
+        super.run(command);
+    }
+
+    @Override
+    public void run(DeleteTexture command) {
+        log(command);
+        super.run(command);
+    }
+
+    @Override
+    public void run(DeleteProgram command) {
+        log(command);
+        super.run(command);
+    }
+
+    @Override
+    public void run(DeleteBuffer command) {
+        log(command);
+        super.run(command);
+    }
+
     @Override
     public void set(ActivateTexture command) {
         logSet(command);
@@ -0,0 +1,73 @@
+package org.quuux.driver;
+
+import org.quuux.opengl.lib.AssetManager;
+import org.quuux.opengl.renderer.CaptureRenderer;
+import org.quuux.opengl.renderer.Frame;
+import org.quuux.opengl.renderer.Renderer;
+import org.quuux.opengl.renderer.StateTrackingRenderer;
+import org.quuux.opengl.renderer.software.SoftwareRenderer;
+import org.quuux.opengl.renderer.software.shaders.DefaultShaders;
+import org.quuux.opengl.scenes.Scene;
+import org.quuux.scenes.TestScene;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+// Renders the test scene without a GL context and writes the last frame to a png,
+// for rendering checks on machines with no gpu. -Dcapture=file also writes a trace of the frames.
+//   Headless [output.png] [frames]
+class Headless {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        File output = new File(args.length > 0 ? args[0] : "frame.png");
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+
+        SoftwareRenderer softwareRenderer = new SoftwareRenderer(Config.WIDTH, Config.HEIGHT);
+        DefaultShaders.register(softwareRenderer);
+
+        Renderer backend = softwareRenderer;
+        CaptureRenderer capture = null;
+        if (Config.CAPTURE != null)
+            backend = capture = new CaptureRenderer(softwareRenderer, new File(Config.CAPTURE));
+        StateTrackingRenderer renderer = new StateTrackingRenderer(backend);
+
+        Scene scene = new TestScene();
+        scene.setPool(ForkJoinPool.commonPool());
+        scene.getCamera().setProjection(45, (double) Config.WIDTH / (double) Config.HEIGHT, 1, 1000.);
+        Frame.runChecked(renderer, scene.initialize());
+
+        // the frame should show the scene's real textures, not the loading placeholders
+        while (AssetManager.get().getLoadingCount() > 0)
+            Thread.sleep(10);
+
+        long start = System.nanoTime();
+        for (int i=0; i<frames; i++) {
+            scene.dispatchUpdate(1000 / 60);
+            Frame.run(renderer, scene.dispatchDraw());
+            renderer.endFrame();
+            if (capture != null)
+                capture.endFrame();
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.println(String.format("%d frames in %.1f ms (%.1f ms/frame)", frames, elapsed / 1e6, elapsed / 1e6 / Math.max(frames, 1)));
+
+        int width = softwareRenderer.getWidth(), height = softwareRenderer.getHeight();
+        int[] pixels = softwareRenderer.getColorBuffer();
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y=0; y<height; y++)
+            image.setRGB(0, height - 1 - y, width, 1, pixels, y * width, width);
+        ImageIO.write(image, "png", output);
+
+        if (capture != null) {
+            capture.close();
+            System.out.println(String.format("captured %d frames to %s, %d payload bytes written, %d deduplicated",
+                    capture.getFrameCount(), Config.CAPTURE, capture.getPayloadBytes(), capture.getDedupedBytes()));
+        }
+
+        Frame.runChecked(renderer, scene.dispose());
+        System.exit(0);
+    }
+}
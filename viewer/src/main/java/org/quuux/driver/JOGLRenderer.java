@@ -19,6 +19,7 @@ import java.nio.IntBuffer;
 public class JOGLRenderer implements Renderer {
 
     GL _gl;
+    ErrorCheck errorCheck = ErrorCheck.FRAME;
 
     public void setGL(GL gl) {
         this._gl = gl;
@@ -34,6 +35,10 @@ public class JOGLRenderer implements Renderer {
             rv = GL.GL_ARRAY_BUFFER;
         else if (target == BufferType.ElementArrayBuffer)
             rv = GL.GL_ELEMENT_ARRAY_BUFFER;
+        else if (target == BufferType.UniformBuffer)
+            rv = GL4.GL_UNIFORM_BUFFER;
+        else if (target == BufferType.TransformFeedbackBuffer)
+            rv = GL4.GL_TRANSFORM_FEEDBACK_BUFFER;
         else
             throw new UnsupportedException("Unknown target: " + target);
         return rv;
@@ -52,14 +57,38 @@ public class JOGLRenderer implements Renderer {
         return rv;
     }
 
-    private int getUniformLocation(ShaderProgram shader, String name) {
-        Integer location = shader.getUniformLocation(name);
-        if (location == null) {
-            location = getGL().glGetUniformLocation(shader.program, name);
-            shader.setUniformLocation(name, location);
+    private void resolveUniforms(ShaderProgram shader) {
+        GL4 gl4 = getGL();
+
+        IntBuffer count = GLUtil.intBuffer(1);
+        gl4.glGetProgramiv(shader.program, GL4.GL_ACTIVE_UNIFORMS, count);
+
+        IntBuffer length = GLUtil.intBuffer(1);
+        IntBuffer size = GLUtil.intBuffer(1);
+        IntBuffer type = GLUtil.intBuffer(1);
+        ByteBuffer name = GLUtil.byteBuffer(256);
+
+        for (int i=0; i<count.get(0); i++) {
+            gl4.glGetActiveUniform(shader.program, i, name.capacity(), length, size, type, name);
+            byte[] bytes = new byte[length.get(0)];
+            name.get(bytes);
+            name.clear();
+            registerUniform(shader, new String(bytes), size.get(0));
         }
+    }
 
-        return location;
+    private void registerUniform(ShaderProgram shader, String name, int size) {
+        // arrays of basic types are reported once as "name[0]"
+        if (name.endsWith("[0]")) {
+            String base = name.substring(0, name.length() - 3);
+            for (int i=0; i<size; i++) {
+                String element = base + "[" + i + "]";
+                shader.setUniformLocation(element, getGL().glGetUniformLocation(shader.program, element));
+            }
+            shader.setUniformLocation(base, getGL().glGetUniformLocation(shader.program, name));
+        } else {
+            shader.setUniformLocation(name, getGL().glGetUniformLocation(shader.program, name));
+        }
     }
 
     private int getType(VertexAttribPointer.Type type) {
@@ -120,6 +149,8 @@ public class JOGLRenderer implements Renderer {
             rv = GL.GL_MULTISAMPLE;
         else if (capability == Enable.Capability.POINT_SIZE)
             rv = GL4.GL_PROGRAM_POINT_SIZE;
+        else if (capability == Enable.Capability.RASTERIZER_DISCARD)
+            rv = GL4.GL_RASTERIZER_DISCARD;
         else
             throw new UnsupportedException("Unknown capability: " + capability);
         return rv;
@@ -236,7 +267,28 @@ public class JOGLRenderer implements Renderer {
         return msg;
     }
 
+    @Override
+    public void setErrorCheck(ErrorCheck errorCheck) {
+        this.errorCheck = errorCheck;
+    }
+
+    @Override
+    public ErrorCheck getErrorCheck() {
+        return errorCheck;
+    }
+
+    @Override
     public void checkError() {
+        int error;
+        StringBuilder sb = null;
+        while ((error = getGL().glGetError()) != GL.GL_NO_ERROR) {
+            if (sb == null)
+                sb = new StringBuilder("glError:");
+            sb.append(String.format(" 0x%x", error));
+        }
+
+        if (sb != null)
+            throw new RendererException(sb.toString());
     }
 
     @Override
@@ -244,6 +296,11 @@ public class JOGLRenderer implements Renderer {
         getGL().glBufferData(getTarget(command.getTarget()), command.getSize(), command.getData(), getUsage(command.getUsage()));
     }
 
+    @Override
+    public void run(final BufferSubData command) {
+        getGL().glBufferSubData(getTarget(command.getTarget()), command.getOffset(), command.getSize(), command.getData());
+    }
+
     @Override
     public void run(final Clear command) {
         getGL().glClear(getMask(command.getModes()));
@@ -263,42 +320,52 @@ public class JOGLRenderer implements Renderer {
 
     @Override
     public void run(final SetUniformMatrix command) {
-        getGL().glUniformMatrix4fv(getUniformLocation(command.getShader(), command.getAttribute()), command.getCount(), command.isTranspose(), command.getBuffer());
+        getGL().glUniformMatrix4fv(command.getLocation(), command.getCount(), command.isTranspose(), command.getBuffer());
     }
 
     @Override
-    public void run(final SetUniform command) {
+    public void run(final SetUniformFloat command) {
+        int location = command.getLocation();
 
-        Object[] value = command.getValue();
+        switch (command.getSize()) {
+            case 1:
+                getGL().glUniform1f(location, command.getX());
+                break;
 
-        if (command.getType() == SetUniform.Type.INT) {
-            switch(value.length) {
-                case 1:
-                    getGL().glUniform1i(getUniformLocation(command.getProgram(), command.getAttribute()), (int) value[0]);
-                    break;
+            case 2:
+                getGL().glUniform2f(location, command.getX(), command.getY());
+                break;
 
-                case 2:
-                    getGL().glUniform2i(getUniformLocation(command.getProgram(), command.getAttribute()), (int) value[0], (int) value[1]);
-                    break;
+            case 3:
+                getGL().glUniform3f(location, command.getX(), command.getY(), command.getZ());
+                break;
 
-                case 3:
-                    getGL().glUniform3i(getUniformLocation(command.getProgram(), command.getAttribute()), (int) value[0], (int) value[1], (int) value[2]);
-                    break;
-            }
-        } else if (command.getType() == SetUniform.Type.FLOAT) {
-            switch(value.length) {
-                case 1:
-                    getGL().glUniform1f(getUniformLocation(command.getProgram(), command.getAttribute()), (float) value[0]);
-                    break;
-
-                case 2:
-                    getGL().glUniform2f(getUniformLocation(command.getProgram(), command.getAttribute()), (float) value[0], (float) value[1]);
-                    break;
-
-                case 3:
-                    getGL().glUniform3f(getUniformLocation(command.getProgram(), command.getAttribute()), (float) value[0], (float) value[1], (float) value[2]);
-                    break;
-            }
+            case 4:
+                getGL().glUniform4f(location, command.getX(), command.getY(), command.getZ(), command.getW());
+                break;
+        }
+    }
+
+    @Override
+    public void run(final SetUniformInt command) {
+        int location = command.getLocation();
+
+        switch (command.getSize()) {
+            case 1:
+                getGL().glUniform1i(location, command.getX());
+                break;
+
+            case 2:
+                getGL().glUniform2i(location, command.getX(), command.getY());
+                break;
+
+            case 3:
+                getGL().glUniform3i(location, command.getX(), command.getY(), command.getZ());
+                break;
+
+            case 4:
+                getGL().glUniform4i(location, command.getX(), command.getY(), command.getZ(), command.getW());
+                break;
         }
     }
 
@@ -356,6 +423,72 @@ public class JOGLRenderer implements Renderer {
         getGL().glGenerateMipmap(getTextureTarget(command.getTarget()));
     }
 
+    @Override
+    public void run(final BindBufferBase command) {
+        getGL().glBindBufferBase(getTarget(command.getTarget()), command.getIndex(), command.getBuffer().vbo);
+    }
+
+    @Override
+    public void run(final UniformBlockBinding command) {
+        int program = command.getProgram().program;
+        int index = getGL().glGetUniformBlockIndex(program, command.getBlock());
+        if (index != GL4.GL_INVALID_INDEX)
+            getGL().glUniformBlockBinding(program, index, command.getBinding());
+    }
+
+    @Override
+    public void run(final DrawArraysInstanced command) {
+        getGL().glDrawArraysInstanced(getMode(command.getMode()), command.getFirst(), command.getCount(), command.getInstanceCount());
+    }
+
+    @Override
+    public void run(final DrawElementsInstanced command) {
+        getGL().glDrawElementsInstanced(getMode(command.getMode()), command.getCount(), GL.GL_UNSIGNED_INT, 0, command.getInstanceCount());
+    }
+
+    @Override
+    public void run(final VertexAttribDivisor command) {
+        getGL().glVertexAttribDivisor(command.getIndex(), command.getDivisor());
+    }
+
+    @Override
+    public void run(final TransformFeedbackVaryings command) {
+        String[] varyings = command.getVaryings();
+        getGL().glTransformFeedbackVaryings(command.getProgram().program, varyings.length, varyings, GL4.GL_INTERLEAVED_ATTRIBS);
+    }
+
+    @Override
+    public void run(final BeginTransformFeedback command) {
+        getGL().glBeginTransformFeedback(getMode(command.getMode()));
+    }
+
+    @Override
+    public void run(final EndTransformFeedback command) {
+        getGL().glEndTransformFeedback();
+    }
+
+    @Override
+    public void run(final DeleteTexture command) {
+        IntBuffer buffer = GLUtil.intBuffer(1);
+        buffer.put(0, command.getTexture().texture);
+        getGL().glDeleteTextures(1, buffer);
+        command.getTexture().texture = -1;
+    }
+
+    @Override
+    public void run(final DeleteProgram command) {
+        getGL().glDeleteProgram(command.getProgram().program);
+        command.getProgram().program = -1;
+    }
+
+    @Override
+    public void run(final DeleteBuffer command) {
+        IntBuffer buffer = GLUtil.intBuffer(1);
+        buffer.put(0, command.getVbo().vbo);
+        getGL().glDeleteBuffers(1, buffer);
+        command.getVbo().vbo = -1;
+    }
+
     @Override
     public void set(final ActivateTexture command) {
         getGL().glActiveTexture(getTextureUnit(command.getTextureUnit()));
@@ -418,7 +551,7 @@ public class JOGLRenderer implements Renderer {
 
     @Override
     public void clear(final BindTexture command) {
-        getGL().glBindTexture(GL.GL_TEXTURE_2D, 0);
+        getGL().glBindTexture(getTextureTarget(command.getTarget()), 0);
     }
 
     @Override
@@ -553,5 +686,7 @@ public class JOGLRenderer implements Renderer {
             gl4.glGetProgramInfoLog(command.getProgram().program, buffer.capacity(), null, buffer);
             throw new RendererException("Error linking shader: " + byteBufferToString(buffer));
         }
+
+        resolveUniforms(command.getProgram());
     }
 }
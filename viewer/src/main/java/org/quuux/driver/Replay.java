@@ -0,0 +1,68 @@
+package org.quuux.driver;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GLCapabilities;
+import com.jogamp.opengl.GLDrawableFactory;
+import com.jogamp.opengl.GLOffscreenAutoDrawable;
+import com.jogamp.opengl.GLProfile;
+
+import org.quuux.opengl.renderer.Frame;
+import org.quuux.opengl.renderer.Trace;
+
+import java.io.File;
+import java.io.IOException;
+
+// Replays a trace captured with -Dcapture into an offscreen GL context as fast as the driver takes
+// it, so a captured session measures driver overhead without the scene's update and draw costs.
+// The first frame, which carries the scene's setup, runs once and the rest run for each pass.
+//   Replay trace [passes]
+class Replay {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("usage: Replay trace [passes]");
+            System.exit(1);
+        }
+
+        long start = System.nanoTime();
+        Trace trace = Trace.load(new File(args[0]));
+        int passes = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        System.out.println(String.format("loaded %d frames, %d ops in %.1f ms", trace.getFrameCount(), trace.size(), (System.nanoTime() - start) / 1e6));
+
+        if (trace.getFrameCount() < 2) {
+            System.out.println("nothing to replay");
+            System.exit(1);
+        }
+
+        GLProfile glProfile = GLProfile.get(Config.GL_PROFILE);
+        GLCapabilities glCapabilities = new GLCapabilities(glProfile);
+        GLOffscreenAutoDrawable drawable = GLDrawableFactory.getFactory(glProfile)
+                .createOffscreenAutoDrawable(null, glCapabilities, null, Config.WIDTH, Config.HEIGHT);
+        drawable.display();
+        drawable.getContext().makeCurrent();
+
+        GL gl = drawable.getGL();
+        JOGLRenderer renderer = new JOGLRenderer();
+        renderer.setGL(gl);
+        renderer.setErrorCheck(Config.ERROR_CHECK);
+
+        Frame.run(renderer, trace.getFrame(0));
+        gl.glFinish();
+
+        int frames = 0;
+        start = System.nanoTime();
+        for (int pass=0; pass<passes; pass++) {
+            for (int i=1; i<trace.getFrameCount(); i++) {
+                Frame.run(renderer, trace.getFrame(i));
+                frames++;
+            }
+        }
+        gl.glFinish();
+        long elapsed = System.nanoTime() - start;
+        System.out.println(String.format("%d frames in %.1f ms (%.3f ms/frame)", frames, elapsed / 1e6, elapsed / 1e6 / frames));
+
+        drawable.getContext().release();
+        drawable.destroy();
+        System.exit(0);
+    }
+}
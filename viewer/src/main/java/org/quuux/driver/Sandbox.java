@@ -2,27 +2,48 @@ package org.quuux.driver;
 
 import com.jogamp.newt.event.KeyEvent;
 import com.jogamp.newt.event.KeyListener;
+import com.jogamp.newt.event.MouseAdapter;
+import com.jogamp.newt.event.MouseEvent;
 import com.jogamp.newt.event.WindowAdapter;
 import com.jogamp.newt.event.WindowEvent;
 import com.jogamp.newt.opengl.GLWindow;
 import com.jogamp.opengl.*;
 import com.jogamp.opengl.util.FPSAnimator;
 
+import org.quuux.opengl.renderer.CaptureRenderer;
 import org.quuux.opengl.renderer.Command;
+import org.quuux.opengl.renderer.Frame;
+import org.quuux.opengl.renderer.ProfilingRenderer;
+import org.quuux.opengl.renderer.Renderer;
+import org.quuux.opengl.renderer.StateTrackingRenderer;
 import org.quuux.opengl.scenes.Camera;
+import org.quuux.opengl.scenes.RaycastHit;
 import org.quuux.opengl.scenes.Scene;
+import org.quuux.opengl.scenes.Simulation;
 import org.quuux.scenes.TestScene;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
 class Sandbox implements KeyListener, GLEventListener {
 
     static GLWindow window;
     static FPSAnimator animator;
 
+    static final int STATS_FRAMES = 60 * 5;
+    static final int TICKS_PER_SECOND = 60;
+
     Scene scene;
-    JOGLRenderer renderer = new JOGLRenderer();
-    long lastUpdate;
+    JOGLRenderer glRenderer = new JOGLRenderer();
+    CaptureRenderer capture;
+    ProfilingRenderer profiler;
+    StateTrackingRenderer renderer;
+    volatile Simulation simulation;
+    long frames;
+    final RaycastHit hit = new RaycastHit();
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
 
         GLProfile glProfile = GLProfile.get(Config.GL_PROFILE);
         GLCapabilities glCapabilities = new GLCapabilities(glProfile);
@@ -37,13 +58,20 @@ class Sandbox implements KeyListener, GLEventListener {
         window.setVisible(true);
 
         Scene scene = new TestScene();
-        Sandbox sandbox = new Sandbox(scene);
+        scene.setPool(ForkJoinPool.commonPool());
+        final Sandbox sandbox = new Sandbox(scene);
 
         window.addGLEventListener(sandbox);
         window.addKeyListener(sandbox);
+        window.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                sandbox.pick(e.getX(), e.getY());
+            }
+        });
 
         animator = new FPSAnimator(window, 60);
-        animator.setUpdateFPSFrames(60 * 5, System.out);
+        animator.setUpdateFPSFrames(STATS_FRAMES, System.out);
 
         window.addWindowListener(new WindowAdapter() {
             @Override
@@ -55,52 +83,128 @@ class Sandbox implements KeyListener, GLEventListener {
         animator.start();
     }
 
-    private Sandbox(Scene scene) {
+    private Sandbox(Scene scene) throws IOException {
         this.scene = scene;
+
+        // captured and profiled below the state tracking so both see what the driver was sent
+        Renderer backend = glRenderer;
+        if (Config.PROFILE)
+            backend = profiler = new ProfilingRenderer(backend);
+        if (Config.CAPTURE != null)
+            backend = capture = new CaptureRenderer(backend, new File(Config.CAPTURE));
+        renderer = new StateTrackingRenderer(backend);
     }
 
     @Override
     public void init(GLAutoDrawable drawable) {
         GL gl = drawable.getGL();
-        renderer.setGL(gl);
+        glRenderer.setGL(gl);
+        glRenderer.setErrorCheck(Config.ERROR_CHECK);
 
         System.out.println(String.format("OpenGL Version: %s", gl.glGetString(GL.GL_VERSION)));
 
         Command command = scene.initialize();
-        command.run(renderer);
+        Frame.runChecked(renderer, command);
 
-        lastUpdate = System.currentTimeMillis();
+        // the draw list has to exist before the simulation starts culling against it
+        scene.dispatchDraw();
+        simulation = new Simulation(scene, TICKS_PER_SECOND);
+        simulation.start();
     }
 
     @Override
     public void dispose(GLAutoDrawable drawable) {
+        simulation.stop();
         Command command = scene.dispose();
-        command.run(renderer);
+        Frame.runChecked(renderer, command);
+
+        if (capture != null) {
+            try {
+                capture.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
     }
 
     @Override
     public void display(GLAutoDrawable drawable) {
-        long now = System.currentTimeMillis();
-        long elapsed = now - lastUpdate;
-        lastUpdate = now;
-
-        scene.dispatchUpdate(elapsed);
+        simulation.present();
 
         Command displayList = scene.dispatchDraw();
-        displayList.run(renderer);
+        Frame.run(renderer, displayList);
+        renderer.endFrame();
+        if (capture != null)
+            capture.endFrame();
+        if (profiler != null)
+            profiler.endFrame();
+
+        if (++frames % STATS_FRAMES == 0) {
+            System.out.println(String.format("state calls removed: %d / visible: %d / culled: %d",
+                    renderer.getRemovedCalls(), scene.getVisibleCount(), scene.getCulledCount()));
+            if (profiler != null)
+                System.out.println(profiler.getLastFrame());
+        }
+    }
+
+    // The simulation thread reads the camera as it culls and captures uniforms, so changes to it
+    // are made there between ticks. Before the simulation starts nothing else is reading it.
+    void updateCamera(Runnable change) {
+        Simulation simulation = this.simulation;
+        if (simulation != null)
+            simulation.post(change);
+        else
+            change.run();
+    }
+
+    // runs on the simulation thread between ticks so the cast sees a settled scene
+    void pick(final int x, final int y) {
+        Simulation simulation = this.simulation;
+        if (simulation == null)
+            return;
+
+        final int width = window.getSurfaceWidth(), height = window.getSurfaceHeight();
+        simulation.post(new Runnable() {
+            @Override
+            public void run() {
+                scene.raycast(x, y, width, height, hit);
+                System.out.println(String.format("pick %d, %d: %s", x, y, hit));
+            }
+        });
     }
 
     @Override
     public void reshape(GLAutoDrawable drawable, int x, int y, int width, int height) {
         GL4 gl = drawable.getGL().getGL4();
         gl.glViewport(0, 0, width, height);
-        Scene.get().getCamera().setProjection(45, (double)width/(double)height, 1, 1000.);
+
+        final double aspectRatio = (double)width/(double)height;
+        updateCamera(new Runnable() {
+            @Override
+            public void run() {
+                scene.camera.setProjection(45, aspectRatio, 1, 1000.);
+            }
+        });
     }
 
     @Override
     public void keyPressed(KeyEvent e) {
-        int key = e.getKeyCode();
+        final int key = e.getKeyCode();
+
+        if (key == KeyEvent.VK_ESCAPE) {
+            exit();
+            return;
+        }
+
+        updateCamera(new Runnable() {
+            @Override
+            public void run() {
+                moveCamera(key);
+            }
+        });
+    }
 
+    private void moveCamera(int key) {
         double inc = 1f;
 
         if ( key == KeyEvent.VK_LEFT ) {
@@ -119,8 +223,6 @@ class Sandbox implements KeyListener, GLEventListener {
             scene.camera.move(Camera.Direction.BACK, inc);
         } else if ( key == KeyEvent.VK_D ) {
             scene.camera.move(Camera.Direction.RIGHT, inc);
-        } else if (key == KeyEvent.VK_ESCAPE) {
-            exit();
         }
 
         //System.out.println(String.format("center = %s / eye = %s", scene.camera.center, scene.camera.eye));